@@ -0,0 +1,20 @@
+package alien.api;
+
+import java.io.IOException;
+
+/**
+ * Requests that can be sent with the {@link WireCodec#BINARY} codec. Implementing classes have to be registered in {@link RequestCodec} and have to provide a constructor taking a {@link BinaryInput} that
+ * reads back, in the same order, exactly what {@link #writeBinary(BinaryOutput)} has written.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public interface BinaryEncodable {
+	/**
+	 * Write the complete state of the object (request and reply fields alike, the same object travels in both directions)
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeBinary(BinaryOutput out) throws IOException;
+}
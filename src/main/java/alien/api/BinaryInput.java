@@ -0,0 +1,327 @@
+package alien.api;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import alien.config.ConfigUtils;
+import alien.user.AliEnPrincipal;
+
+/**
+ * Reading side of the {@link WireCodec#BINARY} codec, mirroring {@link BinaryOutput}. Every length and element count read from the wire is checked against a configured maximum and against what is
+ * left of the frame's byte budget before anything is allocated for it, so a malformed or hostile frame fails with a {@link StreamCorruptedException} instead of exhausting the memory.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class BinaryInput {
+	private final ObjectInputStream ois;
+
+	private final List<AliEnPrincipal> principals = new ArrayList<>();
+
+	private final long maxFrameBytes;
+
+	private final int maxElements;
+
+	private long remaining;
+
+	/**
+	 * @param ois
+	 *            connection stream to read from
+	 */
+	BinaryInput(final ObjectInputStream ois) {
+		this(ois, ConfigUtils.getConfig().getl("alien.api.BinaryInput.maxFrameBytes", 64 * 1024 * 1024), ConfigUtils.getConfig().geti("alien.api.BinaryInput.maxElements", 1000000));
+	}
+
+	/**
+	 * @param ois
+	 *            connection stream to read from
+	 * @param maxFrameBytes
+	 *            how many bytes the hand-encoded fields of one frame may add up to
+	 * @param maxElements
+	 *            largest accepted element count of a collection
+	 */
+	BinaryInput(final ObjectInputStream ois, final long maxFrameBytes, final int maxElements) {
+		this.ois = ois;
+		this.maxFrameBytes = maxFrameBytes;
+		this.maxElements = maxElements;
+		this.remaining = maxFrameBytes;
+	}
+
+	/**
+	 * Reset the byte budget, to be called before decoding each frame
+	 */
+	void startFrame() {
+		remaining = maxFrameBytes;
+	}
+
+	private void consume(final long bytes) throws StreamCorruptedException {
+		if (bytes > remaining)
+			throw new StreamCorruptedException("Frame exceeds the limit of " + maxFrameBytes + " bytes (" + bytes + " more bytes announced, " + remaining + " left)");
+
+		remaining -= bytes;
+	}
+
+	/**
+	 * Read an element count, as written in front of any collection
+	 *
+	 * @param minElementBytes
+	 *            the smallest number of bytes that each element takes on the wire, so that the count can be checked against what is left of the frame
+	 * @return the count, or <code>-1</code> for a <code>null</code> collection
+	 * @throws IOException
+	 *             if the count is larger than the configured limit or than what the rest of the frame could hold
+	 */
+	public int readCount(final int minElementBytes) throws IOException {
+		final int count = readInt();
+
+		if (count < 0)
+			return -1;
+
+		if (count > maxElements)
+			throw new StreamCorruptedException("Collection of " + count + " elements exceeds the limit of " + maxElements);
+
+		if ((long) count * minElementBytes > remaining)
+			throw new StreamCorruptedException("Collection of " + count + " elements cannot fit in the " + remaining + " bytes left in the frame");
+
+		return count;
+	}
+
+	/**
+	 * @return the next boolean
+	 * @throws IOException
+	 */
+	public boolean readBoolean() throws IOException {
+		consume(1);
+		return ois.readBoolean();
+	}
+
+	/**
+	 * @return the next int
+	 * @throws IOException
+	 */
+	public int readInt() throws IOException {
+		consume(4);
+		return ois.readInt();
+	}
+
+	/**
+	 * @return the next long
+	 * @throws IOException
+	 */
+	public long readLong() throws IOException {
+		consume(8);
+		return ois.readLong();
+	}
+
+	/**
+	 * @return the next double
+	 * @throws IOException
+	 */
+	public double readDouble() throws IOException {
+		consume(8);
+		return ois.readDouble();
+	}
+
+	private byte readTag() throws IOException {
+		consume(1);
+		return ois.readByte();
+	}
+
+	/**
+	 * @return the next (nullable) string
+	 * @throws IOException
+	 */
+	public String readString() throws IOException {
+		final int len = readInt();
+
+		if (len < 0)
+			return null;
+
+		consume(len);
+
+		final byte[] content = new byte[len];
+		ois.readFully(content);
+
+		return new String(content, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the next (nullable) UUID
+	 * @throws IOException
+	 */
+	public UUID readUUID() throws IOException {
+		if (!readBoolean())
+			return null;
+
+		final long msb = readLong();
+
+		return new UUID(msb, readLong());
+	}
+
+	/**
+	 * @param enumClass
+	 * @return the enum constant with the name that was sent, or <code>null</code>
+	 * @throws IOException
+	 */
+	public <E extends Enum<E>> E readEnum(final Class<E> enumClass) throws IOException {
+		final String name = readString();
+
+		if (name == null)
+			return null;
+
+		try {
+			return Enum.valueOf(enumClass, name);
+		}
+		catch (final IllegalArgumentException iae) {
+			throw new StreamCorruptedException("Unknown " + enumClass.getSimpleName() + " constant: " + name + " (" + iae.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * @return the strings written by {@link BinaryOutput#writeStrings(Collection)}, as a {@link List}
+	 * @throws IOException
+	 */
+	public List<String> readStrings() throws IOException {
+		final int count = readCount(4);
+
+		if (count < 0)
+			return null;
+
+		final List<String> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++)
+			ret.add(readString());
+
+		return ret;
+	}
+
+	/**
+	 * @return the identity written by {@link BinaryOutput#writePrincipal(AliEnPrincipal)}
+	 * @throws IOException
+	 */
+	public AliEnPrincipal readPrincipal() throws IOException {
+		final byte tag = readTag();
+
+		switch (tag) {
+			case BinaryOutput.TAG_NULL:
+				return null;
+			case BinaryOutput.PRINCIPAL_REFERENCE:
+				final int id = readInt();
+
+				if (id < 0 || id >= principals.size())
+					throw new StreamCorruptedException("Unknown identity reference " + id);
+
+				return principals.get(id);
+			case BinaryOutput.PRINCIPAL_DEFINE:
+				final AliEnPrincipal defined = (AliEnPrincipal) readObject();
+				principals.add(defined);
+				return defined;
+			case BinaryOutput.PRINCIPAL_INLINE:
+				return (AliEnPrincipal) readObject();
+			default:
+				throw new StreamCorruptedException("Unexpected identity tag " + tag);
+		}
+	}
+
+	/**
+	 * @return the next object written by {@link BinaryOutput#writeObject(Object)}
+	 * @throws IOException
+	 */
+	public Object readObject() throws IOException {
+		try {
+			return ois.readUnshared();
+		}
+		catch (final ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return the next value written by {@link BinaryOutput#writeValue(Object)}
+	 * @throws IOException
+	 */
+	public Object readValue() throws IOException {
+		final byte tag = readTag();
+
+		switch (tag) {
+			case BinaryOutput.TAG_NULL:
+				return null;
+			case BinaryOutput.TAG_STRING:
+				return readString();
+			case BinaryOutput.TAG_INTEGER:
+				return Integer.valueOf(readInt());
+			case BinaryOutput.TAG_LONG:
+				return Long.valueOf(readLong());
+			case BinaryOutput.TAG_DOUBLE:
+				return Double.valueOf(readDouble());
+			case BinaryOutput.TAG_BOOLEAN:
+				return Boolean.valueOf(readBoolean());
+			case BinaryOutput.TAG_UUID:
+				return readUUID();
+			case BinaryOutput.TAG_DATE:
+				return new Date(readLong());
+			case BinaryOutput.TAG_LIST: {
+				final int count = readValueCount();
+				return readValues(new ArrayList<>(count), count);
+			}
+			case BinaryOutput.TAG_SET: {
+				final int count = readValueCount();
+				return readValues(new HashSet<>(count * 4 / 3 + 1), count);
+			}
+			case BinaryOutput.TAG_MAP:
+				return readMap();
+			case BinaryOutput.TAG_PRINCIPAL:
+				return readPrincipal();
+			case BinaryOutput.TAG_OBJECT:
+				return readObject();
+			default:
+				throw new StreamCorruptedException("Unexpected value tag " + tag);
+		}
+	}
+
+	private int readValueCount() throws IOException {
+		final int count = readCount(1);
+
+		if (count < 0)
+			throw new StreamCorruptedException("Negative element count of a tagged collection");
+
+		return count;
+	}
+
+	private Collection<Object> readValues(final Collection<Object> target, final int count) throws IOException {
+		for (int i = 0; i < count; i++)
+			target.add(readValue());
+
+		return target;
+	}
+
+	/**
+	 * @return the map written by {@link BinaryOutput#writeMap(java.util.Map)}
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> HashMap<K, V> readMap() throws IOException {
+		// a key and a value, at least one tag byte each
+		final int count = readCount(2);
+
+		if (count < 0)
+			return null;
+
+		final HashMap<K, V> ret = new HashMap<>(count * 4 / 3 + 1);
+
+		for (int i = 0; i < count; i++) {
+			final K key = (K) readValue();
+			ret.put(key, (V) readValue());
+		}
+
+		return ret;
+	}
+}
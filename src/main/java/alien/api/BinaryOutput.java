@@ -0,0 +1,279 @@
+package alien.api;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import alien.user.AliEnPrincipal;
+
+/**
+ * Writing side of the {@link WireCodec#BINARY} codec. Primitive values go as block data on the connection's {@link ObjectOutputStream}, objects without a hand-written encoding are written with
+ * {@link ObjectOutputStream#writeUnshared(Object)} on the same stream, so class descriptors are still shared with the Java serialization path.
+ *
+ * @author costing
+ * @since 2024-03-18
+ * @see BinaryInput
+ */
+public final class BinaryOutput {
+	static final byte TAG_NULL = 0;
+	static final byte TAG_STRING = 1;
+	static final byte TAG_INTEGER = 2;
+	static final byte TAG_LONG = 3;
+	static final byte TAG_DOUBLE = 4;
+	static final byte TAG_BOOLEAN = 5;
+	static final byte TAG_UUID = 6;
+	static final byte TAG_DATE = 7;
+	static final byte TAG_LIST = 8;
+	static final byte TAG_SET = 9;
+	static final byte TAG_MAP = 10;
+	static final byte TAG_PRINCIPAL = 11;
+	static final byte TAG_OBJECT = 127;
+
+	static final byte PRINCIPAL_INLINE = 1;
+	static final byte PRINCIPAL_DEFINE = 2;
+	static final byte PRINCIPAL_REFERENCE = 3;
+
+	/**
+	 * How many distinct identities to remember per connection. Beyond this they are sent inline every time.
+	 */
+	static final int MAX_PRINCIPALS = 64;
+
+	private final ObjectOutputStream oos;
+
+	private final Map<AliEnPrincipal, Integer> principals = new IdentityHashMap<>();
+
+	/**
+	 * @param oos
+	 *            connection stream to write to
+	 */
+	BinaryOutput(final ObjectOutputStream oos) {
+		this.oos = oos;
+	}
+
+	/**
+	 * @param b
+	 * @throws IOException
+	 */
+	public void writeBoolean(final boolean b) throws IOException {
+		oos.writeBoolean(b);
+	}
+
+	/**
+	 * @param i
+	 * @throws IOException
+	 */
+	public void writeInt(final int i) throws IOException {
+		oos.writeInt(i);
+	}
+
+	/**
+	 * @param l
+	 * @throws IOException
+	 */
+	public void writeLong(final long l) throws IOException {
+		oos.writeLong(l);
+	}
+
+	/**
+	 * @param d
+	 * @throws IOException
+	 */
+	public void writeDouble(final double d) throws IOException {
+		oos.writeDouble(d);
+	}
+
+	/**
+	 * Nullable UTF-8 string, without the 64KB limit of {@link ObjectOutputStream#writeUTF(String)}
+	 *
+	 * @param s
+	 * @throws IOException
+	 */
+	public void writeString(final String s) throws IOException {
+		if (s == null) {
+			oos.writeInt(-1);
+			return;
+		}
+
+		final byte[] content = s.getBytes(StandardCharsets.UTF_8);
+
+		oos.writeInt(content.length);
+		oos.write(content);
+	}
+
+	/**
+	 * @param uuid
+	 * @throws IOException
+	 */
+	public void writeUUID(final UUID uuid) throws IOException {
+		oos.writeBoolean(uuid != null);
+
+		if (uuid != null) {
+			oos.writeLong(uuid.getMostSignificantBits());
+			oos.writeLong(uuid.getLeastSignificantBits());
+		}
+	}
+
+	/**
+	 * @param e
+	 *            enum value, sent by name so that reordering the constants doesn't break older peers
+	 * @throws IOException
+	 */
+	public void writeEnum(final Enum<?> e) throws IOException {
+		writeString(e != null ? e.name() : null);
+	}
+
+	/**
+	 * @param values
+	 * @throws IOException
+	 */
+	public void writeStrings(final Collection<String> values) throws IOException {
+		if (values == null) {
+			oos.writeInt(-1);
+			return;
+		}
+
+		oos.writeInt(values.size());
+
+		for (final String s : values)
+			writeString(s);
+	}
+
+	/**
+	 * Identities are remembered per connection, after the first occurrence only a reference number is sent
+	 *
+	 * @param principal
+	 * @throws IOException
+	 */
+	public void writePrincipal(final AliEnPrincipal principal) throws IOException {
+		if (principal == null) {
+			oos.writeByte(TAG_NULL);
+			return;
+		}
+
+		final Integer id = principals.get(principal);
+
+		if (id != null) {
+			oos.writeByte(PRINCIPAL_REFERENCE);
+			oos.writeInt(id.intValue());
+			return;
+		}
+
+		if (principals.size() < MAX_PRINCIPALS) {
+			principals.put(principal, Integer.valueOf(principals.size()));
+			oos.writeByte(PRINCIPAL_DEFINE);
+		}
+		else
+			oos.writeByte(PRINCIPAL_INLINE);
+
+		oos.writeUnshared(principal);
+	}
+
+	/**
+	 * Fallback for any object without a hand-written encoding
+	 *
+	 * @param o
+	 * @throws IOException
+	 */
+	public void writeObject(final Object o) throws IOException {
+		oos.writeUnshared(o);
+	}
+
+	/**
+	 * Tagged value, as found in the free-form maps that some requests carry. Only the exact JDK types are encoded by hand, so the other end gets back the very same type; anything else goes through
+	 * {@link #writeObject(Object)}.
+	 *
+	 * @param o
+	 * @throws IOException
+	 */
+	public void writeValue(final Object o) throws IOException {
+		if (o == null) {
+			oos.writeByte(TAG_NULL);
+			return;
+		}
+
+		final Class<?> c = o.getClass();
+
+		if (c == String.class) {
+			oos.writeByte(TAG_STRING);
+			writeString((String) o);
+		}
+		else if (c == Integer.class) {
+			oos.writeByte(TAG_INTEGER);
+			oos.writeInt(((Integer) o).intValue());
+		}
+		else if (c == Long.class) {
+			oos.writeByte(TAG_LONG);
+			oos.writeLong(((Long) o).longValue());
+		}
+		else if (c == Double.class) {
+			oos.writeByte(TAG_DOUBLE);
+			oos.writeDouble(((Double) o).doubleValue());
+		}
+		else if (c == Boolean.class) {
+			oos.writeByte(TAG_BOOLEAN);
+			oos.writeBoolean(((Boolean) o).booleanValue());
+		}
+		else if (c == UUID.class) {
+			oos.writeByte(TAG_UUID);
+			writeUUID((UUID) o);
+		}
+		else if (c == Date.class) {
+			oos.writeByte(TAG_DATE);
+			oos.writeLong(((Date) o).getTime());
+		}
+		else if (c == ArrayList.class) {
+			oos.writeByte(TAG_LIST);
+			writeValues((Collection<?>) o);
+		}
+		else if (c == HashSet.class) {
+			oos.writeByte(TAG_SET);
+			writeValues((Collection<?>) o);
+		}
+		else if (c == HashMap.class) {
+			oos.writeByte(TAG_MAP);
+			writeMap((HashMap<?, ?>) o);
+		}
+		else if (o instanceof AliEnPrincipal) {
+			oos.writeByte(TAG_PRINCIPAL);
+			writePrincipal((AliEnPrincipal) o);
+		}
+		else {
+			oos.writeByte(TAG_OBJECT);
+			oos.writeUnshared(o);
+		}
+	}
+
+	private void writeValues(final Collection<?> values) throws IOException {
+		oos.writeInt(values.size());
+
+		for (final Object value : values)
+			writeValue(value);
+	}
+
+	/**
+	 * @param map
+	 *            nullable map, keys and values are written with {@link #writeValue(Object)}
+	 * @throws IOException
+	 */
+	public void writeMap(final Map<?, ?> map) throws IOException {
+		if (map == null) {
+			oos.writeInt(-1);
+			return;
+		}
+
+		oos.writeInt(map.size());
+
+		for (final Map.Entry<?, ?> entry : map.entrySet()) {
+			writeValue(entry.getKey());
+			writeValue(entry.getValue());
+		}
+	}
+}
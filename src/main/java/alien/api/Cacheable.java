@@ -16,4 +16,12 @@ public interface Cacheable {
 	 */
 	public long getTimeout();
 
+	/**
+	 * @return rough size in bytes of this object once its result is in, for the accounting of the result cache. It is called on every cache miss, so it has to be cheap; the order of magnitude is
+	 *         enough.
+	 */
+	public default long getEstimatedSize() {
+		return 1024;
+	}
+
 }
@@ -0,0 +1,74 @@
+package alien.api;
+
+import java.util.Arrays;
+import java.util.List;
+
+import alien.config.ConfigUtils;
+
+/**
+ * First message on a connection that wants to use a more compact encoding than Java serialization. It is always sent with {@link WireCodec#JAVA} and handled by the connection itself, it never reaches the
+ * {@link Dispatcher}. Once the reply is received both ends switch to the accepted codec and, if agreed, the server starts executing the requests of this connection in parallel, replying in completion
+ * order.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class CodecNegotiation extends Request {
+	private static final long serialVersionUID = -3188417716406457214L;
+
+	private final int requestedCodec;
+
+	private final int requestedVersion;
+
+	private final boolean requestedMultiplexing;
+
+	private int acceptedCodec = WireCodec.JAVA.getId();
+
+	private boolean acceptedMultiplexing = false;
+
+	/**
+	 * @param codec
+	 *            what the client would like to use
+	 * @param multiplexing
+	 *            whether the client would like to have several requests in flight on this connection
+	 */
+	public CodecNegotiation(final WireCodec codec, final boolean multiplexing) {
+		this.requestedCodec = codec.getId();
+		this.requestedVersion = WireCodec.BINARY_VERSION;
+		this.requestedMultiplexing = multiplexing;
+	}
+
+	@Override
+	public List<String> getArguments() {
+		return Arrays.asList(String.valueOf(requestedCodec), String.valueOf(requestedVersion), String.valueOf(requestedMultiplexing));
+	}
+
+	@Override
+	public void run() {
+		if (requestedCodec == WireCodec.BINARY.getId() && requestedVersion == WireCodec.BINARY_VERSION && ConfigUtils.getConfig().getb("alien.api.DispatchSSLServer.binaryCodec", true))
+			acceptedCodec = WireCodec.BINARY.getId();
+		else
+			acceptedCodec = WireCodec.JAVA.getId();
+
+		acceptedMultiplexing = requestedMultiplexing && ConfigUtils.getConfig().getb("alien.api.DispatchSSLServer.multiplexing", true);
+	}
+
+	/**
+	 * @return the codec that both ends should use from now on
+	 */
+	public WireCodec getAcceptedCodec() {
+		return WireCodec.fromId(acceptedCodec);
+	}
+
+	/**
+	 * @return <code>true</code> if replies can come back in a different order than the requests were sent
+	 */
+	public boolean isMultiplexingAccepted() {
+		return acceptedMultiplexing;
+	}
+
+	@Override
+	public String toString() {
+		return "Asked for codec " + requestedCodec + " v" + requestedVersion + (requestedMultiplexing ? " multiplexed" : "") + ", reply is: " + acceptedCodec + (acceptedMultiplexing ? " multiplexed" : "");
+	}
+}
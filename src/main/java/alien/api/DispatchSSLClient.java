@@ -10,6 +10,7 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.security.cert.Certificate;
@@ -18,7 +19,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,9 +65,54 @@ public class DispatchSSLClient {
 
 	private final OutputStream os;
 
-	private static long idleTimeout = 0;
+	private final RequestCodec codec = new RequestCodec();
 
-	private static long lastCommand = System.currentTimeMillis();
+	/**
+	 * Whether the server has agreed to process several requests at the same time on this connection, replying in completion order
+	 */
+	private boolean multiplexed = false;
+
+	/**
+	 * Serializes complete request-reply exchanges on connections that are not multiplexed
+	 */
+	private final Object exchangeLock = new Object();
+
+	/**
+	 * Requests sent on a multiplexed connection that are still waiting for their reply, by the sequence number of the frame that carried them
+	 */
+	private final ConcurrentHashMap<Long, CompletableFuture<Object>> pendingReplies = new ConcurrentHashMap<>();
+
+	/**
+	 * Sequence number of the last request sent on this multiplexed connection, echoed back by the server in front of its reply
+	 */
+	private final AtomicLong lastSequence = new AtomicLong(0);
+
+	/**
+	 * Requests currently using this connection, to spread the load across the pool
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+
+	private volatile boolean closed = false;
+
+	/**
+	 * How many connections to keep open to the central services. Each of them is either multiplexed or carries one request at a time.
+	 */
+	private static final int poolSize = Math.max(ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.poolSize", 1), 1);
+
+	private static final DispatchSSLClient[] pool = new DispatchSSLClient[poolSize];
+
+	private static final Object[] poolLocks = new Object[poolSize];
+
+	static {
+		for (int i = 0; i < poolSize; i++)
+			poolLocks[i] = new Object();
+	}
+
+	private static final AtomicInteger nextSlot = new AtomicInteger(0);
+
+	private static volatile long idleTimeout = 0;
+
+	private static volatile long lastCommand = System.currentTimeMillis();
 
 	private static IdleWatcher watcherThread = null;
 
@@ -100,15 +154,22 @@ public class DispatchSSLClient {
 	/**
 	 * 
 	 */
-	static synchronized void checkIdleConnection() {
-		if (instance != null && idleTimeout > 0 && System.currentTimeMillis() - lastCommand > idleTimeout) {
-			logger.log(Level.INFO, "Closing idle socket");
+	static void checkIdleConnection() {
+		if (idleTimeout <= 0 || System.currentTimeMillis() - lastCommand <= idleTimeout)
+			return;
+
+		for (int i = 0; i < poolSize; i++) {
+			synchronized (poolLocks[i]) {
+				final DispatchSSLClient toClose = pool[i];
 
-			final var toClose = instance;
+				if (toClose != null && toClose.inFlight.get() == 0) {
+					logger.log(Level.INFO, "Closing idle socket");
 
-			instance = null;
+					pool[i] = null;
 
-			new Thread(() -> toClose.close()).start();
+					new Thread(() -> toClose.close()).start();
+				}
+			}
 		}
 	}
 
@@ -144,6 +205,177 @@ public class DispatchSSLClient {
 
 		this.oos = new ObjectOutputStream(this.os);
 		this.oos.flush();
+
+		final boolean wantBinary = ConfigUtils.getConfig().getb("alien.api.DispatchSSLClient.binaryCodec", false);
+		final boolean wantMultiplexing = ConfigUtils.getConfig().getb("alien.api.DispatchSSLClient.multiplexing", false);
+
+		if (wantBinary || wantMultiplexing)
+			negotiateCodec(wantBinary ? WireCodec.BINARY : WireCodec.JAVA, wantMultiplexing);
+
+		if (multiplexed) {
+			// replies are read by a dedicated thread, that has to wait for as long as the connection is kept open
+			connection.setSoTimeout(0);
+
+			final Thread reader = new Thread(this::readReplies, "DispatchSSLClient.reader - " + connection.getInetAddress());
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	/**
+	 * Ask the server to switch this connection to a different codec. Servers that predate the negotiation drop the connection, so this is only attempted when explicitly enabled in the configuration.
+	 *
+	 * @param wanted
+	 * @param wantMultiplexing
+	 * @throws IOException
+	 */
+	private void negotiateCodec(final WireCodec wanted, final boolean wantMultiplexing) throws IOException {
+		codec.write(oos, new CodecNegotiation(wanted, wantMultiplexing));
+		oos.flush();
+
+		final Object o;
+
+		try {
+			o = codec.read(ois);
+		}
+		catch (final ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+
+		if (!(o instanceof CodecNegotiation))
+			throw new IOException("Unexpected reply to the codec negotiation: " + (o != null ? o.getClass().getCanonicalName() : "null"));
+
+		final CodecNegotiation reply = (CodecNegotiation) o;
+
+		codec.setCodec(reply.getAcceptedCodec());
+
+		multiplexed = reply.isMultiplexingAccepted();
+
+		logger.log(Level.INFO, "Asked for " + wanted + " codec" + (wantMultiplexing ? " and multiplexing" : "") + ", the server accepted " + codec.getCodec() + (multiplexed ? " and multiplexing" : ""));
+	}
+
+	/**
+	 * A multiplexed request that didn't get its reply in time. Only that request has failed, the connection and the other requests on it are still fine.
+	 */
+	private static final class ReplyTimeoutException extends SocketTimeoutException {
+		private static final long serialVersionUID = 1L;
+
+		ReplyTimeoutException(final String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Body of the thread that reads the replies of a multiplexed connection and hands them to the waiting callers, in whatever order they arrive
+	 */
+	private void readReplies() {
+		try {
+			while (!closed) {
+				final long sequence = codec.readSequence(ois);
+
+				final Object o = codec.read(ois);
+
+				if (o instanceof Request) {
+					final CompletableFuture<Object> waiting = pendingReplies.remove(Long.valueOf(sequence));
+
+					if (waiting != null)
+						waiting.complete(o);
+					else
+						logger.log(Level.WARNING, "Nobody is waiting any more for this reply: " + o);
+				}
+				else
+					logger.log(Level.WARNING, "Unexpected object on a multiplexed connection: " + (o != null ? o.getClass().getCanonicalName() : "null"));
+			}
+		}
+		catch (final Throwable t) {
+			if (!closed)
+				logger.log(Level.INFO, "Multiplexed connection to " + connection.getInetAddress() + " was interrupted", t);
+		}
+		finally {
+			close();
+		}
+	}
+
+	/**
+	 * Send one request on this connection and wait for its reply
+	 *
+	 * @param r
+	 * @return the reply object
+	 * @throws IOException
+	 */
+	private Object exchange(final Request r) throws IOException {
+		inFlight.incrementAndGet();
+
+		try {
+			if (!multiplexed) {
+				synchronized (exchangeLock) {
+					send(r, 0);
+
+					try {
+						return codec.read(ois);
+					}
+					catch (final ClassNotFoundException e) {
+						throw new IOException(e);
+					}
+				}
+			}
+
+			final Long key = Long.valueOf(lastSequence.incrementAndGet());
+
+			final CompletableFuture<Object> reply = new CompletableFuture<>();
+
+			pendingReplies.put(key, reply);
+
+			try {
+				if (closed)
+					throw new IOException("Connection was closed");
+
+				send(r, key.longValue());
+
+				return reply.get(ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.readTimeout_seconds", 900), TimeUnit.SECONDS);
+			}
+			catch (final ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+
+				throw new IOException(e.getCause());
+			}
+			catch (final TimeoutException e) {
+				throw new ReplyTimeoutException("No reply received in time for " + r.getClass().getSimpleName() + " (" + e.getMessage() + ")");
+			}
+			catch (final InterruptedException e) {
+				throw new IOException("Interrupted while waiting for the reply", e);
+			}
+			finally {
+				pendingReplies.remove(key);
+			}
+		}
+		finally {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @param r
+	 * @param sequence
+	 *            number of the frame on a multiplexed connection, ignored otherwise
+	 * @throws IOException
+	 */
+	private void send(final Request r, final long sequence) throws IOException {
+		final long lStart = System.currentTimeMillis();
+
+		final WireCodec usedCodec;
+
+		synchronized (oos) {
+			usedCodec = multiplexed ? codec.write(oos, sequence, r) : codec.write(oos, r);
+
+			oos.flush();
+		}
+
+		final long lDuration = System.currentTimeMillis() - lStart;
+
+		lSerialization.addAndGet(lDuration);
+		lSerializationPerCodec.addAndGet(usedCodec.ordinal(), lDuration);
 	}
 
 	@Override
@@ -151,11 +383,65 @@ public class DispatchSSLClient {
 		return this.connection.getInetAddress().toString();
 	}
 
-	private static final Object globalLock = new Object();
+	/**
+	 * @return the pool slot to use for the next request: an idle connection if there is any, otherwise the least loaded one
+	 */
+	private static int pickSlot() {
+		if (poolSize == 1)
+			return 0;
+
+		final int start = Math.floorMod(nextSlot.getAndIncrement(), poolSize);
+
+		int best = start;
+		int bestLoad = Integer.MAX_VALUE;
 
-	private static DispatchSSLClient instance = null;
+		for (int i = 0; i < poolSize; i++) {
+			final int slot = (start + i) % poolSize;
 
-	private static void connectTo(final List<InetAddress> allAddresses, final int targetPort, final SSLSocketFactory factory, final Object callback, final AtomicInteger connectionState) {
+			final DispatchSSLClient c = pool[slot];
+
+			final int load = c != null ? c.inFlight.get() : 0;
+
+			if (load == 0)
+				return slot;
+
+			if (load < bestLoad) {
+				best = slot;
+				bestLoad = load;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * @param slot
+	 * @return the connection in this pool slot, establishing it first if needed
+	 * @throws IOException
+	 */
+	private static DispatchSSLClient getInstance(final int slot) throws IOException {
+		synchronized (poolLocks[slot]) {
+			if (pool[slot] == null || pool[slot].closed)
+				pool[slot] = connect();
+
+			return pool[slot];
+		}
+	}
+
+	/**
+	 * Close a connection that failed and take it out of the pool, unless another thread has already replaced it
+	 */
+	private static void discard(final int slot, final DispatchSSLClient c) {
+		synchronized (poolLocks[slot]) {
+			if (pool[slot] == c)
+				pool[slot] = null;
+		}
+
+		c.close();
+	}
+
+	private static void connectTo(final List<InetAddress> allAddresses, final int targetPort, final SSLSocketFactory factory, final AtomicReference<DispatchSSLClient> result, final Object callback,
+			final AtomicInteger connectionState) {
 		// connect timeout in config should be given in seconds
 		final int connectTimeout = ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.ConnectTimeout", 10) * 1000;
 
@@ -223,198 +509,205 @@ public class DispatchSSLClient {
 			}
 		}
 
-		synchronized (globalLock) {
-			if (ret != null) {
-				if (instance == null) {
-					lastCommand = System.currentTimeMillis();
+		if (ret != null) {
+			if (result.compareAndSet(null, ret)) {
+				lastCommand = System.currentTimeMillis();
 
-					instance = ret;
-					synchronized (callback) {
-						callback.notifyAll();
-					}
-				}
-				else {
-					ret.close();
+				synchronized (callback) {
+					callback.notifyAll();
 				}
 			}
+			else {
+				ret.close();
+			}
 		}
 	}
 
 	/**
-	 * @return instance
+	 * Establish a new connection to the central services
+	 *
+	 * @return the new connection, or <code>null</code> if none could be established
 	 * @throws IOException
 	 */
-	private static DispatchSSLClient getInstance() throws IOException {
-		if (instance == null) {
-			initializeSocketInfo();
-
-			// connect to the other end
-			logger.log(Level.INFO, "Connecting to JCentral on " + addr + ":" + port);
-			System.out.println("Connecting to JCentral on " + addr + ":" + port);
+	private static DispatchSSLClient connect() throws IOException {
+		final AtomicReference<DispatchSSLClient> result = new AtomicReference<>();
+		initializeSocketInfo();
 
-			Security.addProvider(new BouncyCastleProvider());
+		// connect to the other end
+		logger.log(Level.INFO, "Connecting to JCentral on " + addr + ":" + port);
+		System.out.println("Connecting to JCentral on " + addr + ":" + port);
 
-			final List<InetAddress> ipv4 = new ArrayList<>();
-			final List<InetAddress> ipv6 = new ArrayList<>();
+		Security.addProvider(new BouncyCastleProvider());
 
-			try {
-				final InetAddress[] resolvedAddresses = InetAddress.getAllByName(addr);
+		final List<InetAddress> ipv4 = new ArrayList<>();
+		final List<InetAddress> ipv6 = new ArrayList<>();
 
-				if (resolvedAddresses == null || resolvedAddresses.length == 0) {
-					logger.log(Level.SEVERE, "Empty address list for this hostname: " + addr);
-					System.err.println("Empty address list for this hostname: " + addr);
-					return null;
-				}
+		try {
+			final InetAddress[] resolvedAddresses = InetAddress.getAllByName(addr);
 
-				for (final InetAddress logAddress : resolvedAddresses) {
-					if (logAddress instanceof Inet6Address)
-						ipv6.add(logAddress);
-					else
-						ipv4.add(logAddress);
-				}
-			}
-			catch (final IOException ex) {
-				logger.log(Level.SEVERE, "Could not resolve IP address of central services (" + addr + ":" + port + ")", ex);
-				System.err.println("Could not resolve IP address of central services (" + addr + ":" + port + "): " + ex.getMessage());
+			if (resolvedAddresses == null || resolvedAddresses.length == 0) {
+				logger.log(Level.SEVERE, "Empty address list for this hostname: " + addr);
+				System.err.println("Empty address list for this hostname: " + addr);
 				return null;
 			}
 
-			Collections.shuffle(ipv6);
-			Collections.shuffle(ipv4);
+			for (final InetAddress logAddress : resolvedAddresses) {
+				if (logAddress instanceof Inet6Address)
+					ipv6.add(logAddress);
+				else
+					ipv4.add(logAddress);
+			}
+		}
+		catch (final IOException ex) {
+			logger.log(Level.SEVERE, "Could not resolve IP address of central services (" + addr + ":" + port + ")", ex);
+			System.err.println("Could not resolve IP address of central services (" + addr + ":" + port + "): " + ex.getMessage());
+			return null;
+		}
 
-			final List<InetAddress> mainProtocol;
-			final List<InetAddress> fallbackProtocol;
+		Collections.shuffle(ipv6);
+		Collections.shuffle(ipv4);
 
-			if (ConfigUtils.getConfig().getb("alien.api.DispatchSSLClient.PreferIPv6", true)) {
-				if (ipv6.size() > 0) {
-					mainProtocol = ipv6;
-					fallbackProtocol = ipv4;
-				}
-				else {
-					mainProtocol = ipv4;
-					fallbackProtocol = null;
-				}
+		final List<InetAddress> mainProtocol;
+		final List<InetAddress> fallbackProtocol;
+
+		if (ConfigUtils.getConfig().getb("alien.api.DispatchSSLClient.PreferIPv6", true)) {
+			if (ipv6.size() > 0) {
+				mainProtocol = ipv6;
+				fallbackProtocol = ipv4;
 			}
-			else if (ConfigUtils.getConfig().getb("alien.api.DispatchSSLClient.PreferIPv4", false)) {
-				if (ipv4.size() > 0) {
-					mainProtocol = ipv4;
-					fallbackProtocol = ipv6;
-				}
-				else {
-					mainProtocol = ipv6;
-					fallbackProtocol = null;
-				}
+			else {
+				mainProtocol = ipv4;
+				fallbackProtocol = null;
+			}
+		}
+		else if (ConfigUtils.getConfig().getb("alien.api.DispatchSSLClient.PreferIPv4", false)) {
+			if (ipv4.size() > 0) {
+				mainProtocol = ipv4;
+				fallbackProtocol = ipv6;
 			}
 			else {
-				mainProtocol = new ArrayList<>();
-
-				// inspired by rfc8305, interleave the protocols, giving a slight preference to IPv6
-				final Iterator<InetAddress> it6 = ipv6.iterator();
-				final Iterator<InetAddress> it4 = ipv4.iterator();
+				mainProtocol = ipv6;
+				fallbackProtocol = null;
+			}
+		}
+		else {
+			mainProtocol = new ArrayList<>();
 
-				while (it6.hasNext() || it4.hasNext()) {
-					if (it6.hasNext())
-						mainProtocol.add(it6.next());
+			// inspired by rfc8305, interleave the protocols, giving a slight preference to IPv6
+			final Iterator<InetAddress> it6 = ipv6.iterator();
+			final Iterator<InetAddress> it4 = ipv4.iterator();
 
-					if (it4.hasNext())
-						mainProtocol.add(it4.next());
-				}
+			while (it6.hasNext() || it4.hasNext()) {
+				if (it6.hasNext())
+					mainProtocol.add(it6.next());
 
-				fallbackProtocol = null;
+				if (it4.hasNext())
+					mainProtocol.add(it4.next());
 			}
 
-			if (logger.isLoggable(Level.FINER))
-				logger.log(Level.FINER, "Will try to connect to the central services in the following order: " + mainProtocol + " then " + fallbackProtocol);
+			fallbackProtocol = null;
+		}
 
-			final SSLSocketFactory f;
-			try {
-				// get factory
-				final KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509", "SunJSSE");
+		if (logger.isLoggable(Level.FINER))
+			logger.log(Level.FINER, "Will try to connect to the central services in the following order: " + mainProtocol + " then " + fallbackProtocol);
 
-				logger.log(Level.INFO, "Connecting with client cert: " + ((java.security.cert.X509Certificate) JAKeyStore.getKeyStore().getCertificateChain("User.cert")[0]).getSubjectDN());
-				// initialize factory, with clientCert(incl. priv+pub)
-				kmf.init(JAKeyStore.getKeyStore(), JAKeyStore.pass);
+		final SSLSocketFactory f;
+		try {
+			// get factory
+			final KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509", "SunJSSE");
 
-				java.lang.System.setProperty("jdk.tls.client.protocols", "TLSv1.2,TLSv1.3");
-				final SSLContext ssc = SSLContext.getInstance("TLS");
+			logger.log(Level.INFO, "Connecting with client cert: " + ((java.security.cert.X509Certificate) JAKeyStore.getKeyStore().getCertificateChain("User.cert")[0]).getSubjectDN());
+			// initialize factory, with clientCert(incl. priv+pub)
+			kmf.init(JAKeyStore.getKeyStore(), JAKeyStore.pass);
 
-				// initialize SSL with certificate and the trusted CA and pub certs
-				ssc.init(kmf.getKeyManagers(), JAKeyStore.trusts, new SecureRandom());
+			java.lang.System.setProperty("jdk.tls.client.protocols", "TLSv1.2,TLSv1.3");
+			final SSLContext ssc = SSLContext.getInstance("TLS");
 
-				f = ssc.getSocketFactory();
-			}
-			catch (final Throwable t) {
-				logger.log(Level.SEVERE, "Could not load the client certificate", t);
-				System.err.println("Could not load the client certificate: " + t.getMessage());
-				return null;
+			// initialize SSL with certificate and the trusted CA and pub certs
+			ssc.init(kmf.getKeyManagers(), JAKeyStore.trusts, new SecureRandom());
+
+			f = ssc.getSocketFactory();
+		}
+		catch (final Throwable t) {
+			logger.log(Level.SEVERE, "Could not load the client certificate", t);
+			System.err.println("Could not load the client certificate: " + t.getMessage());
+			return null;
+		}
+
+		final Object callbackObject = new Object();
+
+		final AtomicInteger connectionState = new AtomicInteger(0);
+
+		final Thread tMain = new Thread(() -> connectTo(mainProtocol, port, f, result, callbackObject, connectionState));
+		tMain.start();
+
+		try {
+			synchronized (callbackObject) {
+				if (result.get() == null)
+					callbackObject.wait(ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.happyEyeballsTimeout", 1000));
 			}
+		}
+		catch (final InterruptedException ie) {
+			throw new IOException("Connection was interrupted", ie);
+		}
+
+		// was either notified or timed out, let's see what is the last state
+		if (result.get() != null)
+			return result.get();
 
-			final Object callbackObject = new Object();
+		final Thread tFallback;
 
-			final AtomicInteger connectionState = new AtomicInteger(0);
+		// no connection could be established on the main protocol so far, let's try the fallback protocol, if available
+		if (fallbackProtocol != null && fallbackProtocol.size() > 0) {
+			logger.log(Level.FINE, "Could not establish a connection on the preferred protocol so far, will add the fallback solution to the mix");
 
-			final Thread tMain = new Thread(() -> connectTo(mainProtocol, port, f, callbackObject, connectionState));
-			tMain.start();
+			tFallback = new Thread(() -> connectTo(fallbackProtocol, port, f, result, callbackObject, connectionState));
+			tFallback.start();
+		}
+		else
+			tFallback = null;
 
+		// wait up to a minute for a connection to be established
+		for (int i = 0; i < ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.connectionTimeoutSteps", 60); i++) {
 			try {
 				synchronized (callbackObject) {
-					if (instance == null)
-						callbackObject.wait(ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.happyEyeballsTimeout", 1000));
+					if (result.get() == null)
+						callbackObject.wait(ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.connectionTimeoutResolution", 1000));
 				}
 			}
 			catch (final InterruptedException ie) {
 				throw new IOException("Connection was interrupted", ie);
 			}
 
-			// was either notified or timed out, let's see what is the last state
-			if (instance != null)
-				return instance;
-
-			final Thread tFallback;
+			if (result.get() != null) {
+				logger.log(Level.FINE, "Connection worked at step " + i);
 
-			// no connection could be established on the main protocol so far, let's try the fallback protocol, if available
-			if (fallbackProtocol != null && fallbackProtocol.size() > 0) {
-				logger.log(Level.FINE, "Could not establish a connection on the preferred protocol so far, will add the fallback solution to the mix");
-
-				tFallback = new Thread(() -> connectTo(fallbackProtocol, port, f, callbackObject, connectionState));
-				tFallback.start();
-			}
-			else
-				tFallback = null;
-
-			// wait up to a minute for a connection to be established
-			for (int i = 0; i < ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.connectionTimeoutSteps", 60); i++) {
-				try {
-					synchronized (callbackObject) {
-						if (instance == null)
-							callbackObject.wait(ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.connectionTimeoutResolution", 1000));
-					}
-				}
-				catch (final InterruptedException ie) {
-					throw new IOException("Connection was interrupted", ie);
-				}
-
-				if (instance != null) {
-					logger.log(Level.FINE, "Connection worked at step " + i);
-
-					break;
-				}
+				break;
 			}
+		}
 
-			connectionState.set(2); // tell the threads to exit, if they haven't done so already
+		connectionState.set(2); // tell the threads to exit, if they haven't done so already
 
-			if (tMain.isAlive())
-				tMain.interrupt();
+		if (tMain.isAlive())
+			tMain.interrupt();
 
-			if (tFallback != null && tFallback.isAlive())
-				tFallback.interrupt();
-		}
+		if (tFallback != null && tFallback.isAlive())
+			tFallback.interrupt();
 
-		return instance;
+		return result.get();
 	}
 
 	@SuppressWarnings("unused")
 	private void close() {
+		closed = true;
+
+		if (!pendingReplies.isEmpty()) {
+			final IOException ex = new IOException("Connection to " + connection.getInetAddress() + " was closed");
+
+			for (final CompletableFuture<Object> waiting : pendingReplies.values())
+				waiting.completeExceptionally(ex);
+		}
+
 		if (ois != null)
 			try {
 				ois.close();
@@ -443,7 +736,12 @@ public class DispatchSSLClient {
 	/**
 	 * Total amount of time (in milliseconds) spent in writing objects to the socket.
 	 */
-	private static long lSerialization = 0;
+	private static final AtomicLong lSerialization = new AtomicLong(0);
+
+	/**
+	 * Same as above, split by the codec that was used to encode each request
+	 */
+	private static final AtomicLongArray lSerializationPerCodec = new AtomicLongArray(WireCodec.values().length);
 
 	private static synchronized void initializeSocketInfo() {
 		addr = ConfigUtils.getConfig().gets(serviceName).trim();
@@ -475,24 +773,21 @@ public class DispatchSSLClient {
 	 * @return the reply, or <code>null</code> in case of connectivity problems
 	 * @throws ServerException
 	 */
-	public static synchronized <T extends Request> T dispatchRequest(final T r) throws ServerException {
+	public static <T extends Request> T dispatchRequest(final T r) throws ServerException {
+		final int slot = pickSlot();
+
 		try {
-			return dispatchARequest(r);
+			return dispatchARequest(r, slot);
 		}
 		catch (final IOException e) {
 			if (e instanceof StreamCorruptedException) {
 				logger.log(Level.SEVERE, "First attempt to deserialize the response failed", e);
 			}
 
-			// Now let's try, if we can reconnect
-			if (instance != null) {
-				instance.close();
-				instance = null;
-			}
-
+			// Now let's try, if we can reconnect (the broken connection was already taken out of the pool)
 			for (int i = 0; i < ConfigUtils.getConfig().geti("alien.api.DispatchSSLClient.connectAttempts", 5); i++) {
 				try {
-					return dispatchARequest(r);
+					return dispatchARequest(r, slot);
 				}
 				catch (final IOException e1) {
 					// This time we give up
@@ -523,28 +818,28 @@ public class DispatchSSLClient {
 	 * @throws ServerException
 	 *             if the server didn't like the request content
 	 */
-	public static synchronized <T extends Request> T dispatchARequest(final T r) throws IOException, ServerException {
+	public static <T extends Request> T dispatchARequest(final T r) throws IOException, ServerException {
+		return dispatchARequest(r, pickSlot());
+	}
+
+	private static <T extends Request> T dispatchARequest(final T r, final int slot) throws IOException, ServerException {
 		lastCommand = System.currentTimeMillis();
 
-		final DispatchSSLClient c = getInstance();
+		final DispatchSSLClient c = getInstance(slot);
 
 		if (c == null)
 			throw new IOException("Connection is null");
 
-		final long lStart = System.currentTimeMillis();
-
-		c.oos.writeUnshared(r);
+		final Object o;
 
-		c.oos.flush();
-
-		lSerialization += System.currentTimeMillis() - lStart;
-
-		Object o;
 		try {
-			o = c.ois.readObject();
+			o = c.exchange(r);
 		}
-		catch (final ClassNotFoundException e) {
-			throw new IOException(e);
+		catch (final IOException e) {
+			if (!(e instanceof ReplyTimeoutException))
+				discard(slot, c);
+
+			throw e;
 		}
 
 		if (o == null) {
@@ -576,7 +871,15 @@ public class DispatchSSLClient {
 	 * @return total time in milliseconds spent in serializing objects
 	 */
 	public static long getSerializationTime() {
-		return lSerialization;
+		return lSerialization.get();
+	}
+
+	/**
+	 * @param codec
+	 * @return total time in milliseconds spent in serializing objects with the given codec
+	 */
+	public static long getSerializationTime(final WireCodec codec) {
+		return lSerializationPerCodec.get(codec.ordinal());
 	}
 
 	private static void printSocketInfo(final SSLSocket s, final Level level) {
@@ -22,6 +22,9 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -50,6 +53,7 @@ import alien.user.JAKeyStore;
 import alien.user.UserFactory;
 import lazyj.Format;
 import utils.CachedThreadPool;
+import utils.VirtualThreads;
 
 /**
  * @author costing
@@ -83,6 +87,19 @@ public class DispatchSSLServer extends Thread {
 
 	private OutputStream os;
 
+	private final RequestCodec codec = new RequestCodec();
+
+	/**
+	 * Set when the client has negotiated to have several requests executing at the same time on this connection
+	 */
+	private boolean multiplexed = false;
+
+	private final Semaphore inFlight = new Semaphore(ConfigUtils.getConfig().geti("alien.api.DispatchSSLServer.maxInFlightPerConnection", 32));
+
+	private double lLasted = 0;
+
+	private int requestCount = 0;
+
 	private long lastActivity = System.currentTimeMillis();
 
 	private X509Certificate partnerCerts[] = null;
@@ -96,9 +113,22 @@ public class DispatchSSLServer extends Thread {
 
 	private static ConcurrentHashMap<DispatchSSLServer, DispatchSSLServer> sessionMap = new ConcurrentHashMap<>();
 
-	private static final CachedThreadPool acceptorPool = new CachedThreadPool(ConfigUtils.getConfig().geti("alien.api.DispatchSSLServer.maxAcceptorThreads", 16), 10, TimeUnit.SECONDS,
+	/**
+	 * Run the connections and their requests on virtual threads instead of the platform thread pools below
+	 */
+	static final boolean useVirtualThreads = VirtualThreads.isEnabled("alien.api.DispatchSSLServer.virtualThreads");
+
+	private static final ExecutorService connectionPool = useVirtualThreads ? VirtualThreads.newPerTaskExecutor("DispatchSSLServer.connection") : null;
+
+	private static final ExecutorService acceptorPool = useVirtualThreads ? VirtualThreads.newPerTaskExecutor("SSLAcceptor") : new CachedThreadPool(ConfigUtils.getConfig().geti("alien.api.DispatchSSLServer.maxAcceptorThreads", 16), 10, TimeUnit.SECONDS,
 			(r) -> new Thread(r, "SSLAcceptor"));
 
+	/**
+	 * Executes the requests of multiplexed connections
+	 */
+	private static final ExecutorService requestPool = useVirtualThreads ? VirtualThreads.newPerTaskExecutor("DispatchSSLServer.request") : new CachedThreadPool(ConfigUtils.getConfig().geti("alien.api.DispatchSSLServer.maxRequestThreads", 256), 1, TimeUnit.MINUTES,
+			(r) -> new Thread(r, "DispatchSSLServer.request"));
+
 	private static CacheMonitor ipv6Connections = null;
 
 	private static InetAddress actualServerAddress = null;
@@ -127,6 +157,94 @@ public class DispatchSSLServer extends Thread {
 		setDaemon(true);
 	}
 
+	/**
+	 * Execute one request and write the reply back. On multiplexed connections this runs in parallel for several requests of the same client, replies being sent in completion order and prefixed by
+	 * the sequence number of the request they answer.
+	 *
+	 * @param request
+	 * @param sequence
+	 *            sequence number of the request on a multiplexed connection, ignored otherwise
+	 * @param remoteIdentity
+	 * @throws IOException
+	 *             if the reply could not be sent back
+	 */
+	private void processRequest(final Request request, final long sequence, final AliEnPrincipal remoteIdentity) throws IOException {
+		Request r = request;
+
+		r.setPartnerIdentity(remoteIdentity);
+
+		r.setPartnerCertificate(partnerCerts);
+
+		final double requestProcessingDuration;
+
+		try (RequestEvent event = new RequestEvent(getAccessLog())) {
+			event.clientAddress = remoteIdentity.getRemoteEndpoint();
+			event.clientPort = remoteIdentity.getRemotePort();
+			event.command = r.getClass().getSimpleName();
+			event.clientID = r.getVMUUID();
+			event.requestId = r.getRequestID();
+			event.arguments = r.getArguments();
+
+			try {
+				r.setException(null);
+
+				r = Dispatcher.execute(r, forwardRequest);
+
+				event.exception = r.getException();
+
+				if (event.exception == null) {
+					event.exitCode = 0;
+				}
+				else {
+					event.exitCode = ErrNo.EBADE.getErrorCode();
+					event.errorMessage = "Request doesn't pass muster";
+				}
+			}
+			catch (final Exception e) {
+				logger.log(Level.WARNING, "Returning an exception to the client", e);
+
+				r.setException(new ServerException(e.getMessage(), e));
+
+				event.exception = e;
+				event.exitCode = ErrNo.EBADE.getErrorCode();
+				event.errorMessage = "Exception executing request";
+			}
+
+			event.identity = r.getEffectiveRequester();
+
+			requestProcessingDuration = event.timing.getMillis();
+		}
+
+		final double serializationTime;
+
+		final WireCodec usedCodec;
+
+		synchronized (oos) {
+			try (Timing timing = new Timing()) {
+				// System.err.println("When returning the object, ex is "+r.getException());
+
+				usedCodec = multiplexed ? codec.write(oos, sequence, r) : codec.write(oos, r);
+
+				oos.flush();
+
+				serializationTime = timing.getMillis();
+			}
+
+			lLasted += requestProcessingDuration;
+			lSerialization += serializationTime;
+			requestCount++;
+		}
+
+		if (logger.isLoggable(Level.FINE))
+			logger.log(Level.FINE, "Got request from " + r.getRequesterIdentity() + " : " + r.getClass().getCanonicalName());
+
+		if (monitor != null) {
+			monitor.addMeasurement("request_processing", requestProcessingDuration);
+			monitor.addMeasurement("serialization", serializationTime);
+			monitor.addMeasurement("serialization_" + usedCodec.name().toLowerCase(), serializationTime);
+		}
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -172,93 +290,78 @@ public class DispatchSSLServer extends Thread {
 				// ignore any exception in writing out the event
 			}
 
-			double lLasted = 0;
-
-			int requestCount = 0;
-
 			activeSessions.incrementAndGet();
 
 			try {
 				while (true) {
 					lastActivity = System.currentTimeMillis();
 
-					final Object o = ois.readObject();
+					// multiplexed requests are prefixed by the sequence number to send back with the reply
+					final long sequence = multiplexed ? codec.readSequence(ois) : 0;
+
+					final Object o = codec.read(ois);
 
 					lastActivity = System.currentTimeMillis();
 
-					if (o != null)
-						if (o instanceof Request) {
-							Request r = (Request) o;
+					if (o instanceof CodecNegotiation) {
+						final CodecNegotiation negotiation = (CodecNegotiation) o;
 
-							r.setPartnerIdentity(remoteIdentity);
+						negotiation.run();
 
-							r.setPartnerCertificate(partnerCerts);
+						synchronized (oos) {
+							codec.write(oos, negotiation);
+							oos.flush();
+						}
 
-							final double requestProcessingDuration;
+						codec.setCodec(negotiation.getAcceptedCodec());
 
-							try (RequestEvent event = new RequestEvent(getAccessLog())) {
-								event.clientAddress = remoteIdentity.getRemoteEndpoint();
-								event.clientPort = remoteIdentity.getRemotePort();
-								event.command = r.getClass().getSimpleName();
-								event.clientID = r.getVMUUID();
-								event.requestId = r.getRequestID();
-								event.arguments = r.getArguments();
+						multiplexed = negotiation.isMultiplexingAccepted();
 
-								try {
-									r.setException(null);
+						if (monitor != null) {
+							monitor.incrementCounter("codec_" + codec.getCodec().name().toLowerCase());
 
-									r = Dispatcher.execute(r, forwardRequest);
+							if (multiplexed)
+								monitor.incrementCounter("multiplexed_connections");
+						}
 
-									event.exception = r.getException();
+						continue;
+					}
 
-									if (event.exception == null) {
-										event.exitCode = 0;
-									}
-									else {
-										event.exitCode = ErrNo.EBADE.getErrorCode();
-										event.errorMessage = "Request doesn't pass muster";
-									}
-								}
-								catch (final Exception e) {
-									logger.log(Level.WARNING, "Returning an exception to the client", e);
+					if (o != null)
+						if (o instanceof Request) {
+							final Request r = (Request) o;
 
-									r.setException(new ServerException(e.getMessage(), e));
+							if (multiplexed) {
+								// bound the number of requests that a single client can have executing at the same time
+								inFlight.acquire();
 
-									event.exception = e;
-									event.exitCode = ErrNo.EBADE.getErrorCode();
-									event.errorMessage = "Exception executing request";
+								try {
+									requestPool.submit(() -> {
+										try {
+											processRequest(r, sequence, remoteIdentity);
+										}
+										catch (final IOException ioe) {
+											logger.log(Level.WARNING, "Cannot send back the reply to " + getName() + ", closing the connection", ioe);
+
+											try {
+												connection.close();
+											}
+											catch (@SuppressWarnings("unused") final IOException ioe2) {
+												// ignore
+											}
+										}
+										finally {
+											inFlight.release();
+										}
+									});
+								}
+								catch (final Throwable t) {
+									inFlight.release();
+									throw t;
 								}
-
-								event.identity = r.getEffectiveRequester();
-
-								requestProcessingDuration = event.timing.getMillis();
-							}
-
-							lLasted += requestProcessingDuration;
-
-							final double serializationTime;
-
-							try (Timing timing = new Timing()) {
-								// System.err.println("When returning the object, ex is "+r.getException());
-
-								oos.writeObject(r);
-
-								oos.flush();
-
-								serializationTime = timing.getMillis();
-							}
-
-							lSerialization += serializationTime;
-
-							if (logger.isLoggable(Level.FINE))
-								logger.log(Level.FINE, "Got request from " + r.getRequesterIdentity() + " : " + r.getClass().getCanonicalName());
-
-							if (monitor != null) {
-								monitor.addMeasurement("request_processing", requestProcessingDuration);
-								monitor.addMeasurement("serialization", serializationTime);
 							}
-
-							requestCount++;
+							else
+								processRequest(r, 0, remoteIdentity);
 						}
 						else
 							logger.log(Level.WARNING, "I don't know what to do with an object of type " + o.getClass().getCanonicalName());
@@ -536,11 +639,36 @@ public class DispatchSSLServer extends Thread {
 				names.add("sessionMapSize");
 				values.add(Double.valueOf(sessionMap.size()));
 
-				names.add("acceptorPoolSize");
-				values.add(Double.valueOf(acceptorPool.getPoolSize()));
+				if (useVirtualThreads) {
+					names.add("virtualThreadsActive");
+					values.add(Double.valueOf(VirtualThreads.getActiveCount()));
+
+					names.add("virtualThreadsStarted");
+					values.add(Double.valueOf(VirtualThreads.getStartedCount()));
+
+					names.add("carrierParallelism");
+					values.add(Double.valueOf(VirtualThreads.getCarrierParallelism()));
+				}
+				else {
+					final ThreadPoolExecutor acceptors = (ThreadPoolExecutor) acceptorPool;
+
+					names.add("acceptorPoolSize");
+					values.add(Double.valueOf(acceptors.getPoolSize()));
 
-				names.add("acceptorPoolQueueLength");
-				values.add(Double.valueOf(acceptorPool.getQueue().size()));
+					names.add("acceptorPoolQueueLength");
+					values.add(Double.valueOf(acceptors.getQueue().size()));
+
+					final ThreadPoolExecutor requests = (ThreadPoolExecutor) requestPool;
+
+					names.add("requestPoolSize");
+					values.add(Double.valueOf(requests.getPoolSize()));
+
+					names.add("requestPoolActiveCount");
+					values.add(Double.valueOf(requests.getActiveCount()));
+
+					names.add("requestPoolQueueLength");
+					values.add(Double.valueOf(requests.getQueue().size()));
+				}
 			});
 
 			ipv6Connections = monitor.getCacheMonitor("ipv6_connections");
@@ -606,7 +734,10 @@ public class DispatchSSLServer extends Thread {
 		if (needClientAuth)
 			serv.partnerCerts = peerCertChain;
 
-		serv.start();
+		if (connectionPool != null)
+			connectionPool.submit(serv);
+		else
+			serv.start();
 
 		sessionMap.put(serv, serv);
 
@@ -24,7 +24,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -53,6 +55,7 @@ import alien.user.AliEnPrincipal;
 import alien.user.JAKeyStore;
 import alien.user.UserFactory;
 import utils.CachedThreadPool;
+import utils.VirtualThreads;
 
 /**
  * @author costing
@@ -85,7 +88,23 @@ public class DispatchSSLServerNIO implements Runnable {
 
 	private static final int sslExecutorMaxSize = ConfigUtils.getConfig().geti(DispatchSSLServerNIO.class.getCanonicalName() + ".sslExecutorMaxSize", 16);
 
-	private static ThreadPoolExecutor executor = new CachedThreadPool(executorMaxSize, 1, TimeUnit.MINUTES, (r) -> new Thread(r, "DispatchSSLServerNIO - " + threadNo.incrementAndGet()));
+	/**
+	 * Handle connections and run requests on virtual threads, instead of the bounded {@link #executor} pool
+	 */
+	private static final boolean useVirtualThreads = VirtualThreads.isEnabled("alien.api.DispatchSSLServer.virtualThreads");
+
+	private static ExecutorService executor = useVirtualThreads ? VirtualThreads.newPerTaskExecutor("DispatchSSLServerNIO - ")
+			: new CachedThreadPool(executorMaxSize, 1, TimeUnit.MINUTES, (r) -> new Thread(r, "DispatchSSLServerNIO - " + threadNo.incrementAndGet()));
+
+	private static final AtomicInteger requestThreadNo = new AtomicInteger();
+
+	/**
+	 * Requests of multiplexed connections run here and not on {@link #executor}, where the per-connection readers are. A reader waiting for a free in-flight slot of its connection must never be the
+	 * one that prevents the requests holding those slots from getting a thread.
+	 */
+	private static ExecutorService requestExecutor = useVirtualThreads ? VirtualThreads.newPerTaskExecutor("DispatchSSLServerNIO request - ")
+			: new CachedThreadPool(ConfigUtils.getConfig().geti(DispatchSSLServerNIO.class.getCanonicalName() + ".requestExecutorMaxSize", executorMaxSize), 1, TimeUnit.MINUTES,
+					(r) -> new Thread(r, "DispatchSSLServerNIO request - " + requestThreadNo.incrementAndGet()));
 
 	private static ThreadPoolExecutor sslExecutor = new CachedThreadPool(sslExecutorMaxSize, 1, TimeUnit.MINUTES, (r) -> new Thread(r, "SSLNegociator- " + sslThreadNo.incrementAndGet()));
 
@@ -133,6 +152,15 @@ public class DispatchSSLServerNIO implements Runnable {
 
 	private AliEnPrincipal remoteIdentity = null;
 
+	private final RequestCodec codec = new RequestCodec();
+
+	/**
+	 * Set when the client has negotiated to have several requests executing at the same time on this connection
+	 */
+	private volatile boolean multiplexed = false;
+
+	private final Semaphore inFlight = new Semaphore(ConfigUtils.getConfig().geti("alien.api.DispatchSSLServer.maxInFlightPerConnection", 32));
+
 	private PipedOutputStream pos = null;
 	private PipedInputStream pis = null;
 
@@ -364,10 +392,31 @@ public class DispatchSSLServerNIO implements Runnable {
 		close(ois);
 	}
 
-	private double executeOneRequest(final Object o) throws Exception {
+	private double executeOneRequest(final Object o, final long sequence) throws Exception {
 		double ret = -1;
 
-		if (o instanceof Request) {
+		if (o instanceof CodecNegotiation) {
+			final CodecNegotiation negotiation = (CodecNegotiation) o;
+
+			negotiation.run();
+
+			synchronized (oos) {
+				codec.write(oos, negotiation);
+				oos.flush();
+			}
+
+			codec.setCodec(negotiation.getAcceptedCodec());
+
+			multiplexed = negotiation.isMultiplexingAccepted();
+
+			if (monitor != null) {
+				monitor.incrementCounter("codec_" + codec.getCodec().name().toLowerCase());
+
+				if (multiplexed)
+					monitor.incrementCounter("multiplexed_connections");
+			}
+		}
+		else if (o instanceof Request) {
 			Request r = (Request) o;
 
 			r.setPartnerIdentity(remoteIdentity);
@@ -418,17 +467,22 @@ public class DispatchSSLServerNIO implements Runnable {
 
 			final double serializationTime;
 
-			try (Timing timing = new Timing()) {
-				// System.err.println("When returning the object, ex is "+r.getException());
+			final WireCodec usedCodec;
 
-				oos.writeUnshared(r);
+			synchronized (oos) {
+				try (Timing timing = new Timing()) {
+					// System.err.println("When returning the object, ex is "+r.getException());
 
-				oos.flush();
+					usedCodec = multiplexed ? codec.write(oos, sequence, r) : codec.write(oos, r);
+
+					oos.flush();
 
-				serializationTime = timing.getMillis();
+					serializationTime = timing.getMillis();
+				}
 			}
 
 			lSerialization += serializationTime;
+			lSerializationPerCodec[usedCodec.ordinal()] += serializationTime;
 
 			if (logger.isLoggable(Level.FINE))
 				logger.log(Level.FINE, "Got request from " + r.getRequesterIdentity() + " : " + r.getClass().getCanonicalName());
@@ -436,6 +490,7 @@ public class DispatchSSLServerNIO implements Runnable {
 			if (monitor != null) {
 				monitor.addMeasurement("request_processing", requestProcessingDuration);
 				monitor.addMeasurement("serialization", serializationTime);
+				monitor.addMeasurement("serialization_" + usedCodec.name().toLowerCase(), serializationTime);
 			}
 		}
 		else
@@ -458,11 +513,40 @@ public class DispatchSSLServerNIO implements Runnable {
 
 			try {
 				while (pis.available() > 0) {
-					final Object o = ois.readObject();
+					// multiplexed requests are prefixed by the sequence number to send back with the reply
+					final long sequence = multiplexed ? codec.readSequence(ois) : 0;
+
+					final Object o = codec.read(ois);
 
 					if (o != null) {
+						if (multiplexed) {
+							// bound the number of requests that a single client can have executing at the same time
+							inFlight.acquire();
+
+							try {
+								requestExecutor.submit(() -> {
+									try {
+										executeOneRequest(o, sequence);
+									}
+									catch (final Exception e) {
+										logger.log(Level.WARNING, "Exception running a command", e);
+										cleanup();
+									}
+									finally {
+										inFlight.release();
+									}
+								});
+							}
+							catch (final Throwable t) {
+								inFlight.release();
+								throw t;
+							}
+
+							continue;
+						}
+
 						try {
-							final double duration = executeOneRequest(o);
+							final double duration = executeOneRequest(o, 0);
 
 							if (duration >= 0) {
 								// TODO: handle a successfully executed object
@@ -481,6 +565,9 @@ public class DispatchSSLServerNIO implements Runnable {
 			catch (IOException e) {
 				logger.log(Level.SEVERE, "IOException running a request", e);
 			}
+			catch (InterruptedException e) {
+				logger.log(Level.WARNING, "Interrupted while waiting for a free slot to run a request", e);
+			}
 		}
 		finally {
 			isActive.set(false);
@@ -801,11 +888,29 @@ public class DispatchSSLServerNIO implements Runnable {
 				names.add("activeSessions");
 				values.add(Double.valueOf(sessionMap.size()));
 
-				names.add("executorPoolSize");
-				values.add(Double.valueOf(executor.getPoolSize()));
+				if (executor instanceof ThreadPoolExecutor) {
+					names.add("executorPoolSize");
+					values.add(Double.valueOf(((ThreadPoolExecutor) executor).getPoolSize()));
 
-				names.add("executorActiveCount");
-				values.add(Double.valueOf(executor.getActiveCount()));
+					names.add("executorActiveCount");
+					values.add(Double.valueOf(((ThreadPoolExecutor) executor).getActiveCount()));
+
+					names.add("requestExecutorPoolSize");
+					values.add(Double.valueOf(((ThreadPoolExecutor) requestExecutor).getPoolSize()));
+
+					names.add("requestExecutorActiveCount");
+					values.add(Double.valueOf(((ThreadPoolExecutor) requestExecutor).getActiveCount()));
+				}
+				else {
+					names.add("virtualThreadsActive");
+					values.add(Double.valueOf(VirtualThreads.getActiveCount()));
+
+					names.add("virtualThreadsStarted");
+					values.add(Double.valueOf(VirtualThreads.getStartedCount()));
+
+					names.add("carrierParallelism");
+					values.add(Double.valueOf(VirtualThreads.getCarrierParallelism()));
+				}
 
 				names.add("sslExecutorPoolSize");
 				values.add(Double.valueOf(sslExecutor.getPoolSize()));
@@ -826,6 +931,11 @@ public class DispatchSSLServerNIO implements Runnable {
 	 */
 	private static double lSerialization = 0;
 
+	/**
+	 * Same as above, split by the codec that was used to encode each reply
+	 */
+	private static final double[] lSerializationPerCodec = new double[WireCodec.values().length];
+
 	/**
 	 * @return total time in milliseconds spent in serializing objects
 	 */
@@ -833,6 +943,14 @@ public class DispatchSSLServerNIO implements Runnable {
 		return lSerialization;
 	}
 
+	/**
+	 * @param codec
+	 * @return total time in milliseconds spent in serializing objects with the given codec
+	 */
+	public static double getSerializationTime(final WireCodec codec) {
+		return lSerializationPerCodec[codec.ordinal()];
+	}
+
 	/**
 	 * Print client info on SSL partner
 	 */
@@ -1,6 +1,6 @@
 package alien.api;
 
-import java.lang.ref.WeakReference;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -8,9 +8,11 @@ import alien.api.taskQueue.GetMatchJob;
 import alien.api.taskQueue.InspectPinning;
 import alien.api.taskQueue.JobKilledException;
 import alien.api.taskQueue.PutJobLog;
+import alien.api.taskQueue.PutJobLogBulk;
 import alien.api.taskQueue.RecordPreemption;
 import alien.api.taskQueue.SetJobStatus;
 import alien.api.token.GetTokenCertificate;
+import alien.catalogue.CatalogueCache;
 import alien.config.ConfigUtils;
 import alien.monitoring.Monitor;
 import alien.monitoring.MonitorFactory;
@@ -18,6 +20,7 @@ import alien.monitoring.Timing;
 import alien.taskQueue.TaskQueueUtils;
 import alien.user.AliEnPrincipal;
 import lazyj.cache.ExpirationCache;
+import utils.VirtualThreads;
 
 /**
  * @author costing
@@ -27,19 +30,52 @@ public class Dispatcher {
 
 	private static final boolean useParallelConnections = false;
 
-	private static final ExpirationCache<String, WeakReference<Request>> cache = new ExpirationCache<>(10240);
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(Dispatcher.class.getCanonicalName());
 
-	private static final Monitor monitor = MonitorFactory.getMonitor(Dispatcher.class.getCanonicalName());
+	private static final ResultCache cache = new ResultCache(ConfigUtils.getConfig().getl("alien.api.Dispatcher.cacheMaxBytes", 64 * 1024 * 1024),
+			ConfigUtils.getConfig().geti("alien.api.Dispatcher.cacheMaxEntries", 10240), ConfigUtils.getConfig().getl("alien.api.Dispatcher.coalesceWait", 60 * 1000));
 
 	/**
 	 * Logger
 	 */
 	static final Logger logger = ConfigUtils.getLogger(Dispatcher.class.getCanonicalName());
 
+	/**
+	 * Upper limit of requests executed at the same time on a central service, since each of them can hold a database connection. With virtual threads the number of connection handlers is no longer
+	 * bounded by a thread pool, so the limit is applied here instead. On platform threads the request pools already bound it and there is no limit by default. Zero or negative means no limit.
+	 */
+	private static final int maxConcurrentExecutions = ConfigUtils.getConfig().geti("alien.api.Dispatcher.maxConcurrentExecutions",
+			VirtualThreads.isEnabled("alien.api.DispatchSSLServer.virtualThreads") ? 256 : 0);
+
+	private static final Semaphore executionSlots = maxConcurrentExecutions > 0 ? new Semaphore(maxConcurrentExecutions, true) : null;
+
+	/**
+	 * Set while the current thread holds one of the {@link #executionSlots}. Requests executed from within another request (for example the job matching setting the job status) run under the slot of
+	 * the outer request, otherwise a burst of outer requests could take all the slots and then wait forever for their inner ones.
+	 */
+	private static final ThreadLocal<Boolean> holdsExecutionSlot = new ThreadLocal<>();
+
 	static {
 		monitor.addMonitoring("object_cache_status", (names, values) -> {
 			names.add("object_cache_size");
 			values.add(Double.valueOf(cache.size()));
+
+			names.add("object_cache_bytes");
+			values.add(Double.valueOf(cache.weight()));
+
+			names.add("object_cache_in_flight");
+			values.add(Double.valueOf(cache.inFlight()));
+
+			if (executionSlots != null) {
+				names.add("execution_slots_available");
+				values.add(Double.valueOf(executionSlots.availablePermits()));
+
+				names.add("execution_slots_waiting");
+				values.add(Double.valueOf(executionSlots.getQueueLength()));
+			}
 		});
 
 		// make sure the Version class is initialized
@@ -66,31 +102,66 @@ public class Dispatcher {
 	 * @throws ServerException
 	 *             exception thrown by the processing
 	 */
-	@SuppressWarnings("unchecked")
 	public static <T extends Request> T execute(final T r, final boolean forceRemote) throws ServerException {
-		final boolean isCacheable = r instanceof Cacheable;
+		if (r instanceof Cacheable && !r.isBypassCache()) {
+			final String key = r.getClass().getCanonicalName() + "#" + ((Cacheable) r).getKey();
 
-		final String key;
+			// cache hits and the callers waiting for an identical request don't need a slot, and the one executing it must not wait for a slot while the others wait for it
+			final boolean slot = !cache.isServedWithoutLoading(key) && acquireExecutionSlot(forceRemote);
 
-		if (isCacheable)
-			key = r.getClass().getCanonicalName() + "#" + ((Cacheable) r).getKey();
-		else
-			key = null;
+			try {
+				return cache.get(key, () -> executeNow(r, forceRemote));
+			}
+			finally {
+				if (slot)
+					releaseExecutionSlot();
+			}
+		}
 
-		if (isCacheable) {
-			final WeakReference<Request> cachedObject = cache.get(key);
+		monitor.incrementCounter("non_cacheable");
 
-			final Object cachedValue;
+		final boolean slot = acquireExecutionSlot(forceRemote);
 
-			if (cachedObject != null && (cachedValue = cachedObject.get()) != null) {
-				monitor.incrementCacheHits("object_cache");
-				return (T) cachedValue;
-			}
-			monitor.incrementCacheMisses("object_cache");
+		try {
+			return executeNow(r, forceRemote);
+		}
+		finally {
+			if (slot)
+				releaseExecutionSlot();
 		}
-		else
-			monitor.incrementCounter("non_cacheable");
+	}
 
+	/**
+	 * Take one of the {@link #executionSlots}, if the request is to be executed locally and the current thread doesn't already hold one
+	 *
+	 * @param forceRemote
+	 * @return <code>true</code> if a slot was taken and has to be given back with {@link #releaseExecutionSlot()}
+	 * @throws ServerException
+	 *             if interrupted while waiting
+	 */
+	private static boolean acquireExecutionSlot(final boolean forceRemote) throws ServerException {
+		if (executionSlots == null || forceRemote || !ConfigUtils.isCentralService() || holdsExecutionSlot.get() != null)
+			return false;
+
+		try {
+			executionSlots.acquire();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerException("Interrupted while waiting for an execution slot", e);
+		}
+
+		holdsExecutionSlot.set(Boolean.TRUE);
+
+		return true;
+	}
+
+	private static void releaseExecutionSlot() {
+		holdsExecutionSlot.remove();
+		executionSlots.release();
+	}
+
+	private static <T extends Request> T executeNow(final T r, final boolean forceRemote) throws ServerException {
 		final T ret;
 
 		try (Timing timing = new Timing()) {
@@ -98,8 +169,25 @@ public class Dispatcher {
 				r.authorizeUserAndRole();
 
 				if (passesFirewallRules(r)) {
+					final boolean previousBypass = CatalogueCache.setBypass(r.isBypassCache());
+
 					try {
-						r.run();
+						if (executionSlots != null && holdsExecutionSlot.get() == null) {
+							executionSlots.acquire();
+
+							holdsExecutionSlot.set(Boolean.TRUE);
+
+							try {
+								r.run();
+							}
+							finally {
+								holdsExecutionSlot.remove();
+								executionSlots.release();
+							}
+						}
+						else
+							r.run();
+
 						final AliEnPrincipal requester = r.getEffectiveRequester();
 						if (requester.isJobAgent()) {
 							TaskQueueUtils.notifyJRAlive(r.getVMUUID());
@@ -109,6 +197,8 @@ public class Dispatcher {
 						throw new ServerException(t.getMessage(), t);
 					}
 					finally {
+						CatalogueCache.setBypass(previousBypass);
+
 						monitor.addMeasurement("executed_requests", timing);
 					}
 				}
@@ -128,9 +218,6 @@ public class Dispatcher {
 			}
 		}
 
-		if (isCacheable && ret != null)
-			cache.put(key, new WeakReference<>(ret), ((Cacheable) ret).getTimeout());
-
 		return ret;
 	}
 
@@ -179,7 +266,7 @@ public class Dispatcher {
 				return true;
 
 			// Enables the JobAgent to report its progress/the resources it allocates for the JobWrapper sandbox
-			if (r instanceof PutJobLog)
+			if (r instanceof PutJobLog || r instanceof PutJobLogBulk)
 				return true;
 
 			// Allows JobAgents to retrieve job token certificates for the actual job to run with
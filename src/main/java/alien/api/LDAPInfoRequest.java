@@ -87,4 +87,9 @@ public class LDAPInfoRequest extends Request implements Cacheable {
 	public long getTimeout() {
 		return 1000 * 60 * 15;
 	}
+
+	@Override
+	public long getEstimatedSize() {
+		return 512 + (ret != null ? ret.size() * 128L : 0);
+	}
 }
@@ -81,4 +81,9 @@ public class LDAPTreeRequest extends Request implements Cacheable {
 	public long getTimeout() {
 		return 1000 * 60 * 15;
 	}
+
+	@Override
+	public long getEstimatedSize() {
+		return 512 + (ret != null ? ret.size() * 256L : 0);
+	}
 }
@@ -58,27 +58,27 @@ public abstract class Request implements Serializable, Runnable {
 	/**
 	 * Unique identifier of the VM that made the request
 	 */
-	private final UUID vm_uuid = VM_UUID;
+	private final UUID vm_uuid;
 
 	/**
 	 * Request ID in the VM
 	 */
-	private final Long requestID = Long.valueOf(ID_SEQUENCE.incrementAndGet());
+	private final Long requestID;
 
 	/**
 	 * The default identity of the VM
 	 */
-	private final AliEnPrincipal requester_uid = AuthorizationFactory.getDefaultUser();
+	private final AliEnPrincipal requester_uid;
 
 	/**
 	 * Effective identity (the user on behalf of whom the request came)
 	 */
-	private AliEnPrincipal requester_euid = requester_uid;
+	private AliEnPrincipal requester_euid;
 
 	/**
 	 * Requested identity (the user on behalf of whom the request should be executed)
 	 */
-	private AliEnPrincipal requester_ruid = requester_uid;
+	private AliEnPrincipal requester_ruid;
 
 	/**
 	 * Set on receiving a request over the network
@@ -95,6 +95,47 @@ public abstract class Request implements Serializable, Runnable {
 	 */
 	private transient InetAddress partner_address = null;
 
+	/**
+	 * A new request, issued by this VM with its default identity
+	 */
+	protected Request() {
+		vm_uuid = VM_UUID;
+		requestID = Long.valueOf(ID_SEQUENCE.incrementAndGet());
+		requester_uid = AuthorizationFactory.getDefaultUser();
+		requester_euid = requester_uid;
+		requester_ruid = requester_uid;
+	}
+
+	/**
+	 * Decoding constructor for {@link BinaryEncodable} requests, reading back what {@link #writeRequestHeader(BinaryOutput)} has written
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	protected Request(final BinaryInput in) throws IOException {
+		vm_uuid = in.readUUID();
+		requestID = Long.valueOf(in.readLong());
+		requester_uid = in.readPrincipal();
+		requester_euid = in.readPrincipal();
+		requester_ruid = in.readPrincipal();
+		exception = (ServerException) in.readObject();
+	}
+
+	/**
+	 * Write the fields common to all requests, to be called first by any {@link BinaryEncodable#writeBinary(BinaryOutput)} implementation
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	protected final void writeRequestHeader(final BinaryOutput out) throws IOException {
+		out.writeUUID(vm_uuid);
+		out.writeLong(requestID.longValue());
+		out.writePrincipal(requester_uid);
+		out.writePrincipal(requester_euid);
+		out.writePrincipal(requester_ruid);
+		out.writeObject(exception);
+	}
+
 	/**
 	 * @return the unique identifier of the VM that generated the request
 	 */
@@ -243,6 +284,24 @@ public abstract class Request implements Serializable, Runnable {
 		return exception;
 	}
 
+	private boolean bypassCache = false;
+
+	/**
+	 * Ask the central services to read the catalogue entries from the database instead of their in-memory cache, for example right after changing them through another service instance
+	 *
+	 * @param bypass
+	 */
+	public final void setBypassCache(final boolean bypass) {
+		this.bypassCache = bypass;
+	}
+
+	/**
+	 * @return <code>true</code> if the server side caches should not be used for this request
+	 */
+	public final boolean isBypassCache() {
+		return bypassCache;
+	}
+
 	/**
 	 * Custom deserialization, making sure the transient fields are not set
 	 *
@@ -0,0 +1,183 @@
+package alien.api;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.Map;
+
+import alien.api.catalogue.LFNfromString;
+import alien.api.catalogue.PFNforReadBulk;
+import alien.api.catalogue.PFNforReadOrDel;
+import alien.api.catalogue.PFNforWrite;
+import alien.api.taskQueue.GetMatchJob;
+import alien.api.taskQueue.PutJobHeartbeats;
+import alien.api.taskQueue.PutJobLog;
+import alien.api.taskQueue.PutJobLogBulk;
+import alien.api.taskQueue.SetJobStatus;
+
+/**
+ * Per-connection encoder/decoder of API messages. A connection starts with {@link WireCodec#JAVA}, exactly as older peers expect. After a successful {@link CodecNegotiation} each message is prefixed by a
+ * frame type, and the registered {@link BinaryEncodable} requests are written field by field instead of through Java serialization.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class RequestCodec {
+	private static final byte FRAME_JAVA = 0;
+	private static final byte FRAME_BINARY = 1;
+
+	/**
+	 * Decoding constructor reference of a {@link BinaryEncodable} request
+	 */
+	@FunctionalInterface
+	private interface Decoder {
+		Request decode(BinaryInput in) throws IOException;
+	}
+
+	private static final Map<Class<? extends Request>, Short> typeIds = new HashMap<>();
+
+	private static final Map<Short, Decoder> decoders = new HashMap<>();
+
+	static {
+		// never reuse or renumber an identifier, add new types at the end
+		register(1, GetMatchJob.class, GetMatchJob::new);
+		register(2, SetJobStatus.class, SetJobStatus::new);
+		register(3, PutJobLog.class, PutJobLog::new);
+		register(4, LFNfromString.class, LFNfromString::new);
+		register(5, PFNforReadOrDel.class, PFNforReadOrDel::new);
+		register(6, PFNforWrite.class, PFNforWrite::new);
+		register(7, PFNforReadBulk.class, PFNforReadBulk::new);
+		register(8, PutJobLogBulk.class, PutJobLogBulk::new);
+		register(9, PutJobHeartbeats.class, PutJobHeartbeats::new);
+	}
+
+	private static void register(final int id, final Class<? extends Request> c, final Decoder decoder) {
+		final Short key = Short.valueOf((short) id);
+
+		typeIds.put(c, key);
+		decoders.put(key, decoder);
+	}
+
+	private WireCodec codec = WireCodec.JAVA;
+
+	private BinaryOutput out = null;
+
+	private BinaryInput in = null;
+
+	/**
+	 * @return the codec currently in use on this connection
+	 */
+	public WireCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Switch the connection to another codec, to be called by both ends right after the {@link CodecNegotiation} reply
+	 *
+	 * @param codec
+	 */
+	public void setCodec(final WireCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * @param oos
+	 *            connection stream, always the same one for a given codec instance
+	 * @param r
+	 *            object to send
+	 * @return the codec that was actually used for this object, {@link WireCodec#JAVA} for the types without a binary encoding
+	 * @throws IOException
+	 */
+	public WireCodec write(final ObjectOutputStream oos, final Request r) throws IOException {
+		if (codec == WireCodec.JAVA) {
+			oos.writeUnshared(r);
+			return WireCodec.JAVA;
+		}
+
+		// the binary header doesn't carry the cache bypass flag
+		final Short typeId = r instanceof BinaryEncodable && !r.isBypassCache() ? typeIds.get(r.getClass()) : null;
+
+		if (typeId == null) {
+			oos.writeByte(FRAME_JAVA);
+			oos.writeUnshared(r);
+			return WireCodec.JAVA;
+		}
+
+		if (out == null)
+			out = new BinaryOutput(oos);
+
+		oos.writeByte(FRAME_BINARY);
+		oos.writeShort(typeId.shortValue());
+
+		((BinaryEncodable) r).writeBinary(out);
+
+		return WireCodec.BINARY;
+	}
+
+	/**
+	 * Write one message of a multiplexed connection, prefixed by a sequence number that the server echoes back in front of the reply. The IDs carried by the request can't be used to match the reply
+	 * since a cached or coalesced result comes with the IDs of the request that produced it.
+	 *
+	 * @param oos
+	 *            connection stream, always the same one for a given codec instance
+	 * @param sequence
+	 *            per-connection number of the request
+	 * @param r
+	 *            object to send
+	 * @return the codec that was actually used for this object
+	 * @throws IOException
+	 * @see #readSequence(ObjectInputStream)
+	 */
+	public WireCodec write(final ObjectOutputStream oos, final long sequence, final Request r) throws IOException {
+		oos.writeLong(sequence);
+
+		return write(oos, r);
+	}
+
+	/**
+	 * @param ois
+	 *            connection stream of a multiplexed connection
+	 * @return the sequence number of the next message, to be followed by a {@link #read(ObjectInputStream)} of the message itself
+	 * @throws IOException
+	 */
+	@SuppressWarnings("static-method")
+	public long readSequence(final ObjectInputStream ois) throws IOException {
+		return ois.readLong();
+	}
+
+	/**
+	 * @param ois
+	 *            connection stream, always the same one for a given codec instance
+	 * @return the next object on the connection
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public Object read(final ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		if (codec == WireCodec.JAVA)
+			return ois.readObject();
+
+		final byte frame = ois.readByte();
+
+		if (frame == FRAME_JAVA)
+			return ois.readUnshared();
+
+		if (frame != FRAME_BINARY)
+			throw new StreamCorruptedException("Unknown frame type " + frame);
+
+		final short typeId = ois.readShort();
+
+		final Decoder decoder = decoders.get(Short.valueOf(typeId));
+
+		if (decoder == null)
+			throw new StreamCorruptedException("Unknown binary request type " + typeId);
+
+		if (in == null)
+			in = new BinaryInput(ois);
+
+		in.startFrame();
+
+		return decoder.decode(in);
+	}
+}
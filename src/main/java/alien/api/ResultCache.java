@@ -0,0 +1,287 @@
+package alien.api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import alien.monitoring.Timing;
+
+/**
+ * Cache of the results of {@link Cacheable} requests, holding strong references until their {@link Cacheable#getTimeout()} and bounded by the estimated memory footprint of the entries (see
+ * {@link Cacheable#getEstimatedSize()}). Concurrent misses on the same key are coalesced: the first caller executes the request and the others wait for its result instead of hitting the backend as well.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class ResultCache {
+
+	private static final class Entry {
+		final Request value;
+
+		final long expires;
+
+		final long weight;
+
+		volatile long lastAccess = System.nanoTime();
+
+		Entry(final Request value, final long expires, final long weight) {
+			this.value = value;
+			this.expires = expires;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * What to do when the result of a key is not in the cache
+	 */
+	interface Loader<T extends Request> {
+		/**
+		 * @return the executed request
+		 * @throws ServerException
+		 */
+		T load() throws ServerException;
+	}
+
+	/**
+	 * Per-entry bookkeeping on top of the estimated size of the object
+	 */
+	private static final long ENTRY_OVERHEAD = 128;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, CompletableFuture<Request>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong totalWeight = new AtomicLong();
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final long maxWeight;
+
+	private final int maxEntries;
+
+	private final long coalesceWait;
+
+	/**
+	 * @param maxWeight
+	 *            memory budget, in bytes
+	 * @param maxEntries
+	 *            maximum number of entries
+	 * @param coalesceWait
+	 *            how long to wait, in milliseconds, for an identical request that is already executing, before executing this one too
+	 */
+	ResultCache(final long maxWeight, final int maxEntries, final long coalesceWait) {
+		this.maxWeight = maxWeight;
+		this.maxEntries = maxEntries;
+		this.coalesceWait = coalesceWait;
+	}
+
+	/**
+	 * @param key
+	 * @return the cached result, or <code>null</code> if there is none or it has expired
+	 */
+	Request get(final String key) {
+		final Entry e = entries.get(key);
+
+		if (e == null)
+			return null;
+
+		if (e.expires < System.currentTimeMillis()) {
+			if (entries.remove(key, e))
+				totalWeight.addAndGet(-e.weight);
+
+			return null;
+		}
+
+		e.lastAccess = System.nanoTime();
+
+		return e.value;
+	}
+
+	/**
+	 * Get the cached value or, if there is none, execute the loader, unless an identical request is already being executed in which case its result is shared.
+	 *
+	 * @param key
+	 * @param loader
+	 * @return the result
+	 * @throws ServerException
+	 *             if the loader failed
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends Request> T get(final String key, final Loader<T> loader) throws ServerException {
+		final Request cached = get(key);
+
+		if (cached != null) {
+			Dispatcher.monitor.incrementCacheHits("object_cache");
+			return (T) cached;
+		}
+
+		final CompletableFuture<Request> future = new CompletableFuture<>();
+
+		final CompletableFuture<Request> existing = inFlight.putIfAbsent(key, future);
+
+		if (existing != null) {
+			try {
+				final Request result = existing.get(coalesceWait, TimeUnit.MILLISECONDS);
+
+				if (result != null) {
+					Dispatcher.monitor.incrementCacheHits("object_cache");
+					Dispatcher.monitor.incrementCounter("object_cache_coalesced");
+
+					return (T) result;
+				}
+			}
+			catch (@SuppressWarnings("unused") final ExecutionException | TimeoutException e) {
+				// the other execution failed or takes too long, do it ourselves
+			}
+			catch (@SuppressWarnings("unused") final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			Dispatcher.monitor.incrementCacheMisses("object_cache");
+
+			return loader.load();
+		}
+
+		Dispatcher.monitor.incrementCacheMisses("object_cache");
+
+		T ret = null;
+
+		try (Timing t = new Timing(Dispatcher.monitor, "object_cache_load")) {
+			ret = loader.load();
+
+			if (ret != null)
+				put(key, ret, ((Cacheable) ret).getTimeout());
+
+			return ret;
+		}
+		finally {
+			inFlight.remove(key, future);
+
+			if (ret != null)
+				future.complete(ret);
+			else
+				future.completeExceptionally(new ServerException("Execution failed", null));
+		}
+	}
+
+	private static long weigh(final Request value) {
+		return ((Cacheable) value).getEstimatedSize() + ENTRY_OVERHEAD;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @param timeout
+	 *            lifetime, in milliseconds
+	 */
+	void put(final String key, final Request value, final long timeout) {
+		if (timeout <= 0)
+			return;
+
+		final long weight = weigh(value);
+
+		if (weight > maxWeight / 10) {
+			// a single entry should not flush a large part of the cache
+			Dispatcher.monitor.incrementCounter("object_cache_too_large");
+			return;
+		}
+
+		final Entry old = entries.put(key, new Entry(value, System.currentTimeMillis() + timeout, weight));
+
+		totalWeight.addAndGet(weight - (old != null ? old.weight : 0));
+
+		if (totalWeight.get() > maxWeight || entries.size() > maxEntries)
+			evict();
+	}
+
+	/**
+	 * Remove the expired entries, then the least recently used ones until the cache is back to 90% of its limits. Only one thread does this at a time, the others don't wait for it.
+	 */
+	private void evict() {
+		if (!evictionLock.tryLock())
+			return;
+
+		try {
+			final long now = System.currentTimeMillis();
+
+			final List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.size());
+
+			final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+			while (it.hasNext()) {
+				final Map.Entry<String, Entry> me = it.next();
+
+				if (me.getValue().expires < now) {
+					if (entries.remove(me.getKey(), me.getValue()))
+						totalWeight.addAndGet(-me.getValue().weight);
+				}
+				else
+					candidates.add(me);
+			}
+
+			final long targetWeight = maxWeight * 9 / 10;
+			final int targetEntries = maxEntries * 9 / 10;
+
+			if (totalWeight.get() <= targetWeight && entries.size() <= targetEntries)
+				return;
+
+			candidates.sort(Comparator.comparingLong(me -> me.getValue().lastAccess));
+
+			for (final Map.Entry<String, Entry> me : candidates) {
+				if (totalWeight.get() <= targetWeight && entries.size() <= targetEntries)
+					break;
+
+				if (entries.remove(me.getKey(), me.getValue())) {
+					totalWeight.addAndGet(-me.getValue().weight);
+					Dispatcher.monitor.incrementCounter("object_cache_evictions");
+				}
+			}
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return <code>true</code> if {@link #get(String, Loader)} would most likely return without calling its loader, because the result is cached or an identical request is already executing
+	 */
+	boolean isServedWithoutLoading(final String key) {
+		final Entry e = entries.get(key);
+
+		if (e != null && e.expires >= System.currentTimeMillis())
+			return true;
+
+		return inFlight.containsKey(key);
+	}
+
+	/**
+	 * @return number of cached entries
+	 */
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return estimated memory footprint of the cached entries, in bytes
+	 */
+	long weight() {
+		return totalWeight.get();
+	}
+
+	/**
+	 * @return number of distinct requests being executed right now
+	 */
+	int inFlight() {
+		return inFlight.size();
+	}
+}
@@ -0,0 +1,50 @@
+package alien.api;
+
+/**
+ * Encodings that can be negotiated on an API connection. Java serialization is what every peer understands and what a connection starts with, the binary codec is only switched to after both ends have
+ * agreed on it through a {@link CodecNegotiation} exchange.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public enum WireCodec {
+	/**
+	 * Plain Java serialization of the entire {@link Request} object graph
+	 */
+	JAVA(0),
+
+	/**
+	 * Hand-written encoders for the hot request types (see {@link BinaryEncodable}), falling back to Java serialization for everything else
+	 */
+	BINARY(1);
+
+	/**
+	 * Version of the binary codec implemented by this code. Bump it when the encoding of any {@link BinaryEncodable} changes.
+	 */
+	public static final int BINARY_VERSION = 1;
+
+	private final int id;
+
+	private WireCodec(final int id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return numeric identifier of this codec, as exchanged during the negotiation
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @param id
+	 * @return the codec with this identifier, or {@link #JAVA} if the identifier is not known
+	 */
+	public static WireCodec fromId(final int id) {
+		for (final WireCodec c : values())
+			if (c.id == id)
+				return c;
+
+		return JAVA;
+	}
+}
@@ -7,9 +7,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -126,8 +128,26 @@ public class CatalogueApiUtils {
 	 * @return the list of LFNs, or <code>null</code> if failed to get them
 	 */
 	public List<LFN> getLFNs(final Collection<String> slfn, final boolean ignoreFolders, final boolean evenIfDoesntExist) {
+		return getLFNs(slfn, ignoreFolders, evenIfDoesntExist, false);
+	}
+
+	/**
+	 * Get LFN from String
+	 *
+	 * @param slfn
+	 *            name of the LFN
+	 * @param ignoreFolders
+	 * @param evenIfDoesntExist
+	 * @param bypassCache
+	 *            read the entries from the database and not from the cache of the central services, for example right after changing them through another service instance
+	 * @return the list of LFNs, or <code>null</code> if failed to get them
+	 */
+	public List<LFN> getLFNs(final Collection<String> slfn, final boolean ignoreFolders, final boolean evenIfDoesntExist, final boolean bypassCache) {
 		try {
-			return Dispatcher.execute(new LFNfromString(commander.getUser(), ignoreFolders, evenIfDoesntExist, slfn)).getLFNs();
+			final LFNfromString request = new LFNfromString(commander.getUser(), ignoreFolders, evenIfDoesntExist, slfn);
+			request.setBypassCache(bypassCache);
+
+			return Dispatcher.execute(request).getLFNs();
 		}
 		catch (final ServerException e) {
 			logger.log(Level.WARNING, "Could not get LFN: " + slfn);
@@ -262,8 +282,27 @@ public class CatalogueApiUtils {
 	 * @return the GUID object, or <code>null</code> if failed to get it
 	 */
 	public GUID getGUID(final String sguid, final boolean evenIfDoesNotExist, final boolean resolveLFNs) {
+		return getGUID(sguid, evenIfDoesNotExist, resolveLFNs, false);
+	}
+
+	/**
+	 * Get GUID from String
+	 *
+	 * @param sguid
+	 *            GUID as String
+	 * @param evenIfDoesNotExist
+	 * @param resolveLFNs
+	 *            populate the LFN cache of the GUID object
+	 * @param bypassCache
+	 *            read the entry from the database and not from the cache of the central services
+	 * @return the GUID object, or <code>null</code> if failed to get it
+	 */
+	public GUID getGUID(final String sguid, final boolean evenIfDoesNotExist, final boolean resolveLFNs, final boolean bypassCache) {
 		try {
-			return Dispatcher.execute(new GUIDfromString(commander.getUser(), sguid, evenIfDoesNotExist, resolveLFNs)).getGUID();
+			final GUIDfromString request = new GUIDfromString(commander.getUser(), sguid, evenIfDoesNotExist, resolveLFNs);
+			request.setBypassCache(bypassCache);
+
+			return Dispatcher.execute(request).getGUID();
 		}
 		catch (final ServerException e) {
 			logger.log(Level.WARNING, "Could not get GUID: " + sguid);
@@ -336,6 +375,29 @@ public class CatalogueApiUtils {
 		return null;
 	}
 
+	/**
+	 * Get PFNs for reading many files in one round trip
+	 *
+	 * @param entries
+	 *            LFNs (full paths) or GUIDs to get access to
+	 * @param ses
+	 *            SEs to prioritize to read from
+	 * @param exses
+	 *            SEs to deprioritize to read from
+	 * @return the executed request, holding the LFNs and the PFNs filled with read envelopes for each of the entries that could be resolved, or <code>null</code> if failed to get them
+	 */
+	public PFNforReadBulk getPFNsToRead(final Collection<String> entries, final List<String> ses, final List<String> exses) {
+		try {
+			return Dispatcher.execute(new PFNforReadBulk(commander.getUser(), commander.getSite(), entries, ses, exses));
+		}
+		catch (final ServerException e) {
+			logger.log(Level.WARNING, "Could not get the PFNs of " + entries.size() + " entries");
+			e.getCause().printStackTrace();
+		}
+
+		return null;
+	}
+
 	/**
 	 * Get PFNs for writing by LFN
 	 *
@@ -491,6 +553,91 @@ public class CatalogueApiUtils {
 		return false;
 	}
 
+	/**
+	 * How many entries to ask for in each chunk of a streamed find
+	 */
+	private static final int findChunkSize = ConfigUtils.getConfig().geti("alien.api.catalogue.CatalogueApiUtils.findChunkSize", 10000);
+
+	/**
+	 * Find the LFNs matching a pattern, retrieving them from the server in chunks while iterating instead of all at once. Metadata queries, XML collections and site sorting are not supported in this
+	 * mode, use {@link #find(String, String, String, int, String, Long, long, String, Collection)} for them.
+	 *
+	 * @param path
+	 * @param pattern
+	 * @param flags
+	 *            a combination of LFNUtils.FIND_* flags
+	 * @param queueid
+	 *            a job id to filter for its files
+	 * @param queryLimit
+	 *            if strictly positive, the maximum number of entries to return
+	 * @param excludedPatterns
+	 *            patterns to remove from matching
+	 * @return the entries, or <code>null</code> if the first chunk could not be retrieved (for example because the server doesn't know this request), in which case the caller should fall back to
+	 *         {@link #find(String, String, String, int, String, Long, long, String, Collection)}. An error on a later chunk ends the iteration and sets the return code of the commander.
+	 */
+	public Iterator<LFN> findStream(final String path, final String pattern, final int flags, final Long queueid, final long queryLimit, final Collection<String> excludedPatterns) {
+		final FindChunk first = findChunk(path, pattern, flags, queueid, queryLimit, excludedPatterns, 0, null, false);
+
+		if (first == null)
+			return null;
+
+		return new Iterator<>() {
+			private FindChunk chunk = first;
+
+			private Iterator<LFN> it = first.getLFNs().iterator();
+
+			private long returned = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (!it.hasNext()) {
+					if (chunk == null || !chunk.hasMore())
+						return false;
+
+					chunk = findChunk(path, pattern, flags, queueid, queryLimit > 0 ? queryLimit - returned : 0, excludedPatterns, chunk.getTableIndex(), chunk.getResumeAfter(), true);
+
+					if (chunk == null)
+						return false;
+
+					it = chunk.getLFNs().iterator();
+				}
+
+				return true;
+			}
+
+			@Override
+			public LFN next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				returned++;
+
+				return it.next();
+			}
+		};
+	}
+
+	private FindChunk findChunk(final String path, final String pattern, final int flags, final Long queueid, final long queryLimit, final Collection<String> excludedPatterns, final int tableIndex,
+			final String resumeAfter, final boolean reportErrors) {
+		try {
+			final FindChunk chunk = Dispatcher.execute(new FindChunk(commander.getUser(), path, pattern, flags, queueid, queryLimit, excludedPatterns, findChunkSize, tableIndex, resumeAfter));
+
+			if (chunk != null && chunk.getLFNs() != null)
+				return chunk;
+
+			if (reportErrors)
+				commander.setReturnCode(ErrNo.EREMOTEIO, "Find failed on the server side");
+		}
+		catch (final ServerException e) {
+			logger.log(Level.WARNING, "Unable to execute find: path (" + path + "), pattern (" + pattern + "), flags (" + flags + ")", e);
+
+			if (reportErrors)
+				commander.setReturnCode(ErrNo.EREMOTEIO, e.getMessage());
+		}
+
+		return null;
+	}
+
 	/**
 	 * Find an LFN based on pattern
 	 *
@@ -0,0 +1,138 @@
+package alien.api.catalogue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import alien.api.Request;
+import alien.catalogue.FindCursor;
+import alien.catalogue.LFN;
+import alien.catalogue.LFNUtils;
+import alien.config.ConfigUtils;
+import alien.user.AliEnPrincipal;
+
+/**
+ * One chunk of the results of a find operation. The server streams at most the requested number of entries from the database and returns them together with the position where the next chunk
+ * starts, so no state is kept on the server between chunks and any of the central services can answer the next one.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class FindChunk extends Request {
+
+	private static final long serialVersionUID = 2806012924457946741L;
+
+	private static final int maxChunkSize = ConfigUtils.getConfig().geti("alien.api.catalogue.FindChunk.maxChunkSize", 50000);
+
+	private final String path;
+	private final String pattern;
+	private final int flags;
+	private final Long queueid;
+	private final long queryLimit;
+	private final Collection<String> excludedPatterns;
+	private final int chunkSize;
+
+	private int tableIndex;
+	private String resumeAfter;
+
+	private List<LFN> lfns = null;
+	private boolean hasMore = false;
+
+	/**
+	 * @param user
+	 * @param path
+	 * @param pattern
+	 * @param flags
+	 *            a combination of LFNUtils.FIND_* flags
+	 * @param queueid
+	 *            a job id to filter for its files
+	 * @param queryLimit
+	 *            if strictly positive, the number of entries still to be returned in total
+	 * @param excludedPatterns
+	 * @param chunkSize
+	 *            how many entries to return at most in this chunk
+	 * @param tableIndex
+	 *            position where the previous chunk stopped, 0 for the first chunk
+	 * @param resumeAfter
+	 *            key where the previous chunk stopped, <code>null</code> for the first chunk
+	 */
+	public FindChunk(final AliEnPrincipal user, final String path, final String pattern, final int flags, final Long queueid, final long queryLimit, final Collection<String> excludedPatterns,
+			final int chunkSize, final int tableIndex, final String resumeAfter) {
+		setRequestUser(user);
+		this.path = path;
+		this.pattern = pattern;
+		this.flags = flags;
+		this.queueid = queueid;
+		this.queryLimit = queryLimit;
+		this.excludedPatterns = excludedPatterns;
+		this.chunkSize = chunkSize;
+		this.tableIndex = tableIndex;
+		this.resumeAfter = resumeAfter;
+	}
+
+	@Override
+	public List<String> getArguments() {
+		return Arrays.asList(this.path, this.pattern, String.valueOf(this.flags), String.valueOf(this.chunkSize), String.valueOf(this.tableIndex), this.resumeAfter);
+	}
+
+	@Override
+	public void run() {
+		long limit = chunkSize > 0 ? Math.min(chunkSize, maxChunkSize) : maxChunkSize;
+
+		if (queryLimit > 0)
+			limit = Math.min(limit, queryLimit);
+
+		try (FindCursor cursor = LFNUtils.openFind(path, pattern, flags, queueid, limit, excludedPatterns, tableIndex, resumeAfter)) {
+			final List<LFN> chunk = new ArrayList<>();
+
+			while (cursor.hasNext())
+				chunk.add(cursor.next());
+
+			if (cursor.isFailed())
+				return;
+
+			lfns = chunk;
+
+			// a full chunk means there might be more, an empty one will confirm the end
+			hasMore = chunk.size() == limit && (queryLimit <= 0 || limit < queryLimit);
+
+			tableIndex = cursor.getTableIndex();
+			resumeAfter = cursor.getLastKey();
+		}
+	}
+
+	/**
+	 * @return the entries of this chunk, or <code>null</code> if the find failed
+	 */
+	public List<LFN> getLFNs() {
+		return lfns;
+	}
+
+	/**
+	 * @return <code>true</code> if another chunk should be requested
+	 */
+	public boolean hasMore() {
+		return hasMore;
+	}
+
+	/**
+	 * @return table position to ask the next chunk from
+	 */
+	public int getTableIndex() {
+		return tableIndex;
+	}
+
+	/**
+	 * @return key to ask the next chunk from
+	 */
+	public String getResumeAfter() {
+		return resumeAfter;
+	}
+
+	@Override
+	public String toString() {
+		return "Asked for : path (" + this.path + "), pattern (" + this.pattern + "), flags (" + this.flags + "), chunk of " + chunkSize + " from " + tableIndex + "/" + resumeAfter + ", reply "
+				+ (this.lfns != null ? "contains " + this.lfns.size() + " LFNs" + (hasMore ? ", more to come" : "") : "is null");
+	}
+}
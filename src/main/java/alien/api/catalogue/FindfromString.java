@@ -238,4 +238,9 @@ public class FindfromString extends Request implements Cacheable {
 
 		return (this.lfns != null && this.lfns.size() < 500) ? 300000 : 60000;
 	}
+
+	@Override
+	public long getEstimatedSize() {
+		return 1024 + (lfns != null ? lfns.size() * 512L : 0);
+	}
 }
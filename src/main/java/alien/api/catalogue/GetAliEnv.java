@@ -80,6 +80,11 @@ public class GetAliEnv extends Request implements Cacheable {
 		return 1000 * 60 * (cachedAliEnvOutput != null ? 60 : 0);
 	}
 
+	@Override
+	public long getEstimatedSize() {
+		return 512 + (cachedAliEnvOutput != null ? cachedAliEnvOutput.length() * 2L : 0);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		return Arrays.asList(packageNames, keyModifier);
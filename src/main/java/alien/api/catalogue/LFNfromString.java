@@ -1,11 +1,15 @@
 package alien.api.catalogue;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
 import alien.api.Request;
 import alien.catalogue.LFN;
 import alien.catalogue.LFNUtils;
@@ -17,7 +21,7 @@ import alien.user.AliEnPrincipal;
  * @author costing
  * @since 2011-03-04
  */
-public class LFNfromString extends Request {
+public class LFNfromString extends Request implements BinaryEncodable {
 
 	/**
 	 *
@@ -44,6 +48,28 @@ public class LFNfromString extends Request {
 		this.evenIfDoesntExist = evenIfDoesntExist;
 	}
 
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public LFNfromString(final BinaryInput in) throws IOException {
+		super(in);
+		this.path = in.readStrings();
+		this.ignoreFolders = in.readBoolean();
+		this.evenIfDoesntExist = in.readBoolean();
+		this.lfns = (List<LFN>) in.readObject();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeStrings(path);
+		out.writeBoolean(ignoreFolders);
+		out.writeBoolean(evenIfDoesntExist);
+		out.writeObject(lfns);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		return Arrays.asList(this.path != null ? this.path.toString() : null, String.valueOf(this.ignoreFolders), String.valueOf(this.evenIfDoesntExist));
@@ -0,0 +1,228 @@
+package alien.api.catalogue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
+import alien.api.Request;
+import alien.catalogue.CatalogEntity;
+import alien.catalogue.GUID;
+import alien.catalogue.GUIDUtils;
+import alien.catalogue.LFN;
+import alien.catalogue.LFNUtils;
+import alien.catalogue.PFN;
+import alien.catalogue.access.AccessType;
+import alien.catalogue.access.AuthorizationFactory;
+import alien.se.SE;
+import alien.se.SEUtils;
+import alien.user.AliEnPrincipal;
+
+/**
+ * Get the read envelopes for many files in one go. The LFNs are looked up with one query per L*L table, then the GUIDs and their replicas (and the ones of the archives they are members of) with
+ * one query per G*L table, instead of the several round trips per file that {@link LFNfromString} and {@link PFNforReadOrDel} would need.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class PFNforReadBulk extends Request implements BinaryEncodable {
+
+	private static final long serialVersionUID = -3581640218617413066L;
+
+	private final String site;
+
+	private List<String> entries;
+
+	private final List<String> ses;
+	private final List<String> exses;
+
+	private Map<String, LFN> lfns = null;
+
+	private Map<String, List<PFN>> pfns = null;
+
+	/**
+	 * Get the PFNs to read for many files
+	 *
+	 * @param user
+	 * @param site
+	 * @param entries
+	 *            LFNs (full paths) or GUIDs
+	 * @param ses
+	 * @param exses
+	 */
+	public PFNforReadBulk(final AliEnPrincipal user, final String site, final Collection<String> entries, final List<String> ses, final List<String> exses) {
+		setRequestUser(user);
+		this.site = site;
+		this.entries = new ArrayList<>(entries);
+		this.ses = ses;
+		this.exses = exses;
+	}
+
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public PFNforReadBulk(final BinaryInput in) throws IOException {
+		super(in);
+		this.site = in.readString();
+		this.entries = in.readStrings();
+		this.ses = in.readStrings();
+		this.exses = in.readStrings();
+		this.lfns = (Map<String, LFN>) in.readObject();
+		this.pfns = (Map<String, List<PFN>>) in.readObject();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeString(site);
+		out.writeStrings(entries);
+		out.writeStrings(ses);
+		out.writeStrings(exses);
+		out.writeObject(lfns);
+		out.writeObject(pfns);
+	}
+
+	@Override
+	public List<String> getArguments() {
+		return Arrays.asList(site, ses != null ? ses.toString() : null, exses != null ? exses.toString() : null, entries != null ? entries.toString() : null);
+	}
+
+	@Override
+	public void run() {
+		lfns = new LinkedHashMap<>();
+		pfns = new LinkedHashMap<>();
+
+		final List<String> lfnNames = new ArrayList<>(entries.size());
+
+		final Set<UUID> uuids = new HashSet<>();
+
+		for (final String entry : entries)
+			if (GUIDUtils.isValidGUID(entry))
+				uuids.add(UUID.fromString(entry));
+			else
+				lfnNames.add(entry);
+
+		if (lfnNames.size() > 0) {
+			final List<LFN> found = LFNUtils.getLFNs(true, lfnNames);
+
+			if (found != null)
+				for (final LFN l : found) {
+					lfns.put(l.getCanonicalName(), l);
+
+					if (l.guid != null)
+						uuids.add(l.guid);
+				}
+		}
+
+		final Map<UUID, GUID> guids = GUIDUtils.getGUIDsWithPFNs(uuids);
+
+		// the archives that some of the files are members of, in one more round
+		final Set<UUID> archiveUUIDs = new HashSet<>();
+
+		for (final GUID g : guids.values())
+			for (final PFN pfn : g.getPFNs()) {
+				final UUID archiveLinkedTo = pfn.retrieveArchiveLinkedGUID();
+
+				if (archiveLinkedTo != null && !guids.containsKey(archiveLinkedTo))
+					archiveUUIDs.add(archiveLinkedTo);
+			}
+
+		final Map<UUID, GUID> archives = new HashMap<>(GUIDUtils.getGUIDsWithPFNs(archiveUUIDs));
+		archives.putAll(guids);
+
+		final Map<String, PFNforReadOrDel.ReadCandidates> candidates = new LinkedHashMap<>();
+
+		final List<PFN> allCandidates = new ArrayList<>();
+
+		for (final String entry : entries) {
+			final CatalogEntity entity;
+			final GUID guid;
+
+			if (GUIDUtils.isValidGUID(entry)) {
+				guid = guids.get(UUID.fromString(entry));
+				entity = guid;
+			}
+			else {
+				final LFN l = lfns.get(entry);
+
+				if (l == null) {
+					PFNforReadOrDel.logger.log(Level.WARNING, "No such file: " + entry);
+					continue;
+				}
+
+				guid = l.guid != null ? guids.get(l.guid) : null;
+
+				if (guid != null)
+					guid.addKnownLFN(l);
+
+				entity = l;
+			}
+
+			if (guid == null) {
+				PFNforReadOrDel.logger.log(Level.WARNING, "Null GUID for " + entry);
+				continue;
+			}
+
+			final PFNforReadOrDel.ReadCandidates entryCandidates = new PFNforReadOrDel.ReadCandidates(getEffectiveRequester(), entity, guid,
+					(uuid) -> archives.computeIfAbsent(uuid, (k) -> GUIDUtils.getGUID(k, false)));
+
+			candidates.put(entry, entryCandidates);
+			allCandidates.addAll(entryCandidates.candidates);
+		}
+
+		// all the envelopes of the request are signed in parallel
+		final Map<PFN, String> refused = AuthorizationFactory.fillAccess(getEffectiveRequester(), allCandidates, AccessType.READ);
+
+		final List<SE> prioritySEs = SEUtils.getSEs(ses);
+		final List<SE> excludedSEs = SEUtils.getSEs(exses);
+
+		for (final Map.Entry<String, PFNforReadOrDel.ReadCandidates> entry : candidates.entrySet())
+			pfns.put(entry.getKey(), entry.getValue().getPFNs(refused, site, prioritySEs, excludedSEs));
+
+		// no need to send them back
+		entries = null;
+	}
+
+	/**
+	 * @param entry
+	 *            LFN or GUID, as it was requested
+	 * @return the PFNs to read from, best first, or <code>null</code> if the entry could not be resolved
+	 */
+	public List<PFN> getPFNs(final String entry) {
+		return pfns != null ? pfns.get(entry) : null;
+	}
+
+	/**
+	 * @param entry
+	 *            LFN, as it was requested
+	 * @return the LFN object, or <code>null</code> if it doesn't exist or a GUID was requested
+	 */
+	public LFN getLFN(final String entry) {
+		return lfns != null ? lfns.get(entry) : null;
+	}
+
+	/**
+	 * @return all the resolved entries, in the order of the request
+	 */
+	public Map<String, List<PFN>> getPFNs() {
+		return pfns;
+	}
+
+	@Override
+	public String toString() {
+		return "Asked for bulk read of " + (pfns != null ? pfns.size() : entries != null ? entries.size() : 0) + " entries";
+	}
+}
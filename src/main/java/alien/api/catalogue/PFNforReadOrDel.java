@@ -1,12 +1,19 @@
 package alien.api.catalogue;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
 import alien.api.Request;
 import alien.catalogue.CatalogEntity;
 import alien.catalogue.GUID;
@@ -17,6 +24,7 @@ import alien.catalogue.PFN;
 import alien.catalogue.access.AccessType;
 import alien.catalogue.access.AuthorizationFactory;
 import alien.config.ConfigUtils;
+import alien.se.SE;
 import alien.se.SEUtils;
 import alien.user.AliEnPrincipal;
 import alien.user.AuthorizationChecker;
@@ -26,7 +34,7 @@ import alien.user.AuthorizationChecker;
  * @author ron
  * @since Jun 03, 2011
  */
-public class PFNforReadOrDel extends Request {
+public class PFNforReadOrDel extends Request implements BinaryEncodable {
 
 	/**
 	 *
@@ -71,6 +79,32 @@ public class PFNforReadOrDel extends Request {
 		this.exses = exses;
 	}
 
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public PFNforReadOrDel(final BinaryInput in) throws IOException {
+		super(in);
+		this.access = in.readEnum(AccessType.class);
+		this.site = in.readString();
+		this.entity = (CatalogEntity) in.readObject();
+		this.ses = in.readStrings();
+		this.exses = in.readStrings();
+		this.pfns = (List<PFN>) in.readObject();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeEnum(access);
+		out.writeString(site);
+		out.writeObject(entity);
+		out.writeStrings(ses);
+		out.writeStrings(exses);
+		out.writeObject(pfns);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		if (entity instanceof LFN)
@@ -91,19 +125,54 @@ public class PFNforReadOrDel extends Request {
 			return;
 		}
 
-		boolean setArchiveAnchor = false;
+		final ReadCandidates candidates = new ReadCandidates(getEffectiveRequester(), entity, guid, (uuid) -> GUIDUtils.getGUID(uuid, false));
+
+		final Map<PFN, String> refused = AuthorizationFactory.fillAccess(getEffectiveRequester(), candidates.candidates, access);
 
-		String archiveMemberFileName = null;
+		pfns = candidates.getPFNs(refused, site, SEUtils.getSEs(ses), SEUtils.getSEs(exses));
+	}
 
-		pfns = new LinkedList<>();
+	/**
+	 * The replicas of one file that access can be requested for, following the archive links. Building them is separated from signing their envelopes so that a request for many files can
+	 * sign all of them in one go.
+	 */
+	static final class ReadCandidates {
+		private final CatalogEntity entity;
+
+		private final GUID guid;
+
+		/**
+		 * Replicas to request access to
+		 */
+		final List<PFN> candidates = new ArrayList<>();
+
+		private boolean setArchiveAnchor = false;
+
+		private String archiveMemberFileName = null;
+
+		/**
+		 * @param user
+		 *            who asks for access
+		 * @param entity
+		 *            the LFN or GUID that was asked for
+		 * @param guid
+		 *            its GUID
+		 * @param archiveGUIDs
+		 *            how to get the GUID of an archive that the file is a member of
+		 */
+		ReadCandidates(final AliEnPrincipal user, final CatalogEntity entity, final GUID guid, final Function<UUID, GUID> archiveGUIDs) {
+			this.entity = entity;
+			this.guid = guid;
+
+			if (guid.getPFNs() == null || guid.getPFNs().isEmpty())
+				return;
 
-		if (guid.getPFNs() != null && !guid.getPFNs().isEmpty()) {
 			try {
 				for (final PFN pfn : guid.getPFNs()) {
 					final UUID archiveLinkedTo = pfn.retrieveArchiveLinkedGUID();
 
 					if (archiveLinkedTo != null) {
-						final GUID archiveguid = GUIDUtils.getGUID(archiveLinkedTo, false);
+						final GUID archiveguid = archiveGUIDs.apply(archiveLinkedTo);
 
 						setArchiveAnchor = true;
 
@@ -112,7 +181,7 @@ public class PFNforReadOrDel extends Request {
 						if (index > 0)
 							archiveMemberFileName = pfn.pfn.substring(index + 5);
 
-						if (!AuthorizationChecker.canRead(archiveguid, getEffectiveRequester())) {
+						if (!AuthorizationChecker.canRead(archiveguid, user)) {
 							logger.log(Level.WARNING, "Access refused because: Not allowed to read sub-archive");
 							continue;
 						}
@@ -125,67 +194,82 @@ public class PFNforReadOrDel extends Request {
 							logger.log(Level.WARNING, "Failed to get any PFN for the archive");
 							continue;
 						}
-						for (final PFN apfn : archiveguid.getPFNs()) {
-							final String reason = AuthorizationFactory.fillAccess(getEffectiveRequester(), apfn, access);
-
-							if (reason != null) {
-								logger.log(Level.WARNING, "Access refused to " + apfn.getPFN() + " because: " + reason);
-								continue;
-							}
 
-							logger.log(Level.FINE, "We have an envelope candidate: " + apfn.getPFN());
-
-							pfns.add(apfn);
-						}
-					}
-					else {
-						final String reason = AuthorizationFactory.fillAccess(getEffectiveRequester(), pfn, access);
-
-						if (reason != null) {
-							logger.log(Level.WARNING, "Access refused because: " + reason);
-							continue;
-						}
-
-						pfns.add(pfn);
+						// the archive replicas get the anchor of this member set on their envelopes, other members of the same archive need their own objects
+						for (final PFN apfn : archiveguid.getPFNs())
+							candidates.add(new PFN(apfn));
 					}
+					else
+						candidates.add(pfn);
 				}
-
 			}
 			catch (final Exception e) {
 				logger.log(Level.SEVERE, "WE HAVE AN Exception", e);
 			}
+		}
 
-			if (pfns.size() > 0) {
-				pfns = SEUtils.sortBySiteSpecifySEs(pfns, site, true, SEUtils.getSEs(ses), SEUtils.getSEs(exses), false);
+		/**
+		 * @param refused
+		 *            the candidates for which the access was refused, with the reason
+		 * @param site
+		 *            the client's site
+		 * @param ses
+		 *            SEs to prioritize
+		 * @param exses
+		 *            SEs to exclude
+		 * @return the accessible replicas, best first
+		 */
+		List<PFN> getPFNs(final Map<PFN, String> refused, final String site, final List<SE> ses, final List<SE> exses) {
+			List<PFN> pfns = new LinkedList<>();
+
+			if (guid.getPFNs() != null && !guid.getPFNs().isEmpty()) {
+				for (final PFN pfn : candidates) {
+					final String reason = refused.get(pfn);
+
+					if (reason != null) {
+						logger.log(Level.WARNING, "Access refused to " + pfn.getPFN() + " because: " + reason);
+						continue;
+					}
 
-				if (setArchiveAnchor) {
-					final LFN archiveAnchor;
+					logger.log(Level.FINE, "We have an envelope candidate: " + pfn.getPFN());
 
-					if (entity instanceof LFN)
-						archiveAnchor = (LFN) entity;
-					else if (archiveMemberFileName != null)
-						archiveAnchor = LFNUtils.getLFN("/archive/member/" + archiveMemberFileName, true);
-					else
-						archiveAnchor = null;
+					pfns.add(pfn);
+				}
 
-					for (final PFN pfn : pfns)
-						if (pfn.ticket.envelope == null)
-							logger.log(Level.WARNING, "Can't set archive anchor on " + pfn.pfn + " since the envelope is null");
-						else {
-							pfn.ticket.envelope.setArchiveAnchor(archiveMemberFileName);
+				if (pfns.size() > 0) {
+					pfns = SEUtils.sortBySiteSpecifySEs(pfns, site, true, ses, exses, false);
 
-							pfn.ticket.envelope.setArchiveAnchor(archiveAnchor);
-						}
+					if (setArchiveAnchor) {
+						final LFN archiveAnchor;
+
+						if (entity instanceof LFN)
+							archiveAnchor = (LFN) entity;
+						else if (archiveMemberFileName != null)
+							archiveAnchor = LFNUtils.getLFN("/archive/member/" + archiveMemberFileName, true);
+						else
+							archiveAnchor = null;
+
+						for (final PFN pfn : pfns)
+							if (pfn.ticket.envelope == null)
+								logger.log(Level.WARNING, "Can't set archive anchor on " + pfn.pfn + " since the envelope is null");
+							else {
+								pfn.ticket.envelope.setArchiveAnchor(archiveMemberFileName);
+
+								pfn.ticket.envelope.setArchiveAnchor(archiveAnchor);
+							}
+					}
 				}
+				else
+					logger.log(Level.WARNING, "Sorry ... No PFN to make an envelope for!");
 			}
 			else
-				logger.log(Level.WARNING, "Sorry ... No PFN to make an envelope for!");
-		}
-		else
-			logger.log(Level.WARNING, "Sorry ... No PFNs for the file's GUID: " + guid.guid);
+				logger.log(Level.WARNING, "Sorry ... No PFNs for the file's GUID: " + guid.guid);
 
-		if (pfns.size() < 1)
-			logger.log(Level.WARNING, "Sorry ... No PFNs for the file's GUID: " + guid.guid);
+			if (pfns.size() < 1)
+				logger.log(Level.WARNING, "Sorry ... No PFNs for the file's GUID: " + guid.guid);
+
+			return pfns;
+		}
 	}
 
 	/**
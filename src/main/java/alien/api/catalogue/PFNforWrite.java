@@ -1,5 +1,6 @@
 package alien.api.catalogue;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -10,6 +11,9 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
 import alien.api.Request;
 import alien.catalogue.BookingTable;
 import alien.catalogue.GUID;
@@ -27,7 +31,7 @@ import alien.user.LDAPHelperRemote;
  * @author ron
  * @since Jun 03, 2011
  */
-public class PFNforWrite extends Request {
+public class PFNforWrite extends Request implements BinaryEncodable {
 	/**
 	 * Logger
 	 */
@@ -74,6 +78,36 @@ public class PFNforWrite extends Request {
 		}
 	}
 
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public PFNforWrite(final BinaryInput in) throws IOException {
+		super(in);
+		this.site = in.readString();
+		this.lfn = (LFN) in.readObject();
+		this.guid = (GUID) in.readObject();
+		this.ses = in.readStrings();
+		this.exses = in.readStrings();
+		this.qos = in.readMap();
+		this.pfns = (List<PFN>) in.readObject();
+		this.errorMessage = in.readString();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeString(site);
+		out.writeObject(lfn);
+		out.writeObject(guid);
+		out.writeStrings(ses);
+		out.writeStrings(exses);
+		out.writeMap(qos);
+		out.writeObject(pfns);
+		out.writeString(errorMessage);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		return Arrays.asList(site, lfn != null ? lfn.getCanonicalName() : null, guid != null ? guid.guid.toString() : null, ses != null ? ses.toString() : null,
@@ -74,4 +74,9 @@ public class PFNfromString extends Request implements Cacheable {
 	public long getTimeout() {
 		return 1000 * 15;
 	}
+
+	@Override
+	public long getEstimatedSize() {
+		return 512 + (pfns != null ? pfns.size() * 384L : 0);
+	}
 }
@@ -76,4 +76,9 @@ public class SetAliEnv extends Request implements Cacheable {
 	public long getTimeout() {
 		return 1000 * 60 * (queryOk ? 15 : 0);
 	}
+
+	@Override
+	public long getEstimatedSize() {
+		return 512 + (cachedAliEnvOutput != null ? cachedAliEnvOutput.length() * 2L : 0);
+	}
 }
@@ -1,9 +1,13 @@
 package alien.api.taskQueue;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
 import alien.api.Request;
 import alien.taskQueue.JobBroker;
 import alien.user.AliEnPrincipal;
@@ -14,7 +18,7 @@ import alien.user.AliEnPrincipal;
  * @author mmmartin
  * @since Apr 1, 2015
  */
-public class GetMatchJob extends Request {
+public class GetMatchJob extends Request implements BinaryEncodable {
 	/**
 	 *
 	 */
@@ -32,6 +36,23 @@ public class GetMatchJob extends Request {
 		this.matchRequest = siteMap;
 	}
 
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	public GetMatchJob(final BinaryInput in) throws IOException {
+		super(in);
+		this.matchRequest = in.readMap();
+		this.match = in.readMap();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeMap(matchRequest);
+		out.writeMap(match);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		if (matchRequest != null)
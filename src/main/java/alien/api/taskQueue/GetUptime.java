@@ -121,4 +121,9 @@ public class GetUptime extends Request implements Cacheable {
 	public long getTimeout() {
 		return 1000 * 60 * 1;
 	}
+
+	@Override
+	public long getEstimatedSize() {
+		return 512 + (stats != null ? stats.size() * 128L : 0);
+	}
 }
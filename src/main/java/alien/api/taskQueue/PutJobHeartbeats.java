@@ -0,0 +1,47 @@
+package alien.api.taskQueue;
+
+import java.io.IOException;
+import java.util.List;
+
+import alien.api.BinaryInput;
+import alien.taskQueue.JobLogLine;
+import alien.taskQueue.TaskQueueUtils;
+
+/**
+ * Heartbeats of all the jobs running under the same JobRunner, each one carrying the latest resource snapshot of the job (the "proc" line). Checked and encoded as the trace lines of a
+ * {@link PutJobLogBulk}, only accounted separately.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class PutJobHeartbeats extends PutJobLogBulk {
+
+	private static final long serialVersionUID = 4410958321947731210L;
+
+	/**
+	 * @param snapshots
+	 *            latest resource snapshot of each running job
+	 */
+	public PutJobHeartbeats(final List<JobLogLine> snapshots) {
+		super(snapshots);
+	}
+
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	public PutJobHeartbeats(final BinaryInput in) throws IOException {
+		super(in);
+	}
+
+	@Override
+	protected boolean write(final List<JobLogLine> toWrite) {
+		return TaskQueueUtils.putJobHeartbeats(toWrite);
+	}
+
+	@Override
+	public String toString() {
+		return "Asked to put the heartbeats of " + (getLines() != null ? getLines().size() : 0) + " jobs"
+				+ (getKilledJobs() != null && getKilledJobs().size() > 0 ? ", killed jobs: " + getKilledJobs() : "");
+	}
+}
@@ -1,9 +1,14 @@
 package alien.api.taskQueue;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
 import alien.api.Request;
+import alien.api.ServerException;
 import alien.taskQueue.TaskQueueUtils;
 
 /**
@@ -12,7 +17,7 @@ import alien.taskQueue.TaskQueueUtils;
  * @author mmmartin
  * @since Dec 15, 2015
  */
-public class PutJobLog extends Request {
+public class PutJobLog extends Request implements BinaryEncodable {
 	/**
 	 *
 	 */
@@ -36,6 +41,42 @@ public class PutJobLog extends Request {
 		this.message = message;
 	}
 
+	/**
+	 * @param jobnumber
+	 * @param resubmission
+	 * @param tag
+	 * @param message
+	 * @param timestamp
+	 *            epoch time in milliseconds when the line was produced, for lines that are sent later
+	 */
+	public PutJobLog(final long jobnumber, final int resubmission, final String tag, final String message, final long timestamp) {
+		this(jobnumber, resubmission, tag, message);
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	public PutJobLog(final BinaryInput in) throws IOException {
+		super(in);
+		this.jobnumber = in.readLong();
+		this.resubmission = in.readInt();
+		this.tag = in.readString();
+		this.message = in.readString();
+		this.timestamp = in.readLong();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeLong(jobnumber);
+		out.writeInt(resubmission);
+		out.writeString(tag);
+		out.writeString(message);
+		out.writeLong(timestamp);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		return Arrays.asList(String.valueOf(jobnumber), String.valueOf(resubmission), tag, message);
@@ -45,8 +86,10 @@ public class PutJobLog extends Request {
 	public void run() {
 		final int expectedResubmissionCount = TaskQueueUtils.getResubmission(Long.valueOf(jobnumber));
 
-		if (expectedResubmissionCount == resubmission || expectedResubmissionCount == -2)
-			TaskQueueUtils.putJobLog(timestamp, jobnumber, tag, message, null);
+		if (expectedResubmissionCount == resubmission || expectedResubmissionCount == -2) {
+			if (!TaskQueueUtils.putJobLog(timestamp, jobnumber, tag, message, null))
+				setException(new ServerException("Could not insert the trace line", null));
+		}
 		else
 			setException(new JobKilledException("This job is not supposed to be running any more", null));
 
@@ -0,0 +1,168 @@
+package alien.api.taskQueue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
+import alien.api.Request;
+import alien.api.ServerException;
+import alien.taskQueue.JobLogLine;
+import alien.taskQueue.TaskQueueUtils;
+
+/**
+ * Put the trace log lines of one or more jobs in one go, as {@link PutJobLog} does it for a single line. The resubmission counters are checked with a single query, lines of jobs that are not
+ * supposed to run any more are dropped and their job IDs returned, instead of failing the entire request.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class PutJobLogBulk extends Request implements BinaryEncodable {
+
+	private static final long serialVersionUID = -2735518873050148467L;
+
+	private List<JobLogLine> lines;
+
+	private Set<Long> killedJobs = null;
+
+	/**
+	 * @param lines
+	 *            trace lines, in the order they should be written
+	 */
+	public PutJobLogBulk(final List<JobLogLine> lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	public PutJobLogBulk(final BinaryInput in) throws IOException {
+		super(in);
+
+		// queueId, resubmission, timestamp and the lengths of the two strings
+		final int count = in.readCount(28);
+
+		if (count >= 0) {
+			lines = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++)
+				lines.add(new JobLogLine(in.readLong(), in.readInt(), in.readLong(), in.readString(), in.readString()));
+		}
+
+		final int killedCount = in.readCount(8);
+
+		if (killedCount >= 0) {
+			killedJobs = new HashSet<>(killedCount);
+
+			for (int i = 0; i < killedCount; i++)
+				killedJobs.add(Long.valueOf(in.readLong()));
+		}
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+
+		if (lines != null) {
+			out.writeInt(lines.size());
+
+			for (final JobLogLine line : lines) {
+				out.writeLong(line.queueId);
+				out.writeInt(line.resubmission);
+				out.writeLong(line.timestamp);
+				out.writeString(line.tag);
+				out.writeString(line.message);
+			}
+		}
+		else
+			out.writeInt(-1);
+
+		if (killedJobs != null) {
+			out.writeInt(killedJobs.size());
+
+			for (final Long queueId : killedJobs)
+				out.writeLong(queueId.longValue());
+		}
+		else
+			out.writeInt(-1);
+	}
+
+	@Override
+	public List<String> getArguments() {
+		return Arrays.asList(String.valueOf(lines != null ? lines.size() : 0));
+	}
+
+	@Override
+	public void run() {
+		killedJobs = new HashSet<>();
+
+		final Set<Long> queueIds = new LinkedHashSet<>();
+
+		for (final JobLogLine line : lines)
+			queueIds.add(Long.valueOf(line.queueId));
+
+		final Map<Long, Integer> resubmissions = TaskQueueUtils.getResubmissions(queueIds);
+
+		final List<JobLogLine> toWrite;
+
+		if (resubmissions == null) {
+			// as for the individual requests, a database problem doesn't kill the jobs
+			toWrite = lines;
+		}
+		else {
+			toWrite = new ArrayList<>(lines.size());
+
+			for (final JobLogLine line : lines) {
+				final Integer expected = resubmissions.get(Long.valueOf(line.queueId));
+
+				if (expected != null && expected.intValue() == line.resubmission)
+					toWrite.add(line);
+				else
+					killedJobs.add(Long.valueOf(line.queueId));
+			}
+		}
+
+		if (!write(toWrite))
+			setException(new ServerException("Could not insert " + toWrite.size() + " trace lines", null));
+
+		// no need to send them back
+		lines = null;
+	}
+
+	/**
+	 * Record the lines of the jobs that are still supposed to run
+	 *
+	 * @param toWrite
+	 * @return <code>true</code> if everything was recorded
+	 */
+	protected boolean write(final List<JobLogLine> toWrite) {
+		return TaskQueueUtils.putJobLogs(toWrite);
+	}
+
+	/**
+	 * @return the lines to write, <code>null</code> once they were written
+	 */
+	protected List<JobLogLine> getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the jobs that are not supposed to be running any more, their lines were not written
+	 */
+	public Set<Long> getKilledJobs() {
+		return killedJobs;
+	}
+
+	@Override
+	public String toString() {
+		return "Asked to put " + (lines != null ? lines.size() : 0) + " joblog lines" + (killedJobs != null && killedJobs.size() > 0 ? ", killed jobs: " + killedJobs : "");
+	}
+}
@@ -1,9 +1,13 @@
 package alien.api.taskQueue;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
+import alien.api.BinaryEncodable;
+import alien.api.BinaryInput;
+import alien.api.BinaryOutput;
 import alien.api.Request;
 import alien.api.ServerException;
 import alien.taskQueue.JobStatus;
@@ -16,7 +20,7 @@ import alien.user.AliEnPrincipal;
  * @author ron
  * @since Jun 05, 2011
  */
-public class SetJobStatus extends Request {
+public class SetJobStatus extends Request implements BinaryEncodable {
 	/**
 	 *
 	 */
@@ -51,6 +55,27 @@ public class SetJobStatus extends Request {
 		this.extrafields = extrafields;
 	}
 
+	/**
+	 * @param in
+	 * @throws IOException
+	 */
+	public SetJobStatus(final BinaryInput in) throws IOException {
+		super(in);
+		this.jobnumber = in.readLong();
+		this.resubmission = in.readInt();
+		this.status = in.readEnum(JobStatus.class);
+		this.extrafields = in.readMap();
+	}
+
+	@Override
+	public void writeBinary(final BinaryOutput out) throws IOException {
+		writeRequestHeader(out);
+		out.writeLong(jobnumber);
+		out.writeInt(resubmission);
+		out.writeEnum(status);
+		out.writeMap(extrafields);
+	}
+
 	@Override
 	public List<String> getArguments() {
 		return Arrays.asList(jobnumber + "/" + resubmission, status != null ? status.toString() : null, extrafields != null ? extrafields.toString() : null);
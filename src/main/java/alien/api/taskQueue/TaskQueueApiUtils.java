@@ -13,6 +13,7 @@ import alien.quotas.Quota;
 import alien.shell.commands.JAliEnCOMMander;
 import alien.taskQueue.JDL;
 import alien.taskQueue.Job;
+import alien.taskQueue.JobLogLine;
 import alien.taskQueue.JobStatus;
 import alien.user.AliEnPrincipal;
 
@@ -370,6 +371,22 @@ public class TaskQueueApiUtils {
 		return true;
 	}
 
+	/**
+	 * Send many trace lines, of one or more jobs, in one request
+	 *
+	 * @param lines
+	 *            trace lines, in the order they should be written
+	 * @return the jobs that are not supposed to run any more, whose lines were dropped
+	 * @throws ServerException
+	 *             if the lines could not be delivered
+	 */
+	@SuppressWarnings("static-method")
+	public Set<Long> putJobLogs(final List<JobLogLine> lines) throws ServerException {
+		final PutJobLogBulk request = Dispatcher.execute(new PutJobLogBulk(lines));
+
+		return request.getKilledJobs();
+	}
+
 	/**
 	 * @param user
 	 * @param fld
@@ -0,0 +1,158 @@
+package alien.catalogue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+
+/**
+ * Asynchronous execution of the Cassandra catalogue queries. The number of requests in flight from this JVM is bounded by <code>alien.catalogue.CassandraExecutor.maxInFlight</code>, callers
+ * block when the limit is reached instead of filling the driver queues. The per host limit is set on the connection pool, see {@link alien.test.cassandra.DBCassandra}.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class CassandraExecutor {
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(CassandraExecutor.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(CassandraExecutor.class.getCanonicalName());
+
+	private static final Semaphore inFlight = new Semaphore(ConfigUtils.getConfig().geti("alien.catalogue.CassandraExecutor.maxInFlight", 1024));
+
+	/**
+	 * Prepared statements by query, shared by all threads. The future is cached so that concurrent callers wait for the same preparation.
+	 */
+	private static final ConcurrentHashMap<String, ListenableFuture<PreparedStatement>> preparedStatements = new ConcurrentHashMap<>();
+
+	/**
+	 * Threads that process the query results. The driver I/O threads only complete the futures, anything that could issue new queries (and block on the in-flight limit) runs here.
+	 */
+	static final ThreadPoolExecutor callbacks = (ThreadPoolExecutor) Executors.newFixedThreadPool(ConfigUtils.getConfig().geti("alien.catalogue.CassandraExecutor.callbackThreads",
+			Runtime.getRuntime().availableProcessors() * 2), r -> {
+				final Thread t = new Thread(r, "CassandraExecutor");
+				t.setDaemon(true);
+				return t;
+			});
+
+	static {
+		callbacks.setKeepAliveTime(1, TimeUnit.MINUTES);
+		callbacks.allowCoreThreadTimeOut(true);
+
+		if (monitor != null)
+			monitor.addMonitoring("in_flight", (names, values) -> {
+				names.add("available_permits");
+				values.add(Double.valueOf(inFlight.availablePermits()));
+
+				names.add("prepared_statements");
+				values.add(Double.valueOf(preparedStatements.size()));
+			});
+	}
+
+	private CassandraExecutor() {
+		// static methods only
+	}
+
+	/**
+	 * @return executor for the continuations of the asynchronous queries
+	 */
+	static Executor callbackExecutor() {
+		return callbacks;
+	}
+
+	/**
+	 * Send a query without waiting for its result, blocking only while the in-flight limit is reached
+	 *
+	 * @param session
+	 * @param statement
+	 * @return the future result
+	 */
+	static ResultSetFuture executeAsync(final Session session, final Statement statement) {
+		inFlight.acquireUninterruptibly();
+
+		final ResultSetFuture future;
+
+		try {
+			future = session.executeAsync(statement);
+		}
+		catch (final RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+
+		future.addListener(inFlight::release, MoreExecutors.directExecutor());
+
+		if (monitor != null)
+			monitor.incrementCounter("queries");
+
+		return future;
+	}
+
+	/**
+	 * Synchronous query, subject to the same in-flight limit as the asynchronous ones
+	 *
+	 * @param session
+	 * @param statement
+	 * @return the result
+	 */
+	static ResultSet execute(final Session session, final Statement statement) {
+		return executeAsync(session, statement).getUninterruptibly();
+	}
+
+	/**
+	 * @param session
+	 * @param query
+	 * @return the prepared statement for this query, prepared only once per JVM
+	 */
+	static PreparedStatement prepare(final Session session, final String query) {
+		ListenableFuture<PreparedStatement> future = preparedStatements.get(query);
+
+		if (future == null) {
+			final ListenableFuture<PreparedStatement> newFuture = session.prepareAsync(query);
+
+			future = preparedStatements.putIfAbsent(query, newFuture);
+
+			if (future == null) {
+				future = newFuture;
+				logger.info("Adding PreparedStatement to pool: " + query);
+			}
+		}
+
+		try {
+			return Uninterruptibles.getUninterruptibly(future);
+		}
+		catch (final ExecutionException e) {
+			// let the next caller try again
+			preparedStatements.remove(query, future);
+
+			final Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+
+			throw new IllegalStateException("Cannot prepare " + query, cause);
+		}
+	}
+}
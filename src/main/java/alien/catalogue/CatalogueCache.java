@@ -0,0 +1,492 @@
+package alien.catalogue;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import lazyj.cache.ExpirationCache;
+
+/**
+ * In-memory cache of the LFN and GUID catalogue entries for the central services, so that hot paths (user home directories, OCDB entries, the parent directories of everything) are not read
+ * from the database on every lookup.
+ * <ul>
+ * <li>existing entries are kept for <code>alien.catalogue.CatalogueCache.lifetime</code> seconds (default 60), in LRU maps bounded to <code>alien.catalogue.CatalogueCache.lfnSize</code> and
+ * <code>alien.catalogue.CatalogueCache.guidSize</code> entries</li>
+ * <li>lookups that didn't find anything are remembered for a much shorter time, <code>alien.catalogue.CatalogueCache.negativeLifetime</code> seconds (default 5)</li>
+ * <li>entries are dropped as soon as this JVM has changed them ({@link LFN#insert()}, {@link LFN#update()}, {@link LFN#delete(boolean, boolean, boolean)}, {@link GUID#update()},
+ * {@link GUID#delete(boolean)}, which all the higher level operations end up calling). Each key has a version that the invalidation increments, so that a lookup that
+ * raced with a change of the same entry doesn't put the old value back. Changes done by other central service instances are seen once the cached copy expires.</li>
+ * <li>the objects are mutable, so callers always get their own copy of the cached entry</li>
+ * <li>a request can ask for fresh values with {@link alien.api.Request#setBypassCache(boolean)}, which ends up calling {@link #setBypass(boolean)} for the thread executing it</li>
+ * </ul>
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class CatalogueCache {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(CatalogueCache.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(CatalogueCache.class.getCanonicalName());
+
+	private static final boolean enabled = ConfigUtils.getConfig().getb("alien.catalogue.CatalogueCache.enabled", true);
+
+	private static final long lifetime = ConfigUtils.getConfig().getl("alien.catalogue.CatalogueCache.lifetime", 60) * 1000;
+
+	private static final long negativeLifetime = ConfigUtils.getConfig().getl("alien.catalogue.CatalogueCache.negativeLifetime", 5) * 1000;
+
+	/**
+	 * Marker for a lookup that didn't find anything
+	 */
+	private static final Object MISSING = new Object();
+
+	/**
+	 * Number of version slots of each map, the keys are spread over them by their hash
+	 */
+	private static final int VERSION_SLOTS = 4096;
+
+	/**
+	 * Cached values and the versions of their keys
+	 *
+	 * @param <K>
+	 *            key type
+	 */
+	static final class Entries<K> {
+		private final ExpirationCache<K, Object> cache;
+
+		/**
+		 * Keys sharing a slot only cost each other an occasional skipped insert
+		 */
+		private final AtomicLongArray versions = new AtomicLongArray(VERSION_SLOTS);
+
+		/**
+		 * @param size
+		 *            maximum number of entries
+		 */
+		Entries(final int size) {
+			cache = new ExpirationCache<>(size);
+		}
+
+		private static int slot(final Object key) {
+			final int h = key.hashCode();
+
+			return (h ^ (h >>> 16)) & (VERSION_SLOTS - 1);
+		}
+
+		/**
+		 * @param key
+		 * @return the cached value, if any
+		 */
+		Object get(final K key) {
+			return cache.get(key);
+		}
+
+		/**
+		 * To be called before reading the value from the database, and passed back to {@link #put(Object, Object, long, long)}
+		 *
+		 * @param key
+		 * @return the current version of the key
+		 */
+		long version(final K key) {
+			return versions.get(slot(key));
+		}
+
+		/**
+		 * @param key
+		 * @param readVersion
+		 * @return <code>true</code> if the key was invalidated since this version was taken
+		 */
+		boolean changed(final K key, final long readVersion) {
+			return versions.get(slot(key)) != readVersion;
+		}
+
+		/**
+		 * Remember a value, unless the key was invalidated since it was read
+		 *
+		 * @param key
+		 * @param value
+		 * @param lifetime
+		 *            in milliseconds
+		 * @param readVersion
+		 *            value of {@link #version(Object)} before the value was read
+		 * @return <code>true</code> if the value was kept
+		 */
+		boolean put(final K key, final Object value, final long lifetime, final long readVersion) {
+			if (changed(key, readVersion))
+				return false;
+
+			cache.overwrite(key, value, lifetime);
+
+			// an invalidation that came in between might have missed the new entry
+			if (changed(key, readVersion)) {
+				cache.remove(key);
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Forget about a key, to be called after its entry was changed in the database
+		 *
+		 * @param key
+		 */
+		void invalidate(final K key) {
+			versions.incrementAndGet(slot(key));
+
+			cache.remove(key);
+		}
+
+		/**
+		 * Forget everything
+		 */
+		void clear() {
+			for (int i = 0; i < VERSION_SLOTS; i++)
+				versions.incrementAndGet(i);
+
+			for (final K key : cache.getKeys())
+				cache.remove(key);
+		}
+	}
+
+	/**
+	 * LFN or MISSING by the path that was looked up, relative to its index table
+	 */
+	private static final Entries<String> lfnByPath = new Entries<>(ConfigUtils.getConfig().geti("alien.catalogue.CatalogueCache.lfnSize", 100000));
+
+	/**
+	 * LFN by the entryId in its table, for the parent directory resolution
+	 */
+	private static final Entries<String> lfnById = new Entries<>(ConfigUtils.getConfig().geti("alien.catalogue.CatalogueCache.lfnSize", 100000));
+
+	/**
+	 * GUID or MISSING by UUID
+	 */
+	private static final Entries<UUID> guids = new Entries<>(ConfigUtils.getConfig().geti("alien.catalogue.CatalogueCache.guidSize", 100000));
+
+	private static final ThreadLocal<Boolean> bypass = new ThreadLocal<>();
+
+	private CatalogueCache() {
+		// static methods only
+	}
+
+	/**
+	 * Skip the cache for the lookups done by the current thread, until called again with <code>false</code>. The new values that are read from the database still go to the cache.
+	 *
+	 * @param skip
+	 * @return the previous setting, to be restored afterwards
+	 */
+	public static boolean setBypass(final boolean skip) {
+		final Boolean previous = bypass.get();
+
+		if (skip)
+			bypass.set(Boolean.TRUE);
+		else
+			bypass.remove();
+
+		return previous != null && previous.booleanValue();
+	}
+
+	/**
+	 * @return <code>true</code> if the cache can be used by the current thread
+	 */
+	private static boolean active() {
+		return enabled && ConfigUtils.isCentralService();
+	}
+
+	private static boolean readable() {
+		return active() && bypass.get() == null;
+	}
+
+	private static String pathKey(final IndexTableEntry ite, final String relativePath) {
+		return ite.hostIndex + "/" + ite.tableName + "/" + ite.indexId + ":" + relativePath;
+	}
+
+	private static String idKey(final IndexTableEntry ite, final long entryId) {
+		return ite.hostIndex + "/" + ite.tableName + "/" + ite.indexId + "#" + entryId;
+	}
+
+	/**
+	 * To be called before reading an entry by path from the database, and the value passed back to the <code>putLFN</code> call that remembers what was read
+	 *
+	 * @param ite
+	 * @param relativePath
+	 * @return the current version of this entry
+	 */
+	static long lfnVersion(final IndexTableEntry ite, final String relativePath) {
+		return lfnByPath.version(pathKey(ite, relativePath));
+	}
+
+	/**
+	 * To be called before reading an entry by ID from the database, and the value passed back to the <code>putLFN</code> call that remembers what was read
+	 *
+	 * @param ite
+	 * @param entryId
+	 * @return the current version of this entry
+	 */
+	static long lfnVersion(final IndexTableEntry ite, final long entryId) {
+		return lfnById.version(idKey(ite, entryId));
+	}
+
+	/**
+	 * To be called before reading a GUID from the database, and the value passed back to {@link #putGUID(UUID, GUID, long)}
+	 *
+	 * @param uuid
+	 * @return the current version of this entry
+	 */
+	static long guidVersion(final UUID uuid) {
+		return guids.version(uuid);
+	}
+
+	/**
+	 * Result of a cache lookup
+	 */
+	static final class Lookup<T> {
+		/**
+		 * whether the cache knows the answer
+		 */
+		final boolean found;
+
+		/**
+		 * a private copy of the cached entry, <code>null</code> if the entry is known not to exist
+		 */
+		final T value;
+
+		Lookup(final boolean found, final T value) {
+			this.found = found;
+			this.value = value;
+		}
+	}
+
+	private static final Lookup<LFN> LFN_UNKNOWN = new Lookup<>(false, null);
+
+	private static final Lookup<LFN> LFN_MISSING = new Lookup<>(true, null);
+
+	private static final Lookup<GUID> GUID_UNKNOWN = new Lookup<>(false, null);
+
+	private static final Lookup<GUID> GUID_MISSING = new Lookup<>(true, null);
+
+	/**
+	 * @param ite
+	 * @param relativePath
+	 *            path as it is looked up in the table
+	 * @return the cached entry, if any
+	 */
+	static Lookup<LFN> getLFN(final IndexTableEntry ite, final String relativePath) {
+		if (!readable())
+			return LFN_UNKNOWN;
+
+		final Object o = lfnByPath.get(pathKey(ite, relativePath));
+
+		if (o == null) {
+			if (monitor != null)
+				monitor.incrementCacheMisses("lfn");
+
+			return LFN_UNKNOWN;
+		}
+
+		if (o == MISSING) {
+			if (monitor != null)
+				monitor.incrementCounter("lfn_negative_hits");
+
+			return LFN_MISSING;
+		}
+
+		if (monitor != null)
+			monitor.incrementCacheHits("lfn");
+
+		return new Lookup<>(true, new LFN((LFN) o));
+	}
+
+	/**
+	 * @param ite
+	 * @param entryId
+	 * @return a copy of the cached entry, or <code>null</code> if not known
+	 */
+	static LFN getLFN(final IndexTableEntry ite, final long entryId) {
+		if (!readable())
+			return null;
+
+		final LFN l = (LFN) lfnById.get(idKey(ite, entryId));
+
+		if (l == null) {
+			if (monitor != null)
+				monitor.incrementCacheMisses("lfn_id");
+
+			return null;
+		}
+
+		if (monitor != null)
+			monitor.incrementCacheHits("lfn_id");
+
+		return new LFN(l);
+	}
+
+	/**
+	 * Remember the outcome of a lookup by path
+	 *
+	 * @param ite
+	 * @param relativePath
+	 * @param l
+	 *            the entry that was found, or <code>null</code> if there is none
+	 * @param readVersion
+	 *            value of {@link #lfnVersion(IndexTableEntry, String)} before the database was queried
+	 */
+	static void putLFN(final IndexTableEntry ite, final String relativePath, final LFN l, final long readVersion) {
+		if (!active())
+			return;
+
+		final String key = pathKey(ite, relativePath);
+
+		if (l == null) {
+			lfnByPath.put(key, MISSING, negativeLifetime, readVersion);
+			return;
+		}
+
+		final LFN copy = new LFN(l);
+
+		if (!lfnByPath.put(key, copy, lifetime, readVersion))
+			return;
+
+		// an invalidation of the entry covers both keys
+		final String idKey = idKey(ite, l.entryId);
+
+		lfnById.put(idKey, copy, lifetime, lfnById.version(idKey));
+
+		if (lfnByPath.changed(key, readVersion))
+			lfnById.invalidate(idKey);
+	}
+
+	/**
+	 * Remember an entry that was read by its ID
+	 *
+	 * @param ite
+	 * @param l
+	 * @param readVersion
+	 *            value of {@link #lfnVersion(IndexTableEntry, long)} before the database was queried
+	 */
+	static void putLFN(final IndexTableEntry ite, final LFN l, final long readVersion) {
+		if (!active() || l == null)
+			return;
+
+		lfnById.put(idKey(ite, l.entryId), new LFN(l), lifetime, readVersion);
+	}
+
+	/**
+	 * Forget everything about this entry, to be called after it was changed in the database
+	 *
+	 * @param l
+	 */
+	static void invalidate(final LFN l) {
+		if (!active() || l == null || l.indexTableEntry == null || l.lfn == null)
+			return;
+
+		String path = l.lfn;
+
+		while (path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+
+		lfnByPath.invalidate(pathKey(l.indexTableEntry, path));
+		lfnByPath.invalidate(pathKey(l.indexTableEntry, path + "/"));
+
+		if (l.entryId > 0)
+			lfnById.invalidate(idKey(l.indexTableEntry, l.entryId));
+
+		if (monitor != null)
+			monitor.incrementCounter("lfn_invalidations");
+	}
+
+	/**
+	 * @param uuid
+	 * @return the cached entry, if any
+	 */
+	static Lookup<GUID> getGUID(final UUID uuid) {
+		if (!readable())
+			return GUID_UNKNOWN;
+
+		final Object o = guids.get(uuid);
+
+		if (o == null) {
+			if (monitor != null)
+				monitor.incrementCacheMisses("guid");
+
+			return GUID_UNKNOWN;
+		}
+
+		if (o == MISSING) {
+			if (monitor != null)
+				monitor.incrementCounter("guid_negative_hits");
+
+			return GUID_MISSING;
+		}
+
+		if (monitor != null)
+			monitor.incrementCacheHits("guid");
+
+		return new Lookup<>(true, new GUID((GUID) o));
+	}
+
+	/**
+	 * Remember the outcome of a GUID lookup
+	 *
+	 * @param uuid
+	 * @param g
+	 *            the entry that was found, or <code>null</code> if there is none
+	 * @param readVersion
+	 *            value of {@link #guidVersion(UUID)} before the database was queried
+	 */
+	static void putGUID(final UUID uuid, final GUID g, final long readVersion) {
+		if (!active())
+			return;
+
+		if (g == null)
+			guids.put(uuid, MISSING, negativeLifetime, readVersion);
+		else
+			guids.put(uuid, new GUID(g), lifetime, readVersion);
+	}
+
+	/**
+	 * Forget about this GUID, to be called after it was changed in the database
+	 *
+	 * @param uuid
+	 */
+	static void invalidate(final UUID uuid) {
+		if (!active() || uuid == null)
+			return;
+
+		guids.invalidate(uuid);
+
+		if (monitor != null)
+			monitor.incrementCounter("guid_invalidations");
+	}
+
+	/**
+	 * Drop all the cached LFNs, after bulk changes that cannot be tracked entry by entry
+	 */
+	static void clearLFNs() {
+		lfnByPath.clear();
+		lfnById.clear();
+
+		if (monitor != null)
+			monitor.incrementCounter("lfn_flushes");
+	}
+
+	/**
+	 * Drop all the cached GUIDs, after bulk changes that cannot be tracked entry by entry
+	 */
+	static void clearGUIDs() {
+		guids.clear();
+
+		if (monitor != null)
+			monitor.incrementCounter("guid_flushes");
+	}
+}
@@ -214,7 +214,7 @@ public final class CatalogueUtils {
 	}
 
 	private static List<IndexTableEntry> indextable = null;
-	private static Map<String, IndexTableEntry> tableentries = null;
+	private static volatile IndexTableTrie indextableIndex = null;
 	private static volatile long lastIndexTableUpdate = 0;
 	private static volatile long lastIndexTableCheck = 0;
 
@@ -267,21 +267,15 @@ public final class CatalogueUtils {
 
 								if (db.query("SELECT SQL_NO_CACHE * FROM INDEXTABLE order by length(lfn) desc,lfn;")) {
 									final List<IndexTableEntry> newIndextable = new ArrayList<>();
-									final Map<String, IndexTableEntry> newTableentries = new HashMap<>();
 
-									while (db.moveNext()) {
-										final IndexTableEntry entry = new IndexTableEntry(db);
-
-										newIndextable.add(entry);
-
-										newTableentries.put(db.gets("lfn"), entry);
-									}
+									while (db.moveNext())
+										newIndextable.add(new IndexTableEntry(db));
 
 									if (newIndextable.size() > 0) {
 										logger.log(Level.FINER, "INDEXTABLE cache updated successfully");
 
+										indextableIndex = new IndexTableTrie(newIndextable);
 										indextable = newIndextable;
-										tableentries = newTableentries;
 
 										lastIndexTableCheck = lastIndexTableUpdate = System.currentTimeMillis();
 									}
@@ -403,14 +397,12 @@ public final class CatalogueUtils {
 	public static IndexTableEntry getIndexTable(final int hostId, final int tableName) {
 		updateIndexTableCache();
 
-		if (indextable == null)
-			return null;
+		final IndexTableTrie index = indextableIndex;
 
-		for (final IndexTableEntry ite : indextable)
-			if (ite.tableName == tableName && ite.hostIndex == hostId)
-				return ite;
+		if (index == null)
+			return null;
 
-		return null;
+		return index.get(hostId, tableName);
 	}
 
 	/**
@@ -434,29 +426,15 @@ public final class CatalogueUtils {
 	public static IndexTableEntry getClosestMatch(final String pattern) {
 		updateIndexTableCache();
 
-		if (indextable == null)
+		final IndexTableTrie index = indextableIndex;
+
+		if (index == null)
 			return null;
 
 		if (monitor != null)
 			monitor.incrementCounter("INDEXTABLE_lookup");
 
-		String searchFor = pattern;
-
-		while (searchFor.length() > 0) {
-			final IndexTableEntry entry = tableentries.get(searchFor);
-
-			if (entry != null)
-				return entry;
-
-			final int idx = searchFor.lastIndexOf('/', searchFor.length() - 2);
-
-			if (idx >= 0)
-				searchFor = searchFor.substring(0, idx + 1);
-			else
-				break;
-		}
-
-		return null;
+		return index.getClosestMatch(pattern);
 	}
 
 	/**
@@ -473,9 +451,7 @@ public final class CatalogueUtils {
 
 		ret.add(best);
 
-		for (final IndexTableEntry ite : indextable)
-			if (ite.lfn.startsWith(pattern))
-				ret.add(ite);
+		ret.addAll(indextableIndex.getSubtree(pattern));
 
 		return ret;
 	}
@@ -504,10 +480,15 @@ public final class CatalogueUtils {
 
 		updateIndexTableCache();
 
+		final IndexTableTrie index = indextableIndex;
+
+		if (index == null)
+			return null;
+
 		if (!path.endsWith("/"))
-			return tableentries.get(path + "/");
+			return index.get(path + "/");
 
-		return tableentries.get(path);
+		return index.get(path);
 	}
 
 	/**
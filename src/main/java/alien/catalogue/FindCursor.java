@@ -0,0 +1,130 @@
+package alien.catalogue;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming result of a find over all the L%L tables below a path. The tables are queried one after the other, each through a {@link TableFindCursor}, so at most one database connection is held at any
+ * time. In sorted mode the tables are visited in their natural order and each of them returns its rows in the order of its <code>lfn</code> index, so no global sorting is needed. Within a
+ * table this is the column collation order, which can differ from {@link LFN#compareTo(LFN)} for mixed case names.
+ * The position of the iteration ({@link #getTableIndex()}, {@link #getLastKey()}) can be given to a new cursor to continue from the next entry.
+ *
+ * @author costing
+ * @since 2024-03-18
+ * @see LFNUtils#openFind(String, String, int, Long, long, Collection, int, String)
+ */
+public final class FindCursor implements Iterator<LFN>, Closeable {
+
+	private final List<IndexTableEntry> tables;
+
+	private final String path;
+	private final String pattern;
+	private final int flags;
+	private final Long queueid;
+	private final Collection<String> excludedPatterns;
+
+	private final long limit;
+
+	private long returned = 0;
+
+	private int tableIndex;
+
+	private String resumeAfter;
+
+	private TableFindCursor current = null;
+
+	private String lastKey;
+
+	private boolean failed = false;
+
+	FindCursor(final List<IndexTableEntry> tables, final String path, final String pattern, final int flags, final Long queueid, final long limit, final Collection<String> excludedPatterns,
+			final int startTable, final String resumeAfter) {
+		this.tables = tables;
+		this.path = path;
+		this.pattern = pattern;
+		this.flags = flags;
+		this.queueid = queueid;
+		this.limit = limit;
+		this.excludedPatterns = excludedPatterns;
+
+		this.tableIndex = startTable;
+		this.resumeAfter = resumeAfter;
+		this.lastKey = resumeAfter;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (failed || (limit > 0 && returned >= limit))
+			return false;
+
+		while (current == null || !current.hasNext()) {
+			if (current != null) {
+				current.close();
+
+				if (current.isFailed()) {
+					failed = true;
+					current = null;
+					return false;
+				}
+
+				current = null;
+
+				// move to the next table only after the current one was fully consumed
+				tableIndex++;
+				resumeAfter = lastKey = null;
+			}
+
+			if (tableIndex >= tables.size())
+				return false;
+
+			current = tables.get(tableIndex).openFind(path, pattern, flags, queueid, limit > 0 ? limit - returned : 0, excludedPatterns, resumeAfter);
+		}
+
+		return true;
+	}
+
+	@Override
+	public LFN next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		final LFN ret = current.next();
+
+		lastKey = current.getLastKey();
+		returned++;
+
+		return ret;
+	}
+
+	/**
+	 * @return index of the table that the last returned entry comes from
+	 */
+	public int getTableIndex() {
+		return tableIndex;
+	}
+
+	/**
+	 * @return key of the last returned entry in its table, <code>null</code> if nothing was returned from it yet
+	 */
+	public String getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * @return <code>true</code> if any of the table queries failed, in which case the iteration stops early
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public void close() {
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+	}
+}
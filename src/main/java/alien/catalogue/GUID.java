@@ -186,6 +186,32 @@ public class GUID implements Comparable<GUID>, CatalogEntity {
 		this.tableName = 0;
 	}
 
+	/**
+	 * Copy of another entry, without the PFN and LFN caches, for {@link CatalogueCache}
+	 *
+	 * @param other
+	 */
+	GUID(final GUID other) {
+		guidId = other.guidId;
+		ctime = other.ctime != null ? new Date(other.ctime.getTime()) : null;
+		owner = other.owner;
+		ref = other.ref;
+		seStringList = other.seStringList != null ? new LinkedHashSet<>(other.seStringList) : null;
+		seAutoStringList = other.seAutoStringList != null ? new LinkedHashSet<>(other.seAutoStringList) : null;
+		aclId = other.aclId;
+		expiretime = other.expiretime != null ? new Date(other.expiretime.getTime()) : null;
+		size = other.size;
+		gowner = other.gowner;
+		guid = other.guid;
+		type = other.type;
+		md5 = other.md5;
+		perm = other.perm;
+		host = other.host;
+		tableName = other.tableName;
+		jobid = other.jobid;
+		exists = other.exists;
+	}
+
 	private void init(final DBFunctions db) {
 		guidId = db.geti("guidId");
 
@@ -283,6 +309,9 @@ public class GUID implements Comparable<GUID>, CatalogEntity {
 				// the entry did not exist in fact, what's going on?
 				return false;
 		}
+		finally {
+			CatalogueCache.invalidate(guid);
+		}
 
 		if (monitor != null)
 			monitor.incrementCounter("GUID_db_update");
@@ -410,6 +439,18 @@ public class GUID implements Comparable<GUID>, CatalogEntity {
 		pfnCache = null;
 	}
 
+	/**
+	 * Set the PFNs of this GUID when they were looked up in bulk, to avoid reading them again from the database
+	 *
+	 * @param pfns
+	 */
+	void setPFNCache(final Set<PFN> pfns) {
+		for (final PFN pfn : pfns)
+			pfn.setGUID(this);
+
+		pfnCache = pfns;
+	}
+
 	/**
 	 * Get the PFNs for this GUID
 	 *
@@ -700,6 +741,8 @@ public class GUID implements Comparable<GUID>, CatalogEntity {
 
 			removed = db.query(delQuery, false, iId);
 
+			CatalogueCache.invalidate(guid);
+
 			if (removed)
 				if (db.getUpdateCount() <= 0)
 					removed = false;
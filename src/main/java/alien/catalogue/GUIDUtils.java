@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -445,6 +446,35 @@ public final class GUIDUtils {
 		return ret;
 	}
 
+	/**
+	 * Bulk operation to retrieve GUID objects together with their PFNs, with one query per G*L table for each of them
+	 *
+	 * @param guidList
+	 *            List of UUIDs to retrieve the GUIDs for
+	 * @return the GUIDs that could be looked up in the catalogue, with their PFN cache already filled
+	 */
+	public static Map<UUID, GUID> getGUIDsWithPFNs(final Collection<UUID> guidList) {
+		final Map<UUID, GUID> ret = new HashMap<>();
+
+		if (guidList == null || guidList.isEmpty())
+			return ret;
+
+		final UUID[] uuids = guidList.toArray(new UUID[0]);
+
+		for (final GUID g : getGUIDs(uuids))
+			ret.put(g.guid, g);
+
+		final Map<UUID, Set<PFN>> pfns = getPFNs(uuids);
+
+		for (final GUID g : ret.values()) {
+			final Set<PFN> guidPFNs = pfns.get(g.guid);
+
+			g.setPFNCache(guidPFNs != null ? guidPFNs : new LinkedHashSet<>());
+		}
+
+		return ret;
+	}
+
 	/**
 	 * Get the GUID catalogue entry when the uuid is known
 	 *
@@ -454,6 +484,17 @@ public final class GUIDUtils {
 	 * @return the GUID, or <code>null</code> if it cannot be located
 	 */
 	public static GUID getGUID(final UUID guid, final boolean evenIfDoesntExist) {
+		final CatalogueCache.Lookup<GUID> cached = CatalogueCache.getGUID(guid);
+
+		if (cached.found) {
+			if (cached.value == null && evenIfDoesntExist)
+				return new GUID(guid);
+
+			return cached.value;
+		}
+
+		final long cacheVersion = CatalogueCache.guidVersion(guid);
+
 		final int host = getGUIDHost(guid);
 
 		if (host < 0)
@@ -481,6 +522,8 @@ public final class GUIDUtils {
 				throw new IllegalStateException("Failed querying the G" + tableName + "L table for guid " + guid);
 
 			if (!db.moveNext()) {
+				CatalogueCache.putGUID(guid, null, cacheVersion);
+
 				if (evenIfDoesntExist)
 					return new GUID(guid);
 
@@ -488,7 +531,11 @@ public final class GUIDUtils {
 			}
 
 			try {
-				return new GUID(db, host, tableName);
+				final GUID ret = new GUID(db, host, tableName);
+
+				CatalogueCache.putGUID(guid, ret, cacheVersion);
+
+				return ret;
 			}
 			catch (final Exception e) {
 				logger.log(Level.WARNING, "Exception instantiating guid " + guid + " from " + tableName, e);
@@ -732,8 +779,19 @@ public final class GUIDUtils {
 	 * @throws IOException
 	 */
 	public static GUID createGuid(final File f, final AliEnPrincipal user) throws IOException {
-		final String md5 = IOUtils.getMD5(f);
+		return createGuid(f, user, IOUtils.getMD5(f));
+	}
 
+	/**
+	 * @param f
+	 *            base file to fill the properties from: ctime, sizeSystem.
+	 * @param user
+	 *            who owns this new entry
+	 * @param md5
+	 *            MD5 checksum of the file, already known to the caller
+	 * @return the newly created GUID
+	 */
+	public static GUID createGuid(final File f, final AliEnPrincipal user, final String md5) {
 		final GUID guid = createGuid(user);
 
 		guid.ctime = new Date(f.lastModified());
@@ -881,6 +939,8 @@ public final class GUIDUtils {
 			if (db.getUpdateCount() == 0)
 				return false;
 
+			CatalogueCache.invalidate(guid);
+
 			final List<LFN> lfns = LFNUtils.getLFNsFromUUIDs(Set.of(guid));
 
 			for (final LFN lfn : lfns) {
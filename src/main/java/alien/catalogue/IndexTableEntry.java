@@ -75,6 +75,23 @@ public class IndexTableEntry implements Serializable, Comparable<IndexTableEntry
 		hashCode = hostIndex * 13 + tableName * 29 + indexId * 43;
 	}
 
+	/**
+	 * Build an entry from known values, for tools that don't read INDEXTABLE
+	 *
+	 * @param indexId
+	 * @param hostIndex
+	 * @param tableName
+	 * @param lfn
+	 */
+	public IndexTableEntry(final int indexId, final int hostIndex, final int tableName, final String lfn) {
+		this.indexId = indexId;
+		this.hostIndex = hostIndex;
+		this.tableName = tableName;
+		this.lfn = StringFactory.get(lfn);
+
+		hashCode = hostIndex * 13 + tableName * 29 + indexId * 43;
+	}
+
 	@Override
 	public String toString() {
 		return "IndexTableEntry indexId: " + indexId + "\n" + "hostIndex\t\t: " + hostIndex + "\n" + "tableName\t\t: " + tableName + "\n" + "lfn\t\t\t: " + lfn + "\n";
@@ -286,6 +303,17 @@ public class IndexTableEntry implements Serializable, Comparable<IndexTableEntry
 		if (sSearch.startsWith("/"))
 			sSearch = sSearch.substring(lfn.length());
 
+		final CatalogueCache.Lookup<LFN> cached = CatalogueCache.getLFN(this, sSearch);
+
+		if (cached.found) {
+			if (cached.value == null && evenIfDoesntExist)
+				return new LFN(sPath, this);
+
+			return cached.value;
+		}
+
+		final long cacheVersion = CatalogueCache.lfnVersion(this, sSearch);
+
 		try (DBFunctions db = getDB()) {
 			if (db == null)
 				return null;
@@ -310,13 +338,19 @@ public class IndexTableEntry implements Serializable, Comparable<IndexTableEntry
 				if (logger.isLoggable(Level.FINE))
 					logger.log(Level.FINE, "Empty result set for " + q + " and " + sSearch);
 
+				CatalogueCache.putLFN(this, sSearch, null, cacheVersion);
+
 				if (evenIfDoesntExist)
 					return new LFN(sPath, this);
 
 				return null;
 			}
 
-			return new LFN(db, this);
+			final LFN ret = new LFN(db, this);
+
+			CatalogueCache.putLFN(this, sSearch, ret, cacheVersion);
+
+			return ret;
 		}
 	}
 
@@ -372,121 +406,169 @@ public class IndexTableEntry implements Serializable, Comparable<IndexTableEntry
 
 			final List<LFN> ret = new ArrayList<>();
 
-			String sSearchBase = sPath;
+			String q = getFindQuery(sPath, sPattern, flags, queueid, excludePatterns);
 
-			if (sSearchBase.startsWith("/"))
-				if (lfn.length() <= sSearchBase.length()) {
-					sSearchBase = sSearchBase.substring(lfn.length());
+			if (limit > 0)
+				q += " LIMIT " + limit;
 
-					if (sSearchBase.startsWith("/"))
-						sSearchBase = sSearchBase.substring(1);
-				}
-				else
-					sSearchBase = "";
+			db.setReadOnly(true);
+
+			if (!db.query(q))
+				return null;
 
-			String q = "SELECT * FROM L" + tableName + "L ";
+			while (db.moveNext()) {
+				final LFN l = new LFN(db, this);
 
-			if (forceLFNIndexUsage)
-				q += "FORCE INDEX (lfn)";
+				ret.add(l);
+			}
 
-			q += " WHERE ";
+			return ret;
+		}
+	}
 
-			if ((flags & LFNUtils.FIND_REGEXP) == 0) {
-				String sSearchAlternate = null;
+	/**
+	 * @return the SELECT query for {@link #find(String, String, int, Long, long, Collection)}, without any ordering or limit
+	 */
+	private String getFindQuery(final String sPath, final String sPattern, final int flags, final Long queueid, final Collection<String> excludePatterns) {
+		String sSearchBase = sPath;
 
-				String sSearch = sSearchBase;
+		if (sSearchBase.startsWith("/"))
+			if (lfn.length() <= sSearchBase.length()) {
+				sSearchBase = sSearchBase.substring(lfn.length());
 
-				if (sSearch.length() == 0 && sPattern.startsWith("/")) {
-					sSearch += sPattern.substring(1);
-				}
-				else {
-					if (!sPattern.startsWith("%")) {
-						if (sSearch.endsWith("/") && sPattern.startsWith("/"))
-							sSearchAlternate = sSearch + sPattern.substring(1);
+				if (sSearchBase.startsWith("/"))
+					sSearchBase = sSearchBase.substring(1);
+			}
+			else
+				sSearchBase = "";
 
-						sSearch += "%";
-					}
+		String q = "SELECT * FROM L" + tableName + "L ";
 
-					sSearch += sPattern;
-				}
+		if (forceLFNIndexUsage)
+			q += "FORCE INDEX (lfn)";
 
-				if (!sPattern.endsWith("%")) {
-					sSearch += "%";
+		q += " WHERE ";
+
+		if ((flags & LFNUtils.FIND_REGEXP) == 0) {
+			String sSearchAlternate = null;
+
+			String sSearch = sSearchBase;
 
-					if (sSearchAlternate != null)
-						sSearchAlternate += "%";
+			if (sSearch.length() == 0 && sPattern.startsWith("/")) {
+				sSearch += sPattern.substring(1);
+			}
+			else {
+				if (!sPattern.startsWith("%")) {
+					if (sSearch.endsWith("/") && sPattern.startsWith("/"))
+						sSearchAlternate = sSearch + sPattern.substring(1);
+
+					sSearch += "%";
 				}
 
-				if (sSearchAlternate == null)
-					q += "lfn LIKE '" + Format.escSQL(sSearch) + "'";
-				else
-					q += "(lfn LIKE '" + Format.escSQL(sSearch) + "' OR lfn LIKE '" + Format.escSQL(sSearchAlternate) + "')";
+				sSearch += sPattern;
+			}
+
+			if (!sPattern.endsWith("%")) {
+				sSearch += "%";
 
-				if (excludePatterns != null && excludePatterns.size() > 0)
-					for (String excludePattern : excludePatterns) {
-						sSearchAlternate = null;
+				if (sSearchAlternate != null)
+					sSearchAlternate += "%";
+			}
 
-						sSearch = sSearchBase;
+			if (sSearchAlternate == null)
+				q += "lfn LIKE '" + Format.escSQL(sSearch) + "'";
+			else
+				q += "(lfn LIKE '" + Format.escSQL(sSearch) + "' OR lfn LIKE '" + Format.escSQL(sSearchAlternate) + "')";
 
-						if (sSearch.length() == 0 && excludePattern.startsWith("/")) {
-							sSearch += excludePattern.substring(1);
-						}
-						else {
-							if (!excludePattern.startsWith("%")) {
-								if (sSearch.endsWith("/") && excludePattern.startsWith("/"))
-									sSearchAlternate = sSearch + excludePattern.substring(1);
+			if (excludePatterns != null && excludePatterns.size() > 0)
+				for (String excludePattern : excludePatterns) {
+					sSearchAlternate = null;
 
-								sSearch += "%";
-							}
+					sSearch = sSearchBase;
 
-							sSearch += excludePattern;
-						}
+					if (sSearch.length() == 0 && excludePattern.startsWith("/")) {
+						sSearch += excludePattern.substring(1);
+					}
+					else {
+						if (!excludePattern.startsWith("%")) {
+							if (sSearch.endsWith("/") && excludePattern.startsWith("/"))
+								sSearchAlternate = sSearch + excludePattern.substring(1);
 
-						if (!excludePattern.endsWith("%")) {
 							sSearch += "%";
-
-							if (sSearchAlternate != null)
-								sSearchAlternate += "%";
 						}
 
-						if (sSearchAlternate == null)
-							q += " AND lfn NOT LIKE '" + Format.escSQL(sSearch) + "'";
-						else
-							q += " AND lfn NOT LIKE '" + Format.escSQL(sSearch) + "' AND lfn NOT LIKE '" + Format.escSQL(sSearchAlternate) + "'";
+						sSearch += excludePattern;
 					}
 
-				q += " AND replicated=0";
-			}
-			else {
-				q += "lfn RLIKE '^" + Format.escSQL(sSearchBase + sPattern) + "' AND replicated=0";
+					if (!excludePattern.endsWith("%")) {
+						sSearch += "%";
 
-				if (excludePatterns != null && excludePatterns.size() > 0)
-					for (String excludePattern : excludePatterns)
-						q += " AND lfn NOT RLIKE '^" + Format.escSQL(sSearchBase + excludePattern) + "'";
-			}
+						if (sSearchAlternate != null)
+							sSearchAlternate += "%";
+					}
 
-			if ((flags & LFNUtils.FIND_INCLUDE_DIRS) == 0)
-				q += " AND type!='d'";
+					if (sSearchAlternate == null)
+						q += " AND lfn NOT LIKE '" + Format.escSQL(sSearch) + "'";
+					else
+						q += " AND lfn NOT LIKE '" + Format.escSQL(sSearch) + "' AND lfn NOT LIKE '" + Format.escSQL(sSearchAlternate) + "'";
+				}
 
-			if ((flags & LFNUtils.FIND_FILTER_JOBID) != 0 && queueid != null && queueid.longValue() > 0)
-				q += " AND jobid = " + queueid;
+			q += " AND replicated=0";
+		}
+		else {
+			q += "lfn RLIKE '^" + Format.escSQL(sSearchBase + sPattern) + "' AND replicated=0";
 
-			if (limit > 0)
-				q += " LIMIT " + limit;
+			if (excludePatterns != null && excludePatterns.size() > 0)
+				for (String excludePattern : excludePatterns)
+					q += " AND lfn NOT RLIKE '^" + Format.escSQL(sSearchBase + excludePattern) + "'";
+		}
 
-			db.setReadOnly(true);
+		if ((flags & LFNUtils.FIND_INCLUDE_DIRS) == 0)
+			q += " AND type!='d'";
 
-			if (!db.query(q))
-				return null;
+		if ((flags & LFNUtils.FIND_FILTER_JOBID) != 0 && queueid != null && queueid.longValue() > 0)
+			q += " AND jobid = " + queueid;
 
-			while (db.moveNext()) {
-				final LFN l = new LFN(db, this);
+		return q;
+	}
 
-				ret.add(l);
-			}
+	/**
+	 * Same selection as {@link #find(String, String, int, Long, long, Collection)}, but the rows are streamed from the database while iterating instead of being loaded in memory. The rows are ordered by
+	 * the unique <code>lfn</code> index, or by <code>entryId</code> if {@link LFNUtils#FIND_NO_SORT} is set, so that a later call can continue from the last returned key with an index range scan
+	 * instead of sorting the matching rows again for every chunk. The cursor holds a database connection until it is closed.
+	 *
+	 * @param sPath
+	 * @param sPattern
+	 * @param flags
+	 * @param queueid
+	 * @param limit if strictly positive, restrict the number of returned entries to at most this number
+	 * @param excludePatterns
+	 * @param resumeAfter if not <code>null</code>, only return the rows after this key (see {@link TableFindCursor#getLastKey()})
+	 * @return the cursor, check {@link TableFindCursor#isFailed()} at the end of the iteration
+	 */
+	public TableFindCursor openFind(final String sPath, final String sPattern, final int flags, final Long queueid, final long limit, final Collection<String> excludePatterns,
+			final String resumeAfter) {
+		final boolean byEntryId = (flags & LFNUtils.FIND_NO_SORT) != 0;
 
-			return ret;
+		String q = getFindQuery(sPath, sPattern, flags, queueid, excludePatterns);
+
+		if (resumeAfter != null) {
+			if (byEntryId)
+				q += " AND entryId > " + Long.parseLong(resumeAfter);
+			else
+				q += " AND lfn > '" + Format.escSQL(resumeAfter) + "'";
 		}
+
+		// both keys are unique and indexed, the column collation (and not the Java String order) defines what comes next
+		q += byEntryId ? " ORDER BY entryId" : " ORDER BY lfn";
+
+		if (limit > 0)
+			q += " LIMIT " + limit;
+
+		if (monitor != null)
+			monitor.incrementCounter("LFN_find_stream");
+
+		return new TableFindCursor(this, q, byEntryId);
 	}
 
 	/**
@@ -496,6 +578,13 @@ public class IndexTableEntry implements Serializable, Comparable<IndexTableEntry
 	 * @return the LFN, or <code>null</code>
 	 */
 	public LFN getLFN(final long entryId) {
+		final LFN cached = CatalogueCache.getLFN(this, entryId);
+
+		if (cached != null)
+			return cached;
+
+		final long cacheVersion = CatalogueCache.lfnVersion(this, entryId);
+
 		try (DBFunctions db = getDB()) {
 			db.setReadOnly(true);
 
@@ -508,7 +597,11 @@ public class IndexTableEntry implements Serializable, Comparable<IndexTableEntry
 			if (!db.moveNext())
 				return null;
 
-			return new LFN(db, this);
+			final LFN ret = new LFN(db, this);
+
+			CatalogueCache.putLFN(this, ret, cacheVersion);
+
+			return ret;
 		}
 	}
 
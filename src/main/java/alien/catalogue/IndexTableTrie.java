@@ -0,0 +1,376 @@
+package alien.catalogue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup structure over the INDEXTABLE content. The LFN prefixes are kept in a compressed path trie (radix tree on directory names, chains of directories without a table of their own being
+ * merged in a single edge) so that the longest matching prefix of a path is found in one walk over its characters, without creating intermediate strings, and all the tables below a given path are the
+ * entries of a subtree. The (host, table) pairs are kept in a hash map.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class IndexTableTrie {
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final int[] NO_HASHES = new int[0];
+
+	private static final class Node {
+		/**
+		 * Label of the edge from the parent node to this one, one or more complete path segments (each ending in '/', except maybe the last one of a leaf)
+		 */
+		String label;
+
+		/**
+		 * Length and hash code of the first path segment in {@link #label}, the key under which the parent finds this node
+		 */
+		int firstSegmentLength;
+
+		int firstSegmentHash;
+
+		/**
+		 * Table whose LFN prefix ends in this node, if any
+		 */
+		IndexTableEntry entry = null;
+
+		/**
+		 * Position of the entry in the original list, to return subtrees in the same order as the list
+		 */
+		int order = -1;
+
+		/**
+		 * Open addressing table of children, indexed by {@link #firstSegmentHash}
+		 */
+		Node[] slots = NO_CHILDREN;
+
+		int[] hashes = NO_HASHES;
+
+		/**
+		 * Only used while building the structure
+		 */
+		Map<String, Node> building = null;
+
+		Node(final String label) {
+			this.label = label;
+		}
+
+		Node find(final int hash, final String path, final int offset, final int length) {
+			if (slots.length == 0)
+				return null;
+
+			final int mask = slots.length - 1;
+
+			for (int i = hash & mask;; i = (i + 1) & mask) {
+				final Node child = slots[i];
+
+				if (child == null)
+					return null;
+
+				if (hashes[i] == hash && child.firstSegmentLength == length && path.regionMatches(offset, child.label, 0, length))
+					return child;
+			}
+		}
+
+		/**
+		 * Merge the chains of single children, compute the segment keys and build the children lookup tables
+		 */
+		void freeze() {
+			if (building == null)
+				return;
+
+			final List<Node> children = new ArrayList<>(building.size());
+
+			for (final Node child : building.values()) {
+				Node merged = child;
+
+				while (merged.entry == null && merged.building != null && merged.building.size() == 1) {
+					final Node next = merged.building.values().iterator().next();
+					next.label = merged.label + next.label;
+					merged = next;
+				}
+
+				merged.freeze();
+
+				final int end = merged.label.indexOf('/');
+				merged.firstSegmentLength = end >= 0 ? end + 1 : merged.label.length();
+				merged.firstSegmentHash = hash(merged.label, 0, merged.firstSegmentLength);
+
+				children.add(merged);
+			}
+
+			building = null;
+
+			int size = 2;
+
+			while (size < children.size() * 2)
+				size <<= 1;
+
+			slots = new Node[size];
+			hashes = new int[size];
+
+			final int mask = size - 1;
+
+			for (final Node child : children) {
+				int i = child.firstSegmentHash & mask;
+
+				while (slots[i] != null)
+					i = (i + 1) & mask;
+
+				slots[i] = child;
+				hashes[i] = child.firstSegmentHash;
+			}
+		}
+	}
+
+	private static int hash(final String s, final int offset, final int length) {
+		int h = 0;
+
+		for (int i = offset; i < offset + length; i++)
+			h = 31 * h + s.charAt(i);
+
+		// spread the low bits, the table index is taken from them
+		return h ^ (h >>> 16);
+	}
+
+	private final Node root = new Node("");
+
+	private final Map<Long, IndexTableEntry> tables;
+
+	private final IndexTableEntry[] byOrder;
+
+	/**
+	 * @param entries
+	 *            INDEXTABLE content, in the order in which subtrees should be returned
+	 */
+	public IndexTableTrie(final List<IndexTableEntry> entries) {
+		tables = new HashMap<>(entries.size() * 2);
+		byOrder = entries.toArray(new IndexTableEntry[0]);
+
+		int order = 0;
+
+		for (final IndexTableEntry entry : entries) {
+			if (entry.lfn != null && entry.lfn.length() > 0)
+				insert(entry, order);
+
+			tables.putIfAbsent(tableKey(entry.hostIndex, entry.tableName), entry);
+
+			order++;
+		}
+
+		root.freeze();
+	}
+
+	private static Long tableKey(final int hostIndex, final int tableName) {
+		return Long.valueOf(((long) hostIndex << 32) | (tableName & 0xFFFFFFFFL));
+	}
+
+	private void insert(final IndexTableEntry entry, final int order) {
+		final String key = entry.lfn;
+
+		Node node = root;
+		int pos = 0;
+
+		while (pos < key.length()) {
+			final int idx = key.indexOf('/', pos);
+			final int end = idx >= 0 ? idx + 1 : key.length();
+
+			final String segment = key.substring(pos, end);
+
+			if (node.building == null)
+				node.building = new LinkedHashMap<>();
+
+			node = node.building.computeIfAbsent(segment, Node::new);
+
+			pos = end;
+		}
+
+		// the list is ordered, keep the first occurrence of a duplicate prefix
+		if (node.entry == null) {
+			node.entry = entry;
+			node.order = order;
+		}
+	}
+
+	/**
+	 * Find the child of the given node that starts with the path segment at the given offset
+	 */
+	private static Node child(final Node node, final String path, final int offset) {
+		if (node.slots.length == 0)
+			return null;
+
+		final int len = path.length();
+
+		int h = 0;
+		int end = offset;
+
+		while (end < len) {
+			final char c = path.charAt(end++);
+
+			h = 31 * h + c;
+
+			if (c == '/')
+				break;
+		}
+
+		return node.find(h ^ (h >>> 16), path, offset, end - offset);
+	}
+
+	/**
+	 * Longest LFN prefix of the given path that ends on a directory boundary (or is the entire path)
+	 *
+	 * @param path
+	 * @return the table holding this path, or <code>null</code> if no prefix matches
+	 */
+	public IndexTableEntry getClosestMatch(final String path) {
+		IndexTableEntry best = null;
+
+		Node node = root;
+		int pos = 0;
+
+		final int len = path.length();
+
+		while (pos < len) {
+			final Node next = child(node, path, pos);
+
+			if (next == null)
+				break;
+
+			final String label = next.label;
+
+			// the first segment was already compared by the lookup
+			final int skip = next.firstSegmentLength;
+
+			if (label.length() > skip && !path.regionMatches(pos + skip, label, skip, label.length() - skip))
+				break;
+
+			pos += label.length();
+			node = next;
+
+			if (node.entry != null && (pos == len || path.charAt(pos - 1) == '/'))
+				best = node.entry;
+		}
+
+		return best;
+	}
+
+	/**
+	 * @param lfn
+	 * @return the entry that has exactly this LFN prefix, if any
+	 */
+	public IndexTableEntry get(final String lfn) {
+		Node node = root;
+		int pos = 0;
+
+		final int len = lfn.length();
+
+		while (pos < len) {
+			node = child(node, lfn, pos);
+
+			if (node == null || !lfn.regionMatches(pos, node.label, 0, node.label.length()))
+				return null;
+
+			pos += node.label.length();
+		}
+
+		return node.entry;
+	}
+
+	/**
+	 * @param prefix
+	 * @return all entries whose LFN starts with the given prefix, in the order of the original list
+	 */
+	public List<IndexTableEntry> getSubtree(final String prefix) {
+		final BitSet found = new BitSet(byOrder.length);
+
+		Node node = root;
+		int pos = 0;
+
+		final int len = prefix.length();
+
+		while (pos < len) {
+			final int remaining = len - pos;
+
+			if (prefix.indexOf('/', pos) < 0) {
+				// the prefix ends in the middle of a directory name, any child starting with it matches
+				for (final Node child : node.slots)
+					if (child != null && child.label.length() >= remaining && child.label.regionMatches(0, prefix, pos, remaining))
+						collect(child, found);
+
+				node = null;
+				break;
+			}
+
+			final Node next = child(node, prefix, pos);
+
+			if (next == null) {
+				node = null;
+				break;
+			}
+
+			final String label = next.label;
+
+			if (remaining <= label.length()) {
+				if (!label.regionMatches(0, prefix, pos, remaining)) {
+					node = null;
+					break;
+				}
+
+				node = next;
+				break;
+			}
+
+			if (!prefix.regionMatches(pos, label, 0, label.length())) {
+				node = null;
+				break;
+			}
+
+			pos += label.length();
+			node = next;
+		}
+
+		if (node != null)
+			collect(node, found);
+
+		if (found.isEmpty())
+			return Collections.emptyList();
+
+		final List<IndexTableEntry> ret = new ArrayList<>(found.cardinality());
+
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			ret.add(byOrder[i]);
+
+		return ret;
+	}
+
+	private static void collect(final Node node, final BitSet target) {
+		if (node.entry != null)
+			target.set(node.order);
+
+		for (final Node child : node.slots)
+			if (child != null)
+				collect(child, target);
+	}
+
+	/**
+	 * @param hostIndex
+	 * @param tableName
+	 * @return the entry for this L%L table on the given host
+	 */
+	public IndexTableEntry get(final int hostIndex, final int tableName) {
+		return tables.get(tableKey(hostIndex, tableName));
+	}
+
+	/**
+	 * @return number of INDEXTABLE entries this structure was built from
+	 */
+	public int size() {
+		return byOrder.length;
+	}
+}
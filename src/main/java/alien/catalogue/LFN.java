@@ -1,5 +1,7 @@
 package alien.catalogue;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -24,6 +26,7 @@ import alien.user.AliEnPrincipal;
 import lazyj.DBFunctions;
 import lazyj.Format;
 import lazyj.StringFactory;
+import lazyj.Utils;
 
 /**
  * @author costing
@@ -201,6 +204,34 @@ public class LFN implements Comparable<LFN>, CatalogEntity {
 			lfn = canonicalName;
 	}
 
+	/**
+	 * Copy of another entry, without the resolved parent directory, for {@link CatalogueCache}
+	 *
+	 * @param other
+	 */
+	LFN(final LFN other) {
+		entryId = other.entryId;
+		owner = other.owner;
+		ctime = other.ctime != null ? new Date(other.ctime.getTime()) : null;
+		replicated = other.replicated;
+		aclId = other.aclId;
+		lfn = other.lfn;
+		expiretime = other.expiretime != null ? new Date(other.expiretime.getTime()) : null;
+		size = other.size;
+		dir = other.dir;
+		gowner = other.gowner;
+		type = other.type;
+		perm = other.perm;
+		guid = other.guid;
+		md5 = other.md5;
+		guidtime = other.guidtime;
+		broken = other.broken;
+		exists = other.exists;
+		canonicalName = other.canonicalName;
+		indexTableEntry = other.indexTableEntry;
+		jobid = other.jobid;
+	}
+
 	/**
 	 * Get the parent directory
 	 *
@@ -260,6 +291,100 @@ public class LFN implements Comparable<LFN>, CatalogEntity {
 		return getCanonicalName().hashCode();
 	}
 
+	/**
+	 * Read the current row of a streaming find, with the same defaults as {@link #LFN(DBFunctions, IndexTableEntry)}
+	 *
+	 * @param rs
+	 * @param entry
+	 */
+	LFN(final ResultSet rs, final IndexTableEntry entry) {
+		exists = true;
+
+		entryId = getLong(rs, "entryId", 0);
+
+		owner = StringFactory.get(getString(rs, "owner"));
+
+		ctime = getDate(rs, "ctime");
+
+		replicated = Utils.stringToBool(getString(rs, "replicated"), false);
+
+		aclId = (int) getLong(rs, "aclId", -1);
+
+		lfn = StringFactory.get(getString(rs, "lfn"));
+
+		expiretime = getDate(rs, "expiretime");
+
+		size = getLong(rs, "size", 0);
+
+		dir = getLong(rs, "dir", 0);
+
+		gowner = StringFactory.get(getString(rs, "gowner"));
+
+		final String ftype = getString(rs, "type");
+
+		if (ftype.length() > 0)
+			type = ftype.charAt(0);
+		else
+			type = lfn.endsWith("/") ? 'd' : 'f';
+
+		perm = StringFactory.get(getString(rs, "perm"));
+
+		byte[] guidBytes;
+
+		try {
+			guidBytes = rs.getBytes("guid");
+		}
+		catch (@SuppressWarnings("unused") final SQLException e) {
+			guidBytes = null;
+		}
+
+		if (guidBytes != null)
+			guid = GUID.getUUID(guidBytes);
+		else
+			guid = null;
+
+		md5 = StringFactory.get(getString(rs, "md5"));
+
+		guidtime = StringFactory.get(getString(rs, "guidtime"));
+
+		broken = Utils.stringToBool(getString(rs, "broken"), false);
+
+		jobid = getLong(rs, "jobid", -1);
+
+		this.indexTableEntry = entry;
+	}
+
+	private static String getString(final ResultSet rs, final String column) {
+		try {
+			final String value = rs.getString(column);
+
+			return value != null ? value : "";
+		}
+		catch (@SuppressWarnings("unused") final SQLException e) {
+			return "";
+		}
+	}
+
+	private static long getLong(final ResultSet rs, final String column, final long defaultValue) {
+		try {
+			final long value = rs.getLong(column);
+
+			return rs.wasNull() ? defaultValue : value;
+		}
+		catch (@SuppressWarnings("unused") final SQLException e) {
+			return defaultValue;
+		}
+	}
+
+	private static Date getDate(final ResultSet rs, final String column) {
+		try {
+			return rs.getTimestamp(column);
+		}
+		catch (@SuppressWarnings("unused") final SQLException e) {
+			return null;
+		}
+	}
+
 	private void init(final DBFunctions db) {
 		exists = true;
 
@@ -664,6 +789,9 @@ public class LFN implements Comparable<LFN>, CatalogEntity {
 				entryId = db.getLastGeneratedKeyLong().longValue();
 			}
 
+			// drop the negative lookups of this path
+			CatalogueCache.invalidate(this);
+
 			return result;
 		}
 	}
@@ -690,6 +818,8 @@ public class LFN implements Comparable<LFN>, CatalogEntity {
 			try (DBFunctions db = indexTableEntry.getDB()) {
 				db.query(q);
 			}
+
+			CatalogueCache.invalidate(this);
 		}
 
 		return oldExpiration;
@@ -713,6 +843,9 @@ public class LFN implements Comparable<LFN>, CatalogEntity {
 		try (DBFunctions db = indexTableEntry.getDB()) {
 			return db.query(q) && db.getUpdateCount() == 1;
 		}
+		finally {
+			CatalogueCache.invalidate(this);
+		}
 	}
 
 	/**
@@ -769,6 +902,8 @@ public class LFN implements Comparable<LFN>, CatalogEntity {
 
 		try (DBFunctions db = indexTableEntry.getDB()) {
 			if (db.query(q, false, Long.valueOf(entryId))) {
+				CatalogueCache.invalidate(this);
+
 				if (notifyCache)
 					try {
 						String toWipe = getCanonicalName();
@@ -1,9 +1,19 @@
 package alien.catalogue;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,8 +21,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -24,6 +37,8 @@ import java.util.regex.Pattern;
 import org.nfunk.jep.JEP;
 
 import com.datastax.driver.core.ConsistencyLevel;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import alien.catalogue.recursive.Append;
 import alien.catalogue.recursive.Chown;
@@ -66,6 +81,249 @@ public class LFNCSDUtils {
 		tPool.allowCoreThreadTimeOut(true);
 	}
 
+	/**
+	 * Upper limit of the thread pool size, that grows when the callbacks spend their time waiting for Cassandra
+	 */
+	private static final int maxThreads = ConfigUtils.getConfig().geti("alien.catalogue.LFNCSDUtils.maxThreads", 256);
+
+	/**
+	 * How many directory listings can be in flight or waiting to be processed, per recursive operation. Further directories wait in a LIFO queue, which keeps the traversal close to
+	 * depth-first and the memory usage bounded.
+	 */
+	private static final int maxPendingListings = ConfigUtils.getConfig().geti("alien.catalogue.LFNCSDUtils.maxPendingListings", 256);
+
+	/**
+	 * Where to keep the progress of the recursive operations, so that they can resume where they were interrupted. Disabled if empty.
+	 */
+	private static final String checkpointDir = ConfigUtils.getConfig().gets("alien.catalogue.LFNCSDUtils.checkpointDir", "");
+
+	/**
+	 * Checkpoints not touched for longer than this (in hours) are from an operation that was given up on, or the catalogue has changed too much since then to skip any directory.
+	 * Such an operation starts from scratch.
+	 */
+	static final long checkpointMaxAge = ConfigUtils.getConfig().getl("alien.catalogue.LFNCSDUtils.checkpointMaxAge", 24) * 1000 * 60 * 60;
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+
+	/**
+	 * Moving average of the time the callbacks spend waiting, relative to the time they spend computing
+	 */
+	private static double blockingCoefficient = 0;
+
+	/**
+	 * The pool is shared by all the recursive operations, so it is only resized from the timings of many callbacks, whichever operations they belong to, and not more often than this
+	 */
+	private static final long tuneInterval = ConfigUtils.getConfig().getl("alien.catalogue.LFNCSDUtils.tuneInterval", 10) * 1000;
+
+	private static final int tuneMinSamples = ConfigUtils.getConfig().geti("alien.catalogue.LFNCSDUtils.tuneMinSamples", 64);
+
+	private static long windowStart = System.currentTimeMillis();
+
+	private static long windowWall = 0;
+
+	private static long windowCpu = 0;
+
+	private static int windowSamples = 0;
+
+	/**
+	 * Account the timing of one directory callback
+	 *
+	 * @param wallNanos
+	 * @param cpuNanos
+	 */
+	static void tune(final long wallNanos, final long cpuNanos) {
+		tune(wallNanos, cpuNanos, System.currentTimeMillis());
+	}
+
+	/**
+	 * Size the thread pool as <code>CPUs * (1 + wait time / compute time)</code> of the directory callbacks of all the recent operations, so that the Cassandra latency is covered by
+	 * enough threads
+	 *
+	 * @param wallNanos
+	 * @param cpuNanos
+	 * @param now
+	 */
+	static synchronized void tune(final long wallNanos, final long cpuNanos, final long now) {
+		if (wallNanos <= 0 || cpuNanos < 0)
+			return;
+
+		windowWall += wallNanos;
+		windowCpu += Math.min(cpuNanos, wallNanos);
+		windowSamples++;
+
+		if (windowSamples < tuneMinSamples || now - windowStart < tuneInterval)
+			return;
+
+		blockingCoefficient = 0.7 * blockingCoefficient + 0.3 * (windowWall - windowCpu) / Math.max(windowCpu, 1000L * windowSamples);
+
+		windowStart = now;
+		windowWall = windowCpu = 0;
+		windowSamples = 0;
+
+		final int size = poolSize(blockingCoefficient);
+
+		final int current = tPool.getMaximumPoolSize();
+
+		if (size > current) {
+			tPool.setMaximumPoolSize(size);
+			tPool.setCorePoolSize(size);
+		}
+		else if (size < current) {
+			tPool.setCorePoolSize(size);
+			tPool.setMaximumPoolSize(size);
+		}
+
+		if (size != current && monitor != null)
+			monitor.addMeasurement("recurse_threads", size);
+	}
+
+	/**
+	 * @param coefficient
+	 *            wait time / compute time of the callbacks
+	 * @return the number of threads to use for this coefficient, between the number of CPUs and the configured limit
+	 */
+	static int poolSize(final double coefficient) {
+		final int cpus = Runtime.getRuntime().availableProcessors();
+
+		return (int) Math.min(Math.max(Math.ceil(cpus * (1 + coefficient)), cpus), Math.max(maxThreads, cpus));
+	}
+
+	/**
+	 * State shared by all the directories of one recursive operation
+	 */
+	static final class Traversal {
+		private final Semaphore listings = new Semaphore(maxPendingListings);
+
+		private final Deque<RecurseLFNs> deferred = new ConcurrentLinkedDeque<>();
+
+		/**
+		 * Directories that were entirely processed by a previous, interrupted, run
+		 */
+		private final Set<String> completed = new HashSet<>();
+
+		private final File checkpointFile;
+
+		private BufferedWriter checkpoint = null;
+
+		Traversal(final File checkpointFile) {
+			this.checkpointFile = checkpointFile;
+
+			if (checkpointFile == null)
+				return;
+
+			boolean resume = checkpointFile.exists();
+
+			if (resume && System.currentTimeMillis() - checkpointFile.lastModified() > checkpointMaxAge) {
+				logger.log(Level.INFO, "Ignoring the checkpoint file " + checkpointFile + ", last written on " + new Date(checkpointFile.lastModified()));
+				resume = false;
+			}
+
+			if (resume) {
+				try (BufferedReader br = new BufferedReader(new FileReader(checkpointFile))) {
+					String line;
+
+					while ((line = br.readLine()) != null)
+						completed.add(line);
+
+					logger.log(Level.INFO, "Resuming from " + checkpointFile + ", " + completed.size() + " directories were already processed");
+				}
+				catch (final IOException ioe) {
+					logger.log(Level.WARNING, "Cannot read the checkpoint file " + checkpointFile, ioe);
+				}
+			}
+
+			try {
+				checkpoint = new BufferedWriter(new FileWriter(checkpointFile, resume));
+			}
+			catch (final IOException ioe) {
+				logger.log(Level.WARNING, "Cannot write the checkpoint file " + checkpointFile, ioe);
+			}
+		}
+
+		/**
+		 * Start listing this directory when the limit of pending listings allows it
+		 */
+		void schedule(final RecurseLFNs r) {
+			deferred.push(r);
+			startDeferred();
+		}
+
+		private void startDeferred() {
+			while (!deferred.isEmpty() && listings.tryAcquire()) {
+				final RecurseLFNs r = deferred.poll();
+
+				if (r == null) {
+					listings.release();
+					break;
+				}
+
+				r.startListing();
+			}
+		}
+
+		/**
+		 * A listing was taken for processing
+		 */
+		void listed() {
+			listings.release();
+			startDeferred();
+		}
+
+		boolean isCompleted(final String dir) {
+			return completed.contains(dir);
+		}
+
+		synchronized void completed(final String dir) {
+			if (checkpoint == null)
+				return;
+
+			try {
+				checkpoint.write(dir);
+				checkpoint.newLine();
+				checkpoint.flush();
+			}
+			catch (final IOException ioe) {
+				logger.log(Level.WARNING, "Cannot write to the checkpoint file " + checkpointFile, ioe);
+			}
+		}
+
+		/**
+		 * @param success
+		 *            whether the operation has finished without errors, and its checkpoint is no longer needed
+		 */
+		synchronized void close(final boolean success) {
+			if (checkpoint != null) {
+				try {
+					checkpoint.close();
+				}
+				catch (@SuppressWarnings("unused") final IOException ioe) {
+					// ignore
+				}
+
+				checkpoint = null;
+			}
+
+			if (success && checkpointFile != null && !checkpointFile.delete())
+				logger.log(Level.WARNING, "Cannot remove the checkpoint file " + checkpointFile);
+		}
+	}
+
+	/**
+	 * @return the file where the progress of this operation is kept, <code>null</code> if it should not be kept
+	 */
+	private static File checkpointFile(final RecursiveOp operation, final String start_path, final String pattern, final String metadata, final int flags) {
+		if (checkpointDir.isEmpty() || operation.getOnlyAppend())
+			return null;
+
+		final String key = operation.getClass().getName() + "\n" + (operation.getuser() != null ? operation.getuser().getName() : "") + "\n" + start_path + "\n" + pattern + "\n" + metadata
+				+ "\n" + flags + "\n" + operation.getNewOwner() + "\n" + operation.getNewGroup() + "\n"
+				+ (operation.getLfnTarget() != null ? operation.getLfnTarget().getCanonicalName() : "");
+
+		return new File(checkpointDir, operation.getClass().getSimpleName() + "-" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".checkpoint");
+	}
+
 	/**
 	 * Cassandra table suffix
 	 */
@@ -135,7 +393,9 @@ public class LFNCSDUtils {
 
 		logger.info("Going to recurseAndFilterLFNs: " + path + " - " + file_pattern + " - " + index + " - " + flags + " - " + path_parts.toString() + " metadata: " + metadata);
 
-		final RecurseLFNs rl = new RecurseLFNs(null, operation, path, pat, index, path_parts, flags, metadata, null) {
+		final Traversal traversal = new Traversal(checkpointFile(operation, start_path, pattern, metadata, flags));
+
+		final RecurseLFNs rl = new RecurseLFNs(traversal, null, operation, path, pat, index, path_parts, flags, metadata, null) {
 			@Override
 			public void notifyUp() {
 				if (this.counter_left.decrementAndGet() == 0) {
@@ -147,10 +407,11 @@ public class LFNCSDUtils {
 			}
 		};
 		try {
-			tPool.submit(rl);
+			rl.start();
 		}
 		catch (final RejectedExecutionException ree) {
 			logger.severe("LFNCSDUtils recurseAndFilterLFNs: can't submit: " + ree);
+			traversal.close(false);
 			return false;
 		}
 
@@ -166,10 +427,13 @@ public class LFNCSDUtils {
 			}
 		}
 
+		traversal.close(!rl.critical_errors);
+
 		return rl.critical_errors;
 	}
 
 	private static class RecurseLFNs implements Runnable {
+		final Traversal traversal;
 		final RecursiveOp operation;
 		final String base;
 		final Pattern file_pattern;
@@ -182,10 +446,11 @@ public class LFNCSDUtils {
 		AtomicInteger counter_left = new AtomicInteger(0);
 		LFN_CSD dir = null;
 		LFN_CSD lfnc_dir = null;
-		int submitted = 0;
+		ListenableFuture<List<LFN_CSD>> listing = null;
 
-		public RecurseLFNs(final RecurseLFNs parent, final RecursiveOp operation, final String base, final Pattern file_pattern, final int index, final ArrayList<String> parts, final int flags,
+		public RecurseLFNs(final Traversal traversal, final RecurseLFNs parent, final RecursiveOp operation, final String base, final Pattern file_pattern, final int index, final ArrayList<String> parts, final int flags,
 				final String metadata, final LFN_CSD lfnc_dir) {
+			this.traversal = traversal;
 			this.operation = operation;
 			this.base = base;
 			this.file_pattern = file_pattern;
@@ -205,12 +470,30 @@ public class LFNCSDUtils {
 				dir = lfnc_dir;
 		}
 
+		/**
+		 * Queue this directory for listing
+		 */
+		void start() {
+			traversal.schedule(this);
+		}
+
+		/**
+		 * Ask for the content of this directory and process it on the thread pool once it arrives, so that the listings of many directories are in flight at the same time instead of
+		 * one after the other
+		 */
+		void startListing() {
+			listing = dir.listAsync(true, append_table, clevel);
+			listing.addListener(this, tPool);
+		}
+
 		public void notifyUp() {
 			if (this.counter_left.decrementAndGet() <= 0) {
 				if ((!critical_errors && !operation.getOnlyAppend()) && !operation.callback(dir))
 					critical_errors = true;
 				if (critical_errors)
 					parent.critical_errors = true;
+				else
+					traversal.completed(base);
 
 				parent.notifyUp();
 			}
@@ -223,6 +506,8 @@ public class LFNCSDUtils {
 
 		@Override
 		public void run() {
+			traversal.listed();
+
 			final boolean lastpart = (!operation.getRecurseInfinitely() && index >= parts.size());
 
 			boolean includeDirs = false;
@@ -231,18 +516,44 @@ public class LFNCSDUtils {
 
 			if (!dir.exists || dir.type != 'd') {
 				logger.severe("LFNCSDUtils recurseAndFilterLFNs: initial dir invalid - " + base);
+				parent.notifyUp();
 				return;
 			}
 
-			final List<LFN_CSD> list = dir.list(true, append_table, clevel);
+			List<LFN_CSD> list;
+
+			try {
+				list = Uninterruptibles.getUninterruptibly(listing);
+			}
+			catch (final ExecutionException e) {
+				logger.severe("LFNCSDUtils recurseAndFilterLFNs: can't list " + base + ": " + e.getCause());
+				list = null;
+			}
+
+			if (list == null) {
+				logger.severe("LFNCSDUtils recurseAndFilterLFNs: listing failed - " + base);
+				parent.critical_errors = true;
+				parent.notifyUp();
+				return;
+			}
 
 			// if the dir is empty, do the operation and notify
 			if (list.isEmpty()) {
 				if (!operation.getOnlyAppend() && !operation.callback(dir))
 					parent.critical_errors = true;
 				parent.notifyUp();
+				return;
 			}
 
+			final long startWall = System.nanoTime();
+			final long startCpu = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : -1;
+
+			// hold this directory open until all its entries were seen, the subdirectories can complete before the loop does
+			this.counter_left.incrementAndGet();
+
+			// matching files, given to the operation in one go
+			final List<LFN_CSD> batch = new ArrayList<>();
+
 			Pattern p;
 			if (lastpart || operation.getRecurseInfinitely())
 				p = this.file_pattern;
@@ -296,11 +607,8 @@ public class LFNCSDUtils {
 									if (result instanceof Double && ((Double) result).intValue() == 1.0) {
 										if (filesVersion != null)
 											filesVersion.add(lfnc);
-										else {
-											if (!operation.callback(lfnc)) {
-												parent.critical_errors = true;
-											}
-										}
+										else
+											batch.add(lfnc);
 									}
 								}
 								catch (final Exception e) {
@@ -315,17 +623,19 @@ public class LFNCSDUtils {
 							else {
 								if (filesVersion != null)
 									filesVersion.add(lfnc);
-								else {
-									if (!operation.callback(lfnc)) {
-										parent.critical_errors = true;
-									}
-								}
+								else
+									batch.add(lfnc);
 							}
 						}
 					}
 				}
 				else {
 					// dir
+					if (traversal.isCompleted(base + lfnc.child + "/")) {
+						// already done by an interrupted run of the same operation
+						continue;
+					}
+
 					if (lastpart || operation.getRecurseInfinitely()) {
 						// if we already passed the hierarchy introduced on the command, all dirs are valid
 						try {
@@ -339,8 +649,7 @@ public class LFNCSDUtils {
 								// submit
 								try {
 									this.counter_left.incrementAndGet();
-									submitted++;
-									tPool.submit(new RecurseLFNs(this, operation, base + lfnc.child + "/", file_pattern, index + 1, parts, flags, metadata, lfnc));
+									new RecurseLFNs(traversal, this, operation, base + lfnc.child + "/", file_pattern, index + 1, parts, flags, metadata, lfnc).start();
 								}
 								catch (final RejectedExecutionException ree) {
 									logger.severe("LFNCSDUtils recurseAndFilterLFNs: can't submit: " + ree);
@@ -358,8 +667,7 @@ public class LFNCSDUtils {
 							// submit the dir
 							try {
 								this.counter_left.incrementAndGet();
-								submitted++;
-								tPool.submit(new RecurseLFNs(this, operation, base + lfnc.child + "/", file_pattern, index + 1, parts, flags, metadata, lfnc));
+								new RecurseLFNs(traversal, this, operation, base + lfnc.child + "/", file_pattern, index + 1, parts, flags, metadata, lfnc).start();
 							}
 							catch (final RejectedExecutionException ree) {
 								logger.severe("LFNCSDUtils recurseAndFilterLFNs: can't submit dir - " + base + lfnc.child + "/" + ": " + ree);
@@ -397,18 +705,17 @@ public class LFNCSDUtils {
 
 				}
 
-				for (final LFN_CSD lfn : lfn_to_csd.values())
-					if (!operation.callback(lfn)) {
-						parent.critical_errors = true;
-					}
-
+				batch.addAll(lfn_to_csd.values());
 			}
 
-			// check if there are submitted or notify
-			if (submitted == 0 && !list.isEmpty()) {
-				notifyUp();
-			}
+			if (!batch.isEmpty() && !operation.callback(batch))
+				parent.critical_errors = true;
+
+			if (startCpu >= 0)
+				tune(System.nanoTime() - startWall, threadBean.getCurrentThreadCpuTime() - startCpu);
 
+			// release the hold taken before the loop, completes this directory if all the subdirectories are done
+			notifyUp();
 		}
 	}
 
@@ -528,7 +835,7 @@ public class LFNCSDUtils {
 			mv.setLfnTarget(lfnc_target);
 			mv.setLfnTargetParent(lfnc_target_parent);
 			recurseAndFilterLFNs(mv, source, null, null, LFNCSDUtils.FIND_INCLUDE_DIRS);
-			return (mv.getLfnsError().isEmpty() ? 0 : 4);
+			return (mv.getErrorCount() == 0 ? 0 : 4);
 		}
 
 		final LFN_CSD lfnc_source = new LFN_CSD(source, true, null, null, null);
@@ -564,7 +871,7 @@ public class LFNCSDUtils {
 			final Delete de = new Delete();
 			de.setUser(user);
 			recurseAndFilterLFNs(de, lfn, null, null, LFNCSDUtils.FIND_INCLUDE_DIRS);
-			return de.getLfnsError().isEmpty();
+			return de.getErrorCount() == 0;
 		}
 
 		final LFN_CSD lfnc = new LFN_CSD(lfn, true, null, null, null);
@@ -730,7 +1037,7 @@ public class LFNCSDUtils {
 			ch.setNewGroup(new_group);
 			ch.setRecurseInfinitely(true);
 			recurseAndFilterLFNs(ch, lfn, null, null, LFNCSDUtils.FIND_INCLUDE_DIRS);
-			return ch.getLfnsError().isEmpty();
+			return ch.getErrorCount() == 0;
 		}
 
 		final LFN_CSD lfnc = new LFN_CSD(lfn, true, null, null, null);
@@ -15,10 +15,20 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -34,6 +44,7 @@ import alien.user.AliEnPrincipal;
 import alien.user.AuthorizationChecker;
 import lazyj.DBFunctions;
 import lazyj.Format;
+import utils.CachedThreadPool;
 import utils.DBUtils;
 import utils.ExpireTime;
 
@@ -723,17 +734,22 @@ public class LFNUtils {
 
 		final Collection<IndexTableEntry> matchingTables = CatalogueUtils.getAllMatchingTables(path);
 
-		for (final IndexTableEntry ite : matchingTables) {
-			final List<LFN> findResults = ite.find(path, processedPattern, flags, queueid, queryLimit > 0 ? queryLimit - ret.size() : 0, excludedPatterns);
-
-			if (findResults == null)
+		if (matchingTables.size() > 1 && findMaxThreads > 1) {
+			if (!findInParallel(matchingTables, ret, path, processedPattern, flags, queueid, queryLimit, excludedPatterns))
 				return null;
+		}
+		else
+			for (final IndexTableEntry ite : matchingTables) {
+				final List<LFN> findResults = ite.find(path, processedPattern, flags, queueid, queryLimit > 0 ? queryLimit - ret.size() : 0, excludedPatterns);
 
-			ret.addAll(findResults);
+				if (findResults == null)
+					return null;
 
-			if (queryLimit > 0 && ret.size() >= queryLimit)
-				break;
-		}
+				ret.addAll(findResults);
+
+				if (queryLimit > 0 && ret.size() >= queryLimit)
+					break;
+			}
 
 		if ((flags & FIND_SAVE_XML) != 0) {
 			// Create the xml collection
@@ -778,6 +794,229 @@ public class LFNUtils {
 		return ret;
 	}
 
+	/**
+	 * Streaming variant of {@link #find(String, String, String, int, AliEnPrincipal, String, Long, long, Collection)}, for the simple searches (no metadata query, no XML collection). Nothing is kept in
+	 * memory, the rows are read from the database while iterating.
+	 *
+	 * @param path
+	 * @param pattern
+	 * @param flags
+	 *            a combination of FIND_* flags, FIND_BIGGEST_VERSION and FIND_SAVE_XML are ignored
+	 * @param queueid
+	 *            a job id to filter for its files
+	 * @param queryLimit if strictly positive then stop after this many entries
+	 * @param excludedPatterns
+	 * @param startTable
+	 *            position to continue a previous iteration from, see {@link FindCursor#getTableIndex()}, 0 to start from the beginning
+	 * @param resumeAfter
+	 *            key of the last entry returned by a previous iteration, see {@link FindCursor#getLastKey()}, <code>null</code> to start from the beginning of the table
+	 * @return the cursor over the matching entries, to be closed after use
+	 */
+	public static FindCursor openFind(final String path, final String pattern, final int flags, final Long queueid, final long queryLimit, final Collection<String> excludedPatterns,
+			final int startTable, final String resumeAfter) {
+		final String processedPattern;
+
+		if ((flags & FIND_REGEXP) == 0)
+			processedPattern = Format.replace(pattern, "*", "%");
+		else
+			processedPattern = pattern;
+
+		final List<IndexTableEntry> tables = new ArrayList<>(CatalogueUtils.getAllMatchingTables(path));
+
+		// LFN.compareTo() orders first by table, then by the name inside the table
+		if ((flags & FIND_NO_SORT) == 0)
+			Collections.sort(tables);
+
+		return new FindCursor(tables, path, processedPattern, flags, queueid, queryLimit, excludedPatterns, startTable, resumeAfter);
+	}
+
+	/**
+	 * Total number of threads running find queries on L%L tables, 1 or less to query the tables one after the other
+	 */
+	private static final int findMaxThreads = ConfigUtils.getConfig().geti("alien.catalogue.LFNUtils.find.maxThreads", 32);
+
+	/**
+	 * How many queries can run at the same time on the same database host, summed over all concurrent find operations
+	 */
+	private static final int findThreadsPerHost = Math.max(1, ConfigUtils.getConfig().geti("alien.catalogue.LFNUtils.find.threadsPerHost", 4));
+
+	private static final ThreadPoolExecutor findExecutor = findMaxThreads > 1 ? new CachedThreadPool(findMaxThreads, 1, TimeUnit.MINUTES, (r) -> new Thread(r, "LFNUtils.find")) : null;
+
+	private static final Map<Integer, Semaphore> findHostSlots = new ConcurrentHashMap<>();
+
+	/**
+	 * Query all the given tables concurrently, grouped by the host holding them, and merge the results in the order of the tables in the target collection.
+	 *
+	 * With a <code>queryLimit</code> the outcome is the same as querying the tables one after the other: each table is asked for as many rows as could still be needed from it given what the tables in
+	 * front of it have returned so far, and the merge stops at the limit in table order. As soon as the tables at the front add up to the limit the queries of the tables behind them are cancelled.
+	 *
+	 * @return <code>false</code> if any of the queries failed
+	 */
+	private static boolean findInParallel(final Collection<IndexTableEntry> matchingTables, final Set<LFN> ret, final String path, final String processedPattern, final int flags,
+			final Long queueid, final long queryLimit, final Collection<String> excludedPatterns) {
+		final IndexTableEntry[] tables = matchingTables.toArray(new IndexTableEntry[0]);
+
+		final Map<Integer, Queue<Integer>> byHost = new LinkedHashMap<>();
+
+		for (int i = 0; i < tables.length; i++)
+			byHost.computeIfAbsent(Integer.valueOf(tables[i].hostIndex), (k) -> new ConcurrentLinkedQueue<>()).add(Integer.valueOf(i));
+
+		final AtomicReferenceArray<List<LFN>> results = new AtomicReferenceArray<>(tables.length);
+
+		final AtomicBoolean failed = new AtomicBoolean(false);
+
+		// set once the results in hand are enough, the queries that are still running don't matter any more
+		final AtomicBoolean enough = new AtomicBoolean(false);
+
+		final Object progress = new Object();
+
+		final List<Future<?>> workers = new ArrayList<>();
+
+		for (final Map.Entry<Integer, Queue<Integer>> hostTables : byHost.entrySet()) {
+			final Semaphore hostSlots = findHostSlots.computeIfAbsent(hostTables.getKey(), (k) -> new Semaphore(findThreadsPerHost));
+			final Queue<Integer> queue = hostTables.getValue();
+
+			for (int w = Math.min(findThreadsPerHost, queue.size()); w > 0; w--)
+				workers.add(findExecutor.submit(() -> {
+					try {
+						Integer idx;
+
+						while ((idx = queue.poll()) != null && !enough.get() && !failed.get()) {
+							final long remaining = queryLimit > 0 ? queryLimit - rowsInFront(results, idx.intValue()) : 0;
+
+							// the tables in front of this one have already returned enough rows
+							if (queryLimit > 0 && remaining <= 0)
+								continue;
+
+							hostSlots.acquireUninterruptibly();
+
+							final List<LFN> findResults;
+
+							try {
+								findResults = tables[idx.intValue()].find(path, processedPattern, flags, queueid, remaining, excludedPatterns);
+							}
+							finally {
+								hostSlots.release();
+							}
+
+							if (findResults == null) {
+								if (!enough.get())
+									failed.set(true);
+
+								return;
+							}
+
+							results.set(idx.intValue(), findResults);
+
+							synchronized (progress) {
+								progress.notifyAll();
+							}
+						}
+					}
+					finally {
+						synchronized (progress) {
+							progress.notifyAll();
+						}
+					}
+				}));
+		}
+
+		if (monitor != null)
+			monitor.incrementCounter("find_parallel_tables", tables.length);
+
+		try {
+			synchronized (progress) {
+				while (!failed.get() && !allDone(workers) && !(queryLimit > 0 && completePrefixRows(results) >= queryLimit))
+					progress.wait(1000);
+			}
+
+			enough.set(true);
+
+			for (final Future<?> worker : workers)
+				if (!worker.isDone())
+					worker.cancel(true);
+				else
+					worker.get();
+		}
+		catch (final InterruptedException | ExecutionException e) {
+			failed.set(true);
+
+			for (final Future<?> worker : workers)
+				worker.cancel(true);
+
+			if (e instanceof InterruptedException)
+				Thread.currentThread().interrupt();
+
+			logger.log(Level.WARNING, "Parallel find in " + path + " failed", e);
+		}
+
+		if (failed.get())
+			return false;
+
+		for (int i = 0; i < tables.length; i++) {
+			final List<LFN> tableResults = results.get(i);
+
+			if (tableResults == null) {
+				// a table that was never queried, only fine if the limit was already reached
+				if (queryLimit > 0 && ret.size() >= queryLimit)
+					return true;
+
+				continue;
+			}
+
+			for (final LFN l : tableResults) {
+				if (queryLimit > 0 && ret.size() >= queryLimit)
+					return true;
+
+				ret.add(l);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return how many rows the tables in front of the given one have returned, counting only the results that are already in
+	 */
+	private static long rowsInFront(final AtomicReferenceArray<List<LFN>> results, final int idx) {
+		long rows = 0;
+
+		for (int i = 0; i < idx; i++) {
+			final List<LFN> r = results.get(i);
+
+			if (r != null)
+				rows += r.size();
+		}
+
+		return rows;
+	}
+
+	/**
+	 * @return how many rows the uninterrupted sequence of completed tables from the first one has returned
+	 */
+	private static long completePrefixRows(final AtomicReferenceArray<List<LFN>> results) {
+		long rows = 0;
+
+		for (int i = 0; i < results.length(); i++) {
+			final List<LFN> r = results.get(i);
+
+			if (r == null)
+				break;
+
+			rows += r.size();
+		}
+
+		return rows;
+	}
+
+	private static boolean allDone(final List<Future<?>> workers) {
+		for (final Future<?> worker : workers)
+			if (!worker.isDone())
+				return false;
+
+		return true;
+	}
+
 	private static final String[] CATALOGUE_DBS = new String[] { "alice_data", "alice_users" };
 
 	/**
@@ -1688,6 +1927,9 @@ public class LFNUtils {
 						return "Failed inserting the new table in the INDEXTABLE:\n" + indexTableEntryQuery;
 
 					allOk = dbu.unlockTables();
+
+					// all the entries below this directory have moved to another table
+					CatalogueCache.clearLFNs();
 				}
 				catch (Exception e) {
 					return "Error executing the DB operations: " + e.getMessage();
@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +20,11 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import alien.config.ConfigUtils;
 import alien.monitoring.Monitor;
@@ -52,11 +58,6 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 	 */
 	static final UUID root_uuid = UUID.nameUUIDFromBytes("root".getBytes()); // 63a9f0ea-7bb9-3050-b96b-649e85481845
 
-	/**
-	 * Pool of PreparedStatements
-	 */
-	private static final HashMap<String, PreparedStatement> psPool = new HashMap<>();
-
 	/**
 	 * Folder booking map
 	 */
@@ -312,7 +313,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 
 				boundStatement.setConsistencyLevel(ConsistencyLevel.QUORUM);
 
-				ResultSet results = session.execute(boundStatement);
+				ResultSet results = CassandraExecutor.execute(session, boundStatement);
 				init(results.one());
 			}
 			catch (Exception e) {
@@ -328,18 +329,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 	 * @return preparedstatement for the query
 	 */
 	public static PreparedStatement getOrInsertPreparedStatement(Session session, String querykey) {
-		if (psPool.containsKey(querykey))
-			return psPool.get(querykey);
-
-		synchronized (psPool) { // we lock the pool only if we need to insert
-			if (psPool.containsKey(querykey)) // in case other thread past the first condition
-				return psPool.get(querykey);
-
-			PreparedStatement ps = session.prepare(querykey);
-			logger.info("Adding PreparedStatement to pool: " + querykey);
-			psPool.put(querykey, ps);
-			return ps;
-		}
+		return CassandraExecutor.prepare(session, querykey);
 	}
 
 	/**
@@ -432,7 +422,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 					BoundStatement boundStatement = new BoundStatement(statement);
 					boundStatement.bind(path_id, (i == 0 ? "/" : path_chunks[i - 1]));
 					boundStatement.setConsistencyLevel(ConsistencyLevel.QUORUM);
-					ResultSet results = session.execute(boundStatement);
+					ResultSet results = CassandraExecutor.execute(session, boundStatement);
 					if (results.getAvailableWithoutFetching() != 1)
 						return null;
 
@@ -483,7 +473,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 			BoundStatement boundStatement = new BoundStatement(statement);
 			boundStatement.bind(parent_id, name);
 			boundStatement.setConsistencyLevel(ConsistencyLevel.QUORUM);
-			ResultSet results = session.execute(boundStatement);
+			ResultSet results = CassandraExecutor.execute(session, boundStatement);
 			if (results.getAvailableWithoutFetching() != 1)
 				return null;
 
@@ -644,66 +634,117 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 	 * @return list of LFNs from this table
 	 */
 	public List<LFN_CSD> list(boolean get_metadata, String append_table, ConsistencyLevel level) {
-		if (!exists)
+		try {
+			return Uninterruptibles.getUninterruptibly(listAsync(get_metadata, append_table, level));
+		}
+		catch (ExecutionException e) {
+			logger.severe("Exception trying to list: " + e.getCause());
 			return null;
+		}
+	}
+
+	/**
+	 * Asynchronous version of {@link #list(boolean, String, ConsistencyLevel)}. The metadata of all the entries is requested in parallel once the directory content is known, and the
+	 * continuations run on the {@link CassandraExecutor} threads, so the caller is free to list other directories in the mean time.
+	 *
+	 * @param get_metadata
+	 * @param append_table
+	 * @param level
+	 * @return the future list of LFNs from this table, with a <code>null</code> value if the listing could not be done
+	 */
+	public ListenableFuture<List<LFN_CSD>> listAsync(final boolean get_metadata, final String append_table, final ConsistencyLevel level) {
+		if (!exists)
+			return Futures.immediateFuture(null);
 
 		if (monitor != null)
 			monitor.incrementCounter("LFN_CSD_list");
 
-		final List<LFN_CSD> ret = new ArrayList<>();
 		if (type != 'd' && (!get_metadata || this.perm != null)) {
+			final List<LFN_CSD> ret = new ArrayList<>();
 			ret.add(this);
-			return ret;
+			return Futures.immediateFuture(ret);
 		}
 
-		String t = lfn_index_table;
-		if (append_table != null) {
-			t += append_table;
-		}
+		final String t = lfn_index_table + (append_table != null ? append_table : "");
 
-		ConsistencyLevel cl = ConsistencyLevel.QUORUM;
-		if (level != null)
-			cl = level;
+		final String tm = lfn_metadata_table + (append_table != null ? append_table : "");
+
+		final ConsistencyLevel cl = level != null ? level : ConsistencyLevel.QUORUM;
 
 		try {
 			if (parent_id == null)
 				parent_id = getParentIdFromPath(path, append_table);
 			if (parent_id == null)
-				return null;
+				return Futures.immediateFuture(null);
 
 			if (id == null)
 				id = getChildIdFromParentIdAndName(parent_id, child, append_table);
 			if (id == null)
-				return null;
+				return Futures.immediateFuture(null);
 
-			if (type == 'd') {
-				@SuppressWarnings("resource")
-				final Session session = DBCassandra.getInstance();
-				if (session == null)
-					return null;
+			if (type != 'd') {
+				final List<LFN_CSD> ret = new ArrayList<>();
+				ret.add(new LFN_CSD(this.canonicalName, get_metadata, append_table, this.parent_id, this.id));
+				return Futures.immediateFuture(ret);
+			}
 
-				PreparedStatement statement = getOrInsertPreparedStatement(session, "select path,child_id from " + t + " where path_id = ?");
-				BoundStatement boundStatement = new BoundStatement(statement);
-				boundStatement.bind(this.id);
+			@SuppressWarnings("resource")
+			final Session session = DBCassandra.getInstance();
+			if (session == null)
+				return Futures.immediateFuture(null);
 
-				boundStatement.setConsistencyLevel(cl);
+			PreparedStatement statement = getOrInsertPreparedStatement(session, "select path,child_id from " + t + " where path_id = ?");
+			BoundStatement boundStatement = new BoundStatement(statement);
+			boundStatement.bind(this.id);
+
+			boundStatement.setConsistencyLevel(cl);
+
+			final AsyncFunction<ResultSet, List<LFN_CSD>> children = results -> {
+				final List<LFN_CSD> ret = new ArrayList<>();
+
+				final List<ListenableFuture<ResultSet>> metadataFutures = new ArrayList<>();
+
+				final PreparedStatement metadataStatement = get_metadata
+						? getOrInsertPreparedStatement(session, "select checksum,ctime,gowner,jobid,metadata,owner,perm,pfns,size,type from " + tm + " where parent_id = ? and id = ?")
+						: null;
 
-				ResultSet results = session.execute(boundStatement);
 				for (Row row : results) {
-					// LFN_CSD String lfn, boolean getFromDB, UUID p_id, UUID c_id
-					ret.add(new LFN_CSD(this.canonicalName + row.getString("path"), get_metadata, append_table, this.id, row.getUUID("child_id")));
+					final LFN_CSD entry = new LFN_CSD(this.canonicalName + row.getString("path"), false, append_table, this.id, row.getUUID("child_id"));
+					entry.parent_id = this.id;
+					entry.id = row.getUUID("child_id");
+					ret.add(entry);
+
+					if (metadataStatement != null) {
+						final BoundStatement metadataQuery = new BoundStatement(metadataStatement);
+						metadataQuery.bind(entry.parent_id, entry.id);
+						metadataQuery.setConsistencyLevel(ConsistencyLevel.QUORUM);
+
+						metadataFutures.add(CassandraExecutor.executeAsync(session, metadataQuery));
+					}
 				}
-			}
-			else {
-				ret.add(new LFN_CSD(this.canonicalName, get_metadata, append_table, this.parent_id, this.id));
-			}
+
+				if (metadataStatement == null)
+					return Futures.immediateFuture(ret);
+
+				// entries whose metadata cannot be read are returned as not existing, as the synchronous constructor does
+				final Function<List<ResultSet>, List<LFN_CSD>> fill = metadata -> {
+					for (int i = 0; i < ret.size(); i++) {
+						final ResultSet rs = metadata.get(i);
+						ret.get(i).init(rs != null ? rs.one() : null);
+					}
+
+					return ret;
+				};
+
+				return Futures.transform(Futures.successfulAsList(metadataFutures), fill, CassandraExecutor.callbackExecutor());
+			};
+
+			return Futures.transformAsync(CassandraExecutor.executeAsync(session, boundStatement), children, CassandraExecutor.callbackExecutor());
 		}
 		catch (Exception e) {
-			logger.severe("Exception trying to whereis: " + e);
-			return null;
+			logger.severe("Exception trying to list: " + e);
+			return Futures.immediateFuture(null);
 		}
-
-		return ret;
 	}
 
 	/**
@@ -752,7 +793,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 
 			boundStatement.setConsistencyLevel(cl);
 
-			ResultSet results = session.execute(boundStatement);
+			ResultSet results = CassandraExecutor.execute(session, boundStatement);
 			for (Row row : results) {
 				pfns = (HashMap<Integer, String>) row.getMap("pfns", Integer.class, String.class);
 			}
@@ -831,7 +872,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 
 			this.prepareInsertStatements(bs, session, true, true, tindex, tids, t, ts);
 
-			ResultSet rs = session.execute(bs);
+			ResultSet rs = CassandraExecutor.execute(session, bs);
 			res = rs.wasApplied();
 		}
 		catch (Exception e) {
@@ -1138,7 +1179,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 				}
 			}
 
-			ResultSet rs = session.execute(bs);
+			ResultSet rs = CassandraExecutor.execute(session, bs);
 			if (!rs.wasApplied()) {
 				logger.severe("LFN_CSD: delete: problem deleting folder entry: " + getCanonicalName());
 				return false;
@@ -1171,7 +1212,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 			BoundStatement boundStatement = new BoundStatement(statement);
 			boundStatement.bind(c_id);
 			boundStatement.setConsistencyLevel(ConsistencyLevel.QUORUM);
-			ResultSet results = session.execute(boundStatement);
+			ResultSet results = CassandraExecutor.execute(session, boundStatement);
 
 			Row res = results.one();
 			ret = new HashMap<>();
@@ -1259,7 +1300,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 				lfnc_source.refreshCanonicalName();
 			}
 
-			ResultSet rs = session.execute(bs);
+			ResultSet rs = CassandraExecutor.execute(session, bs);
 			if (!rs.wasApplied()) {
 				logger.severe("LFN_CSD: mv: problem moving: " + lfnc_source.getCanonicalName() + " -> " + lfnc_target.getCanonicalName());
 			}
@@ -1326,7 +1367,7 @@ public class LFN_CSD implements Comparable<LFN_CSD>, CatalogEntity {
 				}
 			}
 
-			ResultSet rs = session.execute(bs);
+			ResultSet rs = CassandraExecutor.execute(session, bs);
 			if (!rs.wasApplied()) {
 				logger.severe("LFN_CSD: update: problem updating entry: " + getCanonicalName());
 				return false;
@@ -176,6 +176,24 @@ public class PFN implements Serializable, Comparable<PFN> {
 		this.hashCode = this.pfn.hashCode();
 	}
 
+	/**
+	 * Copy of another replica object, without its access ticket, for when the same replica is handed out in different contexts
+	 *
+	 * @param other
+	 */
+	public PFN(final PFN other) {
+		this.guidId = other.guidId;
+		this.pfn = other.pfn;
+		this.seNumber = other.seNumber;
+		this.host = other.host;
+		this.tableNumber = other.tableNumber;
+		this.uuid = other.uuid;
+		this.guid = other.guid;
+		this.overrideSE = other.overrideSE;
+		this.isCsd = other.isCsd;
+		this.hashCode = other.hashCode;
+	}
+
 	/**
 	 * Create PFN from LFN_CSD
 	 *
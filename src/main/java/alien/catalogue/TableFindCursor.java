@@ -0,0 +1,187 @@
+package alien.catalogue;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+
+import alien.config.ConfigUtils;
+import lazyj.DBFunctions;
+import lazyj.DBFunctions.DBConnection;
+
+/**
+ * Forward-only iteration over the result of a find query on one L%L table. The rows are streamed by the JDBC driver instead of being loaded in memory, on a connection that is taken out of the pool
+ * for the lifetime of this object, so always {@link #close()} it.
+ *
+ * @author costing
+ * @since 2024-03-18
+ * @see IndexTableEntry#openFind(String, String, int, Long, long, java.util.Collection, String)
+ */
+public final class TableFindCursor implements Iterator<LFN>, Closeable {
+
+	/**
+	 * How many rows the driver should fetch at a time from databases that are not MySQL (for which rows are streamed one by one)
+	 */
+	private static final int fetchSize = ConfigUtils.getConfig().geti("alien.catalogue.TableFindCursor.fetchSize", 1000);
+
+	private final IndexTableEntry entry;
+
+	private final boolean byEntryId;
+
+	private DBFunctions db;
+
+	private DBConnection dbc;
+
+	private Statement stat;
+
+	private ResultSet rs;
+
+	private LFN next = null;
+
+	private String lastKey = null;
+
+	private boolean failed = false;
+
+	private boolean finished = false;
+
+	TableFindCursor(final IndexTableEntry entry, final String query, final boolean byEntryId) {
+		this.entry = entry;
+		this.byEntryId = byEntryId;
+
+		db = entry.getDB();
+
+		if (db == null) {
+			failed = finished = true;
+			return;
+		}
+
+		dbc = db.getConnection();
+
+		if (dbc == null) {
+			IndexTableEntry.logger.log(Level.WARNING, "Cannot get a connection to stream the find results from L" + entry.tableName + "L: " + db.getConnectFailReason());
+			failed = true;
+			close();
+			return;
+		}
+
+		try {
+			dbc.setReadOnly(true);
+
+			stat = dbc.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			// MySQL Connector/J only streams the rows with this special value, otherwise it reads the entire result set
+			stat.setFetchSize(db.isMySQL() ? Integer.MIN_VALUE : fetchSize);
+
+			rs = stat.executeQuery(query);
+		}
+		catch (final SQLException e) {
+			IndexTableEntry.logger.log(Level.WARNING, "Error executing the streaming find on L" + entry.tableName + "L: " + query, e);
+			fail();
+		}
+	}
+
+	private void fail() {
+		failed = true;
+
+		if (dbc != null) {
+			// the connection state is unknown, don't give it back to the pool
+			dbc.close();
+			dbc = null;
+		}
+
+		close();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null)
+			return true;
+
+		if (finished)
+			return false;
+
+		try {
+			if (rs.next()) {
+				next = new LFN(rs, entry);
+				return true;
+			}
+		}
+		catch (final SQLException e) {
+			IndexTableEntry.logger.log(Level.WARNING, "Error reading the streaming find results from L" + entry.tableName + "L", e);
+			fail();
+			return false;
+		}
+
+		close();
+
+		return false;
+	}
+
+	@Override
+	public LFN next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		final LFN ret = next;
+
+		next = null;
+
+		lastKey = byEntryId ? String.valueOf(ret.entryId) : ret.lfn;
+
+		return ret;
+	}
+
+	/**
+	 * @return the ordering key of the last returned entry, to continue the same query later on from the next entry
+	 */
+	public String getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * @return <code>true</code> if the query could not be executed or the iteration was interrupted by an error
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public void close() {
+		finished = true;
+
+		if (rs != null) {
+			try {
+				rs.close();
+			}
+			catch (@SuppressWarnings("unused") final SQLException e) {
+				// ignore
+			}
+
+			rs = null;
+		}
+
+		if (stat != null) {
+			try {
+				stat.close();
+			}
+			catch (@SuppressWarnings("unused") final SQLException e) {
+				// ignore
+			}
+
+			stat = null;
+		}
+
+		if (dbc != null) {
+			dbc.free();
+			dbc = null;
+		}
+
+		if (db != null) {
+			db.close();
+			db = null;
+		}
+	}
+}
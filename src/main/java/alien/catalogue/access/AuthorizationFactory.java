@@ -5,20 +5,35 @@ import java.security.KeyStoreException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import alien.catalogue.GUID;
+import alien.catalogue.LFN;
 import alien.catalogue.LFN_CSD;
 import alien.catalogue.PFN;
 import alien.config.ConfigUtils;
 import alien.io.xrootd.envelopes.XrootDEnvelopeSigner;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
 import alien.se.SE;
 import alien.user.AliEnPrincipal;
 import alien.user.AuthorizationChecker;
 import alien.user.JAKeyStore;
 import alien.user.UserFactory;
+import lazyj.cache.ExpirationCache;
+import utils.CachedThreadPool;
 
 /**
  * @author ron
@@ -30,6 +45,30 @@ public final class AuthorizationFactory {
 	 */
 	static final Logger logger = ConfigUtils.getLogger(AuthorizationFactory.class.getCanonicalName());
 
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(AuthorizationFactory.class.getCanonicalName());
+
+	/**
+	 * How many envelopes of one request can be signed in parallel
+	 */
+	private static final int SIGNING_THREADS = ConfigUtils.getConfig().geti("alien.catalogue.access.AuthorizationFactory.signingThreads", Runtime.getRuntime().availableProcessors());
+
+	private static final ExecutorService SIGNING_POOL = new CachedThreadPool(Math.max(SIGNING_THREADS, 1), 1, TimeUnit.MINUTES, (r) -> {
+		final Thread t = new Thread(r, "AuthorizationFactory.signer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * How long a signed read envelope can be handed out again, in milliseconds. They are valid for one day but the file details (size, md5, LFN) that they carry can change.
+	 */
+	private static final long READ_ENVELOPE_CACHE_TIMEOUT = ConfigUtils.getConfig().getl("alien.catalogue.access.AuthorizationFactory.readEnvelopeCacheTimeout", 60) * 1000;
+
+	private static final ExpirationCache<String, XrootDEnvelope> readEnvelopeCache = new ExpirationCache<>(
+			ConfigUtils.getConfig().geti("alien.catalogue.access.AuthorizationFactory.readEnvelopeCacheSize", 64 * 1024));
+
 	private static AliEnPrincipal defaultAccount = null;
 
 	/**
@@ -192,6 +231,100 @@ public final class AuthorizationFactory {
 	 * @return <code>null</code> if access was granted, otherwise the reason why the access was rejected
 	 */
 	public static String fillAccess(final AliEnPrincipal user, final PFN pfn, final AccessType access, final boolean skipSanityChecks) {
+		final String reason = checkAccess(user, pfn, access, skipSanityChecks);
+
+		if (reason != null)
+			return reason;
+
+		final String cacheKey = readEnvelopeCacheKey(user, pfn, access);
+
+		XrootDEnvelope env = getCachedEnvelope(cacheKey, pfn);
+
+		if (env == null) {
+			env = new XrootDEnvelope(access, pfn);
+
+			signEnvelope(env);
+
+			cacheEnvelope(cacheKey, env);
+		}
+
+		pfn.ticket = new AccessTicket(access, env);
+
+		return null;
+	}
+
+	/**
+	 * Request access to many PFNs at once, for example to all the replicas of a file. The checks and the envelope contents are done on the calling thread, the signatures and encryptions, that
+	 * are the expensive part, in parallel. Read envelopes that were recently issued to the same user for the same replica are reused.
+	 *
+	 * @param user
+	 * @param pfns
+	 * @param access
+	 * @return the PFNs to which the access was refused, with the reason for each of them. The others have their {@link PFN#ticket} filled.
+	 */
+	public static Map<PFN, String> fillAccess(final AliEnPrincipal user, final Collection<PFN> pfns, final AccessType access) {
+		final Map<PFN, String> refused = new LinkedHashMap<>();
+
+		final List<XrootDEnvelope> toSign = new ArrayList<>(pfns.size());
+		final List<String> cacheKeys = new ArrayList<>(pfns.size());
+
+		for (final PFN pfn : pfns) {
+			final String reason = checkAccess(user, pfn, access, false);
+
+			if (reason != null) {
+				refused.put(pfn, reason);
+				continue;
+			}
+
+			final String cacheKey = readEnvelopeCacheKey(user, pfn, access);
+
+			XrootDEnvelope env = getCachedEnvelope(cacheKey, pfn);
+
+			if (env == null) {
+				env = new XrootDEnvelope(access, pfn);
+
+				toSign.add(env);
+				cacheKeys.add(cacheKey);
+			}
+
+			pfn.ticket = new AccessTicket(access, env);
+		}
+
+		if (toSign.size() <= 1 || SIGNING_THREADS <= 1)
+			for (final XrootDEnvelope env : toSign)
+				signEnvelope(env);
+		else
+			try (Timing t = new Timing(monitor, "envelope_batch_signing")) {
+				final List<Future<?>> futures = new ArrayList<>(toSign.size() - 1);
+
+				for (int i = 1; i < toSign.size(); i++) {
+					final XrootDEnvelope env = toSign.get(i);
+
+					futures.add(SIGNING_POOL.submit(() -> signEnvelope(env)));
+				}
+
+				// the calling thread does its share of the work too
+				signEnvelope(toSign.get(0));
+
+				for (final Future<?> f : futures)
+					try {
+						f.get();
+					}
+					catch (final InterruptedException | ExecutionException e) {
+						logger.log(Level.WARNING, "Exception waiting for an envelope to be signed", e);
+					}
+			}
+
+		for (int i = 0; i < toSign.size(); i++)
+			cacheEnvelope(cacheKeys.get(i), toSign.get(i));
+
+		return refused;
+	}
+
+	/**
+	 * @return the reason why the access to this PFN is refused, or <code>null</code> if it is granted
+	 */
+	private static String checkAccess(final AliEnPrincipal user, final PFN pfn, final AccessType access, final boolean skipSanityChecks) {
 		if (logger.isLoggable(Level.FINE))
 			logger.log(Level.FINE, pfn + ", user: " + user + ", access: " + access);
 
@@ -230,9 +363,18 @@ public final class AuthorizationFactory {
 		else
 			return "Unknown access type : " + access;
 
-		final SE referenceSE = pfn.getSE();
+		return null;
+	}
 
-		final XrootDEnvelope env = new XrootDEnvelope(access, pfn);
+	/**
+	 * Sign or encrypt the envelope, as the target SE expects it
+	 *
+	 * @param env
+	 */
+	private static void signEnvelope(final XrootDEnvelope env) {
+		final PFN pfn = env.pfn;
+
+		final SE referenceSE = pfn.getSE();
 
 		try {
 			if (pfn.getPFN().startsWith("root://"))
@@ -245,10 +387,48 @@ public final class AuthorizationFactory {
 		catch (final GeneralSecurityException gse) {
 			logger.log(Level.SEVERE, "Cannot sign and encrypt envelope", gse);
 		}
+	}
 
-		pfn.ticket = new AccessTicket(access, env);
+	/**
+	 * @return the key of this replica, as seen through the LFN that the envelope would carry, in the read envelopes cache, or <code>null</code> if the envelope should not be cached
+	 */
+	private static String readEnvelopeCacheKey(final AliEnPrincipal user, final PFN pfn, final AccessType access) {
+		if (access != AccessType.READ || READ_ENVELOPE_CACHE_TIMEOUT <= 0 || !pfn.getPFN().startsWith("root://"))
+			return null;
 
-		return null;
+		final GUID guid = pfn.getGuid();
+
+		// the envelope carries the first of the LFNs known for the GUID, and a GUID can have several of them
+		final Set<LFN> lfns = guid.getLFNs(true);
+
+		final String lfn = lfns != null && lfns.size() > 0 ? lfns.iterator().next().getCanonicalName() : "";
+
+		return user.getName() + "\n" + access + "\n" + guid.guid + "\n" + lfn + "\n" + pfn.seNumber + "\n" + pfn.getPFN();
+	}
+
+	/**
+	 * @return a private copy of the cached envelope, or <code>null</code> if there is none
+	 */
+	private static XrootDEnvelope getCachedEnvelope(final String cacheKey, final PFN pfn) {
+		if (cacheKey == null)
+			return null;
+
+		final XrootDEnvelope cached = readEnvelopeCache.get(cacheKey);
+
+		if (cached == null) {
+			monitor.incrementCacheMisses("read_envelope");
+			return null;
+		}
+
+		monitor.incrementCacheHits("read_envelope");
+
+		// the callers set the archive anchors on the envelope they get, so they cannot share it
+		return new XrootDEnvelope(cached, pfn);
+	}
+
+	private static void cacheEnvelope(final String cacheKey, final XrootDEnvelope env) {
+		if (cacheKey != null && (env.getSignedEnvelope() != null || env.getEncryptedEnvelope() != null))
+			readEnvelopeCache.put(cacheKey, new XrootDEnvelope(env, env.pfn), READ_ENVELOPE_CACHE_TIMEOUT);
 	}
 
 	/**
@@ -117,6 +117,22 @@ public class XrootDEnvelope implements Serializable {
 		setUnEncryptedEnvelope(lfnc);
 	}
 
+	/**
+	 * Copy of an already signed envelope for another request of the same replica. The archive anchors are not copied, each request sets its own.
+	 *
+	 * @param other
+	 * @param pfn
+	 */
+	XrootDEnvelope(final XrootDEnvelope other, final PFN pfn) {
+		this.type = other.type;
+		this.pfn = pfn;
+		this.turl = other.turl;
+		this.signedEnvelope = other.signedEnvelope;
+		this.unSignedEnvelope = other.unSignedEnvelope;
+		this.unEncryptedEnvelope = other.unEncryptedEnvelope;
+		this.encryptedEnvelope = other.encryptedEnvelope;
+	}
+
 	/**
 	 * Create a encrypted envelope along verification only
 	 *
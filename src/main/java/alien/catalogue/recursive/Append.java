@@ -10,6 +10,7 @@ public class Append extends RecursiveOp {
 
 	@Override
 	public boolean callback(LFN_CSD lfnc) {
+		ok(lfnc);
 		lfns_ok.add(lfnc);
 		return true;
 	}
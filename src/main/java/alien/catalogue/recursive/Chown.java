@@ -13,21 +13,21 @@ public class Chown extends RecursiveOp {
 	public boolean callback(LFN_CSD l) {
 		// check permissions to chown
 		if (!AuthorizationChecker.isOwner(l, user)) {
-			lfns_error.add(l);
+			error(l);
 			return false;
 		}
-		// chown and add to the final collection of lfns
+		// chown and count it
 		if (!l.owner.equals(new_owner) || (new_group != null && !l.gowner.equals(new_group))) {
 			l.owner = new_owner;
 			if (new_group != null)
 				l.gowner = new_group;
 			if (!l.update(true, false, null)) {
-				lfns_error.add(l);
+				error(l);
 				return false;
 			}
 		}
 
-		lfns_ok.add(l);
+		ok(l);
 
 		return true;
 	}
@@ -13,16 +13,16 @@ public class Delete extends RecursiveOp {
 	public boolean callback(LFN_CSD l) {
 		// check permissions to rm
 		if (!AuthorizationChecker.canWrite(l, user)) {
-			lfns_error.add(l);
+			error(l);
 			return false;
 		}
-		// rm and add to the final collection of lfns
+		// rm and count it
 		if (!l.delete(true, true, true)) {
-			lfns_error.add(l);
+			error(l);
 			return false;
 		}
 
-		lfns_ok.add(l);
+		ok(l);
 
 		return true;
 	}
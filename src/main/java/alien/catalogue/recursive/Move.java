@@ -13,16 +13,16 @@ public class Move extends RecursiveOp {
 	public boolean callback(LFN_CSD l) {
 		// check permissions to mv
 		if (!AuthorizationChecker.canWrite(l, user)) {
-			lfns_error.add(l);
+			error(l);
 			return false;
 		}
-		// mv and add to the final collection of lfns
+		// mv and count it
 		if (LFN_CSD.mv(l, lfnc_target, lfnc_target_parent) == null) {
-			lfns_error.add(l);
+			error(l);
 			return false;
 		}
 
-		lfns_ok.add(l);
+		ok(l);
 
 		return true;
 	}
@@ -1,9 +1,12 @@
 package alien.catalogue.recursive;
 
+import java.util.Collection;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import alien.catalogue.LFN_CSD;
+import alien.config.ConfigUtils;
 import alien.user.AliEnPrincipal;
 
 /**
@@ -12,13 +15,26 @@ import alien.user.AliEnPrincipal;
  */
 public abstract class RecursiveOp {
 	/**
-	 * Entries that were ok
+	 * How many failed entries are kept for reporting, the others are only counted
 	 */
-	final Set<LFN_CSD> lfns_ok = new TreeSet<>();
+	private static final int maxKeptErrors = ConfigUtils.getConfig().geti("alien.catalogue.recursive.RecursiveOp.maxKeptErrors", 1000);
+
+	/**
+	 * Entries that were ok, only filled by the operations that have to return them
+	 */
+	final Set<LFN_CSD> lfns_ok = new ConcurrentSkipListSet<>();
+	/**
+	 * First entries that the operation could not be applied on
+	 */
+	final Set<LFN_CSD> lfns_error = new ConcurrentSkipListSet<>();
+	/**
+	 * Number of entries that were ok
+	 */
+	private final AtomicLong okCount = new AtomicLong();
 	/**
-	 * Entries that the operation could not be applied on
+	 * Number of entries that the operation could not be applied on
 	 */
-	final Set<LFN_CSD> lfns_error = new TreeSet<>();
+	private final AtomicLong errorCount = new AtomicLong();
 	private boolean recurse_infinitely = false;
 	private boolean onlyAppend = false;
 	/**
@@ -48,6 +64,41 @@ public abstract class RecursiveOp {
 	 */
 	public abstract boolean callback(LFN_CSD lfnc);
 
+	/**
+	 * Apply the operation on a batch of entries from the same directory, as they come from the catalogue. Called concurrently for different directories.
+	 *
+	 * @param batch
+	 * @return true if no problem with any of the entries
+	 */
+	public boolean callback(final Collection<LFN_CSD> batch) {
+		boolean ok = true;
+
+		for (final LFN_CSD lfnc : batch)
+			if (!callback(lfnc))
+				ok = false;
+
+		return ok;
+	}
+
+	/**
+	 * Account for an entry that was processed successfully
+	 *
+	 * @param lfnc
+	 */
+	void ok(final LFN_CSD lfnc) {
+		okCount.incrementAndGet();
+	}
+
+	/**
+	 * Account for an entry that the operation could not be applied on
+	 *
+	 * @param lfnc
+	 */
+	void error(final LFN_CSD lfnc) {
+		if (errorCount.incrementAndGet() <= maxKeptErrors)
+			lfns_error.add(lfnc);
+	}
+
 	/**
 	 * @return recurse_infinitely
 	 */
@@ -126,12 +177,26 @@ public abstract class RecursiveOp {
 	}
 
 	/**
-	 * @return lfns_error
+	 * @return the first lfns_error, see {@link #getErrorCount()} for how many there were in total
 	 */
 	public Set<LFN_CSD> getLfnsError() {
 		return lfns_error;
 	}
 
+	/**
+	 * @return number of entries that were ok
+	 */
+	public long getOkCount() {
+		return okCount.get();
+	}
+
+	/**
+	 * @return number of entries that the operation could not be applied on
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
 	/**
 	 * @return new_owner
 	 */
@@ -0,0 +1,274 @@
+package alien.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
+import utils.CachedThreadPool;
+
+/**
+ * MD5, xxHash64 and CRC32 of a file, all computed from a single read of the content. The content can be copied to another stream in the same pass (to build an archive, for example). Nothing
+ * is cached here, a caller that wants to reuse the results (the job outputs, between creating and uploading them) keeps them and checks them with {@link #matches(File)}.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class Checksums {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(Checksums.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(Checksums.class.getCanonicalName());
+
+	private static final int BUFFER_SIZE = ConfigUtils.getConfig().geti("alien.io.Checksums.bufferSize", 1024 * 1024);
+
+	private static final int THREADS = ConfigUtils.getConfig().geti("alien.io.Checksums.threads", Runtime.getRuntime().availableProcessors());
+
+	private static final CachedThreadPool THREAD_POOL = new CachedThreadPool(Math.max(THREADS, 1), ConfigUtils.getConfig().getl("alien.io.Checksums.timeOutSeconds", 10), TimeUnit.SECONDS, r -> {
+		final Thread t = new Thread(r, "Checksums");
+		t.setDaemon(true);
+
+		return t;
+	});
+
+	private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	private final String md5;
+
+	private final long xxHash64;
+
+	private final long crc32;
+
+	private final long size;
+
+	private final long lastModified;
+
+	private Checksums(final String md5, final long xxHash64, final long crc32, final long size, final long lastModified) {
+		this.md5 = md5;
+		this.xxHash64 = xxHash64;
+		this.crc32 = crc32;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return MD5 checksum, as 32 hex characters
+	 */
+	public String getMD5() {
+		return md5;
+	}
+
+	/**
+	 * @return xxHash64 checksum, with seed 0
+	 */
+	public long getXXHash64() {
+		return xxHash64;
+	}
+
+	/**
+	 * @return CRC32 checksum, as ZIP entries expect it
+	 */
+	public long getCRC32() {
+		return crc32;
+	}
+
+	/**
+	 * @return number of bytes that were checksummed
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @param f
+	 * @return <code>true</code> if the file still has the size and the modification time it had when these checksums were computed
+	 */
+	public boolean matches(final File f) {
+		return f != null && f.isFile() && f.length() == size && f.lastModified() == lastModified;
+	}
+
+	@Override
+	public String toString() {
+		return "md5=" + md5 + ", xxhash64=" + Long.toHexString(xxHash64) + ", crc32=" + Long.toHexString(crc32) + ", size=" + size;
+	}
+
+	/**
+	 * Accumulates all the checksums from the same buffers
+	 */
+	private static final class Digester {
+		final MessageDigest md5;
+		final StreamingXXHash64 xxHash64 = new StreamingXXHash64(0);
+		final CRC32 crc32 = new CRC32();
+		long size = 0;
+
+		Digester() throws IOException {
+			try {
+				md5 = MessageDigest.getInstance("MD5");
+			}
+			catch (final NoSuchAlgorithmException e) {
+				throw new IOException("Could not initialize MD5 digester", e);
+			}
+		}
+
+		void update(final byte[] buffer, final int offset, final int length) {
+			if (length <= 0)
+				return;
+
+			md5.update(buffer, offset, length);
+			xxHash64.update(buffer, offset, length);
+			crc32.update(buffer, offset, length);
+			size += length;
+		}
+
+		Checksums get(final long lastModified) {
+			return new Checksums(String.format("%032x", new BigInteger(1, md5.digest())), xxHash64.getValue(), crc32.getValue(), size, lastModified);
+		}
+	}
+
+	/**
+	 * Output stream that computes the checksums of everything written through it, for files that are produced locally (archives, for example). Once the file is complete call
+	 * {@link #getChecksums(File)} to get them.
+	 */
+	public static final class ChecksummingOutputStream extends FilterOutputStream {
+		private final Digester digester;
+
+		/**
+		 * @param out
+		 *            where to write the content to
+		 * @throws IOException
+		 *             if the digesters cannot be initialized
+		 */
+		public ChecksummingOutputStream(final OutputStream out) throws IOException {
+			super(out);
+
+			digester = new Digester();
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			digester.update(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			digester.update(b, off, len);
+		}
+
+		/**
+		 * @param f
+		 *            the file the content was written to, after the stream was closed
+		 * @return the checksums of all the content that was written
+		 */
+		public Checksums getChecksums(final File f) {
+			return digester.get(f != null ? f.lastModified() : 0);
+		}
+	}
+
+	/**
+	 * @param f
+	 * @return the checksums of the entire file
+	 * @throws IOException
+	 */
+	public static Checksums compute(final File f) throws IOException {
+		return compute(f, null);
+	}
+
+	/**
+	 * Compute the checksums of a file while copying its content to the given stream, with a single read of the file
+	 *
+	 * @param f
+	 * @param copyTo
+	 *            where to copy the content to, can be <code>null</code>
+	 * @return the checksums of the entire file
+	 * @throws IOException
+	 */
+	public static Checksums compute(final File f, final OutputStream copyTo) throws IOException {
+		if (f == null || !f.isFile() || !f.canRead())
+			throw new IOException("Cannot read from this file: " + f);
+
+		final Digester digester = new Digester();
+
+		final long lastModified = f.lastModified();
+
+		final byte[] buffer = buffers.get();
+
+		try (Timing t = new Timing(monitor, "checksum_ms"); FileInputStream fis = new FileInputStream(f)) {
+			int read;
+
+			while ((read = fis.read(buffer)) >= 0) {
+				digester.update(buffer, 0, read);
+
+				if (copyTo != null && read > 0)
+					copyTo.write(buffer, 0, read);
+			}
+		}
+
+		final Checksums ret = digester.get(lastModified);
+
+		if (monitor != null)
+			monitor.incrementCounter("checksum_bytes", ret.size);
+
+		return ret;
+	}
+
+	/**
+	 * Compute the checksums of many files in parallel, with at most <code>alien.io.Checksums.threads</code> (default: the number of CPU cores) files being read at the same time
+	 *
+	 * @param files
+	 * @return the checksums of each file, in the iteration order of the argument. Files that could not be read are missing from the result.
+	 */
+	public static Map<File, Checksums> compute(final Collection<File> files) {
+		final List<Future<Checksums>> futures = new ArrayList<>(files.size());
+
+		for (final File f : files)
+			futures.add(THREAD_POOL.submit(() -> compute(f)));
+
+		final Map<File, Checksums> ret = new LinkedHashMap<>(files.size());
+
+		int idx = 0;
+
+		for (final File f : files) {
+			try {
+				ret.put(f, futures.get(idx).get());
+			}
+			catch (final ExecutionException e) {
+				logger.log(Level.WARNING, "Cannot compute the checksums of " + f.getAbsolutePath(), e.getCause());
+			}
+			catch (@SuppressWarnings("unused") final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			idx++;
+		}
+
+		return ret;
+	}
+}
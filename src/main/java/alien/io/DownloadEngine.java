@@ -0,0 +1,714 @@
+package alien.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import alien.catalogue.GUID;
+import alien.catalogue.GUIDUtils;
+import alien.catalogue.LFN;
+import alien.catalogue.PFN;
+import alien.config.ConfigUtils;
+import alien.io.protocols.Protocol;
+import alien.io.protocols.TempFileManager;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
+import alien.se.SEUtils;
+import lazyj.Utils;
+import utils.CachedThreadPool;
+
+/**
+ * Download many files at once. Each transfer is queued on the storage element of the replica it is going to read from and every SE serves a limited number of transfers at a time, so a large
+ * input set is spread over all the storages holding it instead of piling up on one of them. Replicas are tried in the given order (closest first), a failed transfer is queued again on the SE
+ * of its next replica. The replicas of a file can also be looked up only when the transfers are about to reach it, in a transfer thread, so that the access envelopes are fresh when they are
+ * used.<br>
+ * <br>
+ * The transfers run in a thread pool shared by all the downloads of this JVM. Files already in the {@link TempFileManager} cache are copied from there, and the xrootd connections are kept
+ * open between consecutive transfers from the same server when the native client is enabled.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class DownloadEngine {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(DownloadEngine.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(DownloadEngine.class.getCanonicalName());
+
+	/**
+	 * Default number of files that are downloaded in parallel
+	 */
+	public static final int DEFAULT_THREADS = ConfigUtils.getConfig().geti("alien.io.DownloadEngine.threads", 8);
+
+	/**
+	 * Default number of parallel transfers from the same storage element
+	 */
+	public static final int DEFAULT_PER_SE_CONCURRENCY = ConfigUtils.getConfig().geti("alien.io.DownloadEngine.perSEConcurrency", 4);
+
+	private static final CachedThreadPool THREAD_POOL = new CachedThreadPool(Integer.MAX_VALUE, ConfigUtils.getConfig().getl("alien.io.DownloadEngine.timeOutSeconds", 10), TimeUnit.SECONDS,
+			r -> {
+				final Thread t = new Thread(r, "DownloadEngine");
+				t.setDaemon(true);
+
+				return t;
+			});
+
+	/**
+	 * Progress notifications. {@link #started(Download, PFN)} and {@link #finished(Download)} are called from the transfer threads, so they have to be thread safe.
+	 */
+	public interface Listener {
+		/**
+		 * A transfer attempt begins
+		 *
+		 * @param download
+		 * @param replica
+		 *            the replica that is read
+		 */
+		default void started(final Download download, final PFN replica) {
+			// nothing by default
+		}
+
+		/**
+		 * The download has completed, successfully or not
+		 *
+		 * @param download
+		 * @see Download#getResult()
+		 * @see Download#getError()
+		 */
+		default void finished(final Download download) {
+			// nothing by default
+		}
+
+		/**
+		 * Called periodically from the thread that waits for the downloads to complete
+		 */
+		default void waiting() {
+			// nothing by default
+		}
+	}
+
+	/**
+	 * Looks up the replicas of a file when the transfers reach it
+	 */
+	@FunctionalInterface
+	public interface Resolver {
+		/**
+		 * Called from a transfer thread
+		 *
+		 * @param download
+		 *            the file that is about to be transferred, its target can still be changed with {@link Download#setTarget(File)}
+		 * @return the replicas with read envelopes, in the order they should be tried, or <code>null</code> if the file is not to be downloaded after all
+		 */
+		List<PFN> resolve(Download download);
+	}
+
+	/**
+	 * One file to download
+	 */
+	public static final class Download {
+		private final String name;
+
+		private final GUID guid;
+
+		private File target;
+
+		private List<PFN> replicas;
+
+		private Resolver resolver;
+
+		private final boolean archiveMember;
+
+		private int attempt = 0;
+
+		private PFN source = null;
+
+		private File result = null;
+
+		private String error = null;
+
+		Download(final String name, final GUID guid, final File target, final List<PFN> replicas, final boolean archiveMember) {
+			this.name = name;
+			this.guid = guid;
+			this.target = target;
+			this.replicas = replicas;
+			this.archiveMember = archiveMember;
+		}
+
+		Download(final String name, final File target, final Resolver resolver) {
+			this(name, null, target, null, false);
+			this.resolver = resolver;
+		}
+
+		/**
+		 * @return the name of the file, for logging
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the GUID of the file, if known
+		 */
+		public GUID getGUID() {
+			return guid;
+		}
+
+		/**
+		 * @return where the file was asked to be downloaded, <code>null</code> meaning a temporary file
+		 */
+		public File getTarget() {
+			return target;
+		}
+
+		/**
+		 * @param target
+		 *            where to download the file, only to be changed by the {@link Resolver} of this download
+		 */
+		public void setTarget(final File target) {
+			this.target = target;
+		}
+
+		/**
+		 * @return the downloaded file, or <code>null</code> if it could not be retrieved
+		 */
+		public synchronized File getResult() {
+			return result;
+		}
+
+		/**
+		 * @return the replica the file was downloaded from (<code>null</code> if it came from the local cache or it failed)
+		 */
+		public synchronized PFN getSource() {
+			return source;
+		}
+
+		/**
+		 * @return the last error, if the download failed. A download that its resolver gave up on has neither a result nor an error.
+		 */
+		public synchronized String getError() {
+			return error;
+		}
+
+		PFN getCurrentReplica() {
+			return attempt < replicas.size() ? replicas.get(attempt) : null;
+		}
+
+		@Override
+		public String toString() {
+			return name + (target != null ? " to " + target.getAbsolutePath() : "");
+		}
+	}
+
+	/**
+	 * Transfers waiting for a slot on one storage element
+	 */
+	private static final class SEQueue {
+		final Deque<Download> pending = new ArrayDeque<>();
+
+		int active = 0;
+	}
+
+	private final int threads;
+
+	private final int perSEConcurrency;
+
+	private final List<Download> downloads = new ArrayList<>();
+
+	private final Map<Integer, SEQueue> queues = new HashMap<>();
+
+	private final List<SEQueue> ring = new ArrayList<>();
+
+	/**
+	 * Downloads whose replicas are not known yet, in the order they were added
+	 */
+	private final Deque<Download> unresolved = new ArrayDeque<>();
+
+	/**
+	 * How many resolved downloads are waiting in the SE queues
+	 */
+	private int pending = 0;
+
+	private int cursor = 0;
+
+	private int running = 0;
+
+	private int remaining = 0;
+
+	private Listener listener = null;
+
+	/**
+	 * Engine with the default concurrency limits
+	 */
+	public DownloadEngine() {
+		this(DEFAULT_THREADS, DEFAULT_PER_SE_CONCURRENCY);
+	}
+
+	/**
+	 * @param threads
+	 *            how many files to download in parallel
+	 * @param perSEConcurrency
+	 *            how many of them can be read in parallel from the same storage element
+	 */
+	public DownloadEngine(final int threads, final int perSEConcurrency) {
+		this.threads = Math.max(threads, 1);
+		this.perSEConcurrency = Math.max(perSEConcurrency, 1);
+	}
+
+	/**
+	 * Queue a file for which the replicas to read from are known already
+	 *
+	 * @param name
+	 *            file name, for logging
+	 * @param target
+	 *            where to download the file, can be <code>null</code> for a temporary file
+	 * @param replicas
+	 *            replicas with read envelopes, in the order they should be tried
+	 * @return the download, to be inspected after {@link #run(Listener)}
+	 */
+	public synchronized Download add(final String name, final File target, final List<PFN> replicas) {
+		final Download d = new Download(name, null, target, replicas != null ? replicas : Collections.emptyList(), false);
+
+		downloads.add(d);
+
+		return d;
+	}
+
+	/**
+	 * Queue a file whose replicas are looked up only when the transfers reach it. The lookups are done in the transfer threads, in the order the files were added, and only as many of them
+	 * ahead of the running transfers as needed to keep the storage elements busy.
+	 *
+	 * @param name
+	 *            file name, for logging
+	 * @param target
+	 *            where to download the file, can be <code>null</code> for a temporary file
+	 * @param resolver
+	 *            looks up the replicas of the file
+	 * @return the download, to be inspected after {@link #run(Listener)}
+	 */
+	public synchronized Download add(final String name, final File target, final Resolver resolver) {
+		final Download d = new Download(name, target, resolver);
+
+		downloads.add(d);
+
+		return d;
+	}
+
+	/**
+	 * Queue a file, to be read from its closest replica. The GUID should be filled with authorization tokens before calling this method.
+	 *
+	 * @param guid
+	 * @param target
+	 *            where to download the file, can be <code>null</code> for a temporary file
+	 * @return the download, to be inspected after {@link #run(Listener)}
+	 * @see alien.catalogue.access.AuthorizationFactory#fillAccess(GUID, alien.catalogue.access.AccessType)
+	 */
+	public synchronized Download add(final GUID guid, final File target) {
+		final Set<PFN> realPFNs = new HashSet<>();
+
+		boolean zipArchive = false;
+
+		final Set<PFN> pfns = guid.getPFNs();
+
+		if (pfns != null)
+			for (final PFN pfn : pfns) {
+				if (pfn.pfn.startsWith("guid:/") && pfn.pfn.indexOf("?ZIP=") >= 0)
+					zipArchive = true;
+
+				final Set<PFN> realPfnsTemp = pfn.getRealPFNs();
+
+				if (realPfnsTemp != null)
+					realPFNs.addAll(realPfnsTemp);
+			}
+
+		final Download d = new Download(guid.guid.toString(), guid, target, SEUtils.sortBySite(realPFNs, ConfigUtils.getCloseSite(), false, false), zipArchive);
+
+		downloads.add(d);
+
+		return d;
+	}
+
+	/**
+	 * Download all the queued files, returning when all of them have either completed or exhausted their replicas
+	 *
+	 * @param progress
+	 *            progress notifications, can be <code>null</code>
+	 * @return all the downloads, in the order they were added
+	 */
+	public List<Download> run(final Listener progress) {
+		synchronized (this) {
+			listener = progress;
+
+			for (final Download d : downloads)
+				if (d.result == null && d.error == null) {
+					if (d.resolver != null) {
+						remaining++;
+						unresolved.add(d);
+						continue;
+					}
+
+					if (d.getCurrentReplica() == null) {
+						d.error = "No replicas for " + d.name;
+
+						if (listener != null)
+							listener.finished(d);
+
+						continue;
+					}
+
+					remaining++;
+					enqueue(d);
+				}
+
+			dispatch();
+
+			while (remaining > 0)
+				try {
+					wait(500);
+
+					if (listener != null)
+						listener.waiting();
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					// drop what was not started yet, the running transfers complete on their own
+					for (final SEQueue q : ring)
+						while (!q.pending.isEmpty())
+							interrupted(q.pending.poll());
+
+					pending = 0;
+
+					while (!unresolved.isEmpty())
+						interrupted(unresolved.poll());
+
+					Thread.currentThread().interrupt();
+
+					break;
+				}
+		}
+
+		return downloads;
+	}
+
+	private void interrupted(final Download d) {
+		synchronized (d) {
+			d.error = "Interrupted before downloading " + d.name;
+		}
+
+		remaining--;
+	}
+
+	/**
+	 * Queue the download on the SE of its current replica
+	 */
+	private void enqueue(final Download d) {
+		final Integer seNumber = Integer.valueOf(d.getCurrentReplica().seNumber);
+
+		SEQueue q = queues.get(seNumber);
+
+		if (q == null) {
+			q = new SEQueue();
+			queues.put(seNumber, q);
+			ring.add(q);
+		}
+
+		q.pending.add(d);
+		pending++;
+	}
+
+	/**
+	 * Start as many transfers as the limits allow, taking the storage elements in turns
+	 */
+	private void dispatch() {
+		while (running < threads) {
+			SEQueue selected = null;
+
+			for (int i = 0; i < ring.size(); i++) {
+				final SEQueue q = ring.get((cursor + i) % ring.size());
+
+				if (q.active < perSEConcurrency && !q.pending.isEmpty()) {
+					selected = q;
+					cursor = (cursor + i + 1) % ring.size();
+					break;
+				}
+			}
+
+			if (selected == null) {
+				// nothing can be started right now, look up the next files while there are not too many waiting already
+				if (unresolved.isEmpty() || pending >= threads)
+					return;
+
+				final Download d = unresolved.poll();
+
+				running++;
+
+				THREAD_POOL.submit(() -> resolve(d));
+
+				continue;
+			}
+
+			final SEQueue q = selected;
+			final Download d = q.pending.poll();
+
+			q.active++;
+			pending--;
+			running++;
+
+			THREAD_POOL.submit(() -> transfer(d, q));
+		}
+	}
+
+	private void resolve(final Download d) {
+		List<PFN> replicas = null;
+
+		String error = null;
+
+		try {
+			replicas = d.resolver.resolve(d);
+
+			if (replicas != null && replicas.isEmpty())
+				error = "No replicas for " + d.name;
+		}
+		catch (final Throwable t) {
+			logger.log(Level.WARNING, "Unexpected exception looking up the replicas of " + d, t);
+
+			error = t.getMessage() != null ? t.getMessage() : t.toString();
+		}
+
+		boolean completed = true;
+
+		synchronized (this) {
+			running--;
+
+			synchronized (d) {
+				d.resolver = null;
+				d.replicas = replicas != null ? replicas : Collections.emptyList();
+
+				if (error != null)
+					d.error = error;
+				else if (replicas != null) {
+					enqueue(d);
+					completed = false;
+				}
+			}
+
+			dispatch();
+		}
+
+		if (completed) {
+			if (listener != null)
+				listener.finished(d);
+
+			synchronized (this) {
+				remaining--;
+				notifyAll();
+			}
+		}
+	}
+
+	private void transfer(final Download d, final SEQueue q) {
+		final PFN replica = d.getCurrentReplica();
+
+		File f = null;
+		String error = null;
+		boolean cached = false;
+
+		try {
+			f = fromCache(d);
+
+			if (f != null)
+				cached = true;
+			else {
+				if (listener != null)
+					listener.started(d, replica);
+
+				try (Timing t = new Timing(monitor, "transfer_ms")) {
+					if (d.archiveMember)
+						f = IOUtils.get(d.guid, d.target);
+					else
+						for (final Protocol protocol : Transfer.getAccessProtocols(replica))
+							try {
+								f = fetch(protocol, replica, d.target);
+
+								if (f != null)
+									break;
+							}
+							catch (final IOException e) {
+								if (logger.isLoggable(Level.FINE))
+									logger.log(Level.FINE, "Failed to fetch " + replica.pfn + " by " + protocol, e);
+
+								error = e.getMessage();
+							}
+				}
+			}
+		}
+		catch (final Throwable t) {
+			logger.log(Level.WARNING, "Unexpected exception downloading " + d, t);
+
+			error = t.getMessage();
+		}
+
+		boolean completed = true;
+
+		synchronized (this) {
+			q.active--;
+			running--;
+
+			synchronized (d) {
+				if (f != null) {
+					d.result = f;
+					d.error = null;
+
+					if (!cached)
+						d.source = replica;
+
+					if (monitor != null)
+						monitor.incrementCounter("files_ok");
+				}
+				else {
+					d.error = error != null ? error : "Could not get " + d.name + " from " + replica.pfn;
+
+					d.attempt++;
+
+					if (d.getCurrentReplica() != null && !d.archiveMember) {
+						logger.log(Level.INFO, "Failed to download " + d + " from " + replica.pfn + ", trying the next replica");
+
+						if (monitor != null)
+							monitor.incrementCounter("failovers");
+
+						enqueue(d);
+						completed = false;
+					}
+					else if (monitor != null)
+						monitor.incrementCounter("files_failed");
+				}
+			}
+
+			dispatch();
+		}
+
+		if (completed) {
+			if (listener != null)
+				listener.finished(d);
+
+			synchronized (this) {
+				remaining--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the content from the local cache, copied to the target file if one was given, or <code>null</code> if it is not cached
+	 */
+	private static File fromCache(final Download d) {
+		if (d.guid == null)
+			return null;
+
+		final File cachedContent = TempFileManager.getAny(d.guid);
+
+		if (cachedContent == null) {
+			if (monitor != null)
+				monitor.incrementCacheMisses("cache");
+
+			return null;
+		}
+
+		if (monitor != null)
+			monitor.incrementCacheHits("cache");
+
+		if (d.target == null)
+			return cachedContent;
+
+		try {
+			if (!Utils.copyFile(cachedContent.getAbsolutePath(), d.target.getAbsolutePath())) {
+				logger.log(Level.WARNING, "Cannot copy " + cachedContent.getAbsolutePath() + " to " + d.target.getAbsolutePath());
+
+				return null;
+			}
+		}
+		finally {
+			TempFileManager.release(cachedContent);
+		}
+
+		TempFileManager.putPersistent(d.guid, d.target);
+
+		return d.target;
+	}
+
+	/**
+	 * Download one replica with the given protocol. If the read envelope points to a member of an archive then the archive is downloaded and the member extracted from it.
+	 *
+	 * @param protocol
+	 * @param pfn
+	 * @param target
+	 *            where to download the file, can be <code>null</code> for a temporary file
+	 * @return the local file
+	 * @throws IOException
+	 */
+	public static File fetch(final Protocol protocol, final PFN pfn, final File target) throws IOException {
+		if (pfn.ticket == null || pfn.ticket.envelope == null || pfn.ticket.envelope.getArchiveAnchor() == null)
+			return protocol.get(pfn, target);
+
+		final File tempLocalFile = protocol.get(pfn, null);
+
+		if (tempLocalFile == null)
+			return null;
+
+		final LFN archiveMember = pfn.ticket.envelope.getArchiveAnchor();
+
+		final String archiveFileName = archiveMember.getFileName();
+
+		try (ZipInputStream zi = new ZipInputStream(new FileInputStream(tempLocalFile))) {
+			ZipEntry zipentry;
+
+			while ((zipentry = zi.getNextEntry()) != null)
+				if (zipentry.getName().equals(archiveFileName)) {
+					File targetFile = target;
+					if (targetFile == null)
+						targetFile = File.createTempFile("zip-extract", null, IOUtils.getTemporaryDirectory());
+
+					try (final FileOutputStream fos = new FileOutputStream(targetFile)) {
+						final byte[] buf = new byte[8192];
+
+						int n;
+
+						while ((n = zi.read(buf, 0, buf.length)) > -1)
+							fos.write(buf, 0, n);
+					}
+
+					zi.closeEntry();
+
+					TempFileManager.putTemp(GUIDUtils.createGuid(), targetFile);
+					TempFileManager.release(targetFile);
+
+					return targetFile;
+				}
+		}
+		finally {
+			TempFileManager.release(tempLocalFile);
+		}
+
+		return null;
+	}
+}
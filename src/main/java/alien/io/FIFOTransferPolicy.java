@@ -0,0 +1,24 @@
+package alien.io;
+
+import java.util.Comparator;
+
+/**
+ * The historical order: the least loaded SE first, then the oldest transfers and those that failed more often
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class FIFOTransferPolicy implements TransferPolicy {
+	private static final Comparator<TransferScheduler.Candidate> ORDER = Comparator.<TransferScheduler.Candidate> comparingDouble(c -> c.queue.load())
+			.thenComparingLong(TransferScheduler.Candidate::orderKey);
+
+	@Override
+	public String getName() {
+		return "fifo";
+	}
+
+	@Override
+	public Comparator<TransferScheduler.Candidate> ordering(final long now) {
+		return ORDER;
+	}
+}
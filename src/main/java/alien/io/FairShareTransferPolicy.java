@@ -0,0 +1,136 @@
+package alien.io;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import alien.config.ConfigUtils;
+
+/**
+ * Default transfer policy, ordering the queued transfers by
+ * <ol>
+ * <li>the recent usage of the user that asked for them, in bytes with an exponential decay, divided by the user's weight (<code>alien.io.FairShareTransferPolicy.weight.&lt;user&gt;</code>,
+ * default 1), so that a user that has queued a large bulk cannot starve the others</li>
+ * <li>the response ratio, (waiting time + expected duration) / expected duration, highest first. Small files go first, but the ratio of large ones keeps growing while they wait, so they
+ * are not postponed forever. The expected duration comes from the recent throughput towards the destination SE.</li>
+ * <li>the load of the destination SE and the historical queue order, as in {@link FIFOTransferPolicy}</li>
+ * </ol>
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class FairShareTransferPolicy implements TransferPolicy {
+	/**
+	 * After how long the usage of a user counts half, in milliseconds
+	 */
+	private final long halfLife = ConfigUtils.getConfig().getl("alien.io.FairShareTransferPolicy.halfLife", 3600) * 1000;
+
+	/**
+	 * Usage differences below this many bytes are considered equal, so that the response ratio decides between users with similar usage
+	 */
+	private final double shareQuantum = ConfigUtils.getConfig().getd("alien.io.FairShareTransferPolicy.shareQuantum", 1024d * 1024 * 1024);
+
+	/**
+	 * Fixed cost of any transfer (connection, authorization, catalogue update), in milliseconds
+	 */
+	private final double setupMillis = ConfigUtils.getConfig().getd("alien.io.FairShareTransferPolicy.setupMillis", 5000);
+
+	final TransferThroughput throughput = new TransferThroughput(ConfigUtils.getConfig().getd("alien.io.FairShareTransferPolicy.alpha", 0.2),
+			ConfigUtils.getConfig().getd("alien.io.FairShareTransferPolicy.defaultRate", 20d * 1024 * 1024));
+
+	static final class Usage {
+		private double bytes = 0;
+
+		private long lastUpdate = 0;
+
+		private synchronized double get(final long now, final long halfLife) {
+			if (now > lastUpdate && bytes > 0) {
+				bytes *= Math.pow(0.5, (double) (now - lastUpdate) / halfLife);
+				lastUpdate = now;
+			}
+
+			return bytes;
+		}
+
+		private synchronized void add(final double amount, final long now, final long halfLife) {
+			get(now, halfLife);
+
+			bytes += amount;
+
+			if (now > lastUpdate)
+				lastUpdate = now;
+		}
+	}
+
+	/**
+	 * Recent usage by user. Users whose usage has decayed below one share quantum are forgotten, they sort the same as those without any usage.
+	 */
+	final Map<String, Usage> usage = new ConcurrentHashMap<>();
+
+	private final Map<String, Double> weights = new ConcurrentHashMap<>();
+
+	@Override
+	public String getName() {
+		return "fairshare";
+	}
+
+	private double weight(final String user) {
+		return weights.computeIfAbsent(user, u -> Double.valueOf(Math.max(ConfigUtils.getConfig().getd("alien.io.FairShareTransferPolicy.weight." + u, 1), 0.001))).doubleValue();
+	}
+
+	@Override
+	public Comparator<TransferScheduler.Candidate> ordering(final long now) {
+		// the same values for all the comparisons of one selection
+		final Map<String, Long> shares = new HashMap<>();
+
+		for (final String user : usage.keySet())
+			usage.computeIfPresent(user, (u, v) -> {
+				final long share = (long) (v.get(now, halfLife) / weight(u) / shareQuantum);
+
+				if (share <= 0)
+					return null;
+
+				shares.put(u, Long.valueOf(share));
+
+				return v;
+			});
+
+		final Map<String, Double> rates = new HashMap<>();
+
+		final Comparator<TransferScheduler.Candidate> byShare = Comparator.comparingLong(c -> shares.getOrDefault(c.user, Long.valueOf(0)).longValue());
+
+		final Comparator<TransferScheduler.Candidate> byResponseRatio = Comparator.comparingDouble(c -> {
+			final double rate = rates.computeIfAbsent(c.destination, d -> Double.valueOf(throughput.estimate(d))).doubleValue();
+
+			final double service = setupMillis + Math.max(c.size, 0) * 1000d / rate;
+
+			// highest ratio first
+			return -(Math.max(now - c.received, 0) + service) / service;
+		});
+
+		return byShare.thenComparing(byResponseRatio).thenComparingDouble(c -> c.queue.load()).thenComparingLong(TransferScheduler.Candidate::orderKey);
+	}
+
+	@Override
+	public void started(final TransferScheduler.Candidate c, final long now) {
+		// atomically with the eviction in ordering()
+		usage.compute(c.user, (u, v) -> {
+			final Usage ret = v != null ? v : new Usage();
+			ret.add(Math.max(c.size, 0), now, halfLife);
+			return ret;
+		});
+	}
+
+	@Override
+	public void finished(final TransferScheduler.Candidate c, final int sourceSE, final long durationMillis, final boolean success, final long now) {
+		if (success)
+			throughput.record(sourceSE, c.destination, c.size, durationMillis);
+	}
+
+	@Override
+	public void history(final String destination, final long size, final long durationMillis) {
+		// the source is not recorded in the database
+		throughput.record(0, destination, size, durationMillis);
+	}
+}
@@ -1,6 +1,5 @@
 package alien.io;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -8,15 +7,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.math.BigInteger;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -86,59 +83,20 @@ public class IOUtils {
 	 * @param f
 	 * @return the MD5 checksum of the entire file
 	 * @throws IOException
+	 * @see Checksums#compute(File)
 	 */
 	public static String getMD5(final File f) throws IOException {
-		if (f == null || !f.isFile() || !f.canRead())
-			throw new IOException("Cannot read from this file: " + f);
-
-		MessageDigest md;
-		try {
-			md = MessageDigest.getInstance("MD5");
-		}
-		catch (final NoSuchAlgorithmException e1) {
-			throw new IOException("Could not initialize MD5 digester", e1);
-		}
-
-		try (DigestInputStream dis = new DigestInputStream(new FileInputStream(f), md)) {
-			final byte[] buff = new byte[10240];
-
-			int cnt;
-
-			do
-				cnt = dis.read(buff);
-			while (cnt == buff.length);
-
-			final byte[] digest = md.digest();
-
-			return String.format("%032x", new BigInteger(1, digest));
-		}
-		catch (final IOException ioe) {
-			throw ioe;
-		}
+		return Checksums.compute(f).getMD5();
 	}
 
 	/**
 	 * @param f
 	 * @return the xxHash64 checksum of the entire file
 	 * @throws IOException
+	 * @see Checksums#compute(File)
 	 */
-
 	public static long getXXHash64(final File f) throws IOException {
-		try (BufferedInputStream buffStream = new BufferedInputStream(new FileInputStream(f))) {
-			final StreamingXXHash64 hash64 = new StreamingXXHash64(0);
-			final byte[] buffer = new byte[8192];
-			for (;;) {
-				final int read = buffStream.read(buffer);
-				if (read == -1) {
-					break;
-				}
-				hash64.update(buffer, 0, read);
-			}
-			return hash64.getValue();
-		}
-		catch (final IOException ioe) {
-			throw ioe;
-		}
+		return Checksums.compute(f).getXXHash64();
 	}
 
 	/**
@@ -345,6 +303,33 @@ public class IOUtils {
 		return null;
 	}
 
+	/**
+	 * Download many files at once, with {@link DownloadEngine#DEFAULT_THREADS} files in parallel and at most {@link DownloadEngine#DEFAULT_PER_SE_CONCURRENCY} transfers from the same storage
+	 * element. The GUIDs should be filled with authorization tokens before calling this method.
+	 *
+	 * @param guids
+	 *            the GUIDs to download and where to put each of them. The target can be <code>null</code> in which case a temporary location will be used, but then you should handle the
+	 *            temporary files.
+	 * @param listener
+	 *            progress notifications, can be <code>null</code>
+	 * @return the downloaded file for each GUID, <code>null</code> for the ones that could not be retrieved
+	 * @see TempFileManager#release(File)
+	 * @see AuthorizationFactory#fillAccess(GUID, AccessType)
+	 */
+	public static Map<GUID, File> get(final Map<GUID, File> guids, final DownloadEngine.Listener listener) {
+		final DownloadEngine engine = new DownloadEngine();
+
+		for (final Map.Entry<GUID, File> entry : guids.entrySet())
+			engine.add(entry.getKey(), entry.getValue());
+
+		final Map<GUID, File> ret = new LinkedHashMap<>(guids.size());
+
+		for (final DownloadEngine.Download d : engine.run(listener))
+			ret.put(d.getGUID(), d.getResult());
+
+		return ret;
+	}
+
 	private static final class DownloadWork implements Runnable {
 		private final PFN realPfn;
 		private final Object lock;
@@ -691,6 +676,37 @@ public class IOUtils {
 	 * @throws IOException
 	 */
 	public static LFN upload(final File localFile, final String toLFN, final JAliEnCOMMander cmd, final String... args) throws IOException {
+		return upload(localFile, null, toLFN, cmd, args);
+	}
+
+	/**
+	 * Upload a local file to the Grid
+	 *
+	 * @param localFile
+	 *            local file to upload
+	 * @param knownChecksums
+	 *            checksums of the local file, if the caller has them already, so that the file is not read again. They are ignored if the file has changed since.
+	 * @param toLFN
+	 *            catalogue entry name
+	 * @param owner
+	 *            owner of the new file
+	 * @param progressReport
+	 *            if you want progress report displayed (for user interface)
+	 * @param args
+	 *            other `cp` command parameters to pass
+	 * @return the uploaded LFN, if everything went ok, <code>null</code> if not
+	 * @throws IOException
+	 */
+	public static LFN upload(final File localFile, final Checksums knownChecksums, final String toLFN, final AliEnPrincipal owner, final OutputStream progressReport, final String... args)
+			throws IOException {
+		final UIPrintWriter out = progressReport != null ? new PlainWriter(progressReport) : null;
+
+		final JAliEnCOMMander cmd = new JAliEnCOMMander(owner, null, ConfigUtils.getCloseSite(), out);
+
+		return upload(localFile, knownChecksums, toLFN, cmd, args);
+	}
+
+	private static LFN upload(final File localFile, final Checksums knownChecksums, final String toLFN, final JAliEnCOMMander cmd, final String... args) throws IOException {
 		final LFN l = cmd.c_api.getLFN(toLFN, true);
 
 		if (l == null)
@@ -711,7 +727,7 @@ public class IOUtils {
 
 		final JAliEnCommandcp cp = new JAliEnCommandcp(cmd, cpArgs);
 
-		return cp.copyLocalToGrid(localFile, absolutePath);
+		return cp.copyLocalToGrid(localFile, absolutePath, knownChecksums);
 	}
 
 	/**
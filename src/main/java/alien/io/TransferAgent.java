@@ -72,8 +72,6 @@ public class TransferAgent extends Thread {
 		shouldStop = true;
 	}
 
-	private static final Object moreWorkNotification = new Object();
-
 	/*
 	 * (non-Javadoc)
 	 *
@@ -90,12 +88,10 @@ public class TransferAgent extends Thread {
 				work = broker.getWork(this);
 
 				if (work != null) {
-					if (!TransferBroker.touch(work, this))
+					if (!TransferBroker.touch(work, this)) {
+						broker.abandon(work);
+						TransferBroker.touch(null, this);
 						return;
-
-					// hey, there is work to be done, wake up _one_ neighbour
-					synchronized (moreWorkNotification) {
-						moreWorkNotification.notify();
 					}
 
 					logger.log(Level.INFO, "Performing transfer " + work.getTransferId());
@@ -125,11 +121,8 @@ public class TransferAgent extends Thread {
 							firstTimeNoWork = false;
 						}
 
-						synchronized (moreWorkNotification) {
-							// try in 30 seconds again to see if there is anything for it to do
-							// another thread picking up work might wake us up in the mean time
-							moreWorkNotification.wait(1000 * 30);
-						}
+						// woken up as soon as more work is queued or a transfer slot is freed, otherwise look again in 30 seconds
+						broker.awaitWork(1000 * 30);
 					}
 					catch (@SuppressWarnings("unused") final InterruptedException ie) {
 						// ignore
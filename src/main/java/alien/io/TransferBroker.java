@@ -3,7 +3,6 @@
  */
 package alien.io;
 
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -18,7 +17,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,7 +37,6 @@ import apmon.ApMon;
 import lazyj.DBFunctions;
 import lazyj.DBFunctions.DBConnection;
 import lazyj.Format;
-import lazyj.cache.ExpirationCache;
 
 /**
  * @author costing
@@ -55,15 +52,12 @@ public class TransferBroker {
 		// just hide it
 	}
 
-	private static TransferBroker instance = null;
+	private static final TransferBroker instance = new TransferBroker();
 
 	/**
 	 * @return singleton
 	 */
-	public static synchronized TransferBroker getInstance() {
-		if (instance == null)
-			instance = new TransferBroker();
-
+	public static TransferBroker getInstance() {
 		return instance;
 	}
 
@@ -126,162 +120,115 @@ public class TransferBroker {
 		}
 	}
 
-	private long lastTimeNoWork = 0;
-
-	private DBFunctions dbCached = ConfigUtils.getDB("transfers");
-
-	private final ExpirationCache<String, Integer> maxTransfersCache = new ExpirationCache<>(1024);
-
-	private int getMaxTransfers(final String seName) {
-		final Integer i = maxTransfersCache.get(seName.toLowerCase());
-
-		if (i != null)
-			return i.intValue();
-
-		int ret = 0;
+	private final TransferScheduler scheduler = new TransferScheduler(this::cleanup);
 
-		try (DBFunctions db = ConfigUtils.getDB("transfers")) {
-			db.setReadOnly(true);
-			db.setQueryTimeout(60);
-
-			db.query("SELECT max(max_transfers) FROM PROTOCOLS WHERE sename=?", false, seName);
-
-			if (db.moveNext())
-				ret = db.geti(1);
-		}
-
-		maxTransfersCache.put(seName.toLowerCase(), Integer.valueOf(ret), 1000 * 60 * 5);
-
-		return ret;
-	}
-
-	/**
-	 * @return the next transfer to be performed, or <code>null</code> if there is nothing to do
-	 */
 	/**
 	 * @param agent
 	 * @return the next transfer to execute, if any is available
 	 */
-	public synchronized Transfer getWork(final TransferAgent agent) {
-		if (System.currentTimeMillis() < lastTimeNoWork)
-			return null;
-
-		if (dbCached == null) {
-			dbCached = ConfigUtils.getDB("transfers");
-
-			if (dbCached == null) {
-				logger.log(Level.WARNING, "Could not connect to the transfers database");
+	public Transfer getWork(final TransferAgent agent) {
+		TransferScheduler.Candidate c;
 
-				lastTimeNoWork = System.currentTimeMillis();
-
-				return null;
+		while ((c = scheduler.claim()) != null) {
+			if (!claimInDatabase(c, agent, scheduler)) {
+				scheduler.release(c);
+				continue;
 			}
 
-			dbCached.setReadOnly(true);
-			dbCached.setQueryTimeout(300);
-		}
-
-		cleanup();
-
-		touch(null, agent);
-
-		long transferId = -1;
-		String sLFN = null;
-		String targetSE = null;
-		String onDeleteRemoveReplica = null;
-
-		while (transferId < 0) {
-			if (!dbCached.moveNext()) {
-				// dbCached.query(
-				// "select transferId,lfn,destination,remove_replica from TRANSFERS_DIRECT inner join PROTOCOLS on sename=destination and status='WAITING' LEFT OUTER JOIN (select se_name, count(1) as
-				// active_cnt from active_transfers group by se_name) a on (se_name=sename) where max_transfers>0 and (active_cnt is null or active_cnt<max_transfers) group by 1,2,3,4 order by
-				// coalesce(max(active_cnt),0)/sum(max_transfers) asc, transferId-1000*attempts asc limit 50;");
+			Transfer t = null;
 
-				dbCached.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
-				dbCached.query(
-						"select /*! SQL_BUFFER_RESULT */ /*! SQL_SMALL_RESULT */  transferId, lfn, destination, remove_replica from TRANSFERS_DIRECT inner join (select sename, sum(max_transfers) mt, coalesce(max(active_cnt),0) at from PROTOCOLS left outer join (select se_name, count(1) as active_cnt from active_transfers group by se_name) a on (se_name=sename) group by sename having at<mt) b ON destination=sename where status='WAITING' order by at/mt asc, transferId-1000*attempts asc limit 500;");
-				dbCached.setTransactionIsolation(-1);
-
-				if (!dbCached.moveNext()) {
-					logger.log(Level.FINE, "There is no waiting transfer in the queue");
-
-					lastTimeNoWork = System.currentTimeMillis() + 30 * 1000 + ThreadLocalRandom.current().nextInt(30 * 1000);
-
-					return null;
-				}
+			try {
+				t = prepareTransfer(c.transferId, c.lfn, c.destination, c.removeReplica, agent);
+			}
+			catch (final Throwable th) {
+				logger.log(Level.WARNING, "Exception preparing transfer " + c.transferId, th);
+				markTransfer(c.transferId, Transfer.FAILED_SYSTEM, "Exception preparing the transfer: " + th.getMessage());
 			}
 
-			final Set<String> ignoredSEs = new HashSet<>();
-
-			do
-				try (DBFunctions db = ConfigUtils.getDB("transfers")) {
-					transferId = dbCached.getl(1);
-					sLFN = dbCached.gets(2);
-					targetSE = dbCached.gets(3);
-					onDeleteRemoveReplica = dbCached.gets(4);
-
-					if (transferId < 0 || sLFN == null || sLFN.length() == 0 || targetSE == null || targetSE.length() == 0) {
-						logger.log(Level.INFO, "Transfer details are wrong");
-
-						lastTimeNoWork = System.currentTimeMillis();
-
-						return null;
-					}
-
-					if (ignoredSEs.contains(targetSE.toLowerCase())) {
-						transferId = -1;
-
-						continue;
-					}
+			if (t != null) {
+				scheduler.running(c);
+				return t;
+			}
 
-					db.setReadOnly(true);
-					db.setQueryTimeout(60);
+			// this one was not good, free its slot and try the next one
+			touch(null, agent);
+			scheduler.release(c);
+		}
 
-					db.query("SELECT count(1) FROM active_transfers WHERE se_name=?", false, targetSE);
+		logger.log(Level.FINE, "There is no waiting transfer in the queue");
 
-					db.setReadOnly(false);
+		return null;
+	}
 
-					if (db.geti(1) >= getMaxTransfers(targetSE)) {
-						ignoredSEs.add(targetSE.toLowerCase());
+	/**
+	 * Block until new work might be available, either because more transfers were queued or because a transfer slot was freed
+	 *
+	 * @param timeout
+	 *            maximum time to wait, in milliseconds
+	 * @throws InterruptedException
+	 */
+	void awaitWork(final long timeout) throws InterruptedException {
+		scheduler.awaitWork(timeout);
+	}
 
-						transferId = -1;
+	/**
+	 * The transfer returned by {@link #getWork(TransferAgent)} will not be executed after all, give its slot back
+	 *
+	 * @param t
+	 */
+	void abandon(final Transfer t) {
+		scheduler.abandoned(t.getTransferId());
+	}
 
-						continue;
-					}
+	/**
+	 * Move the transfer from WAITING to TRANSFERRING and record the agent that executes it. The active_transfers row is inserted first so that {@link #cleanup()} never sees a transfer in
+	 * TRANSFERRING state without an owner, and so that the agents of all the JVMs see each other's claims when checking the SE limit.
+	 *
+	 * @param c
+	 * @param agent
+	 * @param scheduler
+	 *            to be told when the SE turns out to be full
+	 * @return <code>true</code> if this agent now owns the transfer, <code>false</code> if another agent was faster or the SE has no free slot left
+	 */
+	private static boolean claimInDatabase(final TransferScheduler.Candidate c, final TransferAgent agent, final TransferScheduler scheduler) {
+		try (DBFunctions db = ConfigUtils.getDB("transfers")) {
+			if (db == null)
+				return false;
 
-					final DBConnection dbc = db.getConnection();
+			db.setQueryTimeout(60);
 
-					executeQuery(dbc, "lock tables TRANSFERS_DIRECT write, active_transfers write;");
+			final Long transferId = Long.valueOf(c.transferId);
 
-					try {
-						executeQuery(dbc, "update TRANSFERS_DIRECT set status='TRANSFERRING' where transferId=" + transferId + " AND status='WAITING';");
+			if (!db.query("INSERT INTO active_transfers (last_active, se_name, transfer_id, transfer_agent_id, pid, host) VALUES (?, ?, ?, ?, ?, ?);", false,
+					Long.valueOf(System.currentTimeMillis() / 1000), c.destination, transferId, agent.getTransferAgentID(), Integer.valueOf(agent.getPID()), agent.getHostName()))
+				return false;
 
-						if (updateCount == 0) {
-							logger.log(Level.INFO, "Concurrent selection of " + transferId + ", retrying");
-							transferId = -1;
-							continue;
-						}
+			// the in-memory counter only knows about the other JVMs' transfers as of the last refill
+			if (db.query("SELECT count(1) FROM active_transfers WHERE se_name=?;", false, c.destination) && db.moveNext() && db.geti(1) > c.queue.maxTransfers) {
+				logger.log(Level.FINE, "No free slot left on " + c.destination + " for " + c.transferId);
 
-						executeQuery(dbc, "insert into active_transfers (last_active, se_name, transfer_id, transfer_agent_id, pid, host) VALUES (" + System.currentTimeMillis() / 1000 + ", " + "'"
-								+ Format.escSQL(targetSE) + "', " + transferId + ", " + agent.getTransferAgentID() + ", " + agent.getPID() + ", '" + Format.escSQL(agent.getHostName()) + "');");
+				scheduler.overLimit(c, db.geti(1));
+			}
+			else {
+				if (db.query("UPDATE TRANSFERS_DIRECT SET status='TRANSFERRING', started=? WHERE transferId=? AND status='WAITING';", false, Long.valueOf(System.currentTimeMillis() / 1000),
+						transferId) && db.getUpdateCount() > 0)
+					return true;
 
-					}
-					finally {
-						executeQuery(dbc, "unlock tables;");
-						executeClose();
+				logger.log(Level.INFO, "Concurrent selection of " + c.transferId + ", trying another one");
+			}
 
-						dbc.free();
-					}
+			db.query("DELETE FROM active_transfers WHERE transfer_id=? AND transfer_agent_id=? AND pid=? AND host=?;", false, transferId, agent.getTransferAgentID(),
+					Integer.valueOf(agent.getPID()), agent.getHostName());
 
-					break;
-				}
-				catch (final Exception e) {
-					logger.log(Level.WARNING, "Exception fetching data from the query", e);
-					// ignore
-				}
-			while (dbCached.moveNext());
+			return false;
 		}
+		catch (final Exception e) {
+			logger.log(Level.WARNING, "Exception claiming transfer " + c.transferId, e);
+			return false;
+		}
+	}
 
+	private static Transfer prepareTransfer(final long transferId, final String sLFN, final String targetSE, final String onDeleteRemoveReplica, final TransferAgent agent) {
 		GUID guid;
 		final LFN lfn;
 
@@ -656,13 +603,34 @@ public class TransferBroker {
 	}
 
 	/**
-	 * Mark a transfer as active
+	 * Serialize the concurrent marking of the same transfer, picked by its ID
+	 */
+	private static final Object[] touchLocks = new Object[64];
+
+	static {
+		for (int i = 0; i < touchLocks.length; i++)
+			touchLocks[i] = new Object();
+	}
+
+	/**
+	 * Mark a transfer as active. Each agent has its own row in <code>active_transfers</code>, so only the calls of the same agent, and those for the same transfer, wait for each other.
 	 *
 	 * @param t
 	 * @param ta
 	 * @return <code>false</code> if the operation cannot be performed
 	 */
-	public static synchronized boolean touch(final Transfer t, final TransferAgent ta) {
+	public static boolean touch(final Transfer t, final TransferAgent ta) {
+		synchronized (ta) {
+			if (t == null)
+				return doTouch(null, ta);
+
+			synchronized (touchLocks[(int) (t.getTransferId() & (touchLocks.length - 1))]) {
+				return doTouch(t, ta);
+			}
+		}
+	}
+
+	private static boolean doTouch(final Transfer t, final TransferAgent ta) {
 		try (DBFunctions db = ConfigUtils.getDB("transfers")) {
 			if (db == null)
 				return false;
@@ -888,6 +856,8 @@ public class TransferBroker {
 
 		markTransfer(t.getTransferId(), t.getExitCode(), t.getFailureReason());
 
+		instance.scheduler.finished(t);
+
 		reportMonitoring(t);
 
 		for (final PFN target : t.getSuccessfulTransfers()) {
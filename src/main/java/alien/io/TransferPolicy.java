@@ -0,0 +1,94 @@
+package alien.io;
+
+import java.util.Comparator;
+import java.util.logging.Level;
+
+import alien.config.ConfigUtils;
+
+/**
+ * Decides which of the queued transfers the {@link TransferScheduler} starts next. Implementations are told when a transfer starts and when it ends, so that they can keep whatever
+ * history they need, and have to be thread safe. The time is always passed as an argument, so that the same policy can be replayed offline by {@link TransferSimulator}.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+interface TransferPolicy {
+	/**
+	 * @return short name of the policy, for logging and reports
+	 */
+	String getName();
+
+	/**
+	 * @param now
+	 *            current epoch time in milliseconds
+	 * @return the order in which the transfers should be started, the smallest element first
+	 */
+	Comparator<TransferScheduler.Candidate> ordering(long now);
+
+	/**
+	 * A transfer was given to an agent, and the agent has taken it over in the database
+	 *
+	 * @param c
+	 * @param now
+	 */
+	default void started(final TransferScheduler.Candidate c, final long now) {
+		// nothing by default
+	}
+
+	/**
+	 * A transfer has completed
+	 *
+	 * @param c
+	 * @param sourceSE
+	 *            number of the SE the data was read from, <code>0</code> if not known
+	 * @param durationMillis
+	 *            how long the transfer took
+	 * @param success
+	 * @param now
+	 */
+	default void finished(final TransferScheduler.Candidate c, final int sourceSE, final long durationMillis, final boolean success, final long now) {
+		// nothing by default
+	}
+
+	/**
+	 * A transfer that completed before this process started, read from the database so that the policy doesn't start from scratch after a restart
+	 *
+	 * @param destination
+	 * @param size
+	 *            in bytes
+	 * @param durationMillis
+	 *            how long the transfer took
+	 */
+	default void history(final String destination, final long size, final long durationMillis) {
+		// nothing by default
+	}
+
+	/**
+	 * @param name
+	 *            <code>fifo</code>, <code>fairshare</code> or the name of a class implementing this interface
+	 * @return a new instance of the policy, the fair share one if the name cannot be resolved
+	 */
+	static TransferPolicy forName(final String name) {
+		if ("fifo".equalsIgnoreCase(name))
+			return new FIFOTransferPolicy();
+
+		if (name == null || name.isBlank() || "fairshare".equalsIgnoreCase(name))
+			return new FairShareTransferPolicy();
+
+		try {
+			return (TransferPolicy) Class.forName(name).getConstructor().newInstance();
+		}
+		catch (final ReflectiveOperationException | ClassCastException e) {
+			TransferScheduler.logger.log(Level.WARNING, "Cannot instantiate the transfer policy " + name + ", using the fair share one", e);
+		}
+
+		return new FairShareTransferPolicy();
+	}
+
+	/**
+	 * @return the policy configured with <code>alien.io.TransferScheduler.policy</code>
+	 */
+	static TransferPolicy fromConfig() {
+		return forName(ConfigUtils.getConfig().gets("alien.io.TransferScheduler.policy", "fairshare"));
+	}
+}
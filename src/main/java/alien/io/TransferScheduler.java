@@ -0,0 +1,695 @@
+package alien.io;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
+import lazyj.DBFunctions;
+
+/**
+ * In-memory view of the waiting transfers, one queue per destination SE, from which the {@link TransferAgent}s of this JVM take their work without any global lock. A background thread
+ * keeps the queues filled from <code>TRANSFERS_DIRECT</code> and the number of active transfers per SE under the <code>max_transfers</code> limit set in <code>PROTOCOLS</code>. Agents that
+ * find nothing to do wait until new work is queued or a slot is freed, instead of polling the database.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class TransferScheduler {
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(TransferScheduler.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(TransferScheduler.class.getCanonicalName());
+
+	/**
+	 * How often to look for new work in the database when nobody asks for it earlier, in milliseconds
+	 */
+	private static final long refillInterval = ConfigUtils.getConfig().getl("alien.io.TransferScheduler.refillInterval", 10) * 1000;
+
+	/**
+	 * Minimum time between two refills, in milliseconds
+	 */
+	private static final long minRefillInterval = ConfigUtils.getConfig().getl("alien.io.TransferScheduler.minRefillInterval", 1000);
+
+	/**
+	 * How many transfers to keep queued for each SE, as a multiple of its <code>max_transfers</code>
+	 */
+	private static final int queueDepthFactor = ConfigUtils.getConfig().geti("alien.io.TransferScheduler.queueDepthFactor", 2);
+
+	/**
+	 * Upper limit of the number of transfers queued for one SE
+	 */
+	private static final int maxQueueDepth = ConfigUtils.getConfig().geti("alien.io.TransferScheduler.maxQueueDepth", 500);
+
+	/**
+	 * How many queued transfers of each SE the policy looks at when choosing the next one, by default the entire queue
+	 */
+	private static final int selectionWindow = ConfigUtils.getConfig().geti("alien.io.TransferScheduler.selectionWindow", maxQueueDepth);
+
+	/**
+	 * How far back to look for completed transfers to learn the throughput from when starting, in hours
+	 */
+	private static final long historyHours = ConfigUtils.getConfig().getl("alien.io.TransferScheduler.historyHours", 6);
+
+	/**
+	 * Maximum number of completed transfers to learn from when starting
+	 */
+	private static final int historyRows = ConfigUtils.getConfig().geti("alien.io.TransferScheduler.historyRows", 10000);
+
+	/**
+	 * Minimum number of transfers of each user that are queued for an SE, so that the policy can choose between users
+	 */
+	private static final int minPerUser = ConfigUtils.getConfig().geti("alien.io.TransferScheduler.minPerUser", 2);
+
+	/**
+	 * A waiting transfer, as read from <code>TRANSFERS_DIRECT</code>
+	 */
+	static final class Candidate {
+		/**
+		 * Transfer ID
+		 */
+		final long transferId;
+
+		/**
+		 * LFN or GUID to transfer
+		 */
+		final String lfn;
+
+		/**
+		 * Target SE(s), as in the database
+		 */
+		final String destination;
+
+		/**
+		 * SE to remove the replica from once the transfer succeeded
+		 */
+		final String removeReplica;
+
+		/**
+		 * File size, in bytes
+		 */
+		final long size;
+
+		/**
+		 * Account that requested the transfer
+		 */
+		final String user;
+
+		/**
+		 * Remaining attempts
+		 */
+		final int attempts;
+
+		/**
+		 * Epoch time in milliseconds when the transfer was requested
+		 */
+		final long received;
+
+		/**
+		 * Queue this transfer was taken from
+		 */
+		final SEQueue queue;
+
+		Candidate(final long transferId, final String lfn, final String destination, final String removeReplica, final long size, final String user, final int attempts, final long received,
+				final SEQueue queue) {
+			this.transferId = transferId;
+			this.lfn = lfn;
+			this.destination = destination;
+			this.removeReplica = removeReplica;
+			this.size = size;
+			this.user = user;
+			this.attempts = attempts;
+			this.received = received;
+			this.queue = queue;
+		}
+
+		/**
+		 * @return the position in the historical queue order, older transfers and those that failed more often first
+		 */
+		long orderKey() {
+			return transferId - 1000L * attempts;
+		}
+	}
+
+	/**
+	 * Waiting transfers and active transfer slots of one destination SE
+	 */
+	static final class SEQueue {
+		/**
+		 * Destination, as it appears in <code>TRANSFERS_DIRECT</code>
+		 */
+		final String destination;
+
+		final ConcurrentLinkedQueue<Candidate> waiting = new ConcurrentLinkedQueue<>();
+
+		final Set<Long> queuedIds = ConcurrentHashMap.newKeySet();
+
+		/**
+		 * Transfers currently running towards this SE, by all agents
+		 */
+		final AtomicInteger active = new AtomicInteger();
+
+		/**
+		 * Maximum number of concurrent transfers towards this SE
+		 */
+		volatile int maxTransfers = 0;
+
+		SEQueue(final String destination) {
+			this.destination = destination;
+		}
+
+		boolean tryAcquire() {
+			while (true) {
+				final int current = active.get();
+
+				if (current >= maxTransfers)
+					return false;
+
+				if (active.compareAndSet(current, current + 1))
+					return true;
+			}
+		}
+
+		void release() {
+			active.updateAndGet(v -> v > 0 ? v - 1 : 0);
+		}
+
+		/**
+		 * Take this particular transfer out of the queue
+		 *
+		 * @param c
+		 * @return <code>false</code> if another agent took it in the mean time
+		 */
+		boolean remove(final Candidate c) {
+			if (!waiting.remove(c))
+				return false;
+
+			queuedIds.remove(Long.valueOf(c.transferId));
+
+			return true;
+		}
+
+		void add(final Candidate c) {
+			waiting.add(c);
+		}
+
+		int queuedFor(final String user) {
+			int count = 0;
+
+			for (final Candidate c : waiting)
+				if (c.user.equals(user))
+					count++;
+
+			return count;
+		}
+
+		int depth() {
+			return Math.min(Math.max(maxTransfers * queueDepthFactor, 1), maxQueueDepth);
+		}
+
+		/**
+		 * @return load of this SE, the least loaded ones are served first
+		 */
+		double load() {
+			final int max = maxTransfers;
+
+			return max > 0 ? (double) active.get() / max : 1;
+		}
+	}
+
+	/**
+	 * Queues by the lower case name of the destination
+	 */
+	final Map<String, SEQueue> queues = new ConcurrentHashMap<>();
+
+	/**
+	 * Transfers started by this JVM, to release their slot when they are done
+	 */
+	private final Map<Long, Candidate> running = new ConcurrentHashMap<>();
+
+	final TransferPolicy policy = TransferPolicy.fromConfig();
+
+	private boolean historyLoaded = false;
+
+	private final Runnable housekeeping;
+
+	private final AtomicBoolean started = new AtomicBoolean(false);
+
+	private final Object refillSignal = new Object();
+
+	private boolean refillRequested = false;
+
+	private final Object workSignal = new Object();
+
+	/**
+	 * @param housekeeping
+	 *            what to execute from the refill thread before each refill
+	 */
+	TransferScheduler(final Runnable housekeeping) {
+		this.housekeeping = housekeeping;
+	}
+
+	private void start() {
+		if (started.get() || !started.compareAndSet(false, true))
+			return;
+
+		final Thread t = new Thread(this::refillLoop, "TransferScheduler");
+		t.setDaemon(true);
+		t.start();
+
+		if (monitor != null)
+			monitor.addMonitoring("queues", (names, values) -> {
+				int queued = 0;
+				int active = 0;
+
+				for (final SEQueue q : queues.values()) {
+					queued += q.waiting.size();
+					active += q.active.get();
+				}
+
+				names.add("queued_transfers");
+				values.add(Double.valueOf(queued));
+
+				names.add("active_transfers");
+				values.add(Double.valueOf(active));
+
+				names.add("running_here");
+				values.add(Double.valueOf(running.size()));
+
+				names.add("se_queues");
+				values.add(Double.valueOf(queues.size()));
+			});
+	}
+
+	/**
+	 * Take the next transfer to execute, from the least loaded SE that still has free slots
+	 *
+	 * @return the transfer, holding one slot of its SE until {@link #release(Candidate)} or {@link #finished(long)} is called, or <code>null</code> if there is nothing to do right now
+	 */
+	Candidate claim() {
+		start();
+
+		final long now = System.currentTimeMillis();
+
+		final Comparator<Candidate> order = policy.ordering(now);
+
+		while (true) {
+			final Candidate c = select(queues.values(), order, selectionWindow);
+
+			if (c == null) {
+				requestRefill();
+				return null;
+			}
+
+			final SEQueue q = c.queue;
+
+			// another agent was faster, look again
+			if (!q.tryAcquire())
+				continue;
+
+			if (!q.remove(c)) {
+				q.release();
+				continue;
+			}
+
+			if (q.waiting.size() < q.maxTransfers)
+				requestRefill();
+
+			if (monitor != null)
+				monitor.incrementCounter("claims");
+
+			return c;
+		}
+	}
+
+	/**
+	 * Find the transfer that the policy would run next, among the SEs that have free slots
+	 *
+	 * @param queues
+	 * @param order
+	 *            policy ordering, the first element is the best one
+	 * @param window
+	 *            how many transfers to look at from the head of each queue
+	 * @return the best candidate, still in its queue, or <code>null</code> if no SE with free slots has anything waiting
+	 */
+	static Candidate select(final Iterable<SEQueue> queues, final Comparator<Candidate> order, final int window) {
+		Candidate best = null;
+
+		for (final SEQueue q : queues) {
+			if (q.waiting.isEmpty() || q.active.get() >= q.maxTransfers)
+				continue;
+
+			int seen = 0;
+
+			for (final Candidate c : q.waiting) {
+				if (best == null || order.compare(c, best) < 0)
+					best = c;
+
+				if (++seen >= window)
+					break;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * The claimed transfer could not be started, give its slot back
+	 *
+	 * @param c
+	 */
+	void release(final Candidate c) {
+		c.queue.release();
+
+		signalWork();
+	}
+
+	/**
+	 * The claimed transfer would take its SE over the limit, counting the transfers that the other JVMs have started since the last refill. The SE gets no more transfers until the next refill
+	 * or until a slot is freed. The slot of the claimed transfer is still to be given back with {@link #release(Candidate)}.
+	 *
+	 * @param c
+	 * @param activeInDatabase
+	 *            transfers towards this SE in the database, the claimed one included
+	 */
+	void overLimit(final Candidate c, final int activeInDatabase) {
+		c.queue.active.set(activeInDatabase);
+
+		if (monitor != null)
+			monitor.incrementCounter("over_limit");
+	}
+
+	/**
+	 * The claimed transfer was started, its slot is given back by {@link #finished(long)}. Only now is it charged to its user, the claims that lost the race for the transfer or found the SE
+	 * full are not.
+	 *
+	 * @param c
+	 */
+	void running(final Candidate c) {
+		running.put(Long.valueOf(c.transferId), c);
+
+		policy.started(c, System.currentTimeMillis());
+	}
+
+	/**
+	 * A transfer started by this JVM has completed
+	 *
+	 * @param t
+	 */
+	void finished(final Transfer t) {
+		final Candidate c = running.remove(Long.valueOf(t.getTransferId()));
+
+		if (c == null)
+			return;
+
+		final long now = System.currentTimeMillis();
+
+		policy.finished(c, t.lastTriedSE, now - t.startedWork, t.getExitCode() == Transfer.OK, now);
+
+		c.queue.release();
+
+		if (!c.queue.waiting.isEmpty())
+			signalWork();
+	}
+
+	/**
+	 * A transfer that was marked as {@link #running(Candidate)} will not be executed after all, give its slot back
+	 *
+	 * @param transferId
+	 */
+	void abandoned(final long transferId) {
+		final Candidate c = running.remove(Long.valueOf(transferId));
+
+		if (c == null)
+			return;
+
+		c.queue.release();
+
+		signalWork();
+	}
+
+	/**
+	 * Block until new work might be available
+	 *
+	 * @param timeout
+	 *            maximum time to wait, in milliseconds
+	 * @throws InterruptedException
+	 */
+	void awaitWork(final long timeout) throws InterruptedException {
+		synchronized (workSignal) {
+			if (!hasClaimableWork())
+				workSignal.wait(timeout);
+		}
+	}
+
+	private boolean hasClaimableWork() {
+		for (final SEQueue q : queues.values())
+			if (!q.waiting.isEmpty() && q.active.get() < q.maxTransfers)
+				return true;
+
+		return false;
+	}
+
+	private void signalWork() {
+		synchronized (workSignal) {
+			workSignal.notifyAll();
+		}
+	}
+
+	private void requestRefill() {
+		synchronized (refillSignal) {
+			if (!refillRequested) {
+				refillRequested = true;
+				refillSignal.notifyAll();
+			}
+		}
+	}
+
+	private void refillLoop() {
+		while (true) {
+			try {
+				housekeeping.run();
+			}
+			catch (final Throwable t) {
+				logger.log(Level.WARNING, "Exception running the housekeeping tasks", t);
+			}
+
+			final long start = System.currentTimeMillis();
+
+			try {
+				final int added = refill();
+
+				if (added > 0)
+					signalWork();
+			}
+			catch (final Throwable t) {
+				logger.log(Level.WARNING, "Exception refilling the transfer queues", t);
+			}
+
+			try {
+				final long spent = System.currentTimeMillis() - start;
+
+				if (spent < minRefillInterval)
+					Thread.sleep(minRefillInterval - spent);
+
+				synchronized (refillSignal) {
+					if (!refillRequested)
+						refillSignal.wait(refillInterval);
+
+					refillRequested = false;
+				}
+			}
+			catch (@SuppressWarnings("unused") final InterruptedException ie) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Bring the limits and active counters up to date and top up the queues that are running low
+	 *
+	 * @return how many transfers were added to the queues
+	 */
+	private int refill() {
+		int added = 0;
+
+		try (DBFunctions db = ConfigUtils.getDB("transfers"); Timing t = new Timing(monitor, "refill_ms")) {
+			if (db == null) {
+				logger.log(Level.WARNING, "Could not connect to the transfers database");
+				return 0;
+			}
+
+			db.setReadOnly(true);
+			db.setQueryTimeout(300);
+
+			if (!historyLoaded)
+				historyLoaded = loadHistory(db);
+
+			final Map<String, Integer> maxTransfers = new HashMap<>();
+
+			// the limit of an SE is that of its most permissive protocol, not the sum over them
+			if (!db.query("SELECT sename, max(max_transfers) FROM PROTOCOLS GROUP BY sename"))
+				return 0;
+
+			while (db.moveNext())
+				maxTransfers.put(db.gets(1).toLowerCase(), Integer.valueOf(db.geti(2)));
+
+			final Map<String, Integer> activeTransfers = new HashMap<>();
+
+			if (!db.query("SELECT se_name, count(1) FROM active_transfers GROUP BY se_name"))
+				return 0;
+
+			while (db.moveNext())
+				activeTransfers.put(db.gets(1).toLowerCase(), Integer.valueOf(db.geti(2)));
+
+			final Map<String, String> waitingDestinations = new HashMap<>();
+
+			final Map<String, List<String>> waitingUsers = new HashMap<>();
+
+			if (!db.query("SELECT destination, user FROM TRANSFERS_DIRECT WHERE status='WAITING' GROUP BY destination, user"))
+				return 0;
+
+			while (db.moveNext()) {
+				final String destination = db.gets(1);
+				final String key = destination.toLowerCase();
+
+				waitingDestinations.put(key, destination);
+				waitingUsers.computeIfAbsent(key, k -> new ArrayList<>()).add(db.gets(2));
+			}
+
+			// forget what other agents have taken in the mean time
+			for (final Map.Entry<String, SEQueue> entry : queues.entrySet())
+				if (!waitingDestinations.containsKey(entry.getKey())) {
+					final SEQueue q = entry.getValue();
+
+					q.waiting.clear();
+					q.queuedIds.clear();
+				}
+
+			for (final Map.Entry<String, String> entry : waitingDestinations.entrySet()) {
+				final String key = entry.getKey();
+
+				final SEQueue q = queues.computeIfAbsent(key, k -> new SEQueue(entry.getValue()));
+
+				final Integer max = maxTransfers.get(key);
+				q.maxTransfers = max != null ? max.intValue() : 0;
+
+				final Integer active = activeTransfers.get(key);
+				q.active.set(active != null ? active.intValue() : 0);
+
+				if (q.maxTransfers <= 0)
+					continue;
+
+				final int missing = q.depth() - q.waiting.size();
+
+				if (missing <= 0 || q.waiting.size() >= q.maxTransfers)
+					continue;
+
+				// take some transfers of every user, so that the policy has a choice between them
+				final List<String> users = waitingUsers.get(key);
+
+				final int perUser = Math.max((q.depth() + users.size() - 1) / users.size(), minPerUser);
+
+				for (final String user : users) {
+					final int queued = q.queuedFor(user);
+
+					if (queued >= perUser)
+						continue;
+
+					added += fetch(db, q, user, perUser + queued);
+				}
+			}
+		}
+
+		if (monitor != null) {
+			monitor.incrementCounter("refills");
+			monitor.incrementCounter("queued", added);
+		}
+
+		return added;
+	}
+
+	/**
+	 * Let the policy learn from the transfers completed recently, by this JVM before a restart or by the others
+	 *
+	 * @return <code>false</code> if the query failed and should be tried again
+	 */
+	private boolean loadHistory(final DBFunctions db) {
+		if (!db.query("SELECT destination, size, finished-started FROM TRANSFERS_DIRECT WHERE status='DONE' AND finished>? AND started>0 AND finished>started ORDER BY finished ASC LIMIT ?",
+				false, Long.valueOf(System.currentTimeMillis() / 1000 - historyHours * 3600), Integer.valueOf(historyRows)))
+			return false;
+
+		int count = 0;
+
+		// oldest first, so that the moving averages end up closest to the latest transfers
+		while (db.moveNext()) {
+			policy.history(db.gets(1), db.getl(2), db.getl(3) * 1000);
+			count++;
+		}
+
+		logger.log(Level.INFO, "Learned from " + count + " recently completed transfers");
+
+		return true;
+	}
+
+	/**
+	 * Queue the next waiting transfers of one user to one SE
+	 *
+	 * @return how many were added to the queue
+	 */
+	private int fetch(final DBFunctions db, final SEQueue q, final String user, final int limit) {
+		final String userCondition = user.isEmpty() ? "(user IS NULL OR user='')" : "user=?";
+
+		final String query = "SELECT transferId, lfn, destination, remove_replica, size, user, attempts, received FROM TRANSFERS_DIRECT WHERE status='WAITING' AND destination=? AND "
+				+ userCondition + " ORDER BY transferId-1000*attempts ASC LIMIT ?";
+
+		db.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+
+		final boolean ok = user.isEmpty() ? db.query(query, false, q.destination, Integer.valueOf(limit)) : db.query(query, false, q.destination, user, Integer.valueOf(limit));
+
+		db.setTransactionIsolation(-1);
+
+		if (!ok)
+			return 0;
+
+		int added = 0;
+
+		while (db.moveNext()) {
+			final long transferId = db.getl(1);
+
+			if (running.containsKey(Long.valueOf(transferId)) || !q.queuedIds.add(Long.valueOf(transferId)))
+				continue;
+
+			final String lfn = db.gets(2);
+
+			if (lfn.isEmpty()) {
+				logger.log(Level.INFO, "Transfer details are wrong for " + transferId);
+				q.queuedIds.remove(Long.valueOf(transferId));
+				continue;
+			}
+
+			q.add(new Candidate(transferId, lfn, db.gets(3), db.gets(4), db.getl(5), db.gets(6), db.geti(7), db.getl(8) * 1000, q));
+			added++;
+		}
+
+		return added;
+	}
+}
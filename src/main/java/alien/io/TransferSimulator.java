@@ -0,0 +1,328 @@
+package alien.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Offline replay of a <code>TRANSFERS_DIRECT</code> snapshot through the {@link TransferPolicy} implementations, to compare their effect before changing the production one. The snapshot
+ * is a tab separated file with a header line naming the columns, as produced by
+ *
+ * <pre>
+ * mysql -B -e "SELECT transferId, destination, size, user, attempts, received, started, finished, status FROM TRANSFERS_DIRECT WHERE ..." &gt; snapshot.tsv
+ * </pre>
+ *
+ * Each transfer becomes available at its <code>received</code> time and takes the setup time plus its size divided by the median throughput that the completed transfers in the snapshot
+ * had towards the same destination. The agents and the per-SE slots are limited as in production.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class TransferSimulator {
+	private static final double DEFAULT_RATE = 20d * 1024 * 1024;
+
+	private static final long SETUP_MILLIS = 5000;
+
+	private static final class Row {
+		long transferId;
+
+		String destination;
+
+		long size;
+
+		String user;
+
+		int attempts;
+
+		long received;
+
+		long started;
+
+		long finished;
+
+		String status;
+	}
+
+	private static final class Result {
+		final String policy;
+
+		long makespan = 0;
+
+		final List<Long> waits = new ArrayList<>();
+
+		final Map<String, double[]> perUser = new HashMap<>();
+
+		Result(final String policy) {
+			this.policy = policy;
+		}
+	}
+
+	private TransferSimulator() {
+		// command line tool
+	}
+
+	/**
+	 * @param args
+	 *            snapshot file, then optionally the number of agents (default 30), the comma separated policies to compare (default <code>fifo,fairshare</code>), the number of slots per
+	 *            destination SE (default 10) and how many queued transfers of each SE the policy looks at (default all of them)
+	 * @throws IOException
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TransferSimulator <snapshot.tsv> [agents] [policies] [slots per SE] [selection window]");
+			return;
+		}
+
+		final List<Row> rows = read(args[0]);
+
+		final int agents = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		final List<String> policies = Arrays.asList((args.length > 2 ? args[2] : "fifo,fairshare").split(","));
+		final int slots = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		final int window = args.length > 4 ? Integer.parseInt(args[4]) : Integer.MAX_VALUE;
+
+		final Map<String, Double> rates = rates(rows);
+
+		System.out.println("Replaying " + rows.size() + " transfers to " + rates.size() + " destinations with " + agents + " agents and " + slots + " slots per SE");
+
+		for (final String name : policies)
+			print(simulate(rows, rates, TransferPolicy.forName(name.trim()), agents, slots, window));
+	}
+
+	private static List<Row> read(final String file) throws IOException {
+		final List<Row> rows = new ArrayList<>();
+
+		try (BufferedReader br = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			String line = br.readLine();
+
+			if (line == null)
+				return rows;
+
+			final Map<String, Integer> columns = new HashMap<>();
+
+			final String[] header = line.split("\t");
+
+			for (int i = 0; i < header.length; i++)
+				columns.put(header[i].trim(), Integer.valueOf(i));
+
+			while ((line = br.readLine()) != null) {
+				final String[] fields = line.split("\t", -1);
+
+				final Row r = new Row();
+				r.transferId = getl(fields, columns, "transferId");
+				r.destination = gets(fields, columns, "destination");
+				r.size = getl(fields, columns, "size");
+				r.user = gets(fields, columns, "user");
+				r.attempts = (int) getl(fields, columns, "attempts");
+				r.received = getl(fields, columns, "received") * 1000;
+				r.started = getl(fields, columns, "started") * 1000;
+				r.finished = getl(fields, columns, "finished") * 1000;
+				r.status = gets(fields, columns, "status");
+
+				if (!r.destination.isEmpty())
+					rows.add(r);
+			}
+		}
+
+		rows.sort(Comparator.comparingLong((Row r) -> r.received).thenComparingLong(r -> r.transferId));
+
+		return rows;
+	}
+
+	private static String gets(final String[] fields, final Map<String, Integer> columns, final String name) {
+		final Integer idx = columns.get(name);
+
+		if (idx == null || idx.intValue() >= fields.length || "NULL".equals(fields[idx.intValue()]))
+			return "";
+
+		return fields[idx.intValue()].trim();
+	}
+
+	private static long getl(final String[] fields, final Map<String, Integer> columns, final String name) {
+		try {
+			return Long.parseLong(gets(fields, columns, name));
+		}
+		catch (@SuppressWarnings("unused") final NumberFormatException nfe) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the median throughput of the completed transfers, by destination, in bytes per second
+	 */
+	private static Map<String, Double> rates(final List<Row> rows) {
+		final Map<String, List<Double>> samples = new HashMap<>();
+		final List<Double> all = new ArrayList<>();
+
+		for (final Row r : rows)
+			if ("DONE".equalsIgnoreCase(r.status) && r.size > 0 && r.started > 0 && r.finished > r.started) {
+				final Double rate = Double.valueOf(r.size * 1000d / (r.finished - r.started));
+
+				samples.computeIfAbsent(r.destination, k -> new ArrayList<>()).add(rate);
+				all.add(rate);
+			}
+
+		final double fallback = all.isEmpty() ? DEFAULT_RATE : median(all);
+
+		final Map<String, Double> rates = new HashMap<>();
+
+		for (final Row r : rows)
+			rates.computeIfAbsent(r.destination, d -> {
+				final List<Double> l = samples.get(d);
+				return Double.valueOf(l != null ? median(l) : fallback);
+			});
+
+		return rates;
+	}
+
+	private static double median(final List<Double> values) {
+		final List<Double> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+
+		return sorted.get(sorted.size() / 2).doubleValue();
+	}
+
+	private static final class Completion {
+		final long time;
+
+		final TransferScheduler.Candidate candidate;
+
+		final long duration;
+
+		Completion(final long time, final TransferScheduler.Candidate candidate, final long duration) {
+			this.time = time;
+			this.candidate = candidate;
+			this.duration = duration;
+		}
+	}
+
+	private static Result simulate(final List<Row> rows, final Map<String, Double> rates, final TransferPolicy policy, final int agents, final int slots, final int window) {
+		final Result result = new Result(policy.getName());
+
+		final Map<String, TransferScheduler.SEQueue> queues = new HashMap<>();
+
+		final PriorityQueue<Completion> running = new PriorityQueue<>(Comparator.comparingLong((Completion c) -> c.time));
+
+		if (rows.isEmpty())
+			return result;
+
+		final long origin = rows.get(0).received;
+
+		long now = origin;
+
+		int next = 0;
+
+		while (next < rows.size() || !running.isEmpty() || hasWaiting(queues)) {
+			while (next < rows.size() && rows.get(next).received <= now) {
+				final Row r = rows.get(next++);
+
+				final TransferScheduler.SEQueue q = queues.computeIfAbsent(r.destination, d -> {
+					final TransferScheduler.SEQueue newQueue = new TransferScheduler.SEQueue(d);
+					newQueue.maxTransfers = slots;
+					return newQueue;
+				});
+
+				q.add(new TransferScheduler.Candidate(r.transferId, "", r.destination, "", r.size, r.user, r.attempts, r.received, q));
+			}
+
+			while (running.size() < agents) {
+				final TransferScheduler.Candidate c = TransferScheduler.select(queues.values(), policy.ordering(now), window);
+
+				if (c == null || !c.queue.tryAcquire())
+					break;
+
+				c.queue.remove(c);
+				policy.started(c, now);
+
+				final long duration = SETUP_MILLIS + (long) (Math.max(c.size, 0) * 1000d / rates.get(c.destination).doubleValue());
+
+				running.add(new Completion(now + duration, c, duration));
+
+				final long wait = now - c.received;
+
+				result.waits.add(Long.valueOf(wait));
+
+				final double[] stats = result.perUser.computeIfAbsent(c.user, u -> new double[3]);
+				stats[0]++;
+				stats[1] += wait;
+				stats[2] += (double) (wait + duration) / duration;
+			}
+
+			final long nextArrival = next < rows.size() ? rows.get(next).received : Long.MAX_VALUE;
+			final long nextCompletion = running.isEmpty() ? Long.MAX_VALUE : running.peek().time;
+
+			now = Math.max(now, Math.min(nextArrival, nextCompletion));
+
+			if (now == Long.MAX_VALUE)
+				break;
+
+			while (!running.isEmpty() && running.peek().time <= now) {
+				final Completion done = running.poll();
+
+				done.candidate.queue.release();
+				policy.finished(done.candidate, 0, done.duration, true, done.time);
+
+				result.makespan = Math.max(result.makespan, done.time - origin);
+			}
+		}
+
+		return result;
+	}
+
+	private static boolean hasWaiting(final Map<String, TransferScheduler.SEQueue> queues) {
+		for (final TransferScheduler.SEQueue q : queues.values())
+			if (!q.waiting.isEmpty())
+				return true;
+
+		return false;
+	}
+
+	private static void print(final Result result) {
+		System.out.println();
+		System.out.println("Policy: " + result.policy);
+
+		if (result.waits.isEmpty()) {
+			System.out.println("  nothing was transferred");
+			return;
+		}
+
+		Collections.sort(result.waits);
+
+		long sum = 0;
+
+		for (final Long l : result.waits)
+			sum += l.longValue();
+
+		System.out.println("  makespan:    " + result.makespan / 1000 + "s");
+		System.out.println("  mean wait:   " + sum / result.waits.size() / 1000 + "s");
+		System.out.println("  median wait: " + result.waits.get(result.waits.size() / 2).longValue() / 1000 + "s");
+		System.out.println("  p95 wait:    " + result.waits.get((int) (result.waits.size() * 0.95)).longValue() / 1000 + "s");
+
+		// Jain's index of the mean slowdown of each user, 1 means that all users were slowed down equally
+		double sumSlowdown = 0;
+		double sumSquares = 0;
+
+		for (final Map.Entry<String, double[]> entry : result.perUser.entrySet()) {
+			final double[] stats = entry.getValue();
+
+			final double slowdown = stats[2] / stats[0];
+
+			sumSlowdown += slowdown;
+			sumSquares += slowdown * slowdown;
+
+			System.out.println("    " + (entry.getKey().isEmpty() ? "(no user)" : entry.getKey()) + ": " + (long) stats[0] + " transfers, mean wait " + (long) (stats[1] / stats[0] / 1000)
+					+ "s, mean slowdown " + String.format("%.2f", Double.valueOf(slowdown)));
+		}
+
+		System.out.println("  fairness:    " + String.format("%.3f", Double.valueOf(sumSlowdown * sumSlowdown / (result.perUser.size() * sumSquares))));
+	}
+}
@@ -0,0 +1,95 @@
+package alien.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent throughput between pairs of storage elements, as an exponentially weighted moving average of the bytes per second of the successful transfers
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class TransferThroughput {
+	/**
+	 * Weight of the latest sample in the moving average
+	 */
+	private final double alpha;
+
+	/**
+	 * Value to assume for destinations that have no history yet, in bytes per second
+	 */
+	private final double defaultRate;
+
+	/**
+	 * Bytes per second, by destination SE name and source SE number
+	 */
+	private final Map<String, Map<Integer, Double>> rates = new ConcurrentHashMap<>();
+
+	/**
+	 * @param alpha
+	 *            weight of the new samples, between 0 and 1
+	 * @param defaultRate
+	 *            throughput to assume when nothing is known, in bytes per second
+	 */
+	TransferThroughput(final double alpha, final double defaultRate) {
+		this.alpha = alpha;
+		this.defaultRate = defaultRate;
+	}
+
+	/**
+	 * Account for a successful transfer
+	 *
+	 * @param sourceSE
+	 * @param destination
+	 * @param bytes
+	 * @param durationMillis
+	 */
+	void record(final int sourceSE, final String destination, final long bytes, final long durationMillis) {
+		if (bytes <= 0 || durationMillis <= 0 || destination == null)
+			return;
+
+		final double sample = bytes * 1000d / durationMillis;
+
+		rates.computeIfAbsent(destination.toLowerCase(), k -> new ConcurrentHashMap<>()).merge(Integer.valueOf(sourceSE), Double.valueOf(sample),
+				(old, s) -> Double.valueOf(old.doubleValue() * (1 - alpha) + s.doubleValue() * alpha));
+	}
+
+	/**
+	 * @param sourceSE
+	 * @param destination
+	 * @return the recent throughput between these two SEs, in bytes per second, or the {@link #estimate(String)} for the destination if this pair was not used recently
+	 */
+	double get(final int sourceSE, final String destination) {
+		final Map<Integer, Double> bySource = rates.get(destination.toLowerCase());
+
+		if (bySource != null) {
+			final Double d = bySource.get(Integer.valueOf(sourceSE));
+
+			if (d != null)
+				return d.doubleValue();
+		}
+
+		return estimate(destination);
+	}
+
+	/**
+	 * @param destination
+	 * @return the expected throughput towards this SE, whatever the source turns out to be, in bytes per second
+	 */
+	double estimate(final String destination) {
+		final Map<Integer, Double> bySource = rates.get(destination.toLowerCase());
+
+		if (bySource == null || bySource.isEmpty())
+			return defaultRate;
+
+		double sum = 0;
+		int count = 0;
+
+		for (final Double d : bySource.values()) {
+			sum += d.doubleValue();
+			count++;
+		}
+
+		return count > 0 ? sum / count : defaultRate;
+	}
+}
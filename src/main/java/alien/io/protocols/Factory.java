@@ -3,6 +3,8 @@
  */
 package alien.io.protocols;
 
+import alien.config.ConfigUtils;
+
 /**
  * @author costing
  * @since Dec 8, 2010
@@ -10,9 +12,9 @@ package alien.io.protocols;
 public final class Factory {
 
 	/**
-	 * Normal (xrdcp) transfers
+	 * Normal transfers, with xrdcp or, if <code>alien.io.protocols.Factory.nativeXrootd</code> is set, with the in-JVM client (that still falls back to xrdcp when it cannot talk to a server)
 	 */
-	public static final Xrootd xrootd = new Xrootd();
+	public static final Xrootd xrootd = ConfigUtils.getConfig().getb("alien.io.protocols.Factory.nativeXrootd", false) ? new XrootdNative() : new Xrootd();
 
 	/**
 	 * Normal (xrdcp) transfers for LFN_CSDs
@@ -78,6 +78,11 @@ public enum SourceExceptionCode implements StatusCode {
      */
     GET_METHOD_NOT_IMPLEMENTED("The GET method of this protocol is not implemented", StatusType.INTERNAL_ERROR),
 
+    /**
+     * Refused by the server
+     */
+    XROOTD_SERVER_ERROR("The native xrootd client could talk to the server, but the server refused the request", StatusType.FILE_INACCESSIBLE),
+
     /**
      * Internal error
      */
@@ -224,8 +224,8 @@ public class Xrootd extends Protocol {
 	private int timeout = 60;
 
 	// last value must be 0 for a clean exit
-	private static final int statRetryTimesXrootd[] = { 1, 5, 10, 0 };
-	private static final int statRetryTimesDCache[] = { 5, 10, 15, 20, 30, 0 };
+	static final int statRetryTimesXrootd[] = { 1, 5, 10, 0 };
+	static final int statRetryTimesDCache[] = { 5, 10, 15, 20, 30, 0 };
 
 	/**
 	 * package protected
@@ -311,6 +311,13 @@ public class Xrootd extends Protocol {
 		timeout = seconds;
 	}
 
+	/**
+	 * @return the timeout, in seconds
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
 	/**
 	 * Set the md5 value
 	 *
@@ -661,112 +668,7 @@ public class Xrootd extends Protocol {
 				logger.log(Level.FINE, "The envelope for PFN " + pfn.toString() + (pfn.ticket == null ? " could not be found" : " is not a READ one"));
 
 		try {
-			final List<String> command = new LinkedList<>();
-
-			if (preferEoscp) {
-				command.add(eoscpPath);
-				command.add("-s");
-				command.add("-n");
-				command.add("-b");
-				command.add("33554432");
-			}
-			else {
-				if (xrdcpPath == null) {
-					logger.log(Level.SEVERE, "Could not find xrdcp in path.");
-					throw new SourceException(XRDCP_NOT_FOUND_IN_PATH, "Could not find xrdcp in path.");
-				}
-
-				command.add(xrdcpPath);
-			}
-
-			/*
-			 * TODO: enable when servers support checksum queries, at the moment most don't if (xrootdNewerThan4 && guid.md5 != null && guid.md5.length() > 0) { command.add("-C"); command.add("md5:" +
-			 * guid.md5); }
-			 */
-
-			String transactionURL = pfn.pfn;
-
-			if (pfn.ticket != null && pfn.ticket.envelope != null)
-				transactionURL = pfn.ticket.envelope.getTransactionURL();
-
-			if (pfn.ticket != null && pfn.ticket.envelope != null)
-				if (pfn.ticket.envelope.getEncryptedEnvelope() != null)
-					transactionURL += "?authz=" + pfn.ticket.envelope.getEncryptedEnvelope();
-				else if (pfn.ticket.envelope.getSignedEnvelope() != null)
-					transactionURL += "?" + pfn.ticket.envelope.getSignedEnvelope();
-
-			transactionURL = decorateOpaqueParams(transactionURL, applicationName, sciTag);
-
-			command.add(transactionURL);
-			command.add(target.getCanonicalPath());
-
-			setRateLimit(command);
-
-			setLastCommand(command);
-
-			final ProcessBuilder pBuilder = new ProcessBuilder(command);
-
-			checkLibraryPath(pBuilder);
-			setCommonEnv(pBuilder, applicationName);
-
-			// 20KB/s should be available to anybody
-			long maxTime = guid.size / 20000;
-
-			maxTime += timeout;
-
-			pBuilder.redirectErrorStream(true);
-
-			final ExitStatus exitStatus;
-
-			Process p = null;
-
-			try {
-				p = pBuilder.start();
-
-				if (p != null) {
-					final ProcessWithTimeout ptimeout = new ProcessWithTimeout(p, pBuilder);
-					ptimeout.waitFor(maxTime, TimeUnit.SECONDS);
-					exitStatus = ptimeout.getExitStatus();
-					setLastExitStatus(exitStatus);
-				}
-				else
-					throw new SourceException(CANNOT_START_PROCESS, "Cannot start the process");
-			}
-			catch (final InterruptedException ie) {
-				setLastExitStatus(null);
-
-				p.destroy();
-
-				throw new SourceException(INTERRUPTED_WHILE_WAITING_FOR_COMMAND, "Interrupted while waiting for the following command to finish:\n" + getFormattedLastCommand(), ie);
-			}
-
-			if (exitStatus.getExtProcExitStatus() != 0) {
-				String sMessage = parseXrootdError(exitStatus.getStdOut());
-				SourceExceptionCode errCode;
-
-				logger.log(Level.WARNING, "GET of " + pfn.pfn + " failed with " + exitStatus.getStdOut());
-
-				if (sMessage != null) {
-					if (exitStatus.getExtProcExitStatus() < 0) {
-						errCode = XROOTD_TIMED_OUT;
-						sMessage = xrdcpPath + " timed out and was killed after " + maxTime + "s: " + sMessage;
-					}
-					else {
-						errCode = XROOTD_EXITED_WITH_CODE;
-						sMessage = xrdcpPath + " exited with exit code " + exitStatus.getExtProcExitStatus() + ": " + sMessage;
-					}
-				}
-				else if (exitStatus.getExtProcExitStatus() < 0) {
-					errCode = XROOTD_TIMED_OUT;
-					sMessage = "The following command has timed out and was killed after " + maxTime + "s:\n" + getFormattedLastCommand();
-				}
-				else {
-					errCode = XROOTD_EXITED_WITH_CODE;
-					sMessage = "Exit code was " + exitStatus.getExtProcExitStatus() + " for command:\n" + getFormattedLastCommand();
-				}
-
-				throw new SourceException(errCode, sMessage);
-			}
+			download(pfn, target, applicationName, sciTag);
 
 			if (!checkDownloadedFile(target, pfn)) {
 				String message = "Local file doesn't match catalogue details";
@@ -822,6 +724,127 @@ public class Xrootd extends Protocol {
 		return target;
 	}
 
+	/**
+	 * Copy the remote file to the given local file with xrdcp (or eoscp)
+	 *
+	 * @param pfn
+	 *            source, with its access envelope
+	 * @param target
+	 *            local file, that doesn't exist yet
+	 * @param applicationName
+	 * @param sciTag
+	 * @throws IOException
+	 *             if the copy command failed
+	 */
+	protected void download(final PFN pfn, final File target, final String applicationName, final SciTag sciTag) throws IOException {
+		final List<String> command = new LinkedList<>();
+
+		if (preferEoscp) {
+			command.add(eoscpPath);
+			command.add("-s");
+			command.add("-n");
+			command.add("-b");
+			command.add("33554432");
+		}
+		else {
+			if (xrdcpPath == null) {
+				logger.log(Level.SEVERE, "Could not find xrdcp in path.");
+				throw new SourceException(XRDCP_NOT_FOUND_IN_PATH, "Could not find xrdcp in path.");
+			}
+
+			command.add(xrdcpPath);
+		}
+
+		/*
+		 * TODO: enable when servers support checksum queries, at the moment most don't if (xrootdNewerThan4 && guid.md5 != null && guid.md5.length() > 0) { command.add("-C"); command.add("md5:" +
+		 * guid.md5); }
+		 */
+
+		String transactionURL = pfn.pfn;
+
+		if (pfn.ticket != null && pfn.ticket.envelope != null)
+			transactionURL = pfn.ticket.envelope.getTransactionURL();
+
+		if (pfn.ticket != null && pfn.ticket.envelope != null)
+			if (pfn.ticket.envelope.getEncryptedEnvelope() != null)
+				transactionURL += "?authz=" + pfn.ticket.envelope.getEncryptedEnvelope();
+			else if (pfn.ticket.envelope.getSignedEnvelope() != null)
+				transactionURL += "?" + pfn.ticket.envelope.getSignedEnvelope();
+
+		transactionURL = decorateOpaqueParams(transactionURL, applicationName, sciTag);
+
+		command.add(transactionURL);
+		command.add(target.getCanonicalPath());
+
+		setRateLimit(command);
+
+		setLastCommand(command);
+
+		final ProcessBuilder pBuilder = new ProcessBuilder(command);
+
+		checkLibraryPath(pBuilder);
+		setCommonEnv(pBuilder, applicationName);
+
+		// 20KB/s should be available to anybody
+		long maxTime = pfn.getGuid().size / 20000;
+
+		maxTime += timeout;
+
+		pBuilder.redirectErrorStream(true);
+
+		final ExitStatus exitStatus;
+
+		Process p = null;
+
+		try {
+			p = pBuilder.start();
+
+			if (p != null) {
+				final ProcessWithTimeout ptimeout = new ProcessWithTimeout(p, pBuilder);
+				ptimeout.waitFor(maxTime, TimeUnit.SECONDS);
+				exitStatus = ptimeout.getExitStatus();
+				setLastExitStatus(exitStatus);
+			}
+			else
+				throw new SourceException(CANNOT_START_PROCESS, "Cannot start the process");
+		}
+		catch (final InterruptedException ie) {
+			setLastExitStatus(null);
+
+			p.destroy();
+
+			throw new SourceException(INTERRUPTED_WHILE_WAITING_FOR_COMMAND, "Interrupted while waiting for the following command to finish:\n" + getFormattedLastCommand(), ie);
+		}
+
+		if (exitStatus.getExtProcExitStatus() != 0) {
+			String sMessage = parseXrootdError(exitStatus.getStdOut());
+			SourceExceptionCode errCode;
+
+			logger.log(Level.WARNING, "GET of " + pfn.pfn + " failed with " + exitStatus.getStdOut());
+
+			if (sMessage != null) {
+				if (exitStatus.getExtProcExitStatus() < 0) {
+					errCode = XROOTD_TIMED_OUT;
+					sMessage = xrdcpPath + " timed out and was killed after " + maxTime + "s: " + sMessage;
+				}
+				else {
+					errCode = XROOTD_EXITED_WITH_CODE;
+					sMessage = xrdcpPath + " exited with exit code " + exitStatus.getExtProcExitStatus() + ": " + sMessage;
+				}
+			}
+			else if (exitStatus.getExtProcExitStatus() < 0) {
+				errCode = XROOTD_TIMED_OUT;
+				sMessage = "The following command has timed out and was killed after " + maxTime + "s:\n" + getFormattedLastCommand();
+			}
+			else {
+				errCode = XROOTD_EXITED_WITH_CODE;
+				sMessage = "Exit code was " + exitStatus.getExtProcExitStatus() + " for command:\n" + getFormattedLastCommand();
+			}
+
+			throw new SourceException(errCode, sMessage);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -856,148 +879,166 @@ public class Xrootd extends Protocol {
 			throw new TargetException("Difference in sizes: local=" + localFile.length() + " / pfn=" + guid.size);
 
 		try {
-			final List<String> command = new LinkedList<>();
+			return upload(pfn, localFile, applicationName, tag);
+		}
+		catch (final TargetException ioe) {
+			throw ioe;
+		}
+		catch (final IOException ioe) {
+			throw new TargetException(ioe.getMessage());
+		}
+		catch (final Throwable t) {
+			logger.log(Level.WARNING, "Caught exception", t);
 
-			if (preferEoscp) {
-				command.add(eoscpPath);
-				command.add("-s");
-				command.add("-n");
-				command.add("-b");
-				command.add("33554432");
-			}
-			else {
-				if (xrdcpPath == null) {
-					logger.log(Level.SEVERE, "Could not find xrdcp in path.");
-					throw new TargetException("Could not find xrdcp in path.");
-				}
+			throw new TargetException("Put aborted because " + t);
+		}
+	}
 
-				command.add(xrdcpPath);
+	/**
+	 * Upload the local file with xrdcp (or eoscp) and check that it reached the storage
+	 *
+	 * @param pfn
+	 *            target, with its access envelope
+	 * @param localFile
+	 * @param applicationName
+	 * @param tag
+	 * @return the xrdstat of the newly uploaded file
+	 * @throws IOException
+	 *             if the upload failed
+	 */
+	protected String upload(final PFN pfn, final File localFile, final String applicationName, final SciTag tag) throws IOException {
+		final GUID guid = pfn.getGuid();
 
-				// no progress bar
-				if (xrootdNewerThan4)
-					command.add("--nopbar");
-				else
-					command.add("-np");
-
-				/**
-				 * // explicitly ask to create intermediate paths
-				 * if (xrootdNewerThan4)
-				 * command.add("--path");
-				 */
-
-				command.add("--verbose"); // display summary output
-				command.add("--force"); // re-create a file if already present
-				command.add("--posc"); // request POSC (persist-on-successful-close) processing to create a new file
-				command.add("--cksum");
-				command.add("md5:source");
+		final List<String> command = new LinkedList<>();
+
+		if (preferEoscp) {
+			command.add(eoscpPath);
+			command.add("-s");
+			command.add("-n");
+			command.add("-b");
+			command.add("33554432");
+		}
+		else {
+			if (xrdcpPath == null) {
+				logger.log(Level.SEVERE, "Could not find xrdcp in path.");
+				throw new TargetException("Could not find xrdcp in path.");
 			}
 
-			/*
-			 * TODO: enable when storages support checksum queries, at the moment most don't if (xrootdNewerThan4 && guid.md5!=null && guid.md5.length()>0){ command.add("-C");
-			 * command.add("md5:"+guid.md5); }
+			command.add(xrdcpPath);
+
+			// no progress bar
+			if (xrootdNewerThan4)
+				command.add("--nopbar");
+			else
+				command.add("-np");
+
+			/**
+			 * // explicitly ask to create intermediate paths
+			 * if (xrootdNewerThan4)
+			 * command.add("--path");
 			 */
 
-			setRateLimit(command);
+			command.add("--verbose"); // display summary output
+			command.add("--force"); // re-create a file if already present
+			command.add("--posc"); // request POSC (persist-on-successful-close) processing to create a new file
+			command.add("--cksum");
+			command.add("md5:source");
+		}
 
-			command.add(localFile.getCanonicalPath());
+		/*
+		 * TODO: enable when storages support checksum queries, at the moment most don't if (xrootdNewerThan4 && guid.md5!=null && guid.md5.length()>0){ command.add("-C");
+		 * command.add("md5:"+guid.md5); }
+		 */
 
-			String transactionURL = pfn.pfn;
+		setRateLimit(command);
 
-			if (pfn.ticket != null && pfn.ticket.envelope != null) {
-				transactionURL = pfn.ticket.envelope.getTransactionURL();
+		command.add(localFile.getCanonicalPath());
 
-				if (pfn.ticket.envelope.getEncryptedEnvelope() != null) {
-					transactionURL += "?";
+		String transactionURL = pfn.pfn;
 
-					if (!xrootdNewerThan4)
-						transactionURL += "eos.bookingsize=" + guid.size + "&";
+		if (pfn.ticket != null && pfn.ticket.envelope != null) {
+			transactionURL = pfn.ticket.envelope.getTransactionURL();
 
-					transactionURL += "authz=" + pfn.ticket.envelope.getEncryptedEnvelope();
-				}
-				else if (pfn.ticket.envelope.getSignedEnvelope() != null)
-					transactionURL += "?" + pfn.ticket.envelope.getSignedEnvelope();
+			if (pfn.ticket.envelope.getEncryptedEnvelope() != null) {
+				transactionURL += "?";
+
+				if (!xrootdNewerThan4)
+					transactionURL += "eos.bookingsize=" + guid.size + "&";
+
+				transactionURL += "authz=" + pfn.ticket.envelope.getEncryptedEnvelope();
 			}
+			else if (pfn.ticket.envelope.getSignedEnvelope() != null)
+				transactionURL += "?" + pfn.ticket.envelope.getSignedEnvelope();
+		}
 
-			transactionURL = decorateOpaqueParams(transactionURL, applicationName, tag);
+		transactionURL = decorateOpaqueParams(transactionURL, applicationName, tag);
 
-			command.add(transactionURL);
+		command.add(transactionURL);
 
-			setLastCommand(command);
+		setLastCommand(command);
 
-			final ProcessBuilder pBuilder = new ProcessBuilder(command);
+		final ProcessBuilder pBuilder = new ProcessBuilder(command);
 
-			checkLibraryPath(pBuilder);
-			setCommonEnv(pBuilder, applicationName);
+		checkLibraryPath(pBuilder);
+		setCommonEnv(pBuilder, applicationName);
 
-			// 20KB/s should be available to anybody
-			final long maxTime = timeout + guid.size / 20000;
+		// 20KB/s should be available to anybody
+		final long maxTime = timeout + guid.size / 20000;
 
-			pBuilder.redirectErrorStream(true);
+		pBuilder.redirectErrorStream(true);
 
-			final ExitStatus exitStatus;
+		final ExitStatus exitStatus;
 
-			try {
-				final Process p = pBuilder.start();
+		try {
+			final Process p = pBuilder.start();
 
-				if (p != null) {
-					final ProcessWithTimeout pTimeout = new ProcessWithTimeout(p, pBuilder);
-					pTimeout.waitFor(maxTime, TimeUnit.SECONDS);
-					exitStatus = pTimeout.getExitStatus();
-					setLastExitStatus(exitStatus);
-				}
-				else
-					throw new TargetException("Cannot start the process");
-			}
-			catch (final InterruptedException ie) {
-				setLastExitStatus(null);
-				throw new TargetException("Interrupted while waiting for the following command to finish:\n" + getFormattedLastCommand(), ie);
+			if (p != null) {
+				final ProcessWithTimeout pTimeout = new ProcessWithTimeout(p, pBuilder);
+				pTimeout.waitFor(maxTime, TimeUnit.SECONDS);
+				exitStatus = pTimeout.getExitStatus();
+				setLastExitStatus(exitStatus);
 			}
+			else
+				throw new TargetException("Cannot start the process");
+		}
+		catch (final InterruptedException ie) {
+			setLastExitStatus(null);
+			throw new TargetException("Interrupted while waiting for the following command to finish:\n" + getFormattedLastCommand(), ie);
+		}
 
-			if (exitStatus.getExtProcExitStatus() != 0) {
-				String sMessage = parseXrootdError(exitStatus.getStdOut());
+		if (exitStatus.getExtProcExitStatus() != 0) {
+			String sMessage = parseXrootdError(exitStatus.getStdOut());
 
-				if (logger.isLoggable(Level.WARNING))
-					logger.log(Level.WARNING, "PUT of " + pfn.pfn + " failed with " + exitStatus.getStdOut());
+			if (logger.isLoggable(Level.WARNING))
+				logger.log(Level.WARNING, "PUT of " + pfn.pfn + " failed with " + exitStatus.getStdOut());
 
-				if (sMessage != null) {
-					if (exitStatus.getExtProcExitStatus() < 0)
-						sMessage = xrdcpPath + " timed out and was killed after " + maxTime + "s: " + sMessage;
-					else
-						sMessage = xrdcpPath + " exited with exit code " + exitStatus.getExtProcExitStatus() + ": " + sMessage;
-				}
-				else if (exitStatus.getExtProcExitStatus() < 0)
-					sMessage = "The following command had timed out and was killed after " + maxTime + "s:\n" + getFormattedLastCommand();
+			if (sMessage != null) {
+				if (exitStatus.getExtProcExitStatus() < 0)
+					sMessage = xrdcpPath + " timed out and was killed after " + maxTime + "s: " + sMessage;
 				else
-					sMessage = "Exit code was " + exitStatus.getExtProcExitStatus() + " for command:\n" + getFormattedLastCommand();
-
-				throw new TargetException(sMessage);
-			}
-
-			final String outputMessage = exitStatus.getStdOut();
-			if (outputMessage.contains("md5:")) {
-				final String[] outputList = outputMessage.split(" ");
-				final int indexMd5 = Arrays.asList(outputList).indexOf("md5:");
-				if (outputList.length > indexMd5 + 1) {
-					setMd5Value(outputList[indexMd5 + 1].trim());
-				}
+					sMessage = xrdcpPath + " exited with exit code " + exitStatus.getExtProcExitStatus() + ": " + sMessage;
 			}
+			else if (exitStatus.getExtProcExitStatus() < 0)
+				sMessage = "The following command had timed out and was killed after " + maxTime + "s:\n" + getFormattedLastCommand();
+			else
+				sMessage = "Exit code was " + exitStatus.getExtProcExitStatus() + " for command:\n" + getFormattedLastCommand();
 
-			if (pfn.ticket != null && pfn.ticket.envelope.getEncryptedEnvelope() != null)
-				return xrdstat(pfn, false);
-
-			return xrdstat(pfn, true);
-		}
-		catch (final TargetException ioe) {
-			throw ioe;
-		}
-		catch (final IOException ioe) {
-			throw new TargetException(ioe.getMessage());
+			throw new TargetException(sMessage);
 		}
-		catch (final Throwable t) {
-			logger.log(Level.WARNING, "Caught exception", t);
 
-			throw new TargetException("Put aborted because " + t);
+		final String outputMessage = exitStatus.getStdOut();
+		if (outputMessage.contains("md5:")) {
+			final String[] outputList = outputMessage.split(" ");
+			final int indexMd5 = Arrays.asList(outputList).indexOf("md5:");
+			if (outputList.length > indexMd5 + 1) {
+				setMd5Value(outputList[indexMd5 + 1].trim());
+			}
 		}
+
+		if (pfn.ticket != null && pfn.ticket.envelope.getEncryptedEnvelope() != null)
+			return xrdstat(pfn, false);
+
+		return xrdstat(pfn, true);
 	}
 
 	/**
@@ -1086,7 +1127,7 @@ public class Xrootd extends Protocol {
 		pBuilder.environment().putAll(env);
 	}
 
-	private static String decorateOpaqueParams(final String params, final String defaultApplicationName, final SciTag tag) {
+	static String decorateOpaqueParams(final String params, final String defaultApplicationName, final SciTag tag) {
 		String ret = addToParams(params, "eos.app", ConfigUtils.getApplicationName(defaultApplicationName));
 
 		if (tag != null)
@@ -0,0 +1,273 @@
+package alien.io.protocols;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.catalogue.PFN;
+import alien.catalogue.access.AccessType;
+import alien.config.ConfigUtils;
+import alien.io.xrootd.client.XrootdClient;
+import alien.io.xrootd.client.XrootdClient.StatInfo;
+import alien.io.xrootd.client.XrootdException;
+import alien.io.xrootd.client.XrootdProtocol;
+import alien.io.xrootd.client.XrootdTimeLimitException;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
+import alien.se.SE;
+import lia.util.process.ExternalProcess.ExitStatus;
+
+/**
+ * Xrootd transfers with the in-JVM {@link XrootdClient} instead of forking xrdcp for each file. Whenever the native client cannot talk to a server (network issues, authentication schemes it
+ * doesn't support) the operation is repeated with xrdcp, as {@link Xrootd} does it. Errors returned by the servers are final, xrdcp would get the same answer, and so are the transfers that
+ * exceed the total time that xrdcp would be given.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class XrootdNative extends Xrootd {
+
+	private static final long serialVersionUID = -2541985734627811943L;
+
+	/**
+	 * Logger
+	 */
+	static transient final Logger logger = ConfigUtils.getLogger(XrootdNative.class.getCanonicalName());
+
+	/**
+	 * Monitoring of the native operations and of the fallbacks to xrdcp
+	 */
+	static transient final Monitor monitor = MonitorFactory.getMonitor(XrootdNative.class.getCanonicalName());
+
+	/**
+	 * package protected
+	 */
+	XrootdNative() {
+		// package protected
+	}
+
+	/**
+	 * @param pfn
+	 * @return the transaction URL with the access envelope in the opaque part
+	 */
+	private static String getURL(final PFN pfn) {
+		if (pfn.ticket == null || pfn.ticket.envelope == null)
+			return pfn.pfn;
+
+		final String transactionURL = pfn.ticket.envelope.getTransactionURL();
+
+		if (pfn.ticket.envelope.getEncryptedEnvelope() != null)
+			return transactionURL + "?authz=" + pfn.ticket.envelope.getEncryptedEnvelope();
+
+		if (pfn.ticket.envelope.getSignedEnvelope() != null)
+			return transactionURL + "?" + pfn.ticket.envelope.getSignedEnvelope();
+
+		return transactionURL;
+	}
+
+	private static SourceException toSourceException(final XrootdException e) {
+		return new SourceException(e.getErrorCode() == XrootdProtocol.kXR_NotFound ? SourceExceptionCode.NO_SUCH_FILE_OR_DIRECTORY : SourceExceptionCode.XROOTD_SERVER_ERROR, e.getMessage(), e);
+	}
+
+	private static void incrementCounter(final String name) {
+		if (monitor != null)
+			monitor.incrementCounter(name);
+	}
+
+	@Override
+	protected void download(final PFN pfn, final File target, final String applicationName, final SciTag sciTag) throws IOException {
+		final String url = decorateOpaqueParams(getURL(pfn), applicationName, sciTag);
+
+		setLastCommand(Arrays.asList("xrootd-native", "get", url, target.getAbsolutePath()));
+		setLastCommandEnv(null);
+
+		// 20KB/s should be available to anybody, as for xrdcp
+		final long maxTime = getTimeout() + pfn.getGuid().size / 20000;
+
+		try (Timing t = new Timing(monitor, "native_download")) {
+			new XrootdClient(getTimeout(), maxTime).download(url, target);
+
+			incrementCounter("native_download_ok");
+
+			return;
+		}
+		catch (final XrootdException e) {
+			incrementCounter("native_download_refused");
+
+			throw toSourceException(e);
+		}
+		catch (final XrootdTimeLimitException e) {
+			incrementCounter("native_download_timeout");
+
+			if (target.exists() && !target.delete())
+				logger.log(Level.WARNING, "Could not delete the partially downloaded file " + target);
+
+			throw new SourceException(SourceExceptionCode.XROOTD_TIMED_OUT, e.getMessage(), e);
+		}
+		catch (final IOException e) {
+			incrementCounter("native_download_fallback");
+
+			logger.log(Level.WARNING, "Native download of " + pfn.pfn + " failed, retrying with xrdcp", e);
+
+			if (target.exists() && !target.delete())
+				logger.log(Level.WARNING, "Could not delete the partially downloaded file " + target);
+		}
+
+		super.download(pfn, target, applicationName, sciTag);
+	}
+
+	@Override
+	protected String upload(final PFN pfn, final File localFile, final String applicationName, final SciTag tag) throws IOException {
+		final String url = decorateOpaqueParams(getURL(pfn), applicationName, tag);
+
+		setLastCommand(Arrays.asList("xrootd-native", "put", localFile.getAbsolutePath(), url));
+		setLastCommandEnv(null);
+
+		final MessageDigest md5;
+
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new IOException("MD5 is not available", e);
+		}
+
+		try (Timing t = new Timing(monitor, "native_upload")) {
+			new XrootdClient(getTimeout(), getTimeout() + localFile.length() / 20000).upload(localFile, url, md5);
+
+			incrementCounter("native_upload_ok");
+		}
+		catch (final XrootdException e) {
+			incrementCounter("native_upload_refused");
+
+			throw new TargetException(e.getMessage(), e);
+		}
+		catch (final XrootdTimeLimitException e) {
+			incrementCounter("native_upload_timeout");
+
+			throw new TargetException(e.getMessage(), e);
+		}
+		catch (final IOException e) {
+			incrementCounter("native_upload_fallback");
+
+			logger.log(Level.WARNING, "Native upload to " + pfn.pfn + " failed, retrying with xrdcp", e);
+
+			return super.upload(pfn, localFile, applicationName, tag);
+		}
+
+		setMd5Value(String.format("%032x", new BigInteger(1, md5.digest())));
+
+		return stat(pfn);
+	}
+
+	/**
+	 * Confirm the upload, retrying while the storage doesn't show the expected size yet
+	 *
+	 * @return the stat information, in the format of `xrdfs stat`
+	 */
+	private String stat(final PFN pfn) throws IOException {
+		final SE se = pfn.getSE();
+
+		final int[] statRetryTimes = se != null && se.seName.toLowerCase().contains("dcache") ? statRetryTimesDCache : statRetryTimesXrootd;
+
+		final XrootdClient client = new XrootdClient(getTimeout());
+
+		StatInfo info = null;
+
+		for (final int sleep : statRetryTimes) {
+			try {
+				// with the envelope, as `xrdfs stat` is called, for the storages that require it for any access
+				info = client.stat(getURL(pfn));
+			}
+			catch (final XrootdException e) {
+				if (sleep == 0)
+					throw new SourceException(SourceExceptionCode.XRDFS_CANNOT_CONFIRM_UPLOAD, "Could not confirm the upload of " + pfn.getPFN() + ": " + e.getMessage(), e);
+			}
+			catch (final IOException e) {
+				logger.log(Level.WARNING, "Native stat of " + pfn.getPFN() + " failed, retrying with xrdfs", e);
+
+				return xrdstat(pfn, false);
+			}
+
+			if (info != null && (pfn.getGuid().size <= 0 || pfn.getGuid().size == info.size))
+				return format(pfn, info);
+
+			if (sleep == 0)
+				break;
+
+			try {
+				Thread.sleep(sleep * 1000L);
+			}
+			catch (final InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new SourceException(SourceExceptionCode.INTERRUPTED_WHILE_WAITING_FOR_COMMAND, "Interrupted while waiting to confirm the upload of " + pfn.getPFN(), ie);
+			}
+		}
+
+		throw new SourceException(SourceExceptionCode.XRDFS_CANNOT_CONFIRM_UPLOAD,
+				"Could not confirm the upload of " + pfn.getPFN() + " after " + statRetryTimes.length + " retries: " + (info != null ? info.toString() : "no stat information"));
+	}
+
+	private static String format(final PFN pfn, final StatInfo info) {
+		String path = pfn.getPFN();
+
+		final int idx = path.indexOf("//", path.indexOf("://") + 3);
+
+		if (idx > 0)
+			path = path.substring(idx + 1);
+
+		return "Path:   " + path + "\nId:     " + info.id + "\nSize:   " + info.size + "\nMTime:  " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(info.modtime * 1000))
+				+ "\nFlags:  " + info.flags;
+	}
+
+	@Override
+	public Map<PFN, ExitStatus> delete(final List<PFN> pfns, final boolean enforceTicket) throws IOException {
+		if (pfns == null || pfns.size() == 0)
+			throw new IOException("No work");
+
+		if (enforceTicket)
+			for (final PFN pfn : pfns)
+				if (pfn == null || pfn.ticket == null || pfn.ticket.type != AccessType.DELETE)
+					throw new IOException("You didn't get the rights to delete this PFN");
+
+		final Map<PFN, ExitStatus> ret = new LinkedHashMap<>();
+
+		final XrootdClient client = new XrootdClient(getTimeout());
+
+		for (int i = 0; i < pfns.size(); i++) {
+			final PFN pfn = pfns.get(i);
+
+			try (Timing t = new Timing(monitor, "native_delete")) {
+				client.delete(getURL(pfn));
+
+				ret.put(pfn, new ExitStatus(0, 0, null, null, null));
+			}
+			catch (final XrootdException e) {
+				// a file that doesn't exist is reported without an error message, as `delete(PFN)` expects it
+				ret.put(pfn, new ExitStatus(0, 1, null, null, e.getErrorCode() == XrootdProtocol.kXR_NotFound ? null : "Unable remove " + pfn.pfn + ": " + e.getMessage()));
+			}
+			catch (final IOException e) {
+				incrementCounter("native_delete_fallback");
+
+				logger.log(Level.WARNING, "Native delete of " + pfn.pfn + " failed, retrying the remaining " + (pfns.size() - i) + " files with xrdfs", e);
+
+				ret.putAll(super.delete(pfns.subList(i, pfns.size()), enforceTicket));
+
+				break;
+			}
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,636 @@
+package alien.io.xrootd.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+import alien.io.xrootd.client.XrootdConnection.Response;
+
+/**
+ * In-JVM client for the root:// protocol, covering what the grid transfers need: downloading and uploading whole files, stat and delete. The requests follow the redirections of the servers and
+ * honour their wait responses, and the connections are reused across calls through {@link XrootdConnectionPool}. The access envelopes are passed the same way xrdcp does it, in the opaque part of
+ * the URL (<code>?authz=...</code>).<br>
+ * <br>
+ * Failures are reported as {@link XrootdException} when the server has refused the request, and as plain {@link IOException}s when the client could not talk to the server at all (network
+ * problems, unsupported authentication), so that the callers can tell the two apart.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class XrootdClient {
+
+	private static final Logger logger = ConfigUtils.getLogger(XrootdClient.class.getCanonicalName());
+
+	/**
+	 * Size of the read and write requests
+	 */
+	private static final int CHUNK_SIZE = ConfigUtils.getConfig().geti("alien.io.xrootd.client.XrootdClient.chunkSize", 4 * 1024 * 1024);
+
+	/**
+	 * How many data buffers to keep for reuse
+	 */
+	private static final int MAX_IDLE_BUFFERS = ConfigUtils.getConfig().geti("alien.io.xrootd.client.XrootdClient.idleBuffers", 8);
+
+	private static final int MAX_REDIRECTS = 16;
+
+	private static final int MAX_WAITS = 10;
+
+	/**
+	 * Longest wait that we accept from a server, in seconds
+	 */
+	private static final int MAX_WAIT_TIME = 60;
+
+	private static final Queue<ByteBuffer> idleBuffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * File information, as returned by kXR_stat
+	 */
+	public static final class StatInfo {
+		/**
+		 * Server specific file identifier
+		 */
+		public final String id;
+
+		/**
+		 * File size
+		 */
+		public final long size;
+
+		/**
+		 * kXR_* flags (readable, writable, offline and so on)
+		 */
+		public final int flags;
+
+		/**
+		 * Last modification time, in seconds since the epoch
+		 */
+		public final long modtime;
+
+		/**
+		 * @param stat
+		 *            "id size flags modtime"
+		 * @throws IOException
+		 *             if the string cannot be parsed
+		 */
+		StatInfo(final String stat) throws IOException {
+			final StringTokenizer st = new StringTokenizer(stat);
+
+			try {
+				id = st.nextToken();
+				size = Long.parseLong(st.nextToken());
+				flags = Integer.parseInt(st.nextToken());
+				modtime = Long.parseLong(st.nextToken());
+			}
+			catch (final RuntimeException e) {
+				throw new IOException("Cannot parse the stat information: " + stat, e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "id=" + id + ", size=" + size + ", flags=" + flags + ", modtime=" + modtime;
+		}
+	}
+
+	/**
+	 * Server, path and opaque information of a request, changing as the request is redirected
+	 */
+	static final class Location {
+		final String host;
+
+		final int port;
+
+		final String path;
+
+		final String opaque;
+
+		Location(final String host, final int port, final String path, final String opaque) {
+			this.host = host;
+			this.port = port;
+			this.path = path;
+			this.opaque = opaque;
+		}
+
+		/**
+		 * @param url
+		 *            root://host[:port]//path[?opaque]
+		 * @return the parsed URL
+		 * @throws IOException
+		 *             if the URL is not a valid xrootd one
+		 */
+		static Location parse(final String url) throws IOException {
+			final int idx = url.indexOf("://");
+
+			if (idx <= 0 || !url.substring(0, idx).toLowerCase().matches("x?root"))
+				throw new IOException("Not an xrootd URL: " + url);
+
+			final int pathStart = url.indexOf('/', idx + 3);
+
+			String authority = pathStart > 0 ? url.substring(idx + 3, pathStart) : url.substring(idx + 3);
+
+			final int at = authority.lastIndexOf('@');
+
+			if (at >= 0)
+				authority = authority.substring(at + 1);
+
+			String host = authority;
+			int port = XrootdProtocol.DEFAULT_PORT;
+
+			final int colon = authority.lastIndexOf(':');
+
+			if (colon > 0 && colon > authority.lastIndexOf(']')) {
+				host = authority.substring(0, colon);
+
+				try {
+					port = Integer.parseInt(authority.substring(colon + 1));
+				}
+				catch (final NumberFormatException nfe) {
+					throw new IOException("Invalid port in " + url, nfe);
+				}
+			}
+
+			if (host.startsWith("[") && host.endsWith("]"))
+				host = host.substring(1, host.length() - 1);
+
+			if (host.isEmpty())
+				throw new IOException("No host in " + url);
+
+			String path = pathStart > 0 ? url.substring(pathStart + 1) : "/";
+			String opaque = null;
+
+			final int q = path.indexOf('?');
+
+			if (q >= 0) {
+				opaque = path.substring(q + 1);
+				path = path.substring(0, q);
+			}
+
+			if (!path.startsWith("/"))
+				path = "/" + path;
+
+			return new Location(host, port, path, opaque);
+		}
+
+		/**
+		 * @return what is sent to the server as the file name
+		 */
+		String getFullPath() {
+			if (opaque == null || opaque.isEmpty())
+				return path;
+
+			return path + "?" + opaque;
+		}
+
+		/**
+		 * @param r
+		 *            a kXR_redirect response
+		 * @return where to repeat the request
+		 * @throws IOException
+		 *             if the redirection cannot be followed
+		 */
+		Location redirect(final Response r) throws IOException {
+			if (r.body == null || r.body.remaining() < 4)
+				throw new IOException("Invalid redirect response from " + host + ":" + port);
+
+			final int newPort = r.body.getInt();
+
+			String target = r.getString();
+
+			if (newPort == -1 && target.contains("://")) {
+				// URL redirect
+				final Location l = parse(target);
+
+				return new Location(l.host, l.port, path, merge(opaque, l.opaque));
+			}
+
+			String cgi = null;
+
+			final int q = target.indexOf('?');
+
+			if (q >= 0) {
+				cgi = target.substring(q + 1);
+				target = target.substring(0, q);
+			}
+
+			if (target.isEmpty())
+				throw new IOException("Redirect to an empty host from " + host + ":" + port);
+
+			return new Location(target, newPort > 0 ? newPort : XrootdProtocol.DEFAULT_PORT, path, merge(opaque, cgi));
+		}
+
+		private static String merge(final String opaque, final String cgi) {
+			if (cgi == null || cgi.isEmpty())
+				return opaque;
+
+			if (opaque == null || opaque.isEmpty())
+				return cgi;
+
+			return opaque + "&" + cgi;
+		}
+
+		@Override
+		public String toString() {
+			return "root://" + host + ":" + port + "/" + path;
+		}
+	}
+
+	/**
+	 * Connection on which a request was successful, with the response
+	 */
+	private static final class Session {
+		final XrootdConnection connection;
+
+		final Response response;
+
+		Session(final XrootdConnection connection, final Response response) {
+			this.connection = connection;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * Inactivity timeout, in milliseconds
+	 */
+	private final int timeout;
+
+	/**
+	 * Total time that one operation is allowed to take, in milliseconds, or <code>0</code> for no limit
+	 */
+	private final long maxTime;
+
+	/**
+	 * @param timeout
+	 *            connect and inactivity timeout, in seconds. Any operation can take longer than this, as long as the server keeps answering.
+	 */
+	public XrootdClient(final int timeout) {
+		this(timeout, 0);
+	}
+
+	/**
+	 * @param timeout
+	 *            connect and inactivity timeout, in seconds
+	 * @param maxTime
+	 *            total time that a transfer is allowed to take, in seconds, like the time after which xrdcp is killed. It is checked between the requests, so an operation can exceed it by up
+	 *            to the inactivity timeout. Zero or negative for no limit.
+	 */
+	public XrootdClient(final int timeout, final long maxTime) {
+		this.timeout = Math.max(timeout, 1) * 1000;
+		this.maxTime = maxTime > 0 ? maxTime * 1000 : 0;
+	}
+
+	private long getDeadline() {
+		return maxTime > 0 ? System.currentTimeMillis() + maxTime : Long.MAX_VALUE;
+	}
+
+	private void checkDeadline(final long deadline, final String url) throws XrootdTimeLimitException {
+		if (System.currentTimeMillis() > deadline)
+			throw new XrootdTimeLimitException("Operation on " + url + " was interrupted after the time limit of " + (maxTime / 1000) + "s");
+	}
+
+	private static ByteBuffer getBuffer() {
+		final ByteBuffer b = idleBuffers.poll();
+
+		if (b != null) {
+			b.clear();
+			return b;
+		}
+
+		return ByteBuffer.allocateDirect(CHUNK_SIZE);
+	}
+
+	private static void returnBuffer(final ByteBuffer b) {
+		if (b.capacity() == CHUNK_SIZE && idleBuffers.size() < MAX_IDLE_BUFFERS)
+			idleBuffers.offer(b);
+	}
+
+	/**
+	 * Execute a request that has the path as payload (open, stat, rm), following the redirections and honouring the wait responses.
+	 *
+	 * @return the connection that has executed the request, that has to be given back to the pool, and the successful response
+	 */
+	private Session pathRequest(final String url, final int requestId, final ByteBuffer params, final long deadline) throws IOException {
+		Location location = Location.parse(url);
+
+		int redirects = 0;
+		int waits = 0;
+		boolean retried = false;
+
+		while (true) {
+			checkDeadline(deadline, url);
+
+			final XrootdConnection c = XrootdConnectionPool.acquire(location.host, location.port, timeout);
+
+			final Response r;
+
+			try {
+				r = c.execute(requestId, params, ByteBuffer.wrap(location.getFullPath().getBytes(StandardCharsets.UTF_8)), null);
+			}
+			catch (final IOException ioe) {
+				c.close();
+
+				if (c.reused && !retried) {
+					// the server has probably dropped the idle connection in the mean time
+					logger.log(Level.FINE, "Reused connection to " + c.endpoint + " failed, retrying on a new one", ioe);
+					retried = true;
+					continue;
+				}
+
+				throw ioe;
+			}
+
+			switch (r.status) {
+				case XrootdProtocol.kXR_ok:
+					return new Session(c, r);
+				case XrootdProtocol.kXR_redirect:
+					XrootdConnectionPool.release(c);
+
+					if (++redirects > MAX_REDIRECTS)
+						throw new IOException("Too many redirections for " + url + ", last one to " + location);
+
+					location = location.redirect(r);
+
+					if (logger.isLoggable(Level.FINER))
+						logger.log(Level.FINER, "Redirected to " + location);
+
+					break;
+				case XrootdProtocol.kXR_wait:
+					XrootdConnectionPool.release(c);
+
+					if (++waits > MAX_WAITS)
+						throw new IOException("Server asked to wait too many times for " + url);
+
+					final int seconds = r.body != null && r.body.remaining() >= 4 ? r.body.getInt() : 1;
+
+					try {
+						Thread.sleep(Math.max(1, Math.min(seconds, MAX_WAIT_TIME)) * 1000L);
+					}
+					catch (final InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+					}
+
+					break;
+				case XrootdProtocol.kXR_error:
+					XrootdConnectionPool.release(c);
+					throw XrootdConnection.error(r);
+				default:
+					c.close();
+					throw new IOException("Unexpected response " + XrootdProtocol.statusName(r.status) + " from " + c.endpoint);
+			}
+		}
+	}
+
+	private static ByteBuffer openParams(final int mode, final int options) {
+		final ByteBuffer params = ByteBuffer.allocate(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+		params.putShort((short) mode);
+		params.putShort((short) options);
+		params.position(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+		params.flip();
+		return params;
+	}
+
+	private static byte[] getHandle(final Response open) throws IOException {
+		if (open.body == null || open.body.remaining() < XrootdProtocol.FHANDLE_LENGTH)
+			throw new IOException("No file handle in the open response");
+
+		final byte[] fhandle = new byte[XrootdProtocol.FHANDLE_LENGTH];
+		open.body.get(fhandle);
+
+		return fhandle;
+	}
+
+	private static void check(final XrootdConnection c, final Response r) throws IOException {
+		if (r.status == XrootdProtocol.kXR_ok)
+			return;
+
+		if (r.status == XrootdProtocol.kXR_error)
+			throw XrootdConnection.error(r);
+
+		throw new IOException("Unexpected response " + XrootdProtocol.statusName(r.status) + " from " + c.endpoint);
+	}
+
+	private static void close(final XrootdConnection c, final byte[] fhandle) throws IOException {
+		final ByteBuffer params = ByteBuffer.allocate(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+		params.put(fhandle);
+		params.position(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+		params.flip();
+
+		check(c, c.execute(XrootdProtocol.kXR_close, params, null, null));
+	}
+
+	/**
+	 * Download a remote file
+	 *
+	 * @param url
+	 *            root:// URL, with the access envelope in the opaque part
+	 * @param target
+	 *            local file, that must not exist yet
+	 * @return the number of bytes that were downloaded
+	 * @throws IOException
+	 *             if the transfer failed, in which case the partial local file is left for the caller to remove. {@link XrootdTimeLimitException} if it took longer than allowed.
+	 */
+	public long download(final String url, final File target) throws IOException {
+		final long deadline = getDeadline();
+
+		final Session s = pathRequest(url, XrootdProtocol.kXR_open, openParams(0, XrootdProtocol.kXR_open_read | XrootdProtocol.kXR_retstat), deadline);
+
+		final XrootdConnection c = s.connection;
+
+		boolean ok = false;
+
+		final ByteBuffer buffer = getBuffer();
+
+		try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			final byte[] fhandle = getHandle(s.response);
+
+			long expectedSize = -1;
+
+			if (s.response.body.remaining() > 8) {
+				// cpsize and cptype, then the stat information
+				s.response.body.position(s.response.body.position() + 8);
+
+				expectedSize = new StatInfo(StandardCharsets.US_ASCII.decode(s.response.body).toString().trim()).size;
+			}
+
+			final ByteBuffer params = ByteBuffer.allocate(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+
+			long offset = 0;
+
+			while (expectedSize < 0 || offset < expectedSize) {
+				checkDeadline(deadline, url);
+
+				final int length = expectedSize >= 0 ? (int) Math.min(buffer.capacity(), expectedSize - offset) : buffer.capacity();
+
+				params.clear();
+				params.put(fhandle);
+				params.putLong(offset);
+				params.putInt(length);
+				params.flip();
+
+				buffer.clear();
+				buffer.limit(length);
+
+				final Response r = c.execute(XrootdProtocol.kXR_read, params, null, buffer);
+
+				check(c, r);
+
+				if (r.length == 0)
+					break;
+
+				buffer.flip();
+
+				while (buffer.hasRemaining())
+					out.write(buffer);
+
+				offset += r.length;
+
+				// without knowing the size, a short read means the end of the file
+				if (expectedSize < 0 && r.length < length)
+					break;
+			}
+
+			if (expectedSize >= 0 && offset != expectedSize)
+				throw new IOException("Premature end of file after " + offset + " out of " + expectedSize + " bytes from " + c.endpoint);
+
+			close(c, fhandle);
+
+			ok = true;
+
+			return offset;
+		}
+		finally {
+			returnBuffer(buffer);
+
+			if (ok)
+				XrootdConnectionPool.release(c);
+			else
+				// the file might still be open on the server, don't reuse the connection
+				c.close();
+		}
+	}
+
+	/**
+	 * Upload a local file, replacing any existing file at that location. The file is only persisted by the server if the transfer completes (POSC).
+	 *
+	 * @param source
+	 *            local file
+	 * @param url
+	 *            root:// URL, with the access envelope in the opaque part
+	 * @param digest
+	 *            if not <code>null</code>, it is updated with the content of the file while uploading it
+	 * @return the number of bytes that were uploaded
+	 * @throws IOException
+	 *             if the transfer failed, {@link XrootdTimeLimitException} if it took longer than allowed
+	 */
+	public long upload(final File source, final String url, final MessageDigest digest) throws IOException {
+		final long deadline = getDeadline();
+
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+			final Session s = pathRequest(url, XrootdProtocol.kXR_open,
+					openParams(XrootdProtocol.MODE_644, XrootdProtocol.kXR_open_updt | XrootdProtocol.kXR_delete | XrootdProtocol.kXR_posc), deadline);
+
+			final XrootdConnection c = s.connection;
+
+			boolean ok = false;
+
+			final ByteBuffer buffer = getBuffer();
+
+			try {
+				final byte[] fhandle = getHandle(s.response);
+
+				final ByteBuffer params = ByteBuffer.allocate(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+
+				long offset = 0;
+
+				while (true) {
+					checkDeadline(deadline, url);
+
+					buffer.clear();
+
+					final int count = in.read(buffer);
+
+					if (count < 0)
+						break;
+
+					if (count == 0)
+						continue;
+
+					buffer.flip();
+
+					if (digest != null)
+						digest.update(buffer.duplicate());
+
+					params.clear();
+					params.put(fhandle);
+					params.putLong(offset);
+					params.position(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+					params.flip();
+
+					check(c, c.execute(XrootdProtocol.kXR_write, params, buffer, null));
+
+					offset += count;
+				}
+
+				// with POSC the file only becomes visible after a successful close
+				close(c, fhandle);
+
+				ok = true;
+
+				return offset;
+			}
+			finally {
+				returnBuffer(buffer);
+
+				if (ok)
+					XrootdConnectionPool.release(c);
+				else
+					c.close();
+			}
+		}
+	}
+
+	/**
+	 * @param url
+	 *            root:// URL
+	 * @return the information about this file
+	 * @throws IOException
+	 *             if the file doesn't exist ({@link XrootdException} with {@link XrootdProtocol#kXR_NotFound}) or the server cannot be queried
+	 */
+	public StatInfo stat(final String url) throws IOException {
+		final Session s = pathRequest(url, XrootdProtocol.kXR_stat, null, getDeadline());
+
+		XrootdConnectionPool.release(s.connection);
+
+		return new StatInfo(s.response.getString());
+	}
+
+	/**
+	 * @param url
+	 *            root:// URL, with the delete envelope in the opaque part
+	 * @throws IOException
+	 *             if the file could not be removed
+	 */
+	public void delete(final String url) throws IOException {
+		final Session s = pathRequest(url, XrootdProtocol.kXR_rm, null, getDeadline());
+
+		XrootdConnectionPool.release(s.connection);
+	}
+
+	/**
+	 * Close all the idle connections to the servers
+	 */
+	public static void closeIdleConnections() {
+		XrootdConnectionPool.closeAll();
+	}
+}
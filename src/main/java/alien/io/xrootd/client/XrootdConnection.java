@@ -0,0 +1,499 @@
+package alien.io.xrootd.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+
+/**
+ * One logged in connection to an xrootd server. The socket is a non-blocking NIO channel, with a private selector to enforce the timeouts. Requests are executed one at a time, the responses
+ * of the data requests go straight into the caller's buffers.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class XrootdConnection implements Closeable {
+
+	private static final Logger logger = ConfigUtils.getLogger(XrootdConnection.class.getCanonicalName());
+
+	/**
+	 * Response of a request, after the kXR_oksofar parts were put together and the kXR_waitresp were waited for
+	 */
+	static final class Response {
+		/**
+		 * {@link XrootdProtocol#kXR_ok} or one of the final non-data statuses (error, redirect, wait, authmore)
+		 */
+		final int status;
+
+		/**
+		 * The response content, <code>null</code> if it went into the caller's buffer
+		 */
+		final ByteBuffer body;
+
+		/**
+		 * Number of bytes in the response
+		 */
+		final int length;
+
+		Response(final int status, final ByteBuffer body, final int length) {
+			this.status = status;
+			this.body = body;
+			this.length = length;
+		}
+
+		/**
+		 * @return the response content as a string, without the trailing NUL characters
+		 */
+		String getString() {
+			if (body == null)
+				return null;
+
+			final ByteBuffer b = body.duplicate();
+
+			int end = b.limit();
+
+			while (end > b.position() && b.get(end - 1) == 0)
+				end--;
+
+			b.limit(end);
+
+			return StandardCharsets.UTF_8.decode(b).toString();
+		}
+	}
+
+	/**
+	 * host:port
+	 */
+	final String endpoint;
+
+	private final String host;
+
+	private final int port;
+
+	private final SocketChannel channel;
+
+	private final Selector selector;
+
+	private final SelectionKey key;
+
+	/**
+	 * Inactivity timeout, in milliseconds
+	 */
+	private final int timeout;
+
+	private final ByteBuffer requestHeader = ByteBuffer.allocate(XrootdProtocol.REQUEST_HEADER_LENGTH);
+
+	private final ByteBuffer responseHeader = ByteBuffer.allocate(XrootdProtocol.RESPONSE_HEADER_LENGTH);
+
+	private int lastStreamId = 0;
+
+	private boolean broken = false;
+
+	/**
+	 * How many requests went through this connection
+	 */
+	long requests = 0;
+
+	/**
+	 * Whether it was taken from the pool of idle connections
+	 */
+	boolean reused = false;
+
+	/**
+	 * When was it last used, System.currentTimeMillis()
+	 */
+	long lastUsed = System.currentTimeMillis();
+
+	/**
+	 * Connect to the server and log in
+	 *
+	 * @param host
+	 * @param port
+	 * @param timeout
+	 *            connect and inactivity timeout, in milliseconds
+	 * @throws IOException
+	 *             if the server cannot be reached or refuses the login
+	 */
+	XrootdConnection(final String host, final int port, final int timeout) throws IOException {
+		this.host = host;
+		this.port = port;
+		this.endpoint = host + ":" + port;
+		this.timeout = timeout;
+
+		channel = SocketChannel.open();
+
+		Selector sel = null;
+
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+
+			sel = Selector.open();
+
+			key = channel.register(sel, SelectionKey.OP_CONNECT);
+
+			if (!channel.connect(new InetSocketAddress(host, port))) {
+				if (sel.select(timeout) == 0)
+					throw new SocketTimeoutException("Timeout connecting to " + endpoint);
+
+				sel.selectedKeys().clear();
+
+				channel.finishConnect();
+			}
+
+			selector = sel;
+
+			handshake();
+			login();
+		}
+		catch (final IOException | RuntimeException e) {
+			channel.close();
+
+			if (sel != null)
+				sel.close();
+
+			throw e;
+		}
+	}
+
+	private void handshake() throws IOException {
+		final ByteBuffer hs = ByteBuffer.allocate(XrootdProtocol.HANDSHAKE_LENGTH);
+
+		hs.putInt(0).putInt(0).putInt(0).putInt(XrootdProtocol.HANDSHAKE_4).putInt(XrootdProtocol.HANDSHAKE_5);
+		hs.flip();
+
+		write(hs, null);
+
+		responseHeader.clear();
+		read(responseHeader, timeout);
+		responseHeader.flip();
+
+		responseHeader.getShort();
+		final int status = responseHeader.getShort();
+		final int dlen = responseHeader.getInt();
+
+		final ByteBuffer body = readBody(dlen);
+
+		if (status != XrootdProtocol.kXR_ok || dlen < 8)
+			throw new IOException("Unexpected handshake response from " + endpoint + ": status " + status + ", " + dlen + " bytes");
+
+		if (logger.isLoggable(Level.FINEST))
+			logger.log(Level.FINEST, endpoint + " speaks protocol version " + Integer.toHexString(body.getInt()) + ", server type " + body.getInt());
+	}
+
+	private void login() throws IOException {
+		final String user = System.getProperty("user.name", "alien");
+
+		final ByteBuffer params = ByteBuffer.allocate(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+
+		params.putInt((int) ProcessHandle.current().pid());
+
+		final byte[] userBytes = user.getBytes(StandardCharsets.US_ASCII);
+		params.put(userBytes, 0, Math.min(userBytes.length, 8));
+
+		params.position(4 + 8);
+		params.put((byte) 0); // ability2
+		params.put((byte) 0); // ability
+		params.put(XrootdProtocol.CAPABILITY_VERSION);
+		params.put((byte) 0); // role
+		params.flip();
+
+		final Response r = execute(XrootdProtocol.kXR_login, params, null, null);
+
+		if (r.status == XrootdProtocol.kXR_error)
+			throw new IOException("Login refused by " + endpoint, error(r));
+
+		if (r.status != XrootdProtocol.kXR_ok)
+			throw new IOException("Unexpected login response from " + endpoint + ": " + XrootdProtocol.statusName(r.status));
+
+		if (r.length <= 16)
+			return;
+
+		// the server asks for authentication
+		r.body.position(r.body.position() + 16);
+
+		final String security = StandardCharsets.US_ASCII.decode(r.body).toString().trim();
+
+		if (security.isEmpty())
+			return;
+
+		if (!security.contains("&P=unix"))
+			throw new IOException(endpoint + " requires an authentication protocol that is not supported: " + security);
+
+		final ByteBuffer authParams = ByteBuffer.allocate(XrootdProtocol.REQUEST_PARAMS_LENGTH);
+		authParams.position(12);
+		authParams.put("unix".getBytes(StandardCharsets.US_ASCII));
+		authParams.flip();
+
+		final ByteBuffer credentials = ByteBuffer.wrap(("unix\0" + user + "\0").getBytes(StandardCharsets.US_ASCII));
+
+		final Response auth = execute(XrootdProtocol.kXR_auth, authParams, credentials, null);
+
+		if (auth.status == XrootdProtocol.kXR_error)
+			throw new IOException("Authentication refused by " + endpoint, error(auth));
+
+		if (auth.status != XrootdProtocol.kXR_ok)
+			throw new IOException("Unexpected authentication response from " + endpoint + ": " + XrootdProtocol.statusName(auth.status));
+	}
+
+	/**
+	 * @param r
+	 *            a kXR_error response
+	 * @return the exception to throw for it
+	 */
+	static XrootdException error(final Response r) {
+		if (r.body == null || r.body.remaining() < 4)
+			return new XrootdException(0, "Error without details");
+
+		final int errorCode = r.body.getInt();
+
+		return new XrootdException(errorCode, r.getString());
+	}
+
+	/**
+	 * Send one request and wait for its response
+	 *
+	 * @param requestId
+	 *            kXR_* request code
+	 * @param params
+	 *            the 16 bytes of request parameters, can be <code>null</code> for all zeros
+	 * @param data
+	 *            request payload, can be <code>null</code>
+	 * @param sink
+	 *            where to put the content of a successful response, if <code>null</code> a buffer is allocated for it
+	 * @return the response
+	 * @throws IOException
+	 *             if the connection failed, in which case it cannot be used any more
+	 */
+	Response execute(final int requestId, final ByteBuffer params, final ByteBuffer data, final ByteBuffer sink) throws IOException {
+		if (broken)
+			throw new IOException("Connection to " + endpoint + " is not usable any more");
+
+		try {
+			return doExecute(requestId, params, data, sink);
+		}
+		catch (final IOException | RuntimeException e) {
+			broken = true;
+			throw e;
+		}
+		finally {
+			requests++;
+			lastUsed = System.currentTimeMillis();
+		}
+	}
+
+	private Response doExecute(final int requestId, final ByteBuffer params, final ByteBuffer data, final ByteBuffer sink) throws IOException {
+		lastStreamId = lastStreamId % 0xFFFF + 1;
+
+		final int streamId = lastStreamId;
+
+		requestHeader.clear();
+		requestHeader.putShort((short) streamId);
+		requestHeader.putShort((short) requestId);
+
+		if (params != null)
+			requestHeader.put(params.duplicate());
+
+		while (requestHeader.position() < 4 + XrootdProtocol.REQUEST_PARAMS_LENGTH)
+			requestHeader.put((byte) 0);
+
+		requestHeader.putInt(data != null ? data.remaining() : 0);
+		requestHeader.flip();
+
+		write(requestHeader, data);
+
+		final int sinkStart = sink != null ? sink.position() : 0;
+
+		ByteArrayOutputStream partial = null;
+
+		int waitTimeout = timeout;
+
+		while (true) {
+			responseHeader.clear();
+			read(responseHeader, waitTimeout);
+			responseHeader.flip();
+
+			int sid = responseHeader.getShort() & 0xFFFF;
+			int status = responseHeader.getShort() & 0xFFFF;
+			int dlen = responseHeader.getInt();
+
+			ByteBuffer inline = null;
+
+			if (status == XrootdProtocol.kXR_attn) {
+				final ByteBuffer attn = readBody(dlen);
+
+				if (attn.remaining() < 16 || attn.getInt() != XrootdProtocol.kXR_asynresp)
+					// other asynchronous messages are not relevant for us
+					continue;
+
+				attn.getInt();
+
+				sid = attn.getShort() & 0xFFFF;
+				status = attn.getShort() & 0xFFFF;
+				dlen = attn.getInt();
+
+				inline = attn.slice();
+				inline.limit(Math.min(dlen, inline.limit()));
+				dlen = inline.remaining();
+			}
+
+			if (sid != streamId) {
+				if (inline == null)
+					readBody(dlen);
+
+				logger.log(Level.FINE, "Ignoring a response to stream " + sid + " while waiting for " + streamId + " from " + endpoint);
+				continue;
+			}
+
+			if (status == XrootdProtocol.kXR_ok || status == XrootdProtocol.kXR_oksofar) {
+				if (sink != null) {
+					if (dlen > sink.remaining())
+						throw new IOException(endpoint + " sent " + dlen + " bytes while only " + sink.remaining() + " were expected");
+
+					if (inline != null)
+						sink.put(inline);
+					else {
+						final ByteBuffer view = sink.duplicate();
+						view.limit(view.position() + dlen);
+						read(view, waitTimeout);
+						sink.position(view.position());
+					}
+
+					if (status == XrootdProtocol.kXR_oksofar)
+						continue;
+
+					return new Response(XrootdProtocol.kXR_ok, null, sink.position() - sinkStart);
+				}
+
+				final ByteBuffer body = inline != null ? inline : readBody(dlen);
+
+				if (status == XrootdProtocol.kXR_oksofar) {
+					if (partial == null)
+						partial = new ByteArrayOutputStream(Math.max(dlen * 2, 64));
+
+					partial.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+					continue;
+				}
+
+				if (partial == null)
+					return new Response(XrootdProtocol.kXR_ok, body, body.remaining());
+
+				partial.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+
+				return new Response(XrootdProtocol.kXR_ok, ByteBuffer.wrap(partial.toByteArray()), partial.size());
+			}
+
+			final ByteBuffer body = inline != null ? inline : readBody(dlen);
+
+			if (status == XrootdProtocol.kXR_waitresp) {
+				// the response will come in a kXR_attn message, within the indicated number of seconds
+				final int seconds = body.remaining() >= 4 ? body.getInt() : 0;
+
+				waitTimeout = Math.max(timeout, seconds * 1000 + timeout);
+				continue;
+			}
+
+			return new Response(status, body, body.remaining());
+		}
+	}
+
+	private ByteBuffer readBody(final int dlen) throws IOException {
+		if (dlen < 0)
+			throw new IOException("Invalid response length from " + endpoint + ": " + dlen);
+
+		final ByteBuffer body = ByteBuffer.allocate(dlen);
+
+		read(body, timeout);
+
+		body.flip();
+
+		return body;
+	}
+
+	private void read(final ByteBuffer buffer, final int readTimeout) throws IOException {
+		while (buffer.hasRemaining()) {
+			final int count = channel.read(buffer);
+
+			if (count < 0)
+				throw new EOFException("Connection to " + endpoint + " was closed by the server");
+
+			if (count == 0)
+				await(SelectionKey.OP_READ, readTimeout);
+		}
+	}
+
+	private void write(final ByteBuffer header, final ByteBuffer data) throws IOException {
+		final ByteBuffer payload = data != null ? data.duplicate() : null;
+
+		final ByteBuffer[] buffers = payload != null ? new ByteBuffer[] { header, payload } : new ByteBuffer[] { header };
+
+		while (header.hasRemaining() || (payload != null && payload.hasRemaining()))
+			if (channel.write(buffers) == 0)
+				await(SelectionKey.OP_WRITE, timeout);
+	}
+
+	private void await(final int ops, final int waitTimeout) throws IOException {
+		key.interestOps(ops);
+
+		if (selector.select(waitTimeout) == 0)
+			throw new SocketTimeoutException("No activity from " + endpoint + " in " + waitTimeout + "ms");
+
+		selector.selectedKeys().clear();
+	}
+
+	/**
+	 * @return <code>true</code> if the connection can be reused for other requests
+	 */
+	boolean isUsable() {
+		return !broken && channel.isOpen();
+	}
+
+	/**
+	 * @return server host name
+	 */
+	String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return server port
+	 */
+	int getPort() {
+		return port;
+	}
+
+	@Override
+	public void close() {
+		broken = true;
+
+		try {
+			channel.close();
+		}
+		catch (final IOException e) {
+			logger.log(Level.FINE, "Exception closing the connection to " + endpoint, e);
+		}
+
+		try {
+			selector.close();
+		}
+		catch (final IOException e) {
+			logger.log(Level.FINE, "Exception closing the selector of " + endpoint, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return endpoint + " (" + requests + " requests)";
+	}
+}
@@ -0,0 +1,125 @@
+package alien.io.xrootd.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+
+/**
+ * Logged in connections that are not used at the moment, per server endpoint, so that consecutive requests to the same SE (or data server behind a redirector) skip the connection setup,
+ * handshake and login.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class XrootdConnectionPool {
+
+	private static final Monitor monitor = MonitorFactory.getMonitor(XrootdConnectionPool.class.getCanonicalName());
+
+	/**
+	 * How many idle connections to keep for each endpoint
+	 */
+	private static final int MAX_IDLE_PER_ENDPOINT = ConfigUtils.getConfig().geti("alien.io.xrootd.client.XrootdConnectionPool.maxIdlePerEndpoint", 4);
+
+	/**
+	 * Idle connections older than this are closed instead of being reused, in milliseconds (the servers drop idle clients after a while)
+	 */
+	private static final long IDLE_TIMEOUT = ConfigUtils.getConfig().getl("alien.io.xrootd.client.XrootdConnectionPool.idleTimeout", 60) * 1000;
+
+	private static final Map<String, Deque<XrootdConnection>> idle = new ConcurrentHashMap<>();
+
+	private XrootdConnectionPool() {
+		// static methods only
+	}
+
+	/**
+	 * Get an idle connection to this endpoint or else open a new one
+	 *
+	 * @param host
+	 * @param port
+	 * @param timeout
+	 *            connect and inactivity timeout for new connections, in milliseconds
+	 * @return a logged in connection, to be given back with {@link #release(XrootdConnection)}
+	 * @throws IOException
+	 *             if a new connection cannot be established
+	 */
+	static XrootdConnection acquire(final String host, final int port, final int timeout) throws IOException {
+		final Deque<XrootdConnection> queue = idle.get(host + ":" + port);
+
+		if (queue != null) {
+			final long now = System.currentTimeMillis();
+
+			synchronized (queue) {
+				final Iterator<XrootdConnection> it = queue.iterator();
+
+				while (it.hasNext()) {
+					final XrootdConnection c = it.next();
+
+					it.remove();
+
+					if (c.isUsable() && now - c.lastUsed < IDLE_TIMEOUT) {
+						c.reused = true;
+
+						if (monitor != null)
+							monitor.incrementCacheHits("connection");
+
+						return c;
+					}
+
+					c.close();
+				}
+			}
+		}
+
+		if (monitor != null)
+			monitor.incrementCacheMisses("connection");
+
+		return new XrootdConnection(host, port, timeout);
+	}
+
+	/**
+	 * Give back a connection that is not needed any more. It is kept for reuse if it is still healthy and there is room for it, otherwise it is closed.
+	 *
+	 * @param c
+	 */
+	static void release(final XrootdConnection c) {
+		if (c == null)
+			return;
+
+		if (!c.isUsable()) {
+			c.close();
+			return;
+		}
+
+		final Deque<XrootdConnection> queue = idle.computeIfAbsent(c.endpoint, (k) -> new ArrayDeque<>());
+
+		synchronized (queue) {
+			if (queue.size() < MAX_IDLE_PER_ENDPOINT) {
+				// most recently used first, the older ones are more likely to have been dropped by the server
+				queue.addFirst(c);
+				return;
+			}
+		}
+
+		c.close();
+	}
+
+	/**
+	 * Close all the idle connections
+	 */
+	static void closeAll() {
+		for (final Deque<XrootdConnection> queue : idle.values())
+			synchronized (queue) {
+				for (final XrootdConnection c : queue)
+					c.close();
+
+				queue.clear();
+			}
+	}
+}
@@ -0,0 +1,36 @@
+package alien.io.xrootd.client;
+
+import java.io.IOException;
+
+/**
+ * A request was refused by the server with a kXR_error response. Unlike the other {@link IOException}s of the native client, which mean that the client could not talk to the server, these
+ * errors would be the same for any client.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class XrootdException extends IOException {
+
+	private static final long serialVersionUID = 2371583658212087405L;
+
+	private final int errorCode;
+
+	/**
+	 * @param errorCode
+	 *            kXR_* error number returned by the server
+	 * @param message
+	 *            server message
+	 */
+	public XrootdException(final int errorCode, final String message) {
+		super("[" + errorCode + "] " + message);
+
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * @return the kXR_* error number returned by the server
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+}
@@ -0,0 +1,236 @@
+package alien.io.xrootd.client;
+
+/**
+ * Constants of the xrootd wire protocol (XRootD protocol specification, version 5) that the native client uses. All the integers go over the network in big endian order.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class XrootdProtocol {
+
+	private XrootdProtocol() {
+		// constants only
+	}
+
+	/**
+	 * Default port of the xrootd servers
+	 */
+	public static final int DEFAULT_PORT = 1094;
+
+	/**
+	 * Protocol version that the client announces
+	 */
+	public static final int PROTOCOL_VERSION = 0x00000520;
+
+	/**
+	 * Capability version sent with the login request (kXR_ver005)
+	 */
+	public static final byte CAPABILITY_VERSION = 5;
+
+	/**
+	 * Size of the client handshake
+	 */
+	public static final int HANDSHAKE_LENGTH = 20;
+
+	/**
+	 * Value of the 4th integer of the client handshake
+	 */
+	public static final int HANDSHAKE_4 = 4;
+
+	/**
+	 * Value of the 5th integer of the client handshake
+	 */
+	public static final int HANDSHAKE_5 = 2012;
+
+	/**
+	 * Size of a request header: streamid[2] requestid[2] parms[16] dlen[4]
+	 */
+	public static final int REQUEST_HEADER_LENGTH = 24;
+
+	/**
+	 * Size of the request specific parameters in the header
+	 */
+	public static final int REQUEST_PARAMS_LENGTH = 16;
+
+	/**
+	 * Size of a response header: streamid[2] status[2] dlen[4]
+	 */
+	public static final int RESPONSE_HEADER_LENGTH = 8;
+
+	/**
+	 * Size of the file handles
+	 */
+	public static final int FHANDLE_LENGTH = 4;
+
+	// request codes
+
+	/**
+	 * kXR_auth
+	 */
+	public static final int kXR_auth = 3000;
+
+	/**
+	 * kXR_close
+	 */
+	public static final int kXR_close = 3003;
+
+	/**
+	 * kXR_login
+	 */
+	public static final int kXR_login = 3007;
+
+	/**
+	 * kXR_open
+	 */
+	public static final int kXR_open = 3010;
+
+	/**
+	 * kXR_read
+	 */
+	public static final int kXR_read = 3013;
+
+	/**
+	 * kXR_rm
+	 */
+	public static final int kXR_rm = 3014;
+
+	/**
+	 * kXR_stat
+	 */
+	public static final int kXR_stat = 3017;
+
+	/**
+	 * kXR_write
+	 */
+	public static final int kXR_write = 3019;
+
+	// response status codes
+
+	/**
+	 * Final (or only) part of a successful response
+	 */
+	public static final int kXR_ok = 0;
+
+	/**
+	 * Partial response, more parts follow
+	 */
+	public static final int kXR_oksofar = 4000;
+
+	/**
+	 * Unsolicited message from the server
+	 */
+	public static final int kXR_attn = 4001;
+
+	/**
+	 * More authentication steps are needed
+	 */
+	public static final int kXR_authmore = 4002;
+
+	/**
+	 * The request failed
+	 */
+	public static final int kXR_error = 4003;
+
+	/**
+	 * Repeat the request on another server
+	 */
+	public static final int kXR_redirect = 4004;
+
+	/**
+	 * Repeat the request after some time
+	 */
+	public static final int kXR_wait = 4005;
+
+	/**
+	 * The response will come later, as a kXR_attn message
+	 */
+	public static final int kXR_waitresp = 4006;
+
+	/**
+	 * Action code of the kXR_attn messages that carry a delayed response
+	 */
+	public static final int kXR_asynresp = 5008;
+
+	// kXR_open options
+
+	/**
+	 * Truncate the file if it exists already
+	 */
+	public static final int kXR_delete = 0x0002;
+
+	/**
+	 * Fail if the file exists already
+	 */
+	public static final int kXR_new = 0x0008;
+
+	/**
+	 * Open for reading
+	 */
+	public static final int kXR_open_read = 0x0010;
+
+	/**
+	 * Open for writing
+	 */
+	public static final int kXR_open_updt = 0x0020;
+
+	/**
+	 * Create the missing directories of the path
+	 */
+	public static final int kXR_mkpath = 0x0100;
+
+	/**
+	 * Return the stat information of the file in the open response
+	 */
+	public static final int kXR_retstat = 0x0400;
+
+	/**
+	 * Persist the file only if it is successfully closed
+	 */
+	public static final int kXR_posc = 0x1000;
+
+	// kXR_open modes
+
+	/**
+	 * rw-r--r--
+	 */
+	public static final int MODE_644 = 0x100 | 0x080 | 0x020 | 0x004;
+
+	// kXR_error codes
+
+	/**
+	 * The file doesn't exist
+	 */
+	public static final int kXR_NotFound = 3011;
+
+	/**
+	 * The request is not authorized
+	 */
+	public static final int kXR_NotAuthorized = 3010;
+
+	/**
+	 * @param status
+	 * @return human readable name of a response status code
+	 */
+	public static String statusName(final int status) {
+		switch (status) {
+			case kXR_ok:
+				return "kXR_ok";
+			case kXR_oksofar:
+				return "kXR_oksofar";
+			case kXR_attn:
+				return "kXR_attn";
+			case kXR_authmore:
+				return "kXR_authmore";
+			case kXR_error:
+				return "kXR_error";
+			case kXR_redirect:
+				return "kXR_redirect";
+			case kXR_wait:
+				return "kXR_wait";
+			case kXR_waitresp:
+				return "kXR_waitresp";
+			default:
+				return String.valueOf(status);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package alien.io.xrootd.client;
+
+import java.io.IOException;
+
+/**
+ * A transfer was still making progress but took longer than the total time it was allowed to, as xrdcp is killed after the same time. Retrying with another client would not help.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class XrootdTimeLimitException extends IOException {
+
+	private static final long serialVersionUID = -6150728394875421903L;
+
+	/**
+	 * @param message
+	 *            what was interrupted, and after how long
+	 */
+	public XrootdTimeLimitException(final String message) {
+		super(message);
+	}
+}
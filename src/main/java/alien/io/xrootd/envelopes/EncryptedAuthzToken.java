@@ -72,6 +72,41 @@ public class EncryptedAuthzToken {
 		Security.addProvider(new BouncyCastleProvider());
 	}
 
+	/**
+	 * Looking up the algorithms goes through the providers list each time, so every thread keeps its own instances and only initializes them with the keys of the current token
+	 */
+	private static final class Primitives {
+		final KeyGenerator blowfishKeys;
+
+		final Cipher rsa;
+
+		final Cipher blowfish;
+
+		final Signature sha1WithRSA;
+
+		Primitives() throws GeneralSecurityException {
+			blowfishKeys = KeyGenerator.getInstance("Blowfish", "BC");
+			blowfishKeys.init(128);
+
+			rsa = Cipher.getInstance("RSA/NONE/PKCS1Padding", "BC");
+			blowfish = Cipher.getInstance("Blowfish/CBC/PKCS5Padding", "BC");
+			sha1WithRSA = Signature.getInstance("SHA1withRSA", "BC");
+		}
+	}
+
+	private static final ThreadLocal<Primitives> primitives = new ThreadLocal<>();
+
+	private static Primitives getPrimitives() throws GeneralSecurityException {
+		Primitives p = primitives.get();
+
+		if (p == null) {
+			p = new Primitives();
+			primitives.set(p);
+		}
+
+		return p;
+	}
+
 	/**
 	 *
 	 * Creates a new instance either for encryption or decryption
@@ -130,8 +165,9 @@ public class EncryptedAuthzToken {
 	 * @throws GeneralSecurityException
 	 */
 	private void encryptSealedCipher() throws GeneralSecurityException {
-		final KeyGenerator keyGenerator = KeyGenerator.getInstance("Blowfish", "BC");
-		keyGenerator.init(128);
+		final Primitives p = getPrimitives();
+
+		final KeyGenerator keyGenerator = p.blowfishKeys;
 
 		boolean ok;
 
@@ -159,7 +195,7 @@ public class EncryptedAuthzToken {
 		key[16] = (byte) '\0';
 		final SecretKeySpec freshBlowfishDASHED = new SecretKeySpec(key, 0, 17, "Blowfish");
 
-		final Cipher cipher = Cipher.getInstance("RSA/NONE/PKCS1Padding", "BC");
+		final Cipher cipher = p.rsa;
 
 		cipher.init(Cipher.WRAP_MODE, SEPubKey);
 
@@ -180,7 +216,7 @@ public class EncryptedAuthzToken {
 
 		signature = signEnvelope();
 
-		final Cipher cipher = Cipher.getInstance("Blowfish/CBC/PKCS5Padding", "BC");
+		final Cipher cipher = getPrimitives().blowfish;
 
 		cipher.init(Cipher.ENCRYPT_MODE, freshBlowfish, new IvParameterSpec(BLOWFISH_IV));
 
@@ -233,7 +269,7 @@ public class EncryptedAuthzToken {
 	 */
 	private byte[] signEnvelope() throws GeneralSecurityException {
 
-		final Signature signer = Signature.getInstance("SHA1withRSA", "BC");
+		final Signature signer = getPrimitives().sha1WithRSA;
 		signer.initSign(AuthenPrivKey);
 		signer.update(envelope);
 		return signer.sign();
@@ -291,7 +327,7 @@ public class EncryptedAuthzToken {
 		final byte[] encryptedCipher = Base64Moded.decode(cipherEncryptedBase64.toString());
 
 		// RSA-decrypt the session key by using the local private key
-		final Cipher cipher = Cipher.getInstance("RSA/NONE/PKCS1Padding", "BC");
+		final Cipher cipher = getPrimitives().rsa;
 		cipher.init(Cipher.UNWRAP_MODE, SEPrivKey);
 
 		final Key key = cipher.unwrap(encryptedCipher, "Blowfish", Cipher.SECRET_KEY);
@@ -334,7 +370,7 @@ public class EncryptedAuthzToken {
 		final SecretKeySpec symKeySpec = new SecretKeySpec(symmetricKey, 0, (symmetricKey.length - 1), "Blowfish");
 
 		// BC provider doing blowfish decryption
-		final Cipher cipher = Cipher.getInstance("Blowfish/CBC/PKCS5Padding", "BC");
+		final Cipher cipher = getPrimitives().blowfish;
 		cipher.init(Cipher.DECRYPT_MODE, symKeySpec, new IvParameterSpec(BLOWFISH_IV));
 		envelope = cipher.doFinal(encryptedEnvelope, envelopeOffset, encryptedEnvelope.length - envelopeOffset);
 	}
@@ -347,7 +383,7 @@ public class EncryptedAuthzToken {
 	 */
 	private boolean verifyEnvelope() throws GeneralSecurityException {
 
-		final Signature signer = Signature.getInstance("SHA1withRSA", "BC");
+		final Signature signer = getPrimitives().sha1WithRSA;
 		signer.initVerify(AuthenPubKey);
 		signer.update(envelope);
 		return signer.verify(signature);
@@ -104,6 +104,24 @@ public class XrootDEnvelopeSigner {
 		SEPubKey = sePubKey;
 	}
 
+	/**
+	 * Per thread signature instances, the lookup of the algorithm is not cheap
+	 */
+	private static final ThreadLocal<Signature> signers = new ThreadLocal<>();
+
+	private static final ThreadLocal<Signature> verifiers = new ThreadLocal<>();
+
+	private static Signature getSHA384withRSA(final ThreadLocal<Signature> instances) throws NoSuchAlgorithmException {
+		Signature signature = instances.get();
+
+		if (signature == null) {
+			signature = Signature.getInstance("SHA384withRSA");
+			instances.set(signature);
+		}
+
+		return signature;
+	}
+
 	/**
 	 * @param envelope
 	 * @throws NoSuchAlgorithmException
@@ -118,7 +136,7 @@ public class XrootDEnvelopeSigner {
 		final String toBeSigned = envelope.getUnsignedEnvelope() + "-issuer-issued-expires&issuer=" + JAliEnIAm.whatsMyName() + "_" + ConfigUtils.getLocalHostname() + "&issued=" + issued + "&expires="
 				+ expires;
 
-		final Signature signer = Signature.getInstance("SHA384withRSA");
+		final Signature signer = getSHA384withRSA(signers);
 
 		signer.initSign(JAuthZPrivKey);
 
@@ -199,7 +217,7 @@ public class XrootDEnvelopeSigner {
 		// System.out.println("plain envelope is : " + signedEnvelope);
 		// System.out.println("sign for envelope is : " + env.get("signature"));
 
-		final Signature signer = Signature.getInstance("SHA384withRSA");
+		final Signature signer = getSHA384withRSA(verifiers);
 
 		if (selfSigned)
 			signer.initVerify(JAuthZPubKey);
@@ -1,7 +1,7 @@
 package alien.monitoring;
 
 import java.util.Vector;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Access counters
@@ -11,8 +11,8 @@ import java.util.concurrent.atomic.AtomicLong;
 public final class CacheMonitor implements MonitoringObject, DerivedDataProducer {
 	private final String name;
 
-	private final AtomicLong hits = new AtomicLong(0);
-	private final AtomicLong misses = new AtomicLong(0);
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
 
 	private long oldHits = 0;
 	private long oldMisses = 0;
@@ -36,10 +36,13 @@ public final class CacheMonitor implements MonitoringObject, DerivedDataProducer
 	 * @return new absolute value of hits
 	 */
 	public long incrementHits() {
-		final long newValue = hits.incrementAndGet();
+		hits.increment();
 
-		if (newValue == Long.MAX_VALUE) {
-			hits.set(1);
+		final long newValue = hits.sum();
+
+		if (newValue == Long.MAX_VALUE || newValue < 0) {
+			hits.reset();
+			hits.increment();
 			oldHits = 0;
 
 			return 1;
@@ -54,10 +57,13 @@ public final class CacheMonitor implements MonitoringObject, DerivedDataProducer
 	 * @return new absolute value of misses
 	 */
 	public long incrementMisses() {
-		final long newValue = misses.incrementAndGet();
+		misses.increment();
+
+		final long newValue = misses.sum();
 
-		if (newValue == Long.MAX_VALUE) {
-			misses.set(1);
+		if (newValue == Long.MAX_VALUE || newValue < 0) {
+			misses.reset();
+			misses.increment();
 			oldMisses = 0;
 
 			return 1;
@@ -85,8 +91,8 @@ public final class CacheMonitor implements MonitoringObject, DerivedDataProducer
 
 		final double diffSeconds = diff / 1000d;
 
-		final long absHits = hits.get();
-		final long absMisses = misses.get();
+		final long absHits = hits.sum();
+		final long absMisses = misses.sum();
 		final long absTotal = absHits + absMisses;
 
 		final double absDiffSeconds = (now - started) / 1000d;
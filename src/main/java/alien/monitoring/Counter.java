@@ -1,7 +1,7 @@
 package alien.monitoring;
 
 import java.util.Vector;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Access counters
@@ -9,7 +9,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author costing
  */
 public final class Counter implements MonitoringObject, DerivedDataProducer {
-	private final AtomicLong counter = new AtomicLong(0);
+	private final LongAdder counter = new LongAdder();
 
 	private long oldValue = 0;
 
@@ -32,12 +32,15 @@ public final class Counter implements MonitoringObject, DerivedDataProducer {
 	 * @return the incremented value
 	 */
 	public long increment(final long incrementCount) {
-		long value = counter.addAndGet(incrementCount);
+		counter.add(incrementCount);
+
+		long value = counter.sum();
 
 		if (value == Long.MAX_VALUE || value < 0) {
 			// reset counters when overflowing
+			counter.reset();
+			counter.add(incrementCount);
 			value = incrementCount;
-			counter.set(value);
 			oldValue = 0;
 		}
 
@@ -48,7 +51,7 @@ public final class Counter implements MonitoringObject, DerivedDataProducer {
 	 * @return current absolute value of the counter
 	 */
 	public long longValue() {
-		return counter.get();
+		return counter.sum();
 	}
 
 	private long lastRate = System.currentTimeMillis();
@@ -119,6 +122,6 @@ public final class Counter implements MonitoringObject, DerivedDataProducer {
 	 */
 	@Override
 	public String toString() {
-		return name + ": " + counter.longValue();
+		return name + ": " + counter.sum();
 	}
 }
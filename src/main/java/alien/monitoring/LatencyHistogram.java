@@ -0,0 +1,127 @@
+package alien.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, with log-linear buckets (HdrHistogram style): each power of two range is split in 16 linear sub-buckets, so any value is known with a relative
+ * error below 1/16. Recording is a single atomic increment and the reader takes the counts out bucket by bucket, so writers are never blocked. A value recorded while a snapshot is being taken ends
+ * up in either this interval or the next one.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Counts of one interval
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+
+		private final long totalCount;
+
+		Snapshot(final long[] counts, final long totalCount) {
+			this.counts = counts;
+			this.totalCount = totalCount;
+		}
+
+		/**
+		 * @return how many values were recorded in this interval
+		 */
+		public long getTotalCount() {
+			return totalCount;
+		}
+
+		/**
+		 * @param percentile
+		 *            between 0 and 100
+		 * @return the value below which the given percentage of the recorded values fall, approximated by the middle of its bucket, or <code>0</code> if nothing was recorded
+		 */
+		public long getValueAtPercentile(final double percentile) {
+			if (totalCount == 0)
+				return 0;
+
+			final long target = Math.max(1, (long) Math.ceil(totalCount * Math.min(Math.max(percentile, 0), 100) / 100));
+
+			long seen = 0;
+
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+
+				if (seen >= target)
+					return middleOf(i);
+			}
+
+			return middleOf(counts.length - 1);
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return bucket index of the value
+	 */
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS)
+			return (int) Math.max(value, 0);
+
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @param index
+	 * @return the middle of the range of values of this bucket
+	 */
+	static long middleOf(final int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = index % SUB_BUCKETS;
+
+		final long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+		return (1L << exponent) + subBucket * width + width / 2;
+	}
+
+	/**
+	 * Record one value
+	 *
+	 * @param value
+	 */
+	public void recordValue(final long value) {
+		counts.incrementAndGet(indexOf(value));
+	}
+
+	/**
+	 * Take out the counts recorded since the previous call
+	 *
+	 * @return the counts of this interval
+	 */
+	public Snapshot snapshotAndReset() {
+		final long[] snapshot = new long[BUCKETS];
+
+		long total = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			// cheap read first, most buckets are empty
+			if (counts.get(i) != 0) {
+				snapshot[i] = counts.getAndSet(i, 0);
+				total += snapshot[i];
+			}
+		}
+
+		return new Snapshot(snapshot, total);
+	}
+}
@@ -4,6 +4,9 @@
 package alien.monitoring;
 
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author costing
@@ -11,15 +14,26 @@ import java.util.Vector;
  */
 public class Measurement implements MonitoringObject, DerivedDataProducer {
 
+	private static final long NO_VALUE = Double.doubleToRawLongBits(Double.NaN);
+
 	private final String name;
 
 	/**
 	 * The number of values collected since the last reporting
 	 */
-	protected int count = 0;
-	private double sum = 0;
-	private double min = 0;
-	private double max = 0;
+	private final LongAdder count = new LongAdder();
+	private final DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 * Extremes since the last reporting, as raw double bits, NaN when nothing was added yet
+	 */
+	private final AtomicLong min = new AtomicLong(NO_VALUE);
+	private final AtomicLong max = new AtomicLong(NO_VALUE);
+
+	/**
+	 * How many values were reported by the last {@link #fillValues(Vector, Vector)} call
+	 */
+	protected long lastCount = 0;
 
 	private long lastRate = System.currentTimeMillis();
 
@@ -31,23 +45,44 @@ public class Measurement implements MonitoringObject, DerivedDataProducer {
 	}
 
 	/**
-	 * Add a measurement
+	 * @return the base name of the reported series
+	 */
+	protected String getName() {
+		return name;
+	}
+
+	/**
+	 * Add a measurement. Writers don't take any lock, so concurrent calls don't wait for each other.
 	 *
 	 * @param quantity
 	 * @return the total quantity accumulated so far
 	 */
-	public synchronized double addMeasurement(final double quantity) {
-		count++;
-		sum += quantity;
-
-		if (count == 1)
-			min = max = quantity;
-		else {
-			min = Math.min(min, quantity);
-			max = Math.max(max, quantity);
-		}
+	public double addMeasurement(final double quantity) {
+		count.increment();
+		sum.add(quantity);
 
-		return sum;
+		updateExtreme(min, quantity, true);
+		updateExtreme(max, quantity, false);
+
+		return sum.sum();
+	}
+
+	private static void updateExtreme(final AtomicLong extreme, final double quantity, final boolean lower) {
+		final long newBits = Double.doubleToRawLongBits(quantity);
+
+		while (true) {
+			final long currentBits = extreme.get();
+
+			if (currentBits != NO_VALUE) {
+				final double current = Double.longBitsToDouble(currentBits);
+
+				if (lower ? current <= quantity : current >= quantity)
+					return;
+			}
+
+			if (extreme.compareAndSet(currentBits, newBits))
+				return;
+		}
 	}
 
 	/*
@@ -57,11 +92,19 @@ public class Measurement implements MonitoringObject, DerivedDataProducer {
 	 */
 	@Override
 	public synchronized void fillValues(final Vector<String> paramNames, final Vector<Object> paramValues) {
+		// take the values out and reset them, values added in the meantime go to the next interval
+		final long cnt = count.sumThenReset();
+		final double total = sum.sumThenReset();
+		final double minValue = Double.longBitsToDouble(min.getAndSet(NO_VALUE));
+		final double maxValue = Double.longBitsToDouble(max.getAndSet(NO_VALUE));
+
+		lastCount = cnt;
+
 		paramNames.add(name + "_sum");
-		paramValues.add(Double.valueOf(sum));
+		paramValues.add(Double.valueOf(total));
 
 		paramNames.add(name + "_cnt");
-		paramValues.add(Integer.valueOf(count));
+		paramValues.add(Integer.valueOf((int) cnt));
 
 		final long now = System.currentTimeMillis();
 
@@ -69,27 +112,28 @@ public class Measurement implements MonitoringObject, DerivedDataProducer {
 
 		lastRate = now;
 
-		if (count > 0) {
+		if (cnt > 0) {
 			paramNames.add(name + "_avg");
-			paramValues.add(Double.valueOf(sum / count));
+			paramValues.add(Double.valueOf(total / cnt));
 
-			paramNames.add(name + "_min");
-			paramValues.add(Double.valueOf(min));
+			if (!Double.isNaN(minValue)) {
+				paramNames.add(name + "_min");
+				paramValues.add(Double.valueOf(minValue));
+			}
 
-			paramNames.add(name + "_max");
-			paramValues.add(Double.valueOf(max));
+			if (!Double.isNaN(maxValue)) {
+				paramNames.add(name + "_max");
+				paramValues.add(Double.valueOf(maxValue));
+			}
 		}
 
 		if (diff > 0) {
 			paramNames.add(name + "_R");
-			paramValues.add(Double.valueOf(sum * 1000d / diff));
+			paramValues.add(Double.valueOf(total * 1000d / diff));
 
 			paramNames.add(name + "_cnt_R");
-			paramValues.add(Double.valueOf(count * 1000d / diff));
+			paramValues.add(Double.valueOf(cnt * 1000d / diff));
 		}
-
-		count = 0;
-		sum = 0;
 	}
 
 }
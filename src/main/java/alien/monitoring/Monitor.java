@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -194,7 +195,7 @@ public class Monitor implements Runnable {
 	 * @return the new absolute value of the counter
 	 */
 	public long incrementCounter(final String counterKey, final long count) {
-		final MonitoringObject mo = monitoringObjects.computeIfAbsent(counterKey, (k) -> new Counter(k));
+		final MonitoringObject mo = getOrCreate(counterKey, Counter::new);
 
 		if (mo instanceof Counter)
 			return ((Counter) mo).increment(count);
@@ -211,7 +212,7 @@ public class Monitor implements Runnable {
 	 * @return accumulated so far, or <code>-1</code> if there was any error
 	 */
 	public double addMeasurement(final String key, final double quantity) {
-		final MonitoringObject mo = monitoringObjects.computeIfAbsent(key, (k) -> new Measurement(key));
+		final MonitoringObject mo = getOrCreate(key, Measurement::new);
 
 		if (mo instanceof Measurement)
 			return ((Measurement) mo).addMeasurement(quantity);
@@ -228,7 +229,7 @@ public class Monitor implements Runnable {
 	 * @return accumulated so far, or <code>-1</code> if there was any error
 	 */
 	public double addTransientMeasurement(final String key, final double quantity) {
-		final MonitoringObject mo = monitoringObjects.computeIfAbsent(key, (k) -> new TransientMeasurement(key));
+		final MonitoringObject mo = getOrCreate(key, TransientMeasurement::new);
 
 		if (mo instanceof Measurement)
 			return ((Measurement) mo).addMeasurement(quantity);
@@ -237,14 +238,35 @@ public class Monitor implements Runnable {
 	}
 
 	/**
-	 * Add a timing result, in milliseconds
+	 * Add a timing result, in milliseconds. Keys that are only fed with timings also report the percentiles of the durations.
 	 *
 	 * @param key
 	 * @param timing the duration of a measurement, converted to milliseconds
 	 * @return accumulated so far, or <code>-1</code> if there was any error
+	 * @see TimingMeasurement
 	 */
 	public double addMeasurement(final String key, final Timing timing) {
-		return addMeasurement(key, timing.getMillis());
+		final MonitoringObject mo = getOrCreate(key, TimingMeasurement::new);
+
+		if (mo instanceof TimingMeasurement)
+			return ((TimingMeasurement) mo).addTiming(timing);
+
+		if (mo instanceof Measurement)
+			return ((Measurement) mo).addMeasurement(timing.getMillis());
+
+		return -1;
+	}
+
+	/**
+	 * Lookup that doesn't go through the locking of {@link ConcurrentHashMap#computeIfAbsent(Object, java.util.function.Function)} when the object already exists, which is the frequent case
+	 */
+	private MonitoringObject getOrCreate(final String key, final Function<String, MonitoringObject> constructor) {
+		final MonitoringObject mo = monitoringObjects.get(key);
+
+		if (mo != null)
+			return mo;
+
+		return monitoringObjects.computeIfAbsent(key, constructor);
 	}
 
 	/**
@@ -255,7 +277,7 @@ public class Monitor implements Runnable {
 	 *         different type of object was already associated to this key
 	 */
 	public CacheMonitor getCacheMonitor(final String key) {
-		final MonitoringObject mo = monitoringObjects.computeIfAbsent(key, (k) -> new CacheMonitor(k));
+		final MonitoringObject mo = getOrCreate(key, CacheMonitor::new);
 
 		if (mo instanceof CacheMonitor)
 			return (CacheMonitor) mo;
@@ -0,0 +1,59 @@
+package alien.monitoring;
+
+import java.util.Vector;
+
+/**
+ * Measurement of durations that, on top of the sum / count / min / max / avg of {@link Measurement}, also reports the 50th, 95th and 99th percentiles of each interval. The values go to a
+ * {@link LatencyHistogram}, so recording them doesn't take any lock either.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class TimingMeasurement extends Measurement {
+
+	/**
+	 * Durations, in microseconds
+	 */
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * @param name
+	 */
+	public TimingMeasurement(final String name) {
+		super(name);
+	}
+
+	/**
+	 * Add a duration
+	 *
+	 * @param timing
+	 * @return the total time accumulated so far, in milliseconds
+	 */
+	public double addTiming(final Timing timing) {
+		final long nanos = timing.getNanos();
+
+		histogram.recordValue(nanos / 1000);
+
+		return addMeasurement(nanos / 1000000.);
+	}
+
+	@Override
+	public synchronized void fillValues(final Vector<String> paramNames, final Vector<Object> paramValues) {
+		super.fillValues(paramNames, paramValues);
+
+		final LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+		if (snapshot.getTotalCount() > 0) {
+			final String name = getName();
+
+			paramNames.add(name + "_p50");
+			paramValues.add(Double.valueOf(snapshot.getValueAtPercentile(50) / 1000d));
+
+			paramNames.add(name + "_p95");
+			paramValues.add(Double.valueOf(snapshot.getValueAtPercentile(95) / 1000d));
+
+			paramNames.add(name + "_p99");
+			paramValues.add(Double.valueOf(snapshot.getValueAtPercentile(99) / 1000d));
+		}
+	}
+}
@@ -21,8 +21,8 @@ public class TransientMeasurement extends Measurement implements TransientMonito
 
 	@Override
 	public synchronized void fillValues(final Vector<String> paramNames, final Vector<Object> paramValues) {
-		noData = count == 0;
 		super.fillValues(paramNames, paramValues);
+		noData = lastCount == 0;
 	}
 
 	@Override
@@ -0,0 +1,350 @@
+package alien.se;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import alien.catalogue.PFN;
+
+/**
+ * Immutable snapshot of the SE definitions and of the site to SE distances, rebuilt by the {@link SEUtils} refresher after each reload from the database. Names are resolved with hash lookups,
+ * the distances are kept in a dense site x SE matrix and the SEs closest to each site are sorted once per snapshot, so that sorting the replicas of a file doesn't allocate anything beyond the
+ * returned list.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class SEIndex {
+
+	/**
+	 * How many flexibly matched site names to remember per snapshot
+	 */
+	private static final int MAX_FLEXIBLE_MATCHES = 10000;
+
+	/**
+	 * SEs by their number, the same map that was loaded from the database
+	 */
+	final Map<Integer, SE> byNumber;
+
+	private final Map<String, SE> byName;
+
+	/**
+	 * What {@link SEUtils#getSE(Integer)} returns for the numbers <= 0, for backwards compatibility
+	 */
+	final SE firstSE;
+
+	/**
+	 * Site names, upper case, in the order of the distance rows
+	 */
+	final List<String> siteNames;
+
+	private final Map<String, Integer> siteRows;
+
+	/**
+	 * Column of each SE number in the distance matrix, -1 for the SEs without any distance
+	 */
+	private final int[] columnOf;
+
+	/**
+	 * SEs of each column, <code>null</code> for the numbers that have distances but are not (or no longer) defined
+	 */
+	private final SE[] columnSE;
+
+	/**
+	 * sites x columns, {@link Double#NaN} where there is no distance
+	 */
+	private final double[] distance;
+
+	private final SE[][] closestForRead;
+
+	private final SE[][] closestForWrite;
+
+	private final SE[] defaultForRead;
+
+	private final SE[] defaultForWrite;
+
+	private final Map<String, Integer> flexibleMatches = new ConcurrentHashMap<>();
+
+	/**
+	 * @param ses
+	 *            SE definitions
+	 * @param seDistance
+	 *            site name (upper case) -&gt; SE number -&gt; distance, in increasing order of the distance
+	 */
+	SEIndex(final Map<Integer, SE> ses, final Map<String, Map<Integer, Double>> seDistance) {
+		byNumber = ses != null ? ses : Collections.emptyMap();
+
+		byName = new HashMap<>(byNumber.size() * 4 / 3 + 1);
+
+		for (final SE se : byNumber.values())
+			byName.put(se.seName, se);
+
+		firstSE = byNumber.size() > 0 ? byNumber.values().iterator().next() : null;
+
+		final Map<String, Map<Integer, Double>> distances = seDistance != null ? seDistance : Collections.emptyMap();
+
+		siteNames = Collections.unmodifiableList(new ArrayList<>(distances.keySet()));
+
+		siteRows = new HashMap<>(siteNames.size() * 4 / 3 + 1);
+
+		for (int i = 0; i < siteNames.size(); i++)
+			siteRows.put(siteNames.get(i), Integer.valueOf(i));
+
+		int maxSENumber = 0;
+
+		for (final Map<Integer, Double> siteDistance : distances.values())
+			for (final Integer seNumber : siteDistance.keySet())
+				maxSENumber = Math.max(maxSENumber, seNumber.intValue());
+
+		columnOf = new int[maxSENumber + 1];
+		Arrays.fill(columnOf, -1);
+
+		int columns = 0;
+
+		for (final Map<Integer, Double> siteDistance : distances.values())
+			for (final Integer seNumber : siteDistance.keySet())
+				if (seNumber.intValue() >= 0 && columnOf[seNumber.intValue()] < 0)
+					columnOf[seNumber.intValue()] = columns++;
+
+		columnSE = new SE[columns];
+
+		for (int seNumber = 0; seNumber < columnOf.length; seNumber++)
+			if (columnOf[seNumber] >= 0)
+				columnSE[columnOf[seNumber]] = byNumber.get(Integer.valueOf(seNumber));
+
+		distance = new double[siteNames.size() * columns];
+		Arrays.fill(distance, Double.NaN);
+
+		closestForRead = new SE[siteNames.size()][];
+		closestForWrite = new SE[siteNames.size()][];
+
+		for (int row = 0; row < siteNames.size(); row++) {
+			final Map<Integer, Double> siteDistance = distances.get(siteNames.get(row));
+
+			// in the order of the distance, as the SEs of equal rank were listed before
+			final List<SE> known = new ArrayList<>(siteDistance.size());
+
+			for (final Map.Entry<Integer, Double> entry : siteDistance.entrySet()) {
+				if (entry.getKey().intValue() < 0)
+					continue;
+
+				final int column = columnOf[entry.getKey().intValue()];
+
+				distance[row * columns + column] = entry.getValue().doubleValue();
+
+				if (columnSE[column] != null)
+					known.add(columnSE[column]);
+			}
+
+			closestForRead[row] = sortByRank(known, row, false);
+			closestForWrite[row] = sortByRank(known, row, true);
+		}
+
+		defaultForRead = sortByRank(byNumber.values(), -1, false);
+		defaultForWrite = sortByRank(byNumber.values(), -1, true);
+	}
+
+	private SE[] sortByRank(final Collection<SE> ses, final int row, final boolean write) {
+		final SE[] ret = ses.toArray(new SE[0]);
+
+		final double[] ranks = new double[ret.length];
+
+		for (int i = 0; i < ret.length; i++)
+			ranks[i] = (row >= 0 ? getDistance(row, ret[i].seNumber) : 0) + (write ? ret[i].demoteWrite : ret[i].demoteRead);
+
+		sort(ret, ranks);
+
+		return ret;
+	}
+
+	/**
+	 * Stable insertion sort of the values by their ranks, {@link Double#NaN} (unknown) ranks go to the end. The lists are short (the replicas of a file) or sorted once per snapshot.
+	 */
+	private static <T> void sort(final T[] values, final double[] ranks) {
+		for (int i = 1; i < values.length; i++) {
+			final T value = values[i];
+			final double rank = ranks[i];
+
+			int j = i - 1;
+
+			while (j >= 0 && isBefore(rank, ranks[j])) {
+				values[j + 1] = values[j];
+				ranks[j + 1] = ranks[j];
+				j--;
+			}
+
+			values[j + 1] = value;
+			ranks[j + 1] = rank;
+		}
+	}
+
+	private static boolean isBefore(final double rank, final double other) {
+		if (Double.isNaN(rank))
+			return false;
+
+		return Double.isNaN(other) || rank < other;
+	}
+
+	/**
+	 * @param seName
+	 * @return the SE with this name, case insensitive
+	 */
+	SE getSE(final String seName) {
+		final SE se = byName.get(seName);
+
+		if (se != null)
+			return se;
+
+		return byName.get(seName.trim().toUpperCase());
+	}
+
+	/**
+	 * @param site
+	 * @return the row of this site, or -1 if there are no distances for it
+	 */
+	int getRow(final String site) {
+		if (site == null)
+			return -1;
+
+		Integer row = siteRows.get(site);
+
+		if (row == null)
+			row = siteRows.get(site.trim().toUpperCase());
+
+		return row != null ? row.intValue() : -1;
+	}
+
+	/**
+	 * @param site
+	 * @return the row of the site with this name, or else of the first one that starts or ends with it, or -1 if none matches
+	 */
+	int getRowFlexible(final String site) {
+		final int row = getRow(site);
+
+		if (row >= 0 || site == null)
+			return row;
+
+		final Integer cached = flexibleMatches.get(site);
+
+		if (cached != null)
+			return cached.intValue();
+
+		final String upperSiteName = site.trim().toUpperCase();
+
+		int match = -1;
+
+		for (int i = 0; i < siteNames.size(); i++) {
+			final String name = siteNames.get(i);
+
+			if (name.startsWith(upperSiteName) || name.endsWith(upperSiteName)) {
+				match = i;
+				break;
+			}
+		}
+
+		if (flexibleMatches.size() < MAX_FLEXIBLE_MATCHES)
+			flexibleMatches.put(site, Integer.valueOf(match));
+
+		return match;
+	}
+
+	/**
+	 * @param row
+	 * @param seNumber
+	 * @return the distance from the site to the SE, without any demotion, or {@link Double#NaN} if it is not known
+	 */
+	double getDistance(final int row, final int seNumber) {
+		if (row < 0 || seNumber < 0 || seNumber >= columnOf.length)
+			return Double.NaN;
+
+		final int column = columnOf[seNumber];
+
+		if (column < 0)
+			return Double.NaN;
+
+		return distance[row * columnSE.length + column];
+	}
+
+	/**
+	 * @param row
+	 * @param write
+	 * @return the SEs that the site has distances to, closest first (including the demotion), or the default list if the row is invalid. The array must not be modified.
+	 */
+	SE[] getClosestSEs(final int row, final boolean write) {
+		if (row < 0 || row >= closestForRead.length)
+			return write ? defaultForWrite : defaultForRead;
+
+		return write ? closestForWrite[row] : closestForRead[row];
+	}
+
+	/**
+	 * @param pfns
+	 * @param row
+	 * @param removeBrokenSEs
+	 *            drop the replicas on SEs without any distance to this site
+	 * @param write
+	 * @return the replicas sorted by their distance to the site, unknown ones last
+	 */
+	List<PFN> sortBySite(final Collection<PFN> pfns, final int row, final boolean removeBrokenSEs, final boolean write) {
+		final PFN[] values = new PFN[pfns.size()];
+		final double[] ranks = new double[values.length];
+
+		int count = 0;
+
+		for (final PFN pfn : pfns) {
+			final double d = getDistance(row, pfn.seNumber);
+
+			if (Double.isNaN(d) && removeBrokenSEs)
+				continue;
+
+			final SE se = pfn.seNumber > 0 ? byNumber.get(Integer.valueOf(pfn.seNumber)) : null;
+
+			values[count] = pfn;
+			ranks[count] = se != null ? d + (write ? se.demoteWrite : se.demoteRead) : d;
+			count++;
+		}
+
+		final PFN[] sorted = count == values.length ? values : Arrays.copyOf(values, count);
+
+		sort(sorted, count == ranks.length ? ranks : Arrays.copyOf(ranks, count));
+
+		return new ArrayList<>(Arrays.asList(sorted));
+	}
+
+	/**
+	 * @param ses
+	 * @param row
+	 * @param removeBrokenSEs
+	 *            drop the SEs without any distance to this site
+	 * @param write
+	 * @return the SEs sorted by their distance to the site, unknown ones last
+	 */
+	List<SE> sortSEsBySite(final Collection<SE> ses, final int row, final boolean removeBrokenSEs, final boolean write) {
+		final SE[] values = new SE[ses.size()];
+		final double[] ranks = new double[values.length];
+
+		int count = 0;
+
+		for (final SE se : ses) {
+			final double d = getDistance(row, se.seNumber);
+
+			if (Double.isNaN(d) && removeBrokenSEs)
+				continue;
+
+			values[count] = se;
+			ranks[count] = d + (write ? se.demoteWrite : se.demoteRead);
+			count++;
+		}
+
+		final SE[] sorted = count == values.length ? values : Arrays.copyOf(values, count);
+
+		sort(sorted, count == ranks.length ? ranks : Arrays.copyOf(ranks, count));
+
+		return new ArrayList<>(Arrays.asList(sorted));
+	}
+}
@@ -62,6 +62,11 @@ public final class SEUtils {
 
 	private static Map<String, Map<Integer, Double>> seDistance = null;
 
+	/**
+	 * Lookup structures built from the two maps above, replaced as a whole after each reload
+	 */
+	private static volatile SEIndex index = null;
+
 	private static final String SEDISTANCE_QUERY;
 
 	private static final int maxAllowedRandomPFNs = 10000;
@@ -81,6 +86,7 @@ public final class SEUtils {
 
 			updateSECache();
 			updateSEDistanceCache();
+			updateIndex();
 
 			refreshLoop.start();
 		}
@@ -113,6 +119,13 @@ public final class SEUtils {
 					logger.log(Level.SEVERE, "Exception running distancecache refresh", e);
 				}
 
+				try {
+					updateIndex();
+				}
+				catch (Exception e) {
+					logger.log(Level.SEVERE, "Exception rebuilding the SE index", e);
+				}
+
 				try {
 					sleep(CatalogueUtils.CACHE_TIMEOUT);
 				}
@@ -124,6 +137,13 @@ public final class SEUtils {
 		}
 	}
 
+	private static void updateIndex() {
+		if (seCache == null)
+			return;
+
+		index = new SEIndex(seCache, seDistance);
+	}
+
 	private static boolean updateSECache() {
 		if (!ConfigUtils.isCentralService())
 			return true;
@@ -185,13 +205,15 @@ public final class SEUtils {
 				return null;
 			}
 
-		if (seCache == null)
+		final SEIndex idx = index;
+
+		if (idx == null)
 			return null;
 
-		if (seNumber.intValue() <= 0 && seCache.size() > 0)
-			return seCache.values().iterator().next();
+		if (seNumber.intValue() <= 0 && idx.firstSE != null)
+			return idx.firstSE;
 
-		return seCache.get(seNumber);
+		return idx.byNumber.get(seNumber);
 	}
 
 	/**
@@ -212,18 +234,12 @@ public final class SEUtils {
 				return null;
 			}
 
-		if (seCache == null)
-			return null;
-
-		final Collection<SE> ses = seCache.values();
+		final SEIndex idx = index;
 
-		final String name = seName.trim().toUpperCase();
-
-		for (final SE se : ses)
-			if (se.seName.equals(name))
-				return se;
+		if (idx == null)
+			return null;
 
-		return null;
+		return idx.getSE(seName);
 	}
 
 	/**
@@ -234,11 +250,13 @@ public final class SEUtils {
 	 * @return SE objects matching one of the names/patterns in the argument list
 	 */
 	public static List<SE> getSEs(final List<String> ses) {
-		if (seCache == null)
+		final SEIndex idx = index;
+
+		if (idx == null)
 			return null;
 
 		if (ses == null)
-			return new ArrayList<>(seCache.values());
+			return new ArrayList<>(idx.byNumber.values());
 
 		final List<SE> ret = new ArrayList<>();
 		for (final String seName : ses) {
@@ -272,7 +290,7 @@ public final class SEUtils {
 					try {
 						final Pattern p = Pattern.compile("^.*" + seName + ".*$", Pattern.CASE_INSENSITIVE);
 
-						for (final SE se1 : seCache.values()) {
+						for (final SE se1 : idx.byNumber.values()) {
 							final Matcher m = p.matcher(se1.seName);
 
 							if (m.matches() && !ret.contains(se1))
@@ -332,54 +350,6 @@ public final class SEUtils {
 		}
 	}
 
-	private static final class PFNComparatorBySite implements Serializable, Comparator<PFN> {
-		/**
-		 *
-		 */
-		private static final long serialVersionUID = 3852623282834261566L;
-
-		private final Map<Integer, Double> distance;
-
-		private final boolean write;
-
-		public PFNComparatorBySite(final Map<Integer, Double> distance, final boolean write) {
-			this.distance = distance;
-			this.write = write;
-		}
-
-		@Override
-		public int compare(final PFN o1, final PFN o2) {
-			final Double distance1 = distance.get(Integer.valueOf(o1.seNumber));
-			final Double distance2 = distance.get(Integer.valueOf(o2.seNumber));
-
-			if (distance1 == null && distance2 == null)
-				// can't decide which is better, there is no ranking info for
-				// either
-				return 0;
-
-			if (distance1 != null && distance2 != null) {
-				// both ranks known, the smallest rank goes higher
-				double diff = distance1.doubleValue() - distance2.doubleValue();
-
-				final SE se1 = o1.getSE();
-				final SE se2 = o2.getSE();
-
-				if (se1 != null && se2 != null)
-					diff += write ? (se1.demoteWrite - se2.demoteWrite) : (se1.demoteRead - se2.demoteRead);
-
-				return Double.compare(diff, 0);
-			}
-
-			if (distance1 != null)
-				// rank is known only for the first one, then this is better
-				return -1;
-
-			// the only case left, second one is best
-			return 1;
-		}
-
-	}
-
 	/**
 	 * Get all the SEs available to one site, sorted by the relative distance to the site, exclude exSEs
 	 *
@@ -402,51 +372,24 @@ public final class SEUtils {
 	 * @return sorted list of SEs based on MonALISA distance metric
 	 */
 	public static List<SE> getClosestSEs(final String site, final List<SE> exSEs, final boolean write) {
-		if (site == null || site.length() == 0)
-			return getDefaultSEList(write);
-
-		if (seDistance == null || seDistance.size() == 0)
-			return getDefaultSEList(write);
+		final SEIndex idx = index;
 
-		final String sitename = site.trim().toUpperCase();
-
-		final Map<Integer, Double> distance = seDistance.get(sitename);
+		if (idx == null)
+			return null;
 
-		if (distance == null || distance.size() == 0)
-			return getDefaultSEList(write);
+		final SE[] closest = idx.getClosestSEs(site != null && site.length() > 0 ? idx.getRow(site) : -1, write);
 
-		final List<SE> ret = new ArrayList<>(distance.size());
+		final List<SE> ret = new ArrayList<>(closest.length);
 
-		for (final Map.Entry<Integer, Double> me : distance.entrySet()) {
-			final SE se = getSE(me.getKey());
+		final Set<SE> excluded = exSEs != null && exSEs.size() > 0 ? new HashSet<>(exSEs) : null;
 
-			if (se != null && (exSEs == null || !exSEs.contains(se)))
+		for (final SE se : closest)
+			if (excluded == null || !excluded.contains(se))
 				ret.add(se);
-		}
-
-		Collections.sort(ret, new SEComparator(distance, write));
 
 		return ret;
 	}
 
-	private static List<SE> getDefaultSEList(final boolean write) {
-		final List<SE> allSEs = getSEs(null);
-
-		if (allSEs == null || allSEs.size() == 0)
-			return allSEs;
-
-		final Map<Integer, Double> distance = new HashMap<>();
-
-		final Double zero = Double.valueOf(0);
-
-		for (final SE se : allSEs)
-			distance.put(Integer.valueOf(se.seNumber), zero);
-
-		Collections.sort(allSEs, new SEComparator(distance, write));
-
-		return allSEs;
-	}
-
 	/**
 	 * Get if possible all SEs for a certain site with specs
 	 *
@@ -491,19 +434,24 @@ public final class SEUtils {
 		if (exSEs == null)
 			exSEs = new ArrayList<>(SEs);
 
+		final SEIndex idx = index;
+
+		if (idx == null)
+			return SEs;
+
+		final SE[] closest = idx.getClosestSEs(site != null && site.length() > 0 ? idx.getRow(site) : -1, write);
+
+		final Set<SE> excluded = new HashSet<>(exSEs);
+
 		for (final Map.Entry<String, Integer> qosDef : qos.entrySet())
 			if (qosDef.getValue().intValue() > 0) {
 				// TODO: get a number #qos.get(qosType) of qosType SEs
-				final List<SE> discoveredSEs = SEUtils.getClosestSEs(site, exSEs, write);
-
-				final Iterator<SE> it = discoveredSEs.iterator();
-
 				int counter = 0;
 
-				while (counter < qosDef.getValue().intValue() && it.hasNext()) {
-					final SE se = it.next();
+				for (int i = 0; i < closest.length && counter < qosDef.getValue().intValue(); i++) {
+					final SE se = closest[i];
 
-					if (!se.isQosType(qosDef.getKey()) || exSEs.contains(se))
+					if (!se.isQosType(qosDef.getKey()) || excluded.contains(se))
 						continue;
 
 					SEs.add(se);
@@ -531,35 +479,17 @@ public final class SEUtils {
 		if (pfns == null)
 			return null;
 
-		final List<PFN> ret = new ArrayList<>(pfns);
-
-		if (ret.size() <= 1 || sSite == null || sSite.length() == 0)
-			return ret;
-
-		if (seDistance == null)
-			return ret;
+		if (pfns.size() <= 1 || sSite == null || sSite.length() == 0)
+			return new ArrayList<>(pfns);
 
-		final Map<Integer, Double> ranks = seDistance.get(sSite.trim().toUpperCase());
+		final SEIndex idx = index;
 
-		if (ranks == null)
-			return ret;
+		final int row = idx != null ? idx.getRow(sSite) : -1;
 
-		if (removeBrokenSEs) {
-			final Iterator<PFN> it = ret.iterator();
+		if (row < 0)
+			return new ArrayList<>(pfns);
 
-			while (it.hasNext()) {
-				final PFN pfn = it.next();
-
-				if (!ranks.containsKey(Integer.valueOf(pfn.seNumber)))
-					it.remove();
-			}
-		}
-
-		final Comparator<PFN> c = new PFNComparatorBySite(ranks, write);
-
-		Collections.sort(ret, c);
-
-		return ret;
+		return idx.sortBySite(pfns, row, removeBrokenSEs, write);
 	}
 
 	/**
@@ -653,37 +583,22 @@ public final class SEUtils {
 		if (ses == null)
 			return null;
 
-		final List<SE> ret = new ArrayList<>(ses);
+		if ((ses.size() <= 1 || sSite == null || sSite.length() == 0) && (!removeBrokenSEs))
+			return new ArrayList<>(ses);
 
-		if ((ret.size() <= 1 || sSite == null || sSite.length() == 0) && (!removeBrokenSEs))
-			return ret;
+		final SEIndex idx = index;
 
-		if (seDistance == null)
+		if (idx == null)
 			return null;
 
-		final Map<Integer, Double> ranks = sSite != null ? seDistance.get(sSite.trim().toUpperCase()) : null;
+		final int row = idx.getRow(sSite);
 
-		if (ranks == null)
+		if (row < 0)
 			// missing information about this site, leave the storages as they
 			// are
-			return ret;
-
-		if (removeBrokenSEs) {
-			final Iterator<SE> it = ret.iterator();
-
-			while (it.hasNext()) {
-				final SE se = it.next();
-
-				if (!ranks.containsKey(Integer.valueOf(se.seNumber)))
-					it.remove();
-			}
-		}
-
-		final Comparator<SE> c = new SEComparator(ranks, write);
-
-		Collections.sort(ret, c);
+			return new ArrayList<>(ses);
 
-		return ret;
+		return idx.sortSEsBySite(ses, row, removeBrokenSEs, write);
 	}
 
 	/**
@@ -731,29 +646,19 @@ public final class SEUtils {
 		if (se == null)
 			return null;
 
-		if (seDistance == null)
-			return null;
-
-		final String lowerSiteName = sSite.trim().toUpperCase();
+		final SEIndex idx = index;
 
-		Map<Integer, Double> ranks = seDistance.get(lowerSiteName);
-
-		if (ranks == null && flexibleMatching)
-			for (Map.Entry<String, Map<Integer, Double>> entry : seDistance.entrySet())
-				if (entry.getKey().startsWith(lowerSiteName) || entry.getKey().endsWith(lowerSiteName)) {
-					ranks = entry.getValue();
-					break;
-				}
-
-		if (ranks == null)
+		if (idx == null)
 			return null;
 
-		final Double distance = ranks.get(Integer.valueOf(se.seNumber));
+		final int row = flexibleMatching ? idx.getRowFlexible(sSite) : idx.getRow(sSite);
 
-		if (distance == null)
+		final double distance = idx.getDistance(row, se.seNumber);
+
+		if (Double.isNaN(distance))
 			return null;
 
-		final double d = distance.doubleValue() + (write ? se.demoteWrite : se.demoteRead);
+		final double d = distance + (write ? se.demoteWrite : se.demoteRead);
 
 		return Double.valueOf(d);
 	}
@@ -1188,12 +1093,14 @@ public final class SEUtils {
 	 * @return A random site, weighted with the average number of jobs ran in the last month
 	 */
 	public static String getRandomSite() {
-		if (seDistance == null || seDistance.size() == 0)
+		final SEIndex idx = index;
+
+		if (idx == null || idx.siteNames.size() == 0)
 			return "CERN";
 
 		final StringBuilder sb = new StringBuilder();
 
-		for (final String site : seDistance.keySet()) {
+		for (final String site : idx.siteNames) {
 			if (sb.length() > 0)
 				sb.append(',');
 
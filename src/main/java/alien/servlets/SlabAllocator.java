@@ -0,0 +1,370 @@
+package alien.servlets;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap storage for the values of one cache segment. Memory is taken from the OS in direct buffers (slabs) of a fixed size, each cut in equal chunks of one of the power-of-two size classes,
+ * and values larger than a slab get a dedicated buffer. Freed chunks are reused by the next values of the same class and a slab is given back as soon as none of its chunks is in use, except for one
+ * empty slab per class that is kept for reuse until {@link #releaseSpare()} is called, so the reserved memory follows the content. All the allocators of the process draw from a shared
+ * {@link Budget}, and a value that doesn't fit in it is simply not stored. Not thread safe, the owner has to serialize the calls.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class SlabAllocator {
+
+	private static final int MIN_CHUNK_SIZE = 64;
+
+	/**
+	 * Direct memory that a set of allocators may hold together
+	 */
+	static final class Budget {
+		private final long limit;
+
+		private final AtomicLong reserved = new AtomicLong();
+
+		/**
+		 * @param limit
+		 *            how many bytes the allocators may hold in total
+		 */
+		Budget(final long limit) {
+			this.limit = limit;
+		}
+
+		boolean tryReserve(final long bytes) {
+			long current;
+
+			do {
+				current = reserved.get();
+
+				if (current + bytes > limit)
+					return false;
+			}
+			while (!reserved.compareAndSet(current, current + bytes));
+
+			return true;
+		}
+
+		void release(final long bytes) {
+			reserved.addAndGet(-bytes);
+		}
+
+		/**
+		 * @return the direct memory currently held by all the allocators
+		 */
+		long getReserved() {
+			return reserved.get();
+		}
+
+		/**
+		 * @return the configured limit
+		 */
+		long getLimit() {
+			return limit;
+		}
+	}
+
+	/**
+	 * One direct buffer and the bookkeeping of its chunks
+	 */
+	static final class Slab {
+		final ByteBuffer buffer;
+
+		final int chunkSize;
+
+		/**
+		 * Size class, or <code>-1</code> for the dedicated buffer of a large value
+		 */
+		final int sizeClass;
+
+		private final int[] freeChunks;
+
+		private int freeCount;
+
+		Slab(final int size, final int chunkSize, final int sizeClass) {
+			this.buffer = ByteBuffer.allocateDirect(size);
+			this.chunkSize = chunkSize;
+			this.sizeClass = sizeClass;
+
+			final int chunks = size / chunkSize;
+
+			freeChunks = new int[chunks];
+
+			for (int i = 0; i < chunks; i++)
+				freeChunks[i] = chunks - 1 - i;
+
+			freeCount = chunks;
+		}
+
+		boolean isEmpty() {
+			return freeCount == freeChunks.length;
+		}
+
+		boolean isFull() {
+			return freeCount == 0;
+		}
+	}
+
+	/**
+	 * Location of a stored value
+	 */
+	static final class Chunk {
+		final Slab slab;
+
+		final int index;
+
+		final int length;
+
+		Chunk(final Slab slab, final int index, final int length) {
+			this.slab = slab;
+			this.index = index;
+			this.length = length;
+		}
+	}
+
+	private final int slabSize;
+
+	private final Budget budget;
+
+	/**
+	 * Per size class, the slabs that still have free chunks
+	 */
+	private final List<ArrayDeque<Slab>> partialSlabs = new ArrayList<>();
+
+	private long reserved = 0;
+
+	private long used = 0;
+
+	/**
+	 * @param slabSize
+	 *            size of the direct buffers to allocate, rounded up to a power of two
+	 * @param budget
+	 *            the direct memory shared with the other allocators
+	 */
+	SlabAllocator(final int slabSize, final Budget budget) {
+		this.slabSize = Integer.highestOneBit(Math.max(slabSize, MIN_CHUNK_SIZE) - 1) << 1;
+		this.budget = budget;
+
+		for (int size = MIN_CHUNK_SIZE; size <= this.slabSize; size <<= 1)
+			partialSlabs.add(new ArrayDeque<>());
+	}
+
+	/**
+	 * @param length
+	 * @return the size class that a value of this length goes to, or <code>-1</code> if it gets a dedicated buffer
+	 */
+	int sizeClassOf(final int length) {
+		if (length > slabSize)
+			return -1;
+
+		int sizeClass = 0;
+
+		for (int size = MIN_CHUNK_SIZE; size < length; size <<= 1)
+			sizeClass++;
+
+		return sizeClass;
+	}
+
+	private static int dedicatedSize(final int length) {
+		// page granularity for the large values
+		return (Math.max(length, 1) + 4095) & ~4095;
+	}
+
+	/**
+	 * @param length
+	 * @return how much the reserved memory would grow if a value of this size was stored now
+	 */
+	long growthFor(final int length) {
+		final int sizeClass = sizeClassOf(length);
+
+		if (sizeClass < 0)
+			return dedicatedSize(length);
+
+		return partialSlabs.get(sizeClass).isEmpty() ? slabSize : 0;
+	}
+
+	/**
+	 * @param length
+	 * @return the maximum memory that a value of this size can cost
+	 */
+	long maxCostOf(final int length) {
+		return sizeClassOf(length) < 0 ? dedicatedSize(length) : slabSize;
+	}
+
+	/**
+	 * Take a new direct buffer, if the shared budget and the JVM allow it
+	 *
+	 * @return the new slab, or <code>null</code> if the memory is not available
+	 */
+	private Slab newSlab(final int size, final int chunkSize, final int sizeClass) {
+		if (!budget.tryReserve(size))
+			return null;
+
+		final Slab slab;
+
+		try {
+			slab = new Slab(size, chunkSize, sizeClass);
+		}
+		catch (@SuppressWarnings("unused") final OutOfMemoryError oome) {
+			// -XX:MaxDirectMemorySize is lower than the budget, or the other users of direct memory took it
+			budget.release(size);
+			return null;
+		}
+
+		reserved += size;
+
+		return slab;
+	}
+
+	private void shrink(final long bytes) {
+		reserved -= bytes;
+		budget.release(bytes);
+	}
+
+	/**
+	 * Copy the value off-heap
+	 *
+	 * @param data
+	 * @return where it was stored, or <code>null</code> if there is no direct memory left for it
+	 */
+	Chunk allocate(final byte[] data) {
+		final int sizeClass = sizeClassOf(data.length);
+
+		final Slab slab;
+
+		if (sizeClass < 0) {
+			slab = newSlab(dedicatedSize(data.length), dedicatedSize(data.length), -1);
+
+			if (slab == null)
+				return null;
+		}
+		else {
+			final ArrayDeque<Slab> partial = partialSlabs.get(sizeClass);
+
+			if (partial.isEmpty()) {
+				final Slab newSlab = newSlab(slabSize, MIN_CHUNK_SIZE << sizeClass, sizeClass);
+
+				if (newSlab == null)
+					return null;
+
+				partial.add(newSlab);
+			}
+
+			slab = partial.peekFirst();
+		}
+
+		final int index = slab.freeChunks[--slab.freeCount];
+
+		if (sizeClass >= 0 && slab.isFull())
+			partialSlabs.get(sizeClass).pollFirst();
+
+		final ByteBuffer target = slab.buffer.duplicate();
+		target.position(index * slab.chunkSize);
+		target.put(data);
+
+		used += slab.chunkSize;
+
+		return new Chunk(slab, index, data.length);
+	}
+
+	/**
+	 * @param chunk
+	 * @return a heap copy of the stored value
+	 */
+	static byte[] read(final Chunk chunk) {
+		final byte[] ret = new byte[chunk.length];
+
+		final ByteBuffer source = chunk.slab.buffer.duplicate();
+		source.position(chunk.index * chunk.slab.chunkSize);
+		source.get(ret);
+
+		return ret;
+	}
+
+	/**
+	 * Give back the space of a value that was removed
+	 *
+	 * @param chunk
+	 */
+	void free(final Chunk chunk) {
+		final Slab slab = chunk.slab;
+
+		final boolean wasFull = slab.isFull();
+
+		slab.freeChunks[slab.freeCount++] = chunk.index;
+
+		used -= slab.chunkSize;
+
+		if (slab.sizeClass < 0) {
+			shrink(slab.buffer.capacity());
+			return;
+		}
+
+		final ArrayDeque<Slab> partial = partialSlabs.get(slab.sizeClass);
+
+		if (slab.isEmpty()) {
+			// keep one empty slab per class around to avoid allocating and freeing direct memory all the time
+			if (partial.size() > 1 || (wasFull && !partial.isEmpty())) {
+				if (!wasFull)
+					partial.remove(slab);
+
+				shrink(slabSize);
+				return;
+			}
+		}
+
+		if (wasFull)
+			partial.addLast(slab);
+	}
+
+	/**
+	 * Give back the empty slabs that are kept for reuse, to be called when the memory is needed for something else
+	 *
+	 * @return how many bytes were released
+	 */
+	long releaseSpare() {
+		long released = 0;
+
+		for (final ArrayDeque<Slab> partial : partialSlabs)
+			for (final Iterator<Slab> it = partial.iterator(); it.hasNext();)
+				if (it.next().isEmpty()) {
+					it.remove();
+					released += slabSize;
+				}
+
+		shrink(released);
+
+		return released;
+	}
+
+	/**
+	 * Release all the memory
+	 */
+	void clear() {
+		for (final ArrayDeque<Slab> partial : partialSlabs)
+			partial.clear();
+
+		shrink(reserved);
+
+		used = 0;
+	}
+
+	/**
+	 * @return the direct memory currently held
+	 */
+	long getReserved() {
+		return reserved;
+	}
+
+	/**
+	 * @return the size of the chunks that hold values
+	 */
+	long getUsed() {
+		return used;
+	}
+}
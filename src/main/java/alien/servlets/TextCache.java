@@ -11,6 +11,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,12 +19,15 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -41,12 +45,10 @@ import alien.monitoring.Monitor;
 import alien.monitoring.MonitorFactory;
 import alien.monitoring.Timing;
 import lazyj.Format;
-import lazyj.LRUMap;
 import lazyj.RequestWrapper;
 import lazyj.Utils;
 import lazyj.cache.ExpirationCache;
 import lia.util.ShutdownManager;
-import lia.util.StringFactory;
 
 /**
  * @author costing
@@ -82,22 +84,50 @@ public class TextCache extends HttpServlet {
 		return nsDefault;
 	}
 
-	private static final class CacheValue implements Serializable {
-		private static final long serialVersionUID = 1L;
-
-		public final String value;
+	static final class CacheValue {
+		/**
+		 * Where the UTF-8 encoded value is stored, off-heap
+		 */
+		public final SlabAllocator.Chunk chunk;
 
 		public final long expires;
 
+		/**
+		 * Whether the value contains "eof", for the monitoring
+		 */
+		public final boolean eof;
+
 		public final AtomicInteger accesses = new AtomicInteger(1);
 
-		public CacheValue(final String value, final long expires) {
-			this.value = value;
+		public CacheValue(final SlabAllocator.Chunk chunk, final long expires, final boolean eof) {
+			this.chunk = chunk;
 			this.expires = expires;
+			this.eof = eof;
+		}
+
+		public int length() {
+			return chunk.length;
+		}
+	}
+
+	/**
+	 * Copy of an entry taken while holding the segment lock, since the off-heap chunk can be reused as soon as the entry is removed
+	 */
+	private static final class EntrySnapshot {
+		public final String key;
+		public final int length;
+		public final int accesses;
+		public final String value;
+
+		public EntrySnapshot(final String key, final CacheValue cv, final boolean withValue) {
+			this.key = key;
+			this.length = cv.length();
+			this.accesses = cv.accesses.intValue();
+			this.value = withValue ? new String(SlabAllocator.read(cv.chunk), StandardCharsets.UTF_8) : null;
 		}
 	}
 
-	private static final class EntryComparator implements Comparator<Map.Entry<String, CacheValue>>, Serializable {
+	private static final class EntryComparator implements Comparator<EntrySnapshot>, Serializable {
 		private static final long serialVersionUID = -6092398826822045152L;
 
 		public EntryComparator() {
@@ -105,13 +135,13 @@ public class TextCache extends HttpServlet {
 		}
 
 		@Override
-		public int compare(final Entry<String, CacheValue> o1, final Entry<String, CacheValue> o2) {
-			final int diff = o2.getValue().accesses.intValue() - o1.getValue().accesses.intValue();
+		public int compare(final EntrySnapshot o1, final EntrySnapshot o2) {
+			final int diff = o2.accesses - o1.accesses;
 
 			if (diff != 0)
 				return diff;
 
-			return o2.getKey().compareTo(o1.getKey());
+			return o2.key.compareTo(o1.key);
 		}
 
 	}
@@ -143,32 +173,49 @@ public class TextCache extends HttpServlet {
 						long soonestToExpire = 0;
 						long latestToExpire = now;
 
-						synchronized (namespace) {
-							final Iterator<Map.Entry<String, CacheValue>> it = namespace.cache.entrySet().iterator();
+						int size = 0;
+						long bytes = 0;
+						long reserved = 0;
 
-							while (it.hasNext()) {
-								final Map.Entry<String, CacheValue> entry = it.next();
+						for (final Segment segment : namespace.segments) {
+							synchronized (segment) {
+								final Iterator<Map.Entry<String, CacheValue>> it = segment.cache.entrySet().iterator();
 
-								final long expires = entry.getValue().expires;
+								while (it.hasNext()) {
+									final Map.Entry<String, CacheValue> entry = it.next();
 
-								if (expires < now) {
-									notifyEntryRemoved(namespace, entry.getKey(), entry.getValue(), true, "EXPIRED_");
+									final long expires = entry.getValue().expires;
 
-									it.remove();
-								}
-								else {
-									if (soonestToExpire == 0 || expires < soonestToExpire)
-										soonestToExpire = expires;
+									if (expires < now) {
+										notifyEntryRemoved(namespace, entry.getKey(), entry.getValue(), true, "EXPIRED_");
 
-									if (expires > latestToExpire)
-										latestToExpire = expires;
+										it.remove();
+										segment.release(entry.getValue());
+									}
+									else {
+										if (soonestToExpire == 0 || expires < soonestToExpire)
+											soonestToExpire = expires;
+
+										if (expires > latestToExpire)
+											latestToExpire = expires;
+									}
 								}
-							}
 
-							parameters.add(nsName + "_size");
-							values.add(Integer.valueOf(namespace.cache.size()));
+								size += segment.cache.size();
+								bytes += segment.bytes;
+								reserved += segment.slabs.getReserved();
+							}
 						}
 
+						parameters.add(nsName + "_size");
+						values.add(Integer.valueOf(size));
+
+						parameters.add(nsName + "_bytes");
+						values.add(Long.valueOf(bytes));
+
+						parameters.add(nsName + "_offheap_bytes");
+						values.add(Long.valueOf(reserved));
+
 						if (soonestToExpire > 0) {
 							parameters.add(nsName + "_hours");
 							values.add(Double.valueOf((latestToExpire - soonestToExpire) / (3600000d)));
@@ -205,20 +252,31 @@ public class TextCache extends HttpServlet {
 	 */
 	final static Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
 
+	/**
+	 * Writes the cache.log files
+	 */
+	static final RemovalLogger removalLogger;
+
 	static {
 		cleanup = new CleanupThread();
 		cleanup.start();
 
+		removalLogger = new RemovalLogger();
+		removalLogger.start();
+
 		ShutdownManager.getInstance().addModule(() -> {
 			for (final Map.Entry<String, Namespace> entry : namespaces.entrySet()) {
 				final Namespace namespace = entry.getValue();
 
-				synchronized (namespace) {
-					for (final Map.Entry<String, CacheValue> entryToDelete : namespace.cache.entrySet())
-						notifyEntryRemoved(namespace, entryToDelete.getKey(), entryToDelete.getValue(), false, "SHUTDOWN_");
-				}
+				for (final Segment segment : namespace.segments)
+					synchronized (segment) {
+						for (final Map.Entry<String, CacheValue> entryToDelete : segment.cache.entrySet())
+							notifyEntryRemoved(namespace, entryToDelete.getKey(), entryToDelete.getValue(), false, "SHUTDOWN_");
+					}
 			}
 
+			removalLogger.flush();
+
 			closeStreams();
 		});
 	}
@@ -247,6 +305,81 @@ public class TextCache extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Writes the lines of the removed entries to the cache.log files. The removals only queue their line, so that evictions don't serialize on the log file.
+	 */
+	private static final class RemovalLogger extends Thread {
+		private final BlockingQueue<String> lines = new LinkedBlockingQueue<>(ConfigUtils.getConfig().geti("alien.servlets.TextCache.removalLogQueue", 100000));
+
+		public RemovalLogger() {
+			setName("alien.servlets.TextCache.RemovalLogger");
+			setDaemon(true);
+		}
+
+		public void log(final String line) {
+			if (!lines.offer(line) && monitor != null)
+				monitor.incrementCounter("REMOVAL_LOG_DROPPED");
+		}
+
+		@Override
+		public void run() {
+			final List<String> batch = new ArrayList<>();
+
+			while (true) {
+				try {
+					batch.add(lines.take());
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					return;
+				}
+
+				lines.drainTo(batch);
+
+				write(batch);
+
+				batch.clear();
+			}
+		}
+
+		public void flush() {
+			final List<String> batch = new ArrayList<>();
+
+			lines.drainTo(batch);
+
+			write(batch);
+		}
+
+		private static void write(final List<String> batch) {
+			synchronized (TextCache.class) {
+				for (final String line : batch) {
+					if (requestLogger == null)
+						try {
+							requestLogger = new PrintWriter(new OutputStreamWriter(new MyGZIPOutputStream("cache.log-" + System.currentTimeMillis() + ".gz")));
+						}
+						catch (final IOException e) {
+							System.err.println("Could not write to cache.log: " + e.getMessage());
+							return;
+						}
+
+					requestLogger.println(line);
+
+					if (requestLogger.checkError())
+						requestLogger = null;
+					else if (++logCounter > 1000) {
+						logCounter = 0;
+
+						if (lastLogFile != null) {
+							final File f = new File(lastLogFile);
+
+							if (!f.exists())
+								closeStreams();
+						}
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Call this one entry is removed to log the number of hits
 	 *
@@ -255,73 +388,159 @@ public class TextCache extends HttpServlet {
 	 * @param value
 	 * @param removeFromKeysSet
 	 */
-	static synchronized void notifyEntryRemoved(final Namespace namespace, final String key, final CacheValue value, final boolean removeFromKeysSet, final String monitorPrefix) {
+	static void notifyEntryRemoved(final Namespace namespace, final String key, final CacheValue value, final boolean removeFromKeysSet, final String monitorPrefix) {
 		if (removeFromKeysSet)
 			namespace.keys.remove(key);
 
 		if (monitor != null)
 			monitor.incrementCounter(monitorPrefix + namespace.name);
 
-		if (requestLogger == null)
-			try {
-				requestLogger = new PrintWriter(new OutputStreamWriter(new MyGZIPOutputStream("cache.log-" + System.currentTimeMillis() + ".gz")));
-			}
-			catch (final IOException e) {
-				System.err.println("Could not write to cache.log: " + e.getMessage());
-				return;
-			}
+		removalLogger.log(System.currentTimeMillis() + " " + value.accesses + " " + namespace + " " + key);
+	}
 
-		requestLogger.println(System.currentTimeMillis() + " " + value.accesses + " " + namespace + " " + key);
+	private static final int segmentCount = Integer.highestOneBit(Math.max(ConfigUtils.getConfig().geti("alien.servlets.TextCache.segments", 16), 1));
 
-		if (requestLogger.checkError())
-			requestLogger = null;
-		else if (++logCounter > 1000) {
-			logCounter = 0;
+	private static final int slabSize = ConfigUtils.getConfig().geti("alien.servlets.TextCache.slabSize", 64 * 1024);
 
-			if (lastLogFile != null) {
-				final File f = new File(lastLogFile);
-
-				if (!f.exists())
-					closeStreams();
-			}
-		}
-	}
+	/**
+	 * Direct memory that all the namespaces together may hold, on top of their own limits
+	 */
+	static final SlabAllocator.Budget directMemory = new SlabAllocator.Budget(ConfigUtils.getConfig().getl("alien.servlets.TextCache.maxDirectMemory", 1024L * 1024 * 1024));
 
 	/**
-	 * @author costing
-	 *
+	 * One stripe of a namespace: an access-ordered map, with its own lock (the segment object itself) and its own off-heap storage
 	 */
-	public static final class NotifyLRUMap extends LRUMap<String, CacheValue> {
-		private static final long serialVersionUID = -9117776082771411054L;
+	static final class Segment {
+		public final LinkedHashMap<String, CacheValue> cache = new LinkedHashMap<>(16, 0.75f, true);
 
-		private final Namespace namespace;
+		public final SlabAllocator slabs;
+
+		public final int maxEntries;
+
+		public final long maxBytes;
 
 		/**
-		 * @param iCacheSize
-		 * @param namespace
+		 * Total length of the stored values
 		 */
-		public NotifyLRUMap(final int iCacheSize, final Namespace namespace) {
-			super(iCacheSize);
+		public long bytes = 0;
 
-			this.namespace = namespace;
+		public Segment(final int maxEntries, final long maxBytes) {
+			this(maxEntries, maxBytes, directMemory);
 		}
 
-		@Override
-		protected boolean removeEldestEntry(final java.util.Map.Entry<String, CacheValue> eldest) {
-			final boolean ret = super.removeEldestEntry(eldest);
+		public Segment(final int maxEntries, final long maxBytes, final SlabAllocator.Budget budget) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+			this.slabs = new SlabAllocator(slabSize, budget);
+		}
+
+		/**
+		 * Give back the storage of an entry that was taken out of the map. Call with the lock held.
+		 *
+		 * @param value
+		 */
+		public void release(final CacheValue value) {
+			slabs.free(value.chunk);
+			bytes -= value.length();
+		}
 
-			if (ret)
-				notifyEntryRemoved(namespace, eldest.getKey(), eldest.getValue(), true, "EVICTED_");
+		/**
+		 * Store a value, evicting the least recently used entries if needed to stay within the limits. The byte limit applies to the direct memory held by the segment, so the partially used slabs
+		 * of every size class count against it. Call with the lock held.
+		 *
+		 * @return the previous value of this key, or <code>null</code>. If the new value cannot be stored within the limits, or the direct memory of the process is exhausted, the key is only
+		 *         removed.
+		 */
+		public CacheValue put(final Namespace namespace, final String key, final byte[] data, final long expires, final boolean eof) {
+			final CacheValue old = cache.remove(key);
 
-			return ret;
+			if (old != null)
+				release(old);
+
+			if (slabs.maxCostOf(data.length) > maxBytes)
+				return old;
+
+			Iterator<Map.Entry<String, CacheValue>> it = cache.entrySet().iterator();
+
+			while (it.hasNext() && cache.size() >= maxEntries)
+				evict(namespace, it, it.next());
+
+			if (!fits(data.length)) {
+				// the empty slabs that are normally kept for reuse are the first to go
+				slabs.releaseSpare();
+
+				final int sizeClass = slabs.sizeClassOf(data.length);
+
+				if (sizeClass >= 0 && !fits(data.length)) {
+					// the chunk of the least recently used value of the same size class can take the new one
+					it = cache.entrySet().iterator();
+
+					while (it.hasNext()) {
+						final Map.Entry<String, CacheValue> entry = it.next();
+
+						if (entry.getValue().chunk.slab.sizeClass == sizeClass) {
+							evict(namespace, it, entry);
+							break;
+						}
+					}
+				}
+
+				// otherwise whole slabs have to be emptied
+				it = cache.entrySet().iterator();
+
+				while (it.hasNext() && !fits(data.length)) {
+					evict(namespace, it, it.next());
+					slabs.releaseSpare();
+				}
+
+				if (!fits(data.length))
+					return old;
+			}
+
+			SlabAllocator.Chunk chunk = slabs.allocate(data);
+
+			if (chunk == null && slabs.releaseSpare() > 0)
+				chunk = slabs.allocate(data);
+
+			if (chunk == null) {
+				// the other namespaces hold the rest of the direct memory, this value is not worth failing the request for
+				if (monitor != null)
+					monitor.incrementCounter("DIRECT_MEMORY_EXHAUSTED");
+
+				return old;
+			}
+
+			final CacheValue cv = new CacheValue(chunk, expires, eof);
+
+			cache.put(key, cv);
+			bytes += cv.length();
+
+			return old;
 		}
 
-	}
+		private boolean fits(final int length) {
+			return slabs.getReserved() + slabs.growthFor(length) <= maxBytes;
+		}
+
+		private void evict(final Namespace namespace, final Iterator<Map.Entry<String, CacheValue>> it, final Map.Entry<String, CacheValue> entry) {
+			it.remove();
+			release(entry.getValue());
 
-	private static final class Namespace implements Serializable {
-		private static final long serialVersionUID = 1L;
+			notifyEntryRemoved(namespace, entry.getKey(), entry.getValue(), true, "EVICTED_");
+		}
+
+		/**
+		 * Remove all entries. Call with the lock held.
+		 */
+		public void clear() {
+			cache.clear();
+			slabs.clear();
+			bytes = 0;
+		}
+	}
 
-		public final Map<String, CacheValue> cache;
+	static final class Namespace {
+		public final Segment[] segments;
 		public final Set<String> keys;
 		public final String name;
 
@@ -342,10 +561,34 @@ public class TextCache extends HttpServlet {
 				size = 50000;
 			}
 
-			cache = new NotifyLRUMap(size, this);
+			long bytes;
+
+			try {
+				try {
+					bytes = Long.parseLong(System.getProperty("alien.servlets.TextCache.bytes_" + name));
+				}
+				catch (@SuppressWarnings("unused") final Throwable t1) {
+					bytes = Long.parseLong(System.getProperty("alien.servlets.TextCache.bytes"));
+				}
+			}
+			catch (@SuppressWarnings("unused") final Throwable t) {
+				bytes = 256L * 1024 * 1024;
+			}
+
+			segments = new Segment[segmentCount];
+
+			for (int i = 0; i < segmentCount; i++)
+				segments[i] = new Segment(Math.max(size / segmentCount, 1), Math.max(bytes / segmentCount, slabSize));
+
 			keys = new ConcurrentSkipListSet<>();
 		}
 
+		public Segment segmentFor(final String key) {
+			final int h = key.hashCode();
+
+			return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+		}
+
 		@Override
 		public String toString() {
 			return name;
@@ -353,16 +596,12 @@ public class TextCache extends HttpServlet {
 	}
 
 	private static final Namespace getNamespace(final String name) {
-		Namespace ret = namespaces.get(name);
+		final Namespace ret = namespaces.get(name);
 
 		if (ret != null)
 			return ret;
 
-		ret = new Namespace(name);
-
-		namespaces.put(name, ret);
-
-		return ret;
+		return namespaces.computeIfAbsent(name, (k) -> new Namespace(k));
 	}
 
 	private static long slowQueryThreshold = 0;
@@ -411,14 +650,17 @@ public class TextCache extends HttpServlet {
 				for (final Map.Entry<String, Namespace> entry : namespaces.entrySet()) {
 					final Namespace namespace = entry.getValue();
 
-					if ("default".equals(ns) || namespace.name.equals(ns))
-						synchronized (namespace) {
-							for (final Map.Entry<String, CacheValue> entryToDelete : namespace.cache.entrySet())
-								notifyEntryRemoved(namespace, entryToDelete.getKey(), entryToDelete.getValue(), false, "CLEAN_");
+					if ("default".equals(ns) || namespace.name.equals(ns)) {
+						for (final Segment segment : namespace.segments)
+							synchronized (segment) {
+								for (final Map.Entry<String, CacheValue> entryToDelete : segment.cache.entrySet())
+									notifyEntryRemoved(namespace, entryToDelete.getKey(), entryToDelete.getValue(), false, "CLEAN_");
 
-							namespace.cache.clear();
-							namespace.keys.clear();
-						}
+								segment.clear();
+							}
+
+						namespace.keys.clear();
+					}
 				}
 
 				System.err.println("Clean request came from " + request.getRemoteAddr() + " / " + request.getHeader("User-Agent") + " for ns " + ns);
@@ -433,27 +675,31 @@ public class TextCache extends HttpServlet {
 
 					long hits = 0;
 
-					int nssize;
+					int nssize = 0;
 
-					synchronized (namespace) {
-						for (final CacheValue c : namespace.cache.values()) {
-							final int size = c.value.length();
+					long reserved = 0;
 
-							min = (min < 0 || size < min) ? size : min;
-							max = Math.max(max, size);
-							total += size;
+					for (final Segment segment : namespace.segments)
+						synchronized (segment) {
+							for (final CacheValue c : segment.cache.values()) {
+								final int size = c.length();
 
-							hits += c.accesses.intValue();
-						}
+								min = (min < 0 || size < min) ? size : min;
+								max = Math.max(max, size);
+								total += size;
 
-						nssize = namespace.cache.size();
-					}
+								hits += c.accesses.intValue();
+							}
+
+							nssize += segment.cache.size();
+							reserved += segment.slabs.getReserved();
+						}
 
 					if (min < 0)
 						pwOut.println(entry.getKey() + " : empty");
 					else
 						pwOut.println(entry.getKey() + " : " + nssize + " / " + namespace.keys.size() + " keys (min: " + min + ", avg: " + Format.point((double) total / nssize) + ", max: " + max
-								+ ", total: " + Format.size(total) + ") : " + hits + " hits");
+								+ ", total: " + Format.size(total) + ", off-heap: " + Format.size(reserved) + ") : " + hits + " hits");
 				}
 
 				final Runtime r = Runtime.getRuntime();
@@ -475,29 +721,29 @@ public class TextCache extends HttpServlet {
 
 					final boolean values = rw.gets("values").length() > 0;
 
-					final ArrayList<Map.Entry<String, CacheValue>> entries;
+					final ArrayList<EntrySnapshot> entries = new ArrayList<>();
 
-					synchronized (namespace) {
-						entries = new ArrayList<>(namespace.cache.entrySet());
-					}
+					for (final Segment segment : namespace.segments)
+						synchronized (segment) {
+							for (final Map.Entry<String, CacheValue> me : segment.cache.entrySet())
+								entries.add(new EntrySnapshot(me.getKey(), me.getValue(), values));
+						}
 
 					Collections.sort(entries, entryComparator);
 
-					for (final Map.Entry<String, CacheValue> me : entries) {
-						final CacheValue cv = me.getValue();
-
-						final int size = cv.value.length();
+					for (final EntrySnapshot es : entries) {
+						final int size = es.length;
 
 						min = (min < 0 || size < min) ? size : min;
 						max = Math.max(max, size);
 						total += size;
 
-						hits += cv.accesses.intValue();
+						hits += es.accesses;
 
-						pwOut.println(me.getKey() + " : size " + size + ", " + cv.accesses + " hits" + (values ? " : " + cv.value : ""));
+						pwOut.println(es.key + " : size " + size + ", " + es.accesses + " hits" + (values ? " : " + es.value : ""));
 					}
 
-					final int nssize = namespace.cache.size();
+					final int nssize = entries.size();
 
 					pwOut.print("\n\n----------------\n\n" + nssize + " entries");
 
@@ -513,16 +759,18 @@ public class TextCache extends HttpServlet {
 
 		final Namespace namespace = getNamespace(ns);
 
-		String value = rw.gets("value", null);
+		final String value = rw.gets("value", null);
 
 		if (value != null) {
 			// a SET operation
 
+			final Segment segment = namespace.segmentFor(key);
+
 			CacheValue old;
 
 			if (rw.getb("ifnull", false) == true) {
-				synchronized (namespace) {
-					old = namespace.cache.get(key);
+				synchronized (segment) {
+					old = segment.cache.get(key);
 				}
 
 				if (old != null && old.expires >= System.currentTimeMillis()) {
@@ -536,17 +784,30 @@ public class TextCache extends HttpServlet {
 			if (monitor != null)
 				monitor.incrementCounter("SET_" + ns);
 
-			if (value.indexOf("eof") >= 0) {
-				value = StringFactory.get(value);
+			final boolean eof = value.indexOf("eof") >= 0;
 
-				if (monitor != null)
-					monitor.incrementCounter("SET_EOF_" + ns);
+			if (eof && monitor != null)
+				monitor.incrementCounter("SET_EOF_" + ns);
+
+			final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+
+			final long expires = System.currentTimeMillis() + rw.getl("timeout", getDefaultExpiration(ns)) * 1000;
+
+			final boolean stored;
+
+			synchronized (segment) {
+				old = segment.put(namespace, key, data, expires, eof);
+				stored = segment.cache.containsKey(key);
 			}
 
-			final CacheValue cv = new CacheValue(value, System.currentTimeMillis() + rw.getl("timeout", getDefaultExpiration(ns)) * 1000);
+			if (!stored) {
+				if (old != null)
+					notifyEntryRemoved(namespace, key, old, true, "OVERWRITE_");
 
-			synchronized (namespace) {
-				old = namespace.cache.put(key, cv);
+				if (monitor != null)
+					monitor.incrementCounter("SET_TOOLARGE_" + ns);
+
+				return;
 			}
 
 			if (old != null)
@@ -570,10 +831,15 @@ public class TextCache extends HttpServlet {
 						sLargestPart = part;
 
 				if (sLargestPart.equals(keyValue)) {
+					final Segment segment = namespace.segmentFor(keyValue);
+
 					CacheValue old;
 
-					synchronized (namespace) {
-						old = namespace.cache.remove(keyValue);
+					synchronized (segment) {
+						old = segment.cache.remove(keyValue);
+
+						if (old != null)
+							segment.release(old);
 					}
 
 					if (old != null) {
@@ -612,10 +878,15 @@ public class TextCache extends HttpServlet {
 						m.reset(itKey);
 
 					if (m.matches()) {
+						final Segment segment = namespace.segmentFor(itKey);
+
 						final CacheValue old;
 
-						synchronized (namespace) {
-							old = namespace.cache.remove(itKey);
+						synchronized (segment) {
+							old = segment.cache.remove(itKey);
+
+							if (old != null)
+								segment.release(old);
 						}
 
 						if (old != null) {
@@ -637,10 +908,18 @@ public class TextCache extends HttpServlet {
 			return;
 		}
 
+		final Segment segment = namespace.segmentFor(key);
+
 		final CacheValue existing;
 
-		synchronized (namespace) {
-			existing = namespace.cache.get(key);
+		byte[] content = null;
+
+		synchronized (segment) {
+			existing = segment.cache.get(key);
+
+			// copy the value while the chunk cannot be reused
+			if (existing != null && existing.expires >= System.currentTimeMillis())
+				content = SlabAllocator.read(existing.chunk);
 		}
 
 		if (existing == null) {
@@ -651,7 +930,7 @@ public class TextCache extends HttpServlet {
 			return;
 		}
 
-		if (existing.expires < System.currentTimeMillis()) {
+		if (content == null) {
 			if (monitor != null)
 				monitor.incrementCounter("EXPIRED_" + ns);
 
@@ -664,11 +943,11 @@ public class TextCache extends HttpServlet {
 		if (monitor != null)
 			monitor.incrementCounter("HIT_" + ns);
 
-		if (existing.value.indexOf("eof") >= 0)
+		if (existing.eof)
 			if (monitor != null)
 				monitor.incrementCounter("HIT_EOF_" + ns);
 
-		pwOut.println(existing.value);
+		pwOut.println(new String(content, StandardCharsets.UTF_8));
 	}
 
 	/**
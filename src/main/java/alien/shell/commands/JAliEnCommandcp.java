@@ -1,8 +1,6 @@
 package alien.shell.commands;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOError;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -14,8 +12,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,15 +24,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import alien.api.Dispatcher;
 import alien.api.ServerException;
+import alien.api.catalogue.PFNforReadBulk;
 import alien.api.catalogue.PFNforWrite;
 import alien.catalogue.BookingTable.BOOKING_STATE;
 import alien.catalogue.FileSystemUtils;
@@ -43,6 +39,8 @@ import alien.catalogue.GUIDUtils;
 import alien.catalogue.LFN;
 import alien.catalogue.PFN;
 import alien.config.ConfigUtils;
+import alien.io.Checksums;
+import alien.io.DownloadEngine;
 import alien.io.IOUtils;
 import alien.io.Transfer;
 import alien.io.protocols.Protocol;
@@ -321,49 +319,7 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 		@Override
 		public void run() {
 			try {
-				if (pfn.ticket != null && pfn.ticket.envelope != null && pfn.ticket.envelope.getArchiveAnchor() != null) {
-					final File tempLocalFile = proto.get(pfn, null);
-
-					if (tempLocalFile != null) {
-						final LFN archiveMember = pfn.ticket.envelope.getArchiveAnchor();
-
-						final String archiveFileName = archiveMember.getFileName();
-
-						try (ZipInputStream zi = new ZipInputStream(new FileInputStream(tempLocalFile))) {
-							ZipEntry zipentry;
-
-							while ((zipentry = zi.getNextEntry()) != null)
-								if (zipentry.getName().equals(archiveFileName)) {
-									File targetFile = file;
-									if (targetFile == null)
-										targetFile = File.createTempFile("zip-extract", null, IOUtils.getTemporaryDirectory());
-
-									try (final FileOutputStream fos = new FileOutputStream(targetFile)) {
-										final byte[] buf = new byte[8192];
-
-										int n;
-
-										while ((n = zi.read(buf, 0, buf.length)) > -1)
-											fos.write(buf, 0, n);
-									}
-
-									zi.closeEntry();
-
-									output = targetFile;
-
-									TempFileManager.putTemp(alien.catalogue.GUIDUtils.createGuid(), output);
-									TempFileManager.release(output);
-
-									break;
-								}
-						}
-						finally {
-							TempFileManager.release(tempLocalFile);
-						}
-					}
-				}
-				else
-					output = proto.get(pfn, file);
+				output = DownloadEngine.fetch(proto, pfn, file);
 			}
 			catch (final IOException e) {
 				lastException = e;
@@ -399,46 +355,142 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 		return false;
 	}
 
+	/**
+	 * How many source files to resolve in one request when downloading many of them
+	 */
+	private static final int BULK_RESOLVE_SIZE = ConfigUtils.getConfig().geti("alien.shell.commands.JAliEnCommandcp.bulkResolveSize", 1000);
+
+	/**
+	 * Resolves the LFNs and the read envelopes of the source files with one request per batch of files, each batch being asked for only when the downloads reach it so that the envelopes are
+	 * fresh when they are used. Entries that the bulk request could not resolve are left to the one-by-one requests.
+	 */
+	private final class BulkResolver {
+		private final List<String> sources;
+
+		private final Map<String, Integer> positions;
+
+		private int resolvedUpTo = 0;
+
+		private final Map<String, LFN> lfns = new HashMap<>();
+
+		private final Map<String, List<PFN>> pfns = new HashMap<>();
+
+		BulkResolver(final List<String> sources) {
+			this.sources = sources;
+
+			positions = new HashMap<>(sources.size() * 4 / 3 + 1);
+
+			for (int i = 0; i < sources.size(); i++)
+				positions.putIfAbsent(sources.get(i), Integer.valueOf(i));
+		}
+
+		private void resolve(final String sourcelfn) {
+			final Integer position = positions.get(sourcelfn);
+
+			if (position == null)
+				return;
+
+			while (resolvedUpTo <= position.intValue()) {
+				final List<String> batch = sources.subList(resolvedUpTo, Math.min(resolvedUpTo + BULK_RESOLVE_SIZE, sources.size()));
+
+				resolvedUpTo += batch.size();
+
+				final PFNforReadBulk result = commander.c_api.getPFNsToRead(batch, ses, exses);
+
+				if (result == null || result.getPFNs() == null) {
+					// older servers don't know this request, don't try again
+					resolvedUpTo = sources.size();
+					return;
+				}
+
+				for (final String entry : batch) {
+					final LFN l = result.getLFN(entry);
+					final List<PFN> entryPFNs = result.getPFNs(entry);
+
+					if (l != null && entryPFNs != null) {
+						lfns.put(entry, l);
+						pfns.put(entry, entryPFNs);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @param sourcelfn
+		 * @return the LFN of this source, or <code>null</code> if it has to be looked up separately
+		 */
+		synchronized LFN getLFN(final String sourcelfn) {
+			resolve(sourcelfn);
+
+			return lfns.remove(sourcelfn);
+		}
+
+		/**
+		 * @param sourcelfn
+		 * @return the PFNs of this source, or <code>null</code> if they have to be looked up separately
+		 */
+		synchronized List<PFN> getPFNs(final String sourcelfn) {
+			return pfns.remove(sourcelfn);
+		}
+	}
+
 	private class GridToLocal implements Runnable {
 		private final String sourcelfn;
 		private LFN lfn;
+		private List<PFN> pfns;
 		private final String longestMatchingPath;
 		private final File targetLocalFile;
+		private final BulkResolver resolver;
+		private File writeToLocalFile = null;
 		private File resultFile = null;
 
-		public GridToLocal(final String sourcelfn, final String longestMatchingPath, final File targetLocalFile) {
+		public GridToLocal(final String sourcelfn, final String longestMatchingPath, final File targetLocalFile, final BulkResolver resolver) {
 			this.sourcelfn = sourcelfn;
 			this.longestMatchingPath = longestMatchingPath;
 			this.targetLocalFile = targetLocalFile;
+			this.resolver = resolver;
 		}
 
-		public GridToLocal(final LFN lfn, final File targetLocalFile) {
+		public GridToLocal(final LFN lfn, final File targetLocalFile, final List<PFN> pfns) {
 			this.sourcelfn = null;
 			this.lfn = lfn;
+			this.pfns = pfns;
 			this.longestMatchingPath = null;
 			this.targetLocalFile = targetLocalFile;
+			this.resolver = null;
 		}
 
-		@Override
-		public void run() {
+		/**
+		 * Resolve the LFN, the local file to write to and the replicas to read from
+		 *
+		 * @return <code>true</code> if there is something to download
+		 */
+		boolean prepare() {
+			if (lfn == null && resolver != null) {
+				lfn = resolver.getLFN(sourcelfn);
+
+				if (lfn != null)
+					pfns = resolver.getPFNs(sourcelfn);
+			}
+
 			if (lfn == null)
 				lfn = commander.c_api.getLFN(sourcelfn);
 
 			if (lfn == null) {
 				commander.setReturnCode(101, "Could not get the file's LFN: " + sourcelfn);
-				return;
+				return false;
 			}
 
 			if (!lfn.isFile())
 				// ignoring anything else but files
-				return;
+				return false;
 
-			File writeToLocalFile = targetLocalFile;
+			writeToLocalFile = targetLocalFile;
 
 			if (targetLocalFile != null && targetLocalFile.exists() && targetLocalFile.isDirectory()) {
 				if (sourcelfn == null || longestMatchingPath == null) {
 					commander.setReturnCode(102, "Target file already exists and on this code path I should not save it in an alternate location");
-					return;
+					return false;
 				}
 
 				final String fileName = sourcelfn.substring(longestMatchingPath.length());
@@ -453,12 +505,12 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 					if (fDir.exists()) {
 						if (!fDir.isDirectory()) {
 							commander.setReturnCode(102, "This file exists and I cannot create the same directory here: " + fDir.getAbsolutePath());
-							return;
+							return false;
 						}
 					}
 					else if (!fDir.mkdirs()) {
 						commander.setReturnCode(103, "Could not create the directory: " + fDir.getAbsolutePath());
-						return;
+						return false;
 					}
 				}
 
@@ -467,70 +519,99 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 
 			if (writeToLocalFile != null && writeToLocalFile.exists()) {
 				commander.setReturnCode(104, "Local copy target " + writeToLocalFile + " exists, skipping it");
-				return;
+				return false;
 			}
 
-			final List<PFN> pfns = commander.c_api.getPFNsToRead(lfn, ses, exses);
-
-			File transferAttempt = null;
-
-			Exception lastException = null;
-
-			if (pfns != null && pfns.size() > 0)
-				for (final PFN pfn : pfns) {
-					logger.log(Level.INFO, "Trying " + pfn.pfn);
+			if (pfns == null)
+				pfns = commander.c_api.getPFNsToRead(lfn, ses, exses);
 
-					final List<Protocol> protocols = Transfer.getAccessProtocols(pfn);
-					for (final Protocol protocol : protocols) {
-						final ProtocolAction pA = new ProtocolAction(protocol, pfn, writeToLocalFile);
-						try {
-							pA.start();
-							while (pA.isAlive()) {
-								Thread.sleep(500);
-								commander.pending();
-							}
-
-							if (pA.getFile() != null && pA.getFile().exists() && pA.getFile().length() > 0) {
-								transferAttempt = pA.getFile();
+			if (pfns == null || pfns.size() == 0) {
+				commander.setReturnCode(105, "No replicas for this LFN: " + lfn.getCanonicalName());
+				failed(null);
+				return false;
+			}
 
-								commander.printOutln("Downloaded file to " + transferAttempt.getCanonicalPath());
+			return true;
+		}
 
-								try {
-									if (!transferAttempt.setLastModified(lfn.ctime.getTime())) {
-										// alternative method of setting file times:
-										final BasicFileAttributeView attributes = Files.getFileAttributeView(Paths.get(transferAttempt.getAbsolutePath()), BasicFileAttributeView.class);
-										final FileTime time = FileTime.fromMillis(lfn.ctime.getTime());
-										attributes.setTimes(time, time, time);
-									}
-								}
-								catch (final Throwable t) {
-									// this is not worth reporting to the user
-									logger.log(Level.WARNING, "Exception setting file last modified timestamp", t);
-								}
+		@Override
+		public void run() {
+			if (!prepare())
+				return;
 
-								break;
-							}
+			Exception lastException = null;
 
-							if ((lastException = pA.getLastException()) != null)
-								logger.log(Level.WARNING, "Attempt to fetch " + pfn + " failed", lastException);
+			for (final PFN pfn : pfns) {
+				logger.log(Level.INFO, "Trying " + pfn.pfn);
 
+				final List<Protocol> protocols = Transfer.getAccessProtocols(pfn);
+				for (final Protocol protocol : protocols) {
+					final ProtocolAction pA = new ProtocolAction(protocol, pfn, writeToLocalFile);
+					try {
+						pA.start();
+						while (pA.isAlive()) {
+							Thread.sleep(500);
+							commander.pending();
 						}
-						catch (final Exception e) {
-							e.printStackTrace();
+
+						if (pA.getFile() != null && pA.getFile().exists() && pA.getFile().length() > 0) {
+							completed(pA.getFile());
+							break;
 						}
 
+						if ((lastException = pA.getLastException()) != null)
+							logger.log(Level.WARNING, "Attempt to fetch " + pfn + " failed", lastException);
+
 					}
-					if (transferAttempt != null && transferAttempt.exists() && transferAttempt.length() > 0) {
-						resultFile = transferAttempt;
-						break;
+					catch (final Exception e) {
+						e.printStackTrace();
 					}
+
 				}
-			else
-				commander.setReturnCode(105, "No replicas for this LFN: " + lfn.getCanonicalName());
+				if (resultFile != null)
+					break;
+			}
 
 			if (resultFile == null)
-				commander.setReturnCode(106, "Could not get the file: " + lfn.getCanonicalName() + " to " + (writeToLocalFile != null ? writeToLocalFile.getAbsolutePath() : "a temporary file")
-						+ (lastException != null ? ", error was: " + lastException.getMessage() : ""));
+				failed(lastException != null ? lastException.getMessage() : null);
+		}
+
+		/**
+		 * Report the downloaded file and give it the modification time of the LFN
+		 *
+		 * @param transferAttempt
+		 */
+		void completed(final File transferAttempt) {
+			resultFile = transferAttempt;
+
+			try {
+				commander.printOutln("Downloaded file to " + transferAttempt.getCanonicalPath());
+			}
+			catch (final IOException e) {
+				logger.log(Level.WARNING, "Cannot get the canonical path of " + transferAttempt, e);
+			}
+
+			try {
+				if (!transferAttempt.setLastModified(lfn.ctime.getTime())) {
+					// alternative method of setting file times:
+					final BasicFileAttributeView attributes = Files.getFileAttributeView(Paths.get(transferAttempt.getAbsolutePath()), BasicFileAttributeView.class);
+					final FileTime time = FileTime.fromMillis(lfn.ctime.getTime());
+					attributes.setTimes(time, time, time);
+				}
+			}
+			catch (final Throwable t) {
+				// this is not worth reporting to the user
+				logger.log(Level.WARNING, "Exception setting file last modified timestamp", t);
+			}
+		}
+
+		/**
+		 * @param error
+		 *            the last transfer error, if any
+		 */
+		void failed(final String error) {
+			commander.setReturnCode(106, "Could not get the file: " + lfn.getCanonicalName() + " to " + (writeToLocalFile != null ? writeToLocalFile.getAbsolutePath() : "a temporary file")
+					+ (error != null ? ", error was: " + error : ""));
 		}
 
 		/**
@@ -549,11 +630,93 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 	 * @return the result of the download
 	 */
 	public File copyGridToLocal(final LFN lfn, final File toLocalFile) {
-		final GridToLocal cpOperation = new GridToLocal(lfn, toLocalFile);
+		return copyGridToLocal(lfn, toLocalFile, null);
+	}
+
+	/**
+	 * Copy one LFN to one local file, when the replicas to read from are already known
+	 *
+	 * @param lfn the LFN object pointing to a file
+	 * @param toLocalFile the target file to write to
+	 * @param pfns replicas with read envelopes, as returned by {@link alien.api.catalogue.CatalogueApiUtils#getPFNsToRead(Collection, List, List)}, or <code>null</code> to ask for them now
+	 * @return the result of the download
+	 */
+	public File copyGridToLocal(final LFN lfn, final File toLocalFile, final List<PFN> pfns) {
+		final GridToLocal cpOperation = new GridToLocal(lfn, toLocalFile, pfns);
 		cpOperation.run();
 		return cpOperation.getResult();
 	}
 
+	/**
+	 * Copy many LFNs to local files in parallel, spreading the transfers over the storage elements that hold them
+	 *
+	 * @param targets the local file to write each LFN to
+	 * @param replicas the replicas with read envelopes of all the LFNs, as returned by {@link alien.api.catalogue.CatalogueApiUtils#getPFNsToRead(Collection, List, List)}, or
+	 *            <code>null</code> to ask for them file by file
+	 * @return the downloaded file for each LFN, <code>null</code> for the ones that could not be retrieved (the commander has the error of the last failure)
+	 */
+	public Map<LFN, File> copyGridToLocal(final Map<LFN, File> targets, final PFNforReadBulk replicas) {
+		final Map<LFN, GridToLocal> operations = new LinkedHashMap<>(targets.size());
+
+		for (final Map.Entry<LFN, File> entry : targets.entrySet())
+			operations.put(entry.getKey(), new GridToLocal(entry.getKey(), entry.getValue(), replicas != null ? replicas.getPFNs(entry.getKey().getCanonicalName()) : null));
+
+		download(operations.values(), Math.max(concurrentOperations, DownloadEngine.DEFAULT_THREADS));
+
+		final Map<LFN, File> ret = new LinkedHashMap<>(operations.size());
+
+		for (final Map.Entry<LFN, GridToLocal> entry : operations.entrySet())
+			ret.put(entry.getKey(), entry.getValue().getResult());
+
+		return ret;
+	}
+
+	/**
+	 * Run the given operations through a {@link DownloadEngine}
+	 *
+	 * @param operations
+	 * @param threads how many files to download in parallel
+	 */
+	private void download(final Collection<GridToLocal> operations, final int threads) {
+		final DownloadEngine engine = new DownloadEngine(threads, DownloadEngine.DEFAULT_PER_SE_CONCURRENCY);
+
+		final Map<DownloadEngine.Download, GridToLocal> downloads = new HashMap<>(operations.size());
+
+		// each file is prepared only when the transfers reach it, in one of the transfer threads
+		for (final GridToLocal operation : operations)
+			downloads.put(engine.add(operation.sourcelfn != null ? operation.sourcelfn : operation.lfn.getCanonicalName(), operation.targetLocalFile,
+					(download) -> {
+						if (!operation.prepare())
+							return null;
+
+						download.setTarget(operation.writeToLocalFile);
+
+						return operation.pfns;
+					}), operation);
+
+		if (downloads.isEmpty())
+			return;
+
+		engine.run(new DownloadEngine.Listener() {
+			@Override
+			public void finished(final DownloadEngine.Download download) {
+				final GridToLocal operation = downloads.get(download);
+
+				if (download.getResult() != null)
+					operation.completed(download.getResult());
+				else if (download.getError() != null)
+					operation.failed(download.getError());
+
+				// otherwise the preparation has found nothing to download and has reported why
+			}
+
+			@Override
+			public void waiting() {
+				commander.pending();
+			}
+		});
+	}
+
 	/**
 	 * Copy a Grid file to a local file
 	 *
@@ -580,10 +743,15 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 
 		final List<String> sources = new ArrayList<>(expandedPaths.size());
 
-		for (final String expandedPath : expandedPaths) {
-			final LFN l = commander.c_api.getLFN(expandedPath);
+		final List<LFN> expandedLFNs = expandedPaths.size() > 1 ? commander.c_api.getLFNs(expandedPaths, false, false) : Arrays.asList(commander.c_api.getLFN(expandedPaths.get(0)));
+
+		if (expandedLFNs != null)
+			for (final LFN l : expandedLFNs) {
+				if (l == null)
+					continue;
+
+				final String expandedPath = l.getCanonicalName();
 
-			if (l != null)
 				if (l.isFile())
 					sources.add(expandedPath);
 				else if (l.isDirectory()) {
@@ -597,7 +765,7 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 				}
 				else if (l.isCollection())
 					sources.addAll(l.listCollection());
-		}
+			}
 
 		if (sources.size() > 1) {
 			if (logger.isLoggable(Level.FINE))
@@ -647,39 +815,27 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 
 		File oneFileToReturn = null;
 
+		final BulkResolver resolver = sources.size() > 1 ? new BulkResolver(sources) : null;
+
 		if (sources.size() <= 1 || concurrentOperations <= 1)
 			for (final String sourcelfn : sources) {
-				final GridToLocal oneFile = new GridToLocal(sourcelfn, longestMatchingPath, targetLocalFile);
+				final GridToLocal oneFile = new GridToLocal(sourcelfn, longestMatchingPath, targetLocalFile, resolver);
 				oneFile.run();
 
 				if (oneFileToReturn == null)
 					oneFileToReturn = oneFile.getResult();
 			}
 		else {
-			final ThreadPoolExecutor downloader = new CachedThreadPool(concurrentOperations, 1, TimeUnit.SECONDS, (r) -> new Thread(r, "cpGridToLocal"));
-			downloader.allowCoreThreadTimeOut(true);
+			final List<GridToLocal> operations = new ArrayList<>(sources.size());
 
-			final List<Future<GridToLocal>> futures = new LinkedList<>();
+			for (final String sourcelfn : sources)
+				operations.add(new GridToLocal(sourcelfn, longestMatchingPath, targetLocalFile, resolver));
 
-			for (final String sourcelfn : sources) {
-				final GridToLocal oneFile = new GridToLocal(sourcelfn, longestMatchingPath, targetLocalFile);
-				final Future<GridToLocal> future = downloader.submit(oneFile, oneFile);
-				futures.add(future);
-			}
-
-			for (final Future<GridToLocal> future : futures) {
-				final GridToLocal result;
+			download(operations, concurrentOperations);
 
-				try {
-					result = future.get();
-
-					if (oneFileToReturn == null)
-						oneFileToReturn = result.getResult();
-				}
-				catch (InterruptedException | ExecutionException e) {
-					logger.log(Level.WARNING, "Exception waiting for a future", e);
-				}
-			}
+			for (final GridToLocal oneFile : operations)
+				if (oneFileToReturn == null)
+					oneFileToReturn = oneFile.getResult();
 		}
 
 		return oneFileToReturn;
@@ -748,6 +904,21 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 	 * @return status of the upload
 	 */
 	public LFN copyLocalToGrid(final File sourceFile, final String targetLFN) {
+		return copyLocalToGrid(sourceFile, targetLFN, null);
+	}
+
+	/**
+	 * Copy a local file to the Grid
+	 *
+	 * @param sourceFile
+	 *            local filename
+	 * @param targetLFN
+	 *            Grid filename
+	 * @param knownChecksums
+	 *            checksums of the local file computed by the caller, used instead of reading the file again if the file hasn't changed since. Can be <code>null</code>.
+	 * @return status of the upload
+	 */
+	public LFN copyLocalToGrid(final File sourceFile, final String targetLFN, final Checksums knownChecksums) {
 		if (!sourceFile.exists() || !sourceFile.isFile() || !sourceFile.canRead()) {
 			commander.setReturnCode(201, "Could not get the local file: " + sourceFile.getAbsolutePath());
 			if (isSilent()) {
@@ -787,7 +958,10 @@ public class JAliEnCommandcp extends JAliEnBaseCommand {
 		final GUID guid;
 
 		try {
-			guid = GUIDUtils.createGuid(sourceFile, commander.user);
+			if (knownChecksums != null && knownChecksums.matches(sourceFile))
+				guid = GUIDUtils.createGuid(sourceFile, commander.user, knownChecksums.getMD5());
+			else
+				guid = GUIDUtils.createGuid(sourceFile, commander.user);
 		}
 		catch (final IOException e) {
 			commander.setReturnCode(204, "Couldn't create the GUID : " + e.getMessage());
@@ -5,12 +5,15 @@ import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.logging.Level;
 
 import alien.catalogue.FileSystemUtils;
 import alien.catalogue.LFN;
 import alien.catalogue.LFNUtils;
 import alien.catalogue.XmlCollection;
+import alien.config.ConfigUtils;
 import alien.shell.ErrNo;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
@@ -86,6 +89,12 @@ public class JAliEnCommandfind extends JAliEnBaseCommand {
 
 	private Collection<String> excludePatterns = null;
 
+	/**
+	 * Retrieve the results in chunks while printing them, for the simple finds. Off by default, servers that don't know the chunked request make the first attempt fail and the command then falls back
+	 * to the regular find.
+	 */
+	private static volatile boolean useStreaming = ConfigUtils.getConfig().getb("alien.shell.commands.JAliEnCommandfind.streaming", false);
+
 	/**
 	 * returns the LFNs that were the result of the find
 	 *
@@ -154,20 +163,40 @@ public class JAliEnCommandfind extends JAliEnBaseCommand {
 			return;
 		}
 
-		lfns = commander.c_api.find(path, alPaths.get(1), query, flags, xmlCollectionPath, queueid, limit != Long.MAX_VALUE ? limit + offset : -1, readSiteSorting, excludePatterns);
+		Iterator<LFN> results = null;
 
-		int count = 0;
-		long size = 0;
+		if (useStreaming && !bY && !bX && readSiteSorting == null) {
+			// entries are retrieved in chunks while printing them, lfns stays null
+			results = commander.c_api.findStream(path, alPaths.get(1), flags, queueid, limit != Long.MAX_VALUE ? limit + offset : -1, excludePatterns);
 
-		if (lfns != null) {
-			if (offset >= lfns.size())
-				return;
+			if (results == null) {
+				logger.log(Level.WARNING, "Chunked find is not available, falling back to the regular find from now on");
+				useStreaming = false;
+			}
+		}
 
-			if (bX) {
-				return;
+		if (results == null) {
+			lfns = commander.c_api.find(path, alPaths.get(1), query, flags, xmlCollectionPath, queueid, limit != Long.MAX_VALUE ? limit + offset : -1, readSiteSorting, excludePatterns);
+
+			if (lfns != null) {
+				if (offset >= lfns.size())
+					return;
+
+				if (bX) {
+					return;
+				}
 			}
 
-			for (final LFN lfn : lfns) {
+			results = lfns != null ? lfns.iterator() : null;
+		}
+
+		int count = 0;
+		long size = 0;
+
+		if (results != null) {
+			while (results.hasNext()) {
+				final LFN lfn = results.next();
+
 				if (--offset >= 0)
 					continue;
 
@@ -217,6 +246,10 @@ public class JAliEnCommandfind extends JAliEnBaseCommand {
 				else
 					commander.printOutln(lfn.getCanonicalName());
 			}
+
+			// all the entries were skipped
+			if (offset >= 0)
+				return;
 		}
 
 		if (xmlOutput != null)
@@ -1,6 +1,7 @@
 package alien.shell.commands;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -33,8 +34,13 @@ public class JAliEnCommandstat extends JAliEnBaseCommand {
 	 */
 	private boolean bV = false;
 
+	/**
+	 * Read the entries from the database, not from the cache of the central services
+	 */
+	private boolean bFresh = false;
+
 	private boolean printGUIDInfo(final String guidName, final boolean indexed) {
-		final GUID g = commander.c_api.getGUID(guidName);
+		final GUID g = commander.c_api.getGUID(guidName, false, false, bFresh);
 
 		if (g == null) {
 			commander.printErrln("This GUID does not exist in the catalogue: " + guidName);
@@ -123,7 +129,9 @@ public class JAliEnCommandstat extends JAliEnBaseCommand {
 	@Override
 	public void run() {
 		for (final String lfnName : this.alPaths) {
-			final LFN lfn = commander.c_api.getLFN(FileSystemUtils.getAbsolutePath(commander.user.getName(), commander.getCurrentDirName(), lfnName));
+			final List<LFN> lfns = commander.c_api.getLFNs(Arrays.asList(FileSystemUtils.getAbsolutePath(commander.user.getName(), commander.getCurrentDirName(), lfnName)), false, false, bFresh);
+
+			final LFN lfn = lfns != null && !lfns.isEmpty() ? lfns.get(0) : null;
 
 			if (lfn == null) {
 				if (GUIDUtils.isValidGUID(lfnName)) {
@@ -203,13 +211,15 @@ public class JAliEnCommandstat extends JAliEnBaseCommand {
 
 	static {
 		parser.accepts("v");
+		parser.accepts("f");
 	}
 
 	@Override
 	public void printHelp() {
 		commander.printOutln();
-		commander.printOutln(helpUsage("stat", "[-v] <filename1> [<or uuid>] ..."));
+		commander.printOutln(helpUsage("stat", "[-v] [-f] <filename1> [<or uuid>] ..."));
 		commander.printOutln(helpOption("-v", "More details on the status."));
+		commander.printOutln(helpOption("-f", "Fresh values, read from the database instead of the central services' cache."));
 		commander.printOutln();
 	}
 
@@ -233,6 +243,7 @@ public class JAliEnCommandstat extends JAliEnBaseCommand {
 			final OptionSet options = parser.parse(alArguments.toArray(new String[] {}));
 
 			bV = options.has("v");
+			bFresh = options.has("f");
 
 			alPaths = new ArrayList<>(options.nonOptionArguments().size());
 			alPaths.addAll(optionToString(options.nonOptionArguments()));
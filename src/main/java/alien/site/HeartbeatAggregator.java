@@ -0,0 +1,216 @@
+package alien.site;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.api.ServerException;
+import alien.api.taskQueue.JobKilledException;
+import alien.api.taskQueue.PutJobHeartbeats;
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.taskQueue.JobLogLine;
+
+/**
+ * Single reporting channel for the heartbeats and resource snapshots of all the jobs running in this JVM (all the JobAgent threads of a JobRunner). Each job only leaves its latest
+ * snapshot here, and a single thread ships the snapshots of all the jobs with one {@link PutJobHeartbeats} request every
+ * <code>alien.site.HeartbeatAggregator.interval</code> seconds. A snapshot that was superseded before being sent is simply dropped, only the most recent one matters.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class HeartbeatAggregator {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(HeartbeatAggregator.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(HeartbeatAggregator.class.getCanonicalName());
+
+	/**
+	 * Whether the JobAgents should report their resource snapshots through this aggregator or each with its own request
+	 */
+	public static final boolean enabled = ConfigUtils.getConfig().getb("alien.site.HeartbeatAggregator.enabled", true);
+
+	/**
+	 * How often the collected snapshots are sent, in milliseconds
+	 */
+	private static final long interval = ConfigUtils.getConfig().getl("alien.site.HeartbeatAggregator.interval", 60) * 1000;
+
+	/**
+	 * Upper limit of the delay between retries, in milliseconds
+	 */
+	private static final long maxRetryDelay = ConfigUtils.getConfig().getl("alien.site.HeartbeatAggregator.maxRetryDelay", 300) * 1000;
+
+	/**
+	 * Latest not yet sent snapshot of each job
+	 */
+	private static final Map<Long, JobLogLine> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * When the last snapshot of each job reached the central services
+	 */
+	private static final Map<Long, Long> lastDelivery = new ConcurrentHashMap<>();
+
+	private static final Set<Long> killedJobs = ConcurrentHashMap.newKeySet();
+
+	private static final JobLogSender jobLogSender = new JobLogSender("heartbeats", PutJobHeartbeats::new);
+
+	private static volatile Thread sender = null;
+
+	private HeartbeatAggregator() {
+		// static methods only
+	}
+
+	/**
+	 * Record the latest resource snapshot of a job, replacing the previous one if it was not sent yet
+	 *
+	 * @param queueId
+	 * @param resubmission
+	 * @param procinfo
+	 *            the "proc" line of the job
+	 * @return <code>false</code> if the job is known not to be supposed to run any more
+	 */
+	public static boolean report(final long queueId, final int resubmission, final String procinfo) {
+		final Long key = Long.valueOf(queueId);
+
+		if (killedJobs.contains(key))
+			return false;
+
+		if (sender == null)
+			start();
+
+		lastDelivery.putIfAbsent(key, Long.valueOf(System.currentTimeMillis()));
+
+		if (pending.put(key, new JobLogLine(queueId, resubmission, System.currentTimeMillis(), "proc", procinfo)) != null && monitor != null)
+			monitor.incrementCounter("snapshots_superseded");
+
+		if (monitor != null)
+			monitor.incrementCounter("snapshots_reported");
+
+		return true;
+	}
+
+	/**
+	 * Forget about a job, once it has finished and sent its final report
+	 *
+	 * @param queueId
+	 */
+	public static void remove(final long queueId) {
+		final Long key = Long.valueOf(queueId);
+
+		pending.remove(key);
+		lastDelivery.remove(key);
+		killedJobs.remove(key);
+	}
+
+	/**
+	 * @param queueId
+	 * @return <code>true</code> if the central services have answered that this job is not supposed to run any more
+	 */
+	public static boolean isKilled(final long queueId) {
+		return killedJobs.contains(Long.valueOf(queueId));
+	}
+
+	/**
+	 * @param queueId
+	 * @return epoch time in milliseconds when the last snapshot of this job was delivered, or when it was first reported if none could be delivered yet, <code>0</code> for unknown jobs
+	 */
+	public static long getLastDelivery(final long queueId) {
+		final Long l = lastDelivery.get(Long.valueOf(queueId));
+
+		return l != null ? l.longValue() : 0;
+	}
+
+	private static synchronized void start() {
+		if (sender != null)
+			return;
+
+		sender = new Thread(HeartbeatAggregator::sendLoop, "HeartbeatAggregator");
+		sender.setDaemon(true);
+		sender.start();
+
+		if (monitor != null)
+			monitor.addMonitoring("pending", (names, values) -> {
+				names.add("pending_snapshots");
+				values.add(Double.valueOf(pending.size()));
+
+				names.add("tracked_jobs");
+				values.add(Double.valueOf(lastDelivery.size()));
+			});
+	}
+
+	private static void sendLoop() {
+		long retryDelay = interval;
+
+		while (true) {
+			try {
+				Thread.sleep(retryDelay);
+			}
+			catch (@SuppressWarnings("unused") final InterruptedException ie) {
+				return;
+			}
+
+			if (pending.isEmpty())
+				continue;
+
+			final List<JobLogLine> snapshots = new ArrayList<>(pending.values());
+
+			try {
+				jobLogSender.send(snapshots, killedJobs);
+			}
+			catch (final ServerException | RuntimeException e) {
+				final Long ownJobID = e instanceof JobKilledException ? JobLogSender.getOwnJobID() : null;
+
+				if (ownJobID != null) {
+					logger.log(Level.INFO, "Job " + ownJobID + " is not supposed to run any more", e);
+
+					killedJobs.add(ownJobID);
+					pending.remove(ownJobID);
+
+					continue;
+				}
+
+				pending.keySet().removeAll(killedJobs);
+
+				retryDelay = Math.min(retryDelay * 2, Math.max(maxRetryDelay, interval));
+
+				logger.log(Level.WARNING, "Cannot deliver the heartbeats of " + snapshots.size() + " jobs, retrying in " + retryDelay + "ms", e);
+
+				if (monitor != null)
+					monitor.incrementCounter("send_failures");
+
+				continue;
+			}
+
+			retryDelay = interval;
+
+			final Long now = Long.valueOf(System.currentTimeMillis());
+
+			for (final JobLogLine line : snapshots) {
+				final Long key = Long.valueOf(line.queueId);
+
+				// only if it was not replaced by a newer snapshot in the meantime
+				pending.remove(key, line);
+
+				if (!killedJobs.contains(key))
+					lastDelivery.computeIfPresent(key, (k, v) -> now);
+			}
+
+			if (monitor != null) {
+				monitor.incrementCounter("snapshots_sent", snapshots.size());
+				monitor.incrementCounter("batches_sent");
+				monitor.addMeasurement("batch_size", snapshots.size());
+			}
+		}
+	}
+}
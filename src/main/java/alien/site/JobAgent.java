@@ -1561,7 +1561,16 @@ public class JobAgent implements Runnable {
 		logger.log(Level.INFO, "+++++ Sending resources info +++++");
 		logger.log(Level.INFO, procinfo);
 
-		putJobLog("proc", procinfo);
+		if (finalReporting || !HeartbeatAggregator.enabled) {
+			HeartbeatAggregator.remove(queueId);
+			putJobLog("proc", procinfo);
+
+			// the final report carries the accounting, wait for it to be delivered, together with the trace lines queued before it
+			if (finalReporting && JobLogBuffer.enabled && !jobKilled && !JobLogBuffer.flush(60 * 1000))
+				logger.log(Level.WARNING, "The final resource report of job " + queueId + " was not delivered yet, it stays queued");
+		}
+		else if (!jobKilled && !HeartbeatAggregator.report(queueId, resubmission, procinfo))
+			jobKilled = true;
 
 		if (finalReporting) {
 			HashMap<String, Object> extrafields = new HashMap<>();
@@ -1689,7 +1698,7 @@ public class JobAgent implements Runnable {
 		if (jobKilled)
 			return false;
 
-		if (!commander.q_api.putJobLog(queueId, resubmission, key, value)) {
+		if (JobLogBuffer.enabled ? !JobLogBuffer.putJobLog(queueId, resubmission, key, value) : !commander.q_api.putJobLog(queueId, resubmission, key, value)) {
 			jobKilled = true;
 			return false;
 		}
@@ -2253,7 +2262,9 @@ public class JobAgent implements Runnable {
 	private final Runnable heartbeatMonitor(Process p) {
 		return () -> {
 			while (p.isAlive()) {
-				if (System.currentTimeMillis() - lastHeartbeat > 900000)
+				final long lastSent = HeartbeatAggregator.enabled ? Math.min(lastHeartbeat, HeartbeatAggregator.getLastDelivery(queueId)) : lastHeartbeat;
+
+				if (System.currentTimeMillis() - lastSent > 900000)
 					putJobTrace("WARNING: Something is preventing the sending of heartbeats/resource info!");
 				try {
 					Thread.sleep(60 * 1000);
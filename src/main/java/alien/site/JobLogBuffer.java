@@ -0,0 +1,335 @@
+package alien.site;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.api.ServerException;
+import alien.api.taskQueue.JobKilledException;
+import alien.api.taskQueue.PutJobLogBulk;
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.taskQueue.JobLogLine;
+
+/**
+ * Asynchronous sender of the job trace lines produced on the site. The lines of all the jobs running in this JVM are queued and shipped in order, in batches, with a {@link PutJobLogBulk}
+ * request. Delivery is retried until it succeeds. Queued lines are also appended to a spool file. If the process dies before it could send them, the next JobAgent starting on the same node
+ * sends them, so every line gets through at least once. The lines of the jobs that the central services have answered are not supposed to run any more are dropped from the queue, and their new
+ * lines are neither spooled nor sent.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class JobLogBuffer {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(JobLogBuffer.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(JobLogBuffer.class.getCanonicalName());
+
+	/**
+	 * Whether the site components should send their traces through this buffer or synchronously, one by one
+	 */
+	public static final boolean enabled = ConfigUtils.getConfig().getb("alien.site.JobLogBuffer.enabled", true);
+
+	/**
+	 * How long to wait for more lines before sending a batch, in milliseconds
+	 */
+	private static final long linger = ConfigUtils.getConfig().getl("alien.site.JobLogBuffer.linger", 2000);
+
+	/**
+	 * Maximum number of lines in one request
+	 */
+	private static final int maxBatchSize = ConfigUtils.getConfig().geti("alien.site.JobLogBuffer.maxBatchSize", 500);
+
+	/**
+	 * Upper limit of the delay between retries, in milliseconds
+	 */
+	private static final long maxRetryDelay = ConfigUtils.getConfig().getl("alien.site.JobLogBuffer.maxRetryDelay", 60) * 1000;
+
+	/**
+	 * How long to keep trying to send the remaining lines when the JVM exits, in milliseconds
+	 */
+	private static final long shutdownTimeout = ConfigUtils.getConfig().getl("alien.site.JobLogBuffer.shutdownTimeout", 10) * 1000;
+
+	/**
+	 * Where the not yet delivered lines are spooled
+	 */
+	private static final String spoolDir = ConfigUtils.getConfig().gets("alien.site.JobLogBuffer.spoolDir", System.getProperty("java.io.tmpdir") + "/jalien-joblog-spool");
+
+	/**
+	 * Number of lines after which a new spool file is started
+	 */
+	private static final int spoolFileLines = ConfigUtils.getConfig().geti("alien.site.JobLogBuffer.spoolFileLines", 10000);
+
+	/**
+	 * A queued line and its position in the sending order
+	 */
+	private static final class Entry {
+		final long seq;
+		final JobLogLine line;
+
+		Entry(final long seq, final JobLogLine line) {
+			this.seq = seq;
+			this.line = line;
+		}
+	}
+
+	private static final Object lock = new Object();
+
+	private static final LinkedList<Entry> queue = new LinkedList<>();
+
+	private static final JobLogSpool spool = new JobLogSpool(new File(spoolDir), spoolFileLines);
+
+	private static final JobLogSender jobLogSender = new JobLogSender("trace lines", PutJobLogBulk::new);
+
+	private static final Set<Long> killedJobs = ConcurrentHashMap.newKeySet();
+
+	private static long nextSeq = 0;
+
+	private static long ackedSeq = -1;
+
+	private static boolean flushRequested = false;
+
+	private static volatile Thread sender = null;
+
+	private JobLogBuffer() {
+		// static methods only
+	}
+
+	/**
+	 * Queue a trace line
+	 *
+	 * @param queueId
+	 * @param resubmission
+	 * @param tag
+	 * @param message
+	 * @return <code>false</code> if the job is known not to be supposed to run any more
+	 */
+	public static boolean putJobLog(final long queueId, final int resubmission, final String tag, final String message) {
+		if (killedJobs.contains(Long.valueOf(queueId)))
+			return false;
+
+		if (sender == null)
+			start();
+
+		final JobLogLine line = new JobLogLine(queueId, resubmission, System.currentTimeMillis(), tag, message);
+
+		synchronized (lock) {
+			enqueue(line);
+
+			lock.notifyAll();
+		}
+
+		if (monitor != null)
+			monitor.incrementCounter("lines_queued");
+
+		return true;
+	}
+
+	/**
+	 * @param queueId
+	 * @return <code>true</code> if the central services have answered that this job is not supposed to run any more
+	 */
+	public static boolean isKilled(final long queueId) {
+		return killedJobs.contains(Long.valueOf(queueId));
+	}
+
+	/**
+	 * Send everything that was queued so far, without waiting for more lines to come
+	 *
+	 * @param timeout
+	 *            how long to wait for the delivery, in milliseconds
+	 * @return <code>true</code> if all the lines queued before this call were delivered
+	 */
+	public static boolean flush(final long timeout) {
+		final long deadline = System.currentTimeMillis() + timeout;
+
+		synchronized (lock) {
+			final long target = nextSeq - 1;
+
+			flushRequested = true;
+			lock.notifyAll();
+
+			while (ackedSeq < target) {
+				final long remaining = deadline - System.currentTimeMillis();
+
+				if (remaining <= 0)
+					return false;
+
+				try {
+					lock.wait(remaining);
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static void enqueue(final JobLogLine line) {
+		// the central services would only drop it, so it is neither spooled nor sent again
+		if (killedJobs.contains(Long.valueOf(line.queueId)))
+			return;
+
+		final Entry e = new Entry(nextSeq++, line);
+
+		queue.add(e);
+
+		spool.append(e.seq, line);
+	}
+
+	private static synchronized void start() {
+		if (sender != null)
+			return;
+
+		// a job token is no longer accepted once its job is over, the lines left behind by other processes are sent by the next JobAgent
+		if (JobLogSender.getOwnJobID() == null)
+			synchronized (lock) {
+				final int recovered = spool.recover(JobLogBuffer::enqueue);
+
+				if (recovered > 0 && monitor != null)
+					monitor.incrementCounter("lines_recovered", recovered);
+			}
+
+		sender = new Thread(JobLogBuffer::sendLoop, "JobLogBuffer");
+		sender.setDaemon(true);
+		sender.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			if (!flush(shutdownTimeout))
+				logger.log(Level.WARNING, "Could not deliver all the trace lines before exiting, they are left in " + spoolDir);
+		}, "JobLogBuffer.shutdown"));
+
+		if (monitor != null)
+			monitor.addMonitoring("queue", (names, values) -> {
+				names.add("queue_length");
+
+				synchronized (lock) {
+					values.add(Double.valueOf(queue.size()));
+				}
+			});
+	}
+
+	private static void sendLoop() {
+		long retryDelay = 1000;
+
+		while (true) {
+			final List<Entry> batch = new ArrayList<>();
+
+			synchronized (lock) {
+				try {
+					while (queue.isEmpty())
+						lock.wait();
+
+					if (!flushRequested && queue.size() < maxBatchSize)
+						lock.wait(linger);
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					return;
+				}
+
+				final Iterator<Entry> it = queue.iterator();
+
+				while (it.hasNext() && batch.size() < maxBatchSize)
+					batch.add(it.next());
+			}
+
+			final List<JobLogLine> lines = new ArrayList<>(batch.size());
+
+			for (final Entry e : batch)
+				lines.add(e.line);
+
+			try {
+				jobLogSender.send(lines, killedJobs);
+			}
+			catch (final ServerException | RuntimeException e) {
+				final Long ownJobID = e instanceof JobKilledException ? JobLogSender.getOwnJobID() : null;
+
+				if (ownJobID != null) {
+					logger.log(Level.INFO, "Job " + ownJobID + " is not supposed to run any more, dropping its trace lines", e);
+
+					killedJobs.add(ownJobID);
+
+					synchronized (lock) {
+						acknowledge(0);
+					}
+
+					continue;
+				}
+
+				logger.log(Level.WARNING, "Cannot deliver " + lines.size() + " trace lines, retrying in " + retryDelay + "ms", e);
+
+				// the jobs found to be killed before the failure don't get their lines sent again
+				synchronized (lock) {
+					acknowledge(0);
+				}
+
+				if (monitor != null)
+					monitor.incrementCounter("send_failures");
+
+				try {
+					Thread.sleep(retryDelay);
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					return;
+				}
+
+				retryDelay = Math.min(retryDelay * 2, maxRetryDelay);
+
+				continue;
+			}
+
+			retryDelay = 1000;
+
+			if (monitor != null) {
+				monitor.incrementCounter("lines_sent", lines.size());
+				monitor.addMeasurement("batch_size", lines.size());
+			}
+
+			synchronized (lock) {
+				acknowledge(batch.size());
+			}
+		}
+	}
+
+	/**
+	 * Drop the first lines of the queue, that were just delivered, and all the lines of the jobs that are not supposed to run any more, then the spool files that are no longer needed. To
+	 * be called with the lock held.
+	 *
+	 * @param delivered
+	 *            how many lines were delivered
+	 */
+	private static void acknowledge(final int delivered) {
+		for (int i = 0; i < delivered; i++)
+			queue.removeFirst();
+
+		if (!killedJobs.isEmpty())
+			queue.removeIf((e) -> killedJobs.contains(Long.valueOf(e.line.queueId)));
+
+		// the queue is in sending order, everything before its first line is dealt with
+		ackedSeq = (queue.isEmpty() ? nextSeq : queue.getFirst().seq) - 1;
+
+		if (queue.isEmpty())
+			flushRequested = false;
+
+		spool.acknowledge(ackedSeq, queue.isEmpty());
+
+		lock.notifyAll();
+	}
+}
@@ -0,0 +1,139 @@
+package alien.site;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.api.Dispatcher;
+import alien.api.ServerException;
+import alien.api.taskQueue.JobKilledException;
+import alien.api.taskQueue.PutJobLog;
+import alien.api.taskQueue.PutJobLogBulk;
+import alien.catalogue.access.AuthorizationFactory;
+import alien.config.ConfigUtils;
+import alien.taskQueue.JobLogLine;
+import alien.user.AliEnPrincipal;
+
+/**
+ * Delivery of a batch of job trace lines with one bulk request. Central services that don't know the bulk request yet drop the connection instead of answering, and so does a network problem.
+ * The two are told apart by sending the first line alone with a {@link PutJobLog}: if that one gets an answer, the rest of the lines are sent one by one and the bulk request is not tried again
+ * for a while. Any other failure is left to the caller to retry.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class JobLogSender {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(JobLogSender.class.getCanonicalName());
+
+	/**
+	 * How long to keep sending the lines one by one once the central services have shown they don't know the bulk request, in milliseconds
+	 */
+	private static final long bulkRetryInterval = ConfigUtils.getConfig().getl("alien.site.JobLogSender.bulkRetryInterval", 600) * 1000;
+
+	private final String what;
+
+	private final Function<List<JobLogLine>, ? extends PutJobLogBulk> bulkRequest;
+
+	private long bulkRetryAfter = 0;
+
+	/**
+	 * @param what
+	 *            what is being sent, for the log messages
+	 * @param bulkRequest
+	 *            how to wrap a batch in a bulk request
+	 */
+	JobLogSender(final String what, final Function<List<JobLogLine>, ? extends PutJobLogBulk> bulkRequest) {
+		this.what = what;
+		this.bulkRequest = bulkRequest;
+	}
+
+	/**
+	 * Deliver the lines. Only to be called by one thread at a time.
+	 *
+	 * @param lines
+	 * @param killed
+	 *            the jobs that are known not to be supposed to run any more. Their lines are not sent, and the jobs that the central services answer so for are added to it as soon as they are
+	 *            known, even if the delivery of the other lines fails afterwards.
+	 * @throws JobKilledException
+	 *             if the job this process runs as (see {@link #getOwnJobID()}) is not supposed to run any more. The lines of the other jobs are not known to be delivered.
+	 * @throws ServerException
+	 *             if the lines could not be delivered and should be sent again later
+	 */
+	void send(final List<JobLogLine> lines, final Set<Long> killed) throws ServerException {
+		final List<JobLogLine> toSend = new ArrayList<>(lines.size());
+
+		for (final JobLogLine line : lines)
+			if (!killed.contains(Long.valueOf(line.queueId)))
+				toSend.add(line);
+
+		if (toSend.isEmpty())
+			return;
+
+		int from = 0;
+
+		if (System.currentTimeMillis() >= bulkRetryAfter) {
+			final PutJobLogBulk reply = Dispatcher.execute(bulkRequest.apply(toSend));
+
+			if (reply != null) {
+				if (reply.getKilledJobs() != null)
+					killed.addAll(reply.getKilledJobs());
+
+				return;
+			}
+
+			if (!sendOne(toSend.get(0), killed))
+				throw new ServerException("No answer from the central services to the " + what, null);
+
+			logger.log(Level.INFO, "The central services don't know the bulk request for the " + what + ", sending them one by one for the next " + (bulkRetryInterval / 1000) + "s");
+
+			bulkRetryAfter = System.currentTimeMillis() + bulkRetryInterval;
+
+			from = 1;
+		}
+
+		for (final JobLogLine line : toSend.subList(from, toSend.size()))
+			if (!killed.contains(Long.valueOf(line.queueId)) && !sendOne(line, killed))
+				throw new ServerException("No answer from the central services to the trace line of job " + line.queueId, null);
+	}
+
+	/**
+	 * Send a single line
+	 *
+	 * @param line
+	 * @param killed
+	 *            where to add the job of the line if it is not supposed to run any more
+	 * @return <code>false</code> if there was no answer at all
+	 */
+	private static boolean sendOne(final JobLogLine line, final Set<Long> killed) throws ServerException {
+		try {
+			return Dispatcher.execute(new PutJobLog(line.queueId, line.resubmission, line.tag, line.message, line.timestamp)) != null;
+		}
+		catch (final JobKilledException e) {
+			// either the line's job or the job token of this process was rejected, the same thing if they are the same job
+			final Long ownJobID = getOwnJobID();
+
+			if (ownJobID != null && ownJobID.longValue() != line.queueId)
+				throw e;
+
+			killed.add(Long.valueOf(line.queueId));
+
+			return true;
+		}
+	}
+
+	/**
+	 * @return the job ID of the job token this process runs with, or <code>null</code> if it doesn't run with one (a JobAgent)
+	 */
+	static Long getOwnJobID() {
+		final AliEnPrincipal identity = AuthorizationFactory.getDefaultUser();
+
+		return identity != null && identity.isJob() ? identity.getJobID() : null;
+	}
+}
@@ -0,0 +1,342 @@
+package alien.site;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+import alien.taskQueue.JobLogLine;
+
+/**
+ * On-disk copy of the trace lines queued by {@link JobLogBuffer} and not delivered yet. The lines go to a sequence of files in a directory shared by all the processes of the node, each file
+ * locked by the process writing it. The lock goes away with the process, however it ended, so any file that can be locked was left behind by a process that is gone.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class JobLogSpool {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(JobLogSpool.class.getCanonicalName());
+
+	private static final String SPOOL_SUFFIX = ".spool";
+
+	/**
+	 * An empty file could be one that another process has just created and not locked yet
+	 */
+	private static final long EMPTY_FILE_GRACE = 1000 * 60;
+
+	/**
+	 * A spool file, locked for as long as it is written to, and the last line that was written to it
+	 */
+	private static final class SpoolFile {
+		final File file;
+		final FileOutputStream fos;
+		final BufferedWriter writer;
+		int lines = 0;
+		long lastSeq = -1;
+
+		SpoolFile(final File dir, final long firstSeq) throws IOException {
+			file = File.createTempFile("joblog-" + System.currentTimeMillis() + "-" + firstSeq + "-", SPOOL_SUFFIX, dir);
+			fos = new FileOutputStream(file, true);
+
+			FileLock lock = null;
+
+			try {
+				lock = fos.getChannel().tryLock();
+			}
+			catch (final IOException | OverlappingFileLockException e) {
+				logger.log(Level.FINE, "Cannot lock " + file, e);
+			}
+
+			if (lock == null) {
+				fos.close();
+				file.delete();
+
+				throw new IOException("Cannot lock " + file);
+			}
+
+			writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Close the file, which also releases the lock
+		 */
+		void close() {
+			try {
+				writer.close();
+			}
+			catch (final IOException e) {
+				logger.log(Level.FINE, "Cannot close " + file, e);
+			}
+		}
+	}
+
+	private final File dir;
+
+	private final int fileLines;
+
+	private final LinkedList<SpoolFile> files = new LinkedList<>();
+
+	private boolean usable = true;
+
+	/**
+	 * @param dir
+	 *            where to keep the files
+	 * @param fileLines
+	 *            number of lines after which a new file is started
+	 */
+	JobLogSpool(final File dir, final int fileLines) {
+		this.dir = dir;
+		this.fileLines = fileLines;
+	}
+
+	/**
+	 * @return where the files are kept
+	 */
+	File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Append a line to the current file, starting a new file when needed
+	 *
+	 * @param seq
+	 *            position of the line in the sending order
+	 * @param line
+	 */
+	void append(final long seq, final JobLogLine line) {
+		if (!usable)
+			return;
+
+		try {
+			SpoolFile current = files.peekLast();
+
+			if (current == null || current.lines >= fileLines) {
+				if (!dir.exists() && !dir.mkdirs())
+					throw new IOException("Cannot create " + dir);
+
+				current = new SpoolFile(dir, seq);
+				files.add(current);
+			}
+
+			current.writer.write(line.queueId + "\t" + line.resubmission + "\t" + line.timestamp + "\t" + escape(line.tag) + "\t" + escape(line.message) + "\n");
+			current.writer.flush();
+
+			current.lines++;
+			current.lastSeq = seq;
+		}
+		catch (final IOException ioe) {
+			logger.log(Level.WARNING, "Cannot spool the trace lines to " + dir + ", they will only be kept in memory", ioe);
+			usable = false;
+		}
+	}
+
+	/**
+	 * Remove the files whose lines were all delivered
+	 *
+	 * @param ackedSeq
+	 *            all the lines up to this one were delivered
+	 * @param all
+	 *            whether there is nothing left to deliver, in which case the file still being written to is removed too
+	 */
+	void acknowledge(final long ackedSeq, final boolean all) {
+		final Iterator<SpoolFile> it = files.iterator();
+
+		while (it.hasNext()) {
+			final SpoolFile sf = it.next();
+
+			if (sf.lastSeq > ackedSeq)
+				break;
+
+			if (sf == files.peekLast() && !all)
+				break;
+
+			sf.close();
+
+			if (!sf.file.delete())
+				logger.log(Level.WARNING, "Cannot delete the delivered spool file " + sf.file);
+
+			it.remove();
+		}
+	}
+
+	/**
+	 * Stop writing, leaving the files behind as if the process had died
+	 */
+	void close() {
+		for (final SpoolFile sf : files)
+			sf.close();
+
+		files.clear();
+		usable = false;
+	}
+
+	/**
+	 * Take over the files left behind by processes that are gone, oldest first
+	 *
+	 * @param consumer
+	 *            gets the lines of each file, in order
+	 * @return number of recovered lines
+	 */
+	int recover(final Consumer<JobLogLine> consumer) {
+		final File[] leftovers = dir.listFiles((d, name) -> name.endsWith(SPOOL_SUFFIX));
+
+		if (leftovers == null || leftovers.length == 0)
+			return 0;
+
+		Arrays.sort(leftovers, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+
+		int total = 0;
+
+		for (final File f : leftovers) {
+			try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+				final FileLock lock;
+
+				try {
+					lock = raf.getChannel().tryLock();
+				}
+				catch (@SuppressWarnings("unused") final OverlappingFileLockException e) {
+					// one of the files of this process
+					continue;
+				}
+
+				// still written to by a running process
+				if (lock == null)
+					continue;
+
+				// already taken over by another process while waiting for the lock, or just created by one
+				if (!f.exists() || (raf.length() == 0 && System.currentTimeMillis() - f.lastModified() < EMPTY_FILE_GRACE))
+					continue;
+
+				final List<JobLogLine> lines = read(new BufferedReader(new InputStreamReader(Channels.newInputStream(raf.getChannel()), StandardCharsets.UTF_8)));
+
+				for (final JobLogLine line : lines)
+					consumer.accept(line);
+
+				logger.log(Level.INFO, "Recovered " + lines.size() + " undelivered trace lines from " + f);
+
+				total += lines.size();
+
+				// they are now in a file of this process, unless spooling doesn't work here
+				if (usable && !f.delete())
+					logger.log(Level.WARNING, "Cannot delete the recovered spool file " + f);
+			}
+			catch (final IOException ioe) {
+				logger.log(Level.WARNING, "Cannot read the spool file " + f, ioe);
+			}
+		}
+
+		return total;
+	}
+
+	private static List<JobLogLine> read(final BufferedReader br) throws IOException {
+		final List<JobLogLine> lines = new ArrayList<>();
+
+		String s;
+
+		while ((s = br.readLine()) != null) {
+			final String[] parts = s.split("\t", -1);
+
+			if (parts.length != 5)
+				continue;
+
+			try {
+				lines.add(new JobLogLine(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]), unescape(parts[3]), unescape(parts[4])));
+			}
+			catch (@SuppressWarnings("unused") final NumberFormatException nfe) {
+				// a partially written line
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * @param s
+	 * @return the value on a single line and without tabs, <code>null</code> included
+	 */
+	static String escape(final String s) {
+		if (s == null)
+			return "\\0";
+
+		final StringBuilder sb = new StringBuilder(s.length() + 8);
+
+		for (final char c : s.toCharArray())
+			switch (c) {
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					sb.append(c);
+			}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @param s
+	 * @return the original value of an {@link #escape(String)}d one
+	 */
+	static String unescape(final String s) {
+		if (s.equals("\\0"))
+			return null;
+
+		final StringBuilder sb = new StringBuilder(s.length());
+
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+
+			if (c == '\\' && i + 1 < s.length()) {
+				final char next = s.charAt(++i);
+
+				switch (next) {
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					default:
+						sb.append(next);
+				}
+			}
+			else
+				sb.append(c);
+		}
+
+		return sb.toString();
+	}
+}
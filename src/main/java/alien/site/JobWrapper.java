@@ -18,6 +18,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,12 +36,14 @@ import java.util.regex.Pattern;
 import alien.api.Request;
 import alien.api.TomcatServer;
 import alien.api.catalogue.CatalogueApiUtils;
+import alien.api.catalogue.PFNforReadBulk;
 import alien.api.taskQueue.TaskQueueApiUtils;
 import alien.catalogue.FileSystemUtils;
 import alien.catalogue.LFN;
 import alien.catalogue.PFN;
 import alien.catalogue.XmlCollection;
 import alien.config.ConfigUtils;
+import alien.io.Checksums;
 import alien.io.IOUtils;
 import alien.io.protocols.SciTag;
 import alien.monitoring.Monitor;
@@ -833,18 +836,33 @@ public final class JobWrapper implements MonitoringObject, Runnable {
 			localFiles.put(l, localFile);
 		}
 
+		// the read envelopes of all the input files in one round trip
+		final List<String> inputLFNs = new ArrayList<>(iFiles.size());
+
+		for (final LFN l : iFiles)
+			inputLFNs.add(l.getCanonicalName());
+
+		final PFNforReadBulk inputReplicas = c_api.getPFNsToRead(inputLFNs, null, null);
+
+		// all the input files are downloaded in parallel, files with the same name go to separate subdirectories
+		final Map<LFN, File> targets = new LinkedHashMap<>(localFiles.size());
+		final Set<File> plannedTargets = new HashSet<>();
+
 		int duplicates = 0;
 		for (final Map.Entry<LFN, File> entry : localFiles.entrySet()) {
 			File f = entry.getValue();
 
-			if (f.exists()) {
+			if (f.exists() || plannedTargets.contains(f)) {
 				duplicates++;
 				f = new File(currentDir + "/" + duplicates, f.getName());
-				f.mkdir();
+				f.getParentFile().mkdir();
 				logger.log(Level.WARNING, "Warning: Could not download to " + entry.getValue().getAbsolutePath() + ". Already exists. Will instead use: " + f.getAbsolutePath());
 				// putJobTrace("Warning: Could not download to " + entry.getValue().getAbsolutePath() + ". Already exists. Will instead use: " + f.getAbsolutePath());
 			}
 
+			plannedTargets.add(f);
+			targets.put(entry.getKey(), f);
+
 			if (inputDataList != null) {
 				if (inputDataList.startsWith("<?xml"))
 					inputDataList = inputDataList.replace("turl=\"alien://" + entry.getKey().getCanonicalName(), "turl=\"file:///" + f.getAbsolutePath()); // xmlcollection format here does not match AliEn
@@ -853,30 +871,31 @@ public final class JobWrapper implements MonitoringObject, Runnable {
 			}
 
 			putJobTrace("Getting InputFile: " + entry.getKey().getCanonicalName() + " to " + f.getAbsolutePath() + " (" + Format.size(entry.getKey().size) + ")");
+		}
 
-			commander.clearLastError();
+		commander.clearLastError();
 
-			final JAliEnCommandcp cp = new JAliEnCommandcp(commander, Arrays.asList(entry.getKey().getCanonicalName(), "file:" + f.getAbsolutePath()));
+		final JAliEnCommandcp cp = new JAliEnCommandcp(commander, Arrays.asList(iFiles.get(0).getCanonicalName(), "file:" + currentDir.getAbsolutePath()));
 
-			final File copyResult = cp.copyGridToLocal(entry.getKey(), f);
+		final Map<LFN, File> copyResults = cp.copyGridToLocal(targets, inputReplicas);
 
-			if (copyResult == null) {
+		for (final Map.Entry<LFN, File> entry : copyResults.entrySet())
+			if (entry.getValue() == null) {
 				final String commanderError = commander.getLastErrorMessage();
 
-				logger.log(Level.WARNING, "Could not download " + entry.getKey().getCanonicalName() + " to " + entry.getValue().getAbsolutePath() + ":\n" + commanderError);
+				logger.log(Level.WARNING, "Could not download " + entry.getKey().getCanonicalName() + " to " + targets.get(entry.getKey()).getAbsolutePath() + ":\n" + commanderError);
 
 				String traceLine = "ERROR: ";
 
 				if (commanderError != null)
 					traceLine += commanderError;
 				else
-					traceLine += "Could not download " + entry.getKey().getCanonicalName() + " to " + entry.getValue().getAbsolutePath();
+					traceLine += "Could not download " + entry.getKey().getCanonicalName() + " to " + targets.get(entry.getKey()).getAbsolutePath();
 
 				putJobTrace(traceLine);
 
 				return commander.getLastExitCode();
 			}
-		}
 
 		logger.log(Level.INFO, "Sandbox populated: " + currentDir.getAbsolutePath());
 
@@ -1016,6 +1035,20 @@ public final class JobWrapper implements MonitoringObject, Runnable {
 			return false;
 		}
 
+		// checksum all the standalone files in parallel, the archives got theirs while being created, so the uploads below don't have to read them again
+		final Map<File, OutputEntry> standaloneFiles = new LinkedHashMap<>();
+
+		for (final OutputEntry entry : toUpload)
+			if (!entry.isArchive()) {
+				final File localFile = new File(currentDir.getAbsolutePath() + "/" + entry.getName());
+
+				if (localFile.isFile() && localFile.canRead())
+					standaloneFiles.put(localFile, entry);
+			}
+
+		for (final Map.Entry<File, Checksums> checksums : Checksums.compute(standaloneFiles.keySet()).entrySet())
+			standaloneFiles.get(checksums.getKey()).setChecksums(checksums.getValue());
+
 		for (final OutputEntry entry : toUpload) {
 			try {
 				final File localFile = new File(currentDir.getAbsolutePath() + "/" + entry.getName());
@@ -1046,7 +1079,8 @@ public final class JobWrapper implements MonitoringObject, Runnable {
 						cpOptions.add("-nc");
 
 					final ByteArrayOutputStream out = new ByteArrayOutputStream();
-					final LFN uploadResult = IOUtils.upload(localFile, outputDir + "/" + entry.getName(), UserFactory.getByUsername(username), out, cpOptions.toArray(new String[0]));
+					final LFN uploadResult = IOUtils.upload(localFile, entry.getChecksums(localFile), outputDir + "/" + entry.getName(), UserFactory.getByUsername(username), out,
+							cpOptions.toArray(new String[0]));
 
 					final String output_upload = out.toString();
 					logger.log(Level.INFO,
@@ -1531,7 +1565,7 @@ public final class JobWrapper implements MonitoringObject, Runnable {
 		if (jobKilled)
 			return false;
 
-		if (!commander.q_api.putJobLog(queueId, resubmission, key, value)) {
+		if (JobLogBuffer.enabled ? !JobLogBuffer.putJobLog(queueId, resubmission, key, value) : !commander.q_api.putJobLog(queueId, resubmission, key, value)) {
 			jobKilled = true;
 			return false;
 		}
@@ -560,7 +560,12 @@ public class NUMAExplorer {
 	private void addPinningTraceLog(byte[] newMask, Integer jobId) {
 		long queueId = activeJAInstances.get(jobId).getQueueId();
 		int resubmission = activeJAInstances.get(jobId).getResubmission();
-		commander.q_api.putJobLog(queueId, resubmission, "proc", "Pinning job to CPUs " + arrayToTaskset(newMask));
+		final String message = "Pinning job to CPUs " + arrayToTaskset(newMask);
+
+		if (JobLogBuffer.enabled)
+			JobLogBuffer.putJobLog(queueId, resubmission, "proc", message);
+		else
+			commander.q_api.putJobLog(queueId, resubmission, "proc", message);
 	}
 
 	/**
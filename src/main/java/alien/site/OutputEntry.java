@@ -1,20 +1,18 @@
 package alien.site;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.zip.CRC32;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import alien.io.IOUtils;
+import alien.io.Checksums;
 
 /**
  * @author Miguel
@@ -33,6 +31,11 @@ public class OutputEntry implements Serializable {
 	private boolean isRootArchive;
 	private String asyncReplication = "";
 
+	/**
+	 * Checksums of the local file (the archive as it was written, or the standalone file), kept so that the upload doesn't have to read the file again
+	 */
+	private transient Checksums checksums = null;
+
 	/**
 	 *
 	 */
@@ -138,6 +141,23 @@ public class OutputEntry implements Serializable {
 		return isArchive() ? this.filesIncluded : new ArrayList<>();
 	}
 
+	/**
+	 * @param checksums
+	 *            checksums of the local file of this entry
+	 */
+	public void setChecksums(final Checksums checksums) {
+		this.checksums = checksums;
+	}
+
+	/**
+	 * @param localFile
+	 *            the local file of this entry
+	 * @return the checksums of the local file, or <code>null</code> if they are not known or the file has changed since they were computed
+	 */
+	public Checksums getChecksums(final File localFile) {
+		return checksums != null && checksums.matches(localFile) ? checksums : null;
+	}
+
 	/**
 	 * @return options
 	 */
@@ -167,89 +187,100 @@ public class OutputEntry implements Serializable {
 		if (this.filesIncluded == null)
 			return null;
 
-		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(path + this.name))) {
-			// output file
-			if (this.isRootArchive)
-				out.setMethod(ZipOutputStream.STORED);
+		final Map<String, File> members = new LinkedHashMap<>();
 
-			boolean hasPhysicalFiles = false;
+		for (final String file : this.filesIncluded) {
+			final File f = new File(path + file);
+			if (!f.exists() || !f.isFile() || !f.canRead() || f.length() <= 0) {
+				// filesIncluded.remove(file);
+				System.err.println("File " + file + " doesn't exist or cannot be read!. Is directory then?: " + f.isDirectory() + ". File after all?: " + f.isFile());
+				// throw new NullPointerException("File " + file + " for archive " + this.name + " doesn't exist or cannot be read!");
+				continue;
+			}
 
-			for (final String file : this.filesIncluded) {
-				final File f = new File(path + file);
-				if (!f.exists() || !f.isFile() || !f.canRead() || f.length() <= 0) {
-					// filesIncluded.remove(file);
-					System.err.println("File " + file + " doesn't exist or cannot be read!. Is directory then?: " + f.isDirectory() + ". File after all?: " + f.isFile());
-					// throw new NullPointerException("File " + file + " for archive " + this.name + " doesn't exist or cannot be read!");
-					continue;
-				}
-				hasPhysicalFiles = true;
+			members.put(file, f);
+		}
 
-				String md5 = null;
-				try {
-					md5 = IOUtils.getMD5(f);
-				}
-				catch (final Exception e1) {
-					System.err.println("Error calculating md5 of: " + file + ": " + e1.getMessage());
-					// filesIncluded.remove(file);
-					continue;
-				}
+		// checksum all members in parallel before writing anything, the ones that cannot be read are left out of the archive
+		final Map<File, Checksums> precomputed = Checksums.compute(members.values());
 
-				// Save md5 and size
-				sizemembers.put(file, Long.valueOf(f.length()));
-				md5members.put(file, md5);
+		for (final Map.Entry<String, File> member : members.entrySet()) {
+			final Checksums memberChecksums = precomputed.get(member.getValue());
 
-				// input file
-				try (FileInputStream in = new FileInputStream(path + file)) {
-					// name of the file inside the zip file
-					final ZipEntry entry = new ZipEntry(file);
+			if (memberChecksums == null) {
+				System.err.println("Error calculating md5 of: " + member.getKey());
+				continue;
+			}
+
+			// Save md5 and size
+			sizemembers.put(member.getKey(), Long.valueOf(memberChecksums.getSize()));
+			md5members.put(member.getKey(), memberChecksums.getMD5());
+		}
 
-					if (this.isRootArchive) {
-						final File fToAdd = new File(path + file);
-						entry.setSize(fToAdd.length());
-						entry.setCompressedSize(fToAdd.length());
-						entry.setCrc(getCRC32(fToAdd));
-					}
+		// Only keep files with md5
+		filesIncluded.retainAll(md5members.keySet());
 
-					out.putNextEntry(entry);
+		final File archive = new File(path + this.name);
 
-					final byte[] b = new byte[1024];
-					int count;
+		if (filesIncluded.isEmpty()) {
+			if (archive.exists() && !archive.delete())
+				System.err.println("Could not delete the previous " + archive.getAbsolutePath());
 
-					while ((count = in.read(b)) > 0)
-						out.write(b, 0, count);
+			return filesIncluded;
+		}
+
+		Checksums.ChecksummingOutputStream archiveChecksums = null;
+
+		try (ZipOutputStream out = new ZipOutputStream(archiveChecksums = new Checksums.ChecksummingOutputStream(new BufferedOutputStream(new FileOutputStream(archive))))) {
+			// output file
+			if (this.isRootArchive)
+				out.setMethod(ZipOutputStream.STORED);
+
+			for (final Map.Entry<String, File> member : members.entrySet()) {
+				final String file = member.getKey();
+
+				if (!md5members.containsKey(file))
+					continue;
+
+				final File f = member.getValue();
+				final Checksums memberChecksums = precomputed.get(f);
+
+				// name of the file inside the zip file
+				final ZipEntry entry = new ZipEntry(file);
+
+				if (this.isRootArchive) {
+					entry.setSize(memberChecksums.getSize());
+					entry.setCompressedSize(memberChecksums.getSize());
+					entry.setCrc(memberChecksums.getCRC32());
 				}
-			}
 
-			// Only keep files with md5
-			filesIncluded.retainAll(md5members.keySet());
+				out.putNextEntry(entry);
 
-			if (!hasPhysicalFiles)
-				Files.delete(Paths.get(path + this.name));
+				final Checksums written = Checksums.compute(f, out);
 
-		}
-		catch (final FileNotFoundException e) {
-			e.printStackTrace();
+				if (written.getSize() != memberChecksums.getSize() || written.getCRC32() != memberChecksums.getCRC32())
+					throw new IOException("File " + file + " has changed while it was being archived");
+			}
 		}
 		catch (final IOException e) {
+			// a member that is only partially written, or different from its checksum, makes the whole archive unusable
+			System.err.println("Could not create the archive " + archive.getAbsolutePath() + ", discarding it: " + e.getMessage());
 			e.printStackTrace();
-		}
 
-		return filesIncluded;
-	}
-
-	private static long getCRC32(final File fToAdd) throws FileNotFoundException, IOException {
-		final CRC32 crc32 = new CRC32();
-
-		final byte[] buff = new byte[8192];
+			if (archive.exists() && !archive.delete())
+				System.err.println("Could not delete the incomplete " + archive.getAbsolutePath());
 
-		try (FileInputStream fis = new FileInputStream(fToAdd)) {
-			int len;
+			sizemembers.clear();
+			md5members.clear();
+			filesIncluded.clear();
 
-			while ((len = fis.read(buff)) > 0)
-				crc32.update(buff, 0, len);
+			return filesIncluded;
 		}
 
-		return crc32.getValue();
+		// remember the checksums of the archive, so that the upload doesn't have to read it again
+		checksums = archiveChecksums.getChecksums(archive);
+
+		return filesIncluded;
 	}
 
 	@Override
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -52,6 +53,11 @@ public class JobBroker {
 	 */
 	static final Monitor monitor = MonitorFactory.getMonitor(JobBroker.class.getCanonicalName());
 
+	/**
+	 * How many times to try to claim a job when the matched group turns out to be empty (the in-memory index can be slightly behind the database)
+	 */
+	private static final int claimAttempts = ConfigUtils.getConfig().geti("alien.taskQueue.JobBroker.claimAttempts", 3);
+
 	private static long lastCVMFSRevisionCheck = 0;
 	private static long lastCVMFSRevisionModified = 0;
 	private static int lastCVMFSRevision = 0;
@@ -175,7 +181,7 @@ public class JobBroker {
 			// we got something back fitting all requirements :-)
 			if (waiting.containsKey("entryId")) {
 				logger.log(Level.INFO, "We have a job back");
-				matchAnswer = getWaitingJobForAgentId(waiting);
+				matchAnswer = claimWaitingJob(matchRequest, waiting);
 				if (matchAnswer.containsKey("Error"))
 					setRejectionReason(String.valueOf(matchAnswer.get("Error")), String.valueOf(matchRequest.get("CE")));
 			}
@@ -220,7 +226,7 @@ public class JobBroker {
 
 					if (waiting.containsKey("entryId")) {
 						logger.log(Level.INFO, "We have a job back for remote");
-						matchAnswer = getWaitingJobForAgentId(waiting);
+						matchAnswer = claimWaitingJob(matchRequest, waiting);
 					}
 					else {
 						if (!matchRequest.containsKey("CVMFS")) {
@@ -405,6 +411,30 @@ public class JobBroker {
 		return matchingCEs;
 	}
 
+	/**
+	 * Claim a job from the matched group. If the group was found empty in the database, which can happen when the match was answered by the {@link JobMatchIndex} or when another
+	 * agent was faster, match again and retry, a limited number of times.
+	 */
+	private static HashMap<String, Object> claimWaitingJob(final HashMap<String, Object> matchRequest, final HashMap<String, Object> firstMatch) {
+		HashMap<String, Object> waiting = firstMatch;
+
+		HashMap<String, Object> matchAnswer = getWaitingJobForAgentId(waiting);
+
+		for (int attempt = 1; attempt < claimAttempts && matchAnswer != null && Integer.valueOf(-2).equals(matchAnswer.get("Code")); attempt++) {
+			if (monitor != null)
+				monitor.incrementCounter("claim_retries");
+
+			waiting = getNumberWaitingForSite(matchRequest);
+
+			if (waiting == null || !waiting.containsKey("entryId"))
+				break;
+
+			matchAnswer = getWaitingJobForAgentId(waiting);
+		}
+
+		return matchAnswer;
+	}
+
 	private static HashMap<String, Object> getWaitingJobForAgentId(final HashMap<String, Object> waiting) {
 		try (DBFunctions db = TaskQueueUtils.getQueueDB()) {
 			if (db == null)
@@ -458,6 +488,7 @@ public class JobBroker {
 
 					if (stat.getUpdateCount() == 0) {
 						logger.log(Level.INFO, "No jobs to give back");
+						JobMatchIndex.exhausted(agentId.longValue());
 						job.put("Error", "No jobs to give back");
 						job.put("Code", Integer.valueOf(-2));
 						return job;
@@ -718,10 +749,14 @@ public class JobBroker {
 
 			final String CeRequirements = Objects.isNull(matchRequest.get("ce_requirements")) ? "" : matchRequest.get("ce_requirements").toString();
 
+			Set<Integer> userIds = null;
+			final Set<Integer> noUserIds = new HashSet<>();
+
 			matchRequest.putIfAbsent("Users", SiteMap.getFieldContentsFromCerequirements(CeRequirements, SiteMap.CE_FIELD.Users));
 			if (matchRequest.get("Users") != null && !((ArrayList<String>) matchRequest.get("Users")).isEmpty()) {
 				final ArrayList<String> users = (ArrayList<String>) matchRequest.get("Users");
 				String orconcat = " and (";
+				userIds = new HashSet<>();
 				for (final String user : users) {
 					final Integer userId = TaskQueueUtils.getUserId(user, true);
 
@@ -729,6 +764,7 @@ public class JobBroker {
 						where += orconcat + "userId = ?";
 						orconcat = " or ";
 						bindValues.add(userId);
+						userIds.add(userId);
 					}
 				}
 				where += ")";
@@ -743,6 +779,7 @@ public class JobBroker {
 					if (userId != null) {
 						where += " and userId != ? ";
 						bindValues.add(userId);
+						noUserIds.add(userId);
 					}
 				}
 			}
@@ -810,6 +847,15 @@ public class JobBroker {
 				}
 			}
 
+			final HashMap<String, Object> indexAnswer = JobMatchIndex.lookup(matchRequest, ret, userIds, noUserIds);
+
+			if (indexAnswer != null) {
+				if (logger.isLoggable(Level.FINE))
+					logger.log(Level.FINE, "Answered from the job match index: " + indexAnswer);
+
+				return indexAnswer;
+			}
+
 			db.setReadOnly(true);
 
 			if (isRemoteAccessAllowed) {
@@ -0,0 +1,58 @@
+package alien.taskQueue;
+
+import java.io.Serializable;
+
+/**
+ * One trace log line of a job, as it is queued on the site and shipped in bulk to the central services
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class JobLogLine implements Serializable {
+	private static final long serialVersionUID = 6418215036612452049L;
+
+	/**
+	 * Job ID
+	 */
+	public final long queueId;
+
+	/**
+	 * Resubmission counter of the job at the moment the line was produced
+	 */
+	public final int resubmission;
+
+	/**
+	 * Epoch time in milliseconds when the line was produced
+	 */
+	public final long timestamp;
+
+	/**
+	 * Kind of line (trace, proc, state ...)
+	 */
+	public final String tag;
+
+	/**
+	 * Message
+	 */
+	public final String message;
+
+	/**
+	 * @param queueId
+	 * @param resubmission
+	 * @param timestamp
+	 * @param tag
+	 * @param message
+	 */
+	public JobLogLine(final long queueId, final int resubmission, final long timestamp, final String tag, final String message) {
+		this.queueId = queueId;
+		this.resubmission = resubmission;
+		this.timestamp = timestamp;
+		this.tag = tag;
+		this.message = message;
+	}
+
+	@Override
+	public String toString() {
+		return queueId + "/" + resubmission + "@" + timestamp + " [" + tag + "] " + message;
+	}
+}
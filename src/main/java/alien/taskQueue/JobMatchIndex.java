@@ -0,0 +1,764 @@
+package alien.taskQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
+import lazyj.DBFunctions;
+
+/**
+ * In-memory copy of the waiting job groups (the JOBAGENT table), to answer the JobBroker matching queries without going to the database each time. The content is first loaded by the first
+ * matching query of the process, then reloaded periodically and on demand (when a new group is created), and the counters are adjusted locally when jobs are assigned or resubmitted in between. The structure is immutable once published, apart from the atomic counters, so
+ * the lookups don't take any lock. The database remains the authority: a job is only given out by the atomic UPDATE in {@link JobBroker}, and a failed claim zeroes the local counter of that group.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class JobMatchIndex {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(JobMatchIndex.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(JobMatchIndex.class.getCanonicalName());
+
+	private static final boolean enabled = ConfigUtils.getConfig().getb("alien.taskQueue.JobMatchIndex.enabled", true);
+
+	/**
+	 * Reload the full content this often, in milliseconds
+	 */
+	private static final long refreshInterval = ConfigUtils.getConfig().getl("alien.taskQueue.JobMatchIndex.refreshInterval", 30 * 1000);
+
+	/**
+	 * Minimum time between two reloads, even if new job groups show up more often
+	 */
+	private static final long minRefreshInterval = ConfigUtils.getConfig().getl("alien.taskQueue.JobMatchIndex.minRefreshInterval", 2 * 1000);
+
+	/**
+	 * Don't answer from a snapshot older than this (if the reloads fail), go to the database instead
+	 */
+	private static final long maxAge = ConfigUtils.getConfig().getl("alien.taskQueue.JobMatchIndex.maxAge", 3 * refreshInterval);
+
+	/**
+	 * One row of JOBAGENT
+	 */
+	static final class WaitingGroup {
+		final int entryId;
+
+		final AtomicInteger counter;
+
+		final double priority;
+		final double price;
+		final long oldestQueueId;
+
+		final long ttl;
+		final long disk;
+		final int cpucores;
+		final int userId;
+
+		/**
+		 * Lower case, comma separated lists as in the database (",SITE1,SITE2,")
+		 */
+		final String site;
+		final String ce;
+		final String noce;
+
+		final String packages;
+		final Pattern packagesPattern;
+
+		/**
+		 * Pattern for the CE partition list, <code>null</code> for jobs without partition restrictions
+		 */
+		final Pattern partitionPattern;
+
+		/**
+		 * Site Sonar constraint values, lower case column name to value (<code>null</code> if not set)
+		 */
+		final Map<String, String> constraints;
+
+		/**
+		 * The same values as LIKE patterns, for the "regex" type of constraints
+		 */
+		final Map<String, Pattern> constraintPatterns;
+
+		WaitingGroup(final DBFunctions db, final Collection<String> constraintColumns) {
+			entryId = db.geti("entryId");
+			counter = new AtomicInteger(db.geti("counter"));
+			priority = db.getd("priority");
+			price = db.getd("price");
+			oldestQueueId = db.getl("oldestQueueId");
+			ttl = db.getl("ttl");
+			disk = db.getl("disk");
+			cpucores = db.geti("cpucores");
+			userId = db.geti("userId");
+			site = db.gets("site").toLowerCase(Locale.ROOT);
+			ce = db.gets("ce").toLowerCase(Locale.ROOT);
+			noce = db.gets("noce").toLowerCase(Locale.ROOT);
+			packages = db.gets("packages");
+			packagesPattern = likeToPattern(packages);
+
+			final String partition = db.gets("partition");
+			partitionPattern = "%".equals(partition) ? null : likeToPattern("%," + partition + ",%");
+
+			if (constraintColumns.isEmpty()) {
+				constraints = Collections.emptyMap();
+				constraintPatterns = Collections.emptyMap();
+			}
+			else {
+				constraints = new HashMap<>(constraintColumns.size());
+				constraintPatterns = new HashMap<>(constraintColumns.size());
+
+				for (final String column : constraintColumns) {
+					final String value = db.gets(column, null);
+
+					if (value != null) {
+						final String key = column.toLowerCase(Locale.ROOT);
+
+						constraints.put(key, value);
+						constraintPatterns.put(key, likeToPattern(value));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same order as the "order by priority desc, price desc, oldestQueueId asc" of the SQL matching
+	 */
+	private static final Comparator<WaitingGroup> MATCH_ORDER = (g1, g2) -> {
+		int diff = Double.compare(g2.priority, g1.priority);
+
+		if (diff != 0)
+			return diff;
+
+		diff = Double.compare(g2.price, g1.price);
+
+		if (diff != 0)
+			return diff;
+
+		return Long.compare(g1.oldestQueueId, g2.oldestQueueId);
+	};
+
+	private static final WaitingGroup[] NO_GROUPS = new WaitingGroup[0];
+
+	private static final class Snapshot {
+		/**
+		 * All groups, in matching order
+		 */
+		final WaitingGroup[] all;
+
+		/**
+		 * Groups restricted to some sites, bucketed by (lower case) site name, each bucket in matching order
+		 */
+		final Map<String, WaitingGroup[]> bySite;
+
+		/**
+		 * Groups that can run on any site, in matching order
+		 */
+		final WaitingGroup[] anySite;
+
+		final Map<Integer, WaitingGroup> byId;
+
+		final long loaded = System.currentTimeMillis();
+
+		Snapshot(final List<WaitingGroup> groups) {
+			groups.sort(MATCH_ORDER);
+
+			all = groups.toArray(NO_GROUPS);
+
+			final Map<String, List<WaitingGroup>> sites = new HashMap<>();
+			final List<WaitingGroup> unrestricted = new ArrayList<>();
+
+			byId = new HashMap<>(groups.size() * 2);
+
+			for (final WaitingGroup g : all) {
+				byId.put(Integer.valueOf(g.entryId), g);
+
+				boolean hasSite = false;
+
+				for (final String s : g.site.split(",")) {
+					if (!s.isBlank()) {
+						sites.computeIfAbsent(s, (k) -> new ArrayList<>()).add(g);
+						hasSite = true;
+					}
+				}
+
+				if (!hasSite)
+					unrestricted.add(g);
+			}
+
+			bySite = new HashMap<>(sites.size() * 2);
+
+			for (final Map.Entry<String, List<WaitingGroup>> entry : sites.entrySet())
+				bySite.put(entry.getKey(), entry.getValue().toArray(NO_GROUPS));
+
+			anySite = unrestricted.toArray(NO_GROUPS);
+		}
+	}
+
+	private static volatile Snapshot snapshot = null;
+
+	private static volatile boolean dirty = true;
+
+	private static volatile long lastReload = 0;
+
+	private static final Thread refresher = new Thread("JobMatchIndex.refresher") {
+		@Override
+		public void run() {
+			while (true) {
+				final long now = System.currentTimeMillis();
+
+				if ((dirty && now - lastReload >= minRefreshInterval) || now - lastReload >= refreshInterval) {
+					try {
+						reload();
+					}
+					catch (final Exception e) {
+						logger.log(Level.SEVERE, "Exception reloading the JOBAGENT content", e);
+					}
+				}
+
+				try {
+					sleep(500);
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException e) {
+					return;
+				}
+			}
+		}
+	};
+
+	/**
+	 * Start loading the content, on the first matching request. The other processes that change the task queue only adjust the counters of a snapshot that they never load.
+	 */
+	private static synchronized void start() {
+		if (refresher.getState() != Thread.State.NEW)
+			return;
+
+		refresher.setDaemon(true);
+		refresher.start();
+
+		if (monitor != null)
+			monitor.addMonitoring("job_match_index", (names, values) -> {
+				final Snapshot s = snapshot;
+
+				if (s == null)
+					return;
+
+				names.add("index_age_ms");
+				values.add(Double.valueOf(System.currentTimeMillis() - s.loaded));
+
+				names.add("index_groups");
+				values.add(Double.valueOf(s.all.length));
+
+				long waiting = 0;
+
+				for (final WaitingGroup g : s.all)
+					waiting += Math.max(g.counter.get(), 0);
+
+				names.add("index_waiting_jobs");
+				values.add(Double.valueOf(waiting));
+			});
+	}
+
+	private JobMatchIndex() {
+		// static methods only
+	}
+
+	private static void reload() {
+		lastReload = System.currentTimeMillis();
+		dirty = false;
+
+		final HashMap<String, String> constraintCache = TaskQueueUtils.getConstraintCache();
+
+		final Set<String> constraintColumns = constraintCache != null ? new HashSet<>(constraintCache.keySet()) : Collections.emptySet();
+
+		try (DBFunctions db = TaskQueueUtils.getQueueDB(); Timing t = new Timing(monitor, "index_reload")) {
+			if (db == null)
+				return;
+
+			db.setReadOnly(true);
+			db.setQueryTimeout(60);
+
+			if (!db.query("SELECT * FROM JOBAGENT WHERE counter>0")) {
+				logger.log(Level.WARNING, "Could not load the JOBAGENT content");
+				return;
+			}
+
+			final List<WaitingGroup> groups = new ArrayList<>();
+
+			while (db.moveNext())
+				groups.add(new WaitingGroup(db, constraintColumns));
+
+			snapshot = new Snapshot(groups);
+
+			if (logger.isLoggable(Level.FINE))
+				logger.log(Level.FINE, "Loaded " + groups.size() + " waiting job groups in " + t);
+		}
+	}
+
+	/**
+	 * Convert a SQL LIKE pattern (as compared by MySQL, case insensitive) to a Java one
+	 */
+	static Pattern likeToPattern(final String like) {
+		final StringBuilder sb = new StringBuilder(like.length() + 16);
+
+		boolean escaped = false;
+
+		for (final char c : like.toCharArray()) {
+			if (escaped) {
+				sb.append(Pattern.quote(String.valueOf(c)));
+				escaped = false;
+			}
+			else if (c == '\\')
+				escaped = true;
+			else if (c == '%')
+				sb.append(".*");
+			else if (c == '_')
+				sb.append('.');
+			else
+				sb.append(Pattern.quote(String.valueOf(c)));
+		}
+
+		return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	}
+
+	private static boolean listContains(final String list, final String value) {
+		return list.contains("," + value + ",");
+	}
+
+	private static Long toLong(final Object o) {
+		if (o == null)
+			return null;
+
+		if (o instanceof Number)
+			return Long.valueOf(((Number) o).longValue());
+
+		try {
+			return Long.valueOf(Long.parseLong(o.toString().trim()));
+		}
+		catch (@SuppressWarnings("unused") final NumberFormatException nfe) {
+			return null;
+		}
+	}
+
+	/**
+	 * The conditions of one matching query, translated from the request map once, then checked against each group
+	 */
+	private static final class Criteria {
+		Long ttl = null;
+		Long disk = null;
+		Long cpucores = null;
+
+		List<String> sites = null;
+
+		String installedPackages = null;
+		boolean checkPackages = false;
+
+		String ce = null;
+
+		String partition = null;
+
+		Set<Integer> users = null;
+		Set<Integer> noUsers = null;
+
+		String cpusOperator = null;
+		long cpusValue = 0;
+
+		/**
+		 * Constraints to check, lower case column name to type. The value from the node is in {@link #constraintValues}, a missing value there means that the job must not ask for this constraint.
+		 */
+		Map<String, String> constraintTypes = null;
+		Map<String, String> constraintValues = null;
+
+		boolean matches(final WaitingGroup g) {
+			if (g.counter.get() <= 0)
+				return false;
+
+			if (ttl != null && g.ttl >= ttl.longValue())
+				return false;
+
+			if (disk != null && g.disk >= disk.longValue())
+				return false;
+
+			if (cpucores != null && g.cpucores > cpucores.longValue())
+				return false;
+
+			if (cpusOperator != null && !compare(g.cpucores, cpusOperator, cpusValue))
+				return false;
+
+			if (sites != null && g.site.length() > 0) {
+				boolean found = false;
+
+				for (final String s : sites)
+					if (listContains(g.site, s)) {
+						found = true;
+						break;
+					}
+
+				if (!found)
+					return false;
+			}
+
+			if (checkPackages && (installedPackages == null || !g.packagesPattern.matcher(installedPackages).matches()))
+				return false;
+
+			if (ce != null) {
+				if (g.ce.length() > 0 && !listContains(g.ce, ce))
+					return false;
+
+				if (listContains(g.noce, ce))
+					return false;
+			}
+
+			if (partition != null) {
+				if (g.partitionPattern == null || !g.partitionPattern.matcher(partition).matches())
+					return false;
+			}
+			else if (g.partitionPattern != null)
+				return false;
+
+			if (users != null && !users.contains(Integer.valueOf(g.userId)))
+				return false;
+
+			if (noUsers != null && noUsers.contains(Integer.valueOf(g.userId)))
+				return false;
+
+			if (constraintTypes != null)
+				for (final Map.Entry<String, String> entry : constraintTypes.entrySet()) {
+					final String column = entry.getKey();
+					final String jobValue = g.constraints.get(column);
+
+					if (jobValue == null)
+						continue;
+
+					final String nodeValue = constraintValues.get(column);
+
+					if (nodeValue == null)
+						return false;
+
+					if ("equality".equals(entry.getValue())) {
+						if (!nodeValue.equalsIgnoreCase(jobValue))
+							return false;
+					}
+					else if (!g.constraintPatterns.get(column).matcher(nodeValue).matches())
+						return false;
+				}
+
+			return true;
+		}
+
+		private static boolean compare(final long value, final String operator, final long reference) {
+			switch (operator) {
+				case ">=":
+					return value >= reference;
+				case "<=":
+					return value <= reference;
+				case ">":
+					return value > reference;
+				case "<":
+					return value < reference;
+				case "=":
+					return value == reference;
+				case "!=":
+					return value != reference;
+				default:
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * Answer a {@link JobBroker#getNumberWaitingForSite(HashMap)} query from memory.
+	 *
+	 * @param matchRequest
+	 *            request, after the JobBroker has filled in the Users / NoUsers lists
+	 * @param ret
+	 *            what the query should return: "entryId", "packages" or the default sum of counters
+	 * @param userIds
+	 *            allowed user IDs, or <code>null</code> if there is no such restriction
+	 * @param noUserIds
+	 *            user IDs that should not be matched, or <code>null</code>
+	 * @return the answer in the same format as the database query, or <code>null</code> if the query has to go to the database (index disabled or too old, remote agents, unsupported request)
+	 */
+	static HashMap<String, Object> lookup(final HashMap<String, Object> matchRequest, final String ret, final Set<Integer> userIds, final Set<Integer> noUserIds) {
+		if (enabled && snapshot == null)
+			start();
+
+		final HashMap<String, Object> matchAnswer = doLookup(matchRequest, ret, userIds, noUserIds);
+
+		if (monitor != null) {
+			if (matchAnswer != null)
+				monitor.incrementCacheHits("job_match_index");
+			else
+				monitor.incrementCacheMisses("job_match_index");
+		}
+
+		return matchAnswer;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static HashMap<String, Object> doLookup(final HashMap<String, Object> matchRequest, final String ret, final Set<Integer> userIds, final Set<Integer> noUserIds) {
+		final Snapshot s = snapshot;
+
+		if (!enabled || s == null || System.currentTimeMillis() - s.loaded > maxAge)
+			return null;
+
+		final boolean returnSum = ret == null || ret.startsWith("sum(");
+
+		if (!returnSum && !"entryId".equals(ret) && !"packages".equals(ret))
+			return null;
+
+		final Object remoteValue = matchRequest.get("Remote");
+
+		// the list of remote agents is only known to the database
+		if (remoteValue instanceof Number && ((Number) remoteValue).intValue() > 0)
+			return null;
+
+		final Criteria c = new Criteria();
+
+		if (matchRequest.containsKey("TTL") && (c.ttl = toLong(matchRequest.get("TTL"))) == null)
+			return null;
+
+		if (matchRequest.containsKey("Disk") && (c.disk = toLong(matchRequest.get("Disk"))) == null)
+			return null;
+
+		if (matchRequest.containsKey("CPUCores")) {
+			final Long cores = toLong(matchRequest.get("CPUCores"));
+
+			if (cores == null)
+				return null;
+
+			if (cores.longValue() != 0)
+				c.cpucores = cores;
+		}
+
+		if (matchRequest.containsKey("Site")) {
+			c.sites = new ArrayList<>();
+			c.sites.add(String.valueOf(matchRequest.get("Site")).toLowerCase(Locale.ROOT));
+
+			final Object extrasites = matchRequest.get("Extrasites");
+
+			if (extrasites != null)
+				for (final String site : (Collection<String>) extrasites)
+					c.sites.add(site.toLowerCase(Locale.ROOT));
+		}
+
+		if (!matchRequest.containsKey("CVMFS")) {
+			c.checkPackages = true;
+
+			final Object installed = matchRequest.containsKey("InstalledPackages") ? matchRequest.get("InstalledPackages") : matchRequest.get("Packages");
+
+			c.installedPackages = installed != null ? installed.toString() : null;
+		}
+
+		if (matchRequest.containsKey("CE"))
+			c.ce = String.valueOf(matchRequest.get("CE")).toLowerCase(Locale.ROOT);
+
+		if (matchRequest.containsKey("Partition") && !",,".equals(matchRequest.get("Partition")))
+			c.partition = String.valueOf(matchRequest.get("Partition"));
+
+		if (userIds != null)
+			c.users = userIds;
+
+		if (noUserIds != null && !noUserIds.isEmpty())
+			c.noUsers = noUserIds;
+
+		if (matchRequest.containsKey("RequiredCpusCe")) {
+			final Matcher m = Pattern.compile("\\s*(>=|<=|>|<|==|=|!=)\\s*([0-9]+)").matcher((String) matchRequest.get("RequiredCpusCe"));
+
+			if (m.matches()) {
+				c.cpusOperator = "==".equals(m.group(1)) ? "=" : m.group(1);
+				c.cpusValue = Long.parseLong(m.group(2));
+			}
+		}
+
+		final HashMap<String, String> constraintCache = TaskQueueUtils.getConstraintCache();
+
+		if (constraintCache != null && constraintCache.size() > 0) {
+			c.constraintTypes = new HashMap<>();
+			c.constraintValues = new HashMap<>();
+
+			for (final Map.Entry<String, String> entry : constraintCache.entrySet()) {
+				final String column = entry.getKey().toLowerCase(Locale.ROOT);
+
+				if (matchRequest.containsKey(entry.getKey())) {
+					final Object value = matchRequest.get(entry.getKey());
+
+					// a null value from the node doesn't restrict anything
+					if (value == null)
+						continue;
+
+					if (!"equality".equals(entry.getValue()) && !"regex".equals(entry.getValue()))
+						return null;
+
+					c.constraintValues.put(column, value.toString());
+				}
+
+				c.constraintTypes.put(column, entry.getValue());
+			}
+		}
+
+		try (Timing t = new Timing(monitor, "index_lookup")) {
+			final HashMap<String, Object> matchAnswer = new HashMap<>();
+			matchAnswer.put("Code", Integer.valueOf(0));
+
+			if (returnSum) {
+				long sum = 0;
+				boolean found = false;
+
+				for (final WaitingGroup g : candidates(s, c.sites))
+					if (c.matches(g)) {
+						sum += g.counter.get();
+						found = true;
+					}
+
+				// same as the value of a sum() over no rows
+				matchAnswer.put("Code", Integer.valueOf(1));
+				matchAnswer.put("counter", found ? String.valueOf(sum) : "");
+			}
+			else {
+				final WaitingGroup best = best(s, c);
+
+				if (best != null) {
+					matchAnswer.put("Code", Integer.valueOf(1));
+					matchAnswer.put(ret, "entryId".equals(ret) ? String.valueOf(best.entryId) : best.packages);
+				}
+				else if (monitor != null)
+					monitor.incrementCounter("index_no_match");
+			}
+
+			if (matchAnswer.get("Code").equals(Integer.valueOf(1))) {
+				matchAnswer.put("CE", matchRequest.get("CE"));
+				matchAnswer.put("Host", matchRequest.get("Host"));
+			}
+
+			return matchAnswer;
+		}
+	}
+
+	/**
+	 * @return the groups that can match the given sites (each group only once)
+	 */
+	private static Collection<WaitingGroup> candidates(final Snapshot s, final List<String> sites) {
+		if (sites == null)
+			return List.of(s.all);
+
+		final Map<WaitingGroup, Boolean> ret = new IdentityHashMap<>();
+
+		for (final WaitingGroup g : s.anySite)
+			ret.put(g, Boolean.TRUE);
+
+		for (final String site : sites)
+			for (final WaitingGroup g : s.bySite.getOrDefault(site, NO_GROUPS))
+				ret.put(g, Boolean.TRUE);
+
+		return ret.keySet();
+	}
+
+	/**
+	 * @return the first matching group in each of the relevant buckets, then the best of them
+	 */
+	private static WaitingGroup best(final Snapshot s, final Criteria c) {
+		if (c.sites == null)
+			return first(s.all, c, null);
+
+		WaitingGroup best = first(s.anySite, c, null);
+
+		for (final String site : c.sites)
+			best = first(s.bySite.getOrDefault(site, NO_GROUPS), c, best);
+
+		return best;
+	}
+
+	private static WaitingGroup first(final WaitingGroup[] bucket, final Criteria c, final WaitingGroup currentBest) {
+		for (final WaitingGroup g : bucket) {
+			// buckets are sorted, nothing better can follow
+			if (currentBest != null && MATCH_ORDER.compare(g, currentBest) >= 0)
+				return currentBest;
+
+			if (c.matches(g))
+				return g;
+		}
+
+		return currentBest;
+	}
+
+	/**
+	 * A job of this group was given out, or the group counter was decremented in the database
+	 *
+	 * @param entryId
+	 */
+	static void decrement(final long entryId) {
+		final Snapshot s = snapshot;
+
+		if (s == null)
+			return;
+
+		final WaitingGroup g = s.byId.get(Integer.valueOf((int) entryId));
+
+		if (g != null)
+			g.counter.updateAndGet((v) -> Math.max(v - 1, 0));
+	}
+
+	/**
+	 * The claim of a job from this group failed, the group is empty in the database although the index believed otherwise
+	 *
+	 * @param entryId
+	 */
+	static void exhausted(final long entryId) {
+		final Snapshot s = snapshot;
+
+		if (s == null)
+			return;
+
+		final WaitingGroup g = s.byId.get(Integer.valueOf((int) entryId));
+
+		if (g != null && g.counter.getAndSet(0) > 0 && monitor != null)
+			monitor.incrementCounter("index_stale_claims");
+	}
+
+	/**
+	 * A job was added to an existing group
+	 *
+	 * @param entryId
+	 */
+	static void increment(final long entryId) {
+		final Snapshot s = snapshot;
+
+		final WaitingGroup g = s != null ? s.byId.get(Integer.valueOf((int) entryId)) : null;
+
+		if (g != null)
+			g.counter.incrementAndGet();
+		else
+			// not known yet, or it was empty at the time of the last load
+			dirty = true;
+	}
+
+	/**
+	 * Something changed in a way that cannot be applied locally, reload the content soon
+	 */
+	static void invalidate() {
+		dirty = true;
+	}
+}
@@ -0,0 +1,620 @@
+package alien.taskQueue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+import alien.monitoring.Monitor;
+import alien.monitoring.MonitorFactory;
+import alien.monitoring.Timing;
+import lazyj.DBFunctions;
+import lazyj.DBFunctions.DBConnection;
+
+/**
+ * Group commit of the job status transitions and of the trace log lines. The calling threads queue their change and wait for it to be applied, while one writer thread per kind of change collects
+ * whatever is pending (lingering a few milliseconds to let more requests come in) and writes them with multi-row statements. Status transitions are applied in a single transaction that locks the
+ * affected rows, checks the old status constraint of each job, updates them with one statement per new status and inserts the corresponding trace lines. The changes of the same job are
+ * applied in the order they were queued, one per transaction. A batch that fails is rolled back and its callers are told right away to apply their change individually, as before, with the
+ * retries of the individual updates, so that no request waits for the writer to retry.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+final class JobUpdateBatcher {
+
+	/**
+	 * Logger
+	 */
+	static final Logger logger = ConfigUtils.getLogger(JobUpdateBatcher.class.getCanonicalName());
+
+	/**
+	 * Monitoring component
+	 */
+	static final Monitor monitor = MonitorFactory.getMonitor(JobUpdateBatcher.class.getCanonicalName());
+
+	/**
+	 * Whether or not to batch the updates
+	 */
+	static final boolean enabled = ConfigUtils.getConfig().getb("alien.taskQueue.JobUpdateBatcher.enabled", true);
+
+	/**
+	 * How long to wait for more changes to come in, in milliseconds, before writing a batch
+	 */
+	private static final long linger = ConfigUtils.getConfig().getl("alien.taskQueue.JobUpdateBatcher.linger", 5);
+
+	/**
+	 * Maximum number of changes in one batch
+	 */
+	private static final int maxBatchSize = ConfigUtils.getConfig().geti("alien.taskQueue.JobUpdateBatcher.maxBatchSize", 500);
+
+	private static final String STATE_LOG_TAG = "state";
+
+	/**
+	 * A change waiting to be written
+	 */
+	private abstract static class Pending {
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		/**
+		 * Set when the batch could not be written, the caller should then apply the change by itself
+		 */
+		boolean failed = false;
+
+		void complete(final boolean batchFailed) {
+			this.failed = batchFailed;
+			done.countDown();
+		}
+
+		boolean await() {
+			try {
+				done.await();
+				return true;
+			}
+			catch (@SuppressWarnings("unused") final InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * One job status transition, and what the database said about that job
+	 */
+	static final class StatusChange extends Pending {
+		final long queueId;
+		final JobStatus newStatus;
+		final JobStatus oldStatusConstraint;
+
+		/**
+		 * The job was found in QUEUE
+		 */
+		boolean found = false;
+
+		/**
+		 * Status before the change, if the job was found
+		 */
+		JobStatus oldStatus = null;
+
+		/**
+		 * The job was not in the expected state, nothing was done
+		 */
+		boolean rejected = false;
+
+		/**
+		 * The row was modified
+		 */
+		boolean updated = false;
+
+		long parentPID = 0;
+		int userId = 0;
+		int cpucores = 0;
+
+		StatusChange(final long queueId, final JobStatus newStatus, final JobStatus oldStatusConstraint) {
+			this.queueId = queueId;
+			this.newStatus = newStatus;
+			this.oldStatusConstraint = oldStatusConstraint;
+		}
+	}
+
+	/**
+	 * One JOBMESSAGES line
+	 */
+	private static final class LogLine extends Pending {
+		final Long timestamp;
+		final Long queueId;
+		final String message;
+		final String tag;
+
+		LogLine(final Long timestamp, final Long queueId, final String message, final String tag) {
+			this.timestamp = timestamp;
+			this.queueId = queueId;
+			this.message = message;
+			this.tag = tag;
+		}
+	}
+
+	private static final BlockingQueue<StatusChange> statusQueue = new LinkedBlockingQueue<>();
+
+	private static final BlockingQueue<LogLine> logQueue = new LinkedBlockingQueue<>();
+
+	/**
+	 * Writer thread of one kind of change. What the batch writer gives back is kept, in the same order, at the head of the next batch.
+	 */
+	static final class Writer<T extends Pending> extends Thread {
+		private final BlockingQueue<T> queue;
+
+		private final Function<List<T>, List<T>> batchWriter;
+
+		Writer(final String name, final BlockingQueue<T> queue, final Function<List<T>, List<T>> batchWriter) {
+			super(name);
+			this.queue = queue;
+			this.batchWriter = batchWriter;
+
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			final List<T> batch = new ArrayList<>(maxBatchSize);
+
+			while (true) {
+				try {
+					if (batch.isEmpty())
+						batch.add(queue.take());
+
+					final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+
+					while (batch.size() < maxBatchSize) {
+						if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0)
+							continue;
+
+						final long remaining = deadline - System.nanoTime();
+
+						if (remaining <= 0)
+							break;
+
+						final T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+						if (next == null)
+							break;
+
+						batch.add(next);
+					}
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					// flush what was collected so far
+				}
+
+				List<T> leftOver = null;
+
+				try {
+					leftOver = batchWriter.apply(batch);
+				}
+				catch (final Throwable t) {
+					logger.log(Level.SEVERE, "Exception writing a batch of " + batch.size() + " job updates", t);
+
+					for (final T item : batch)
+						item.complete(true);
+				}
+
+				batch.clear();
+
+				if (leftOver != null)
+					batch.addAll(leftOver);
+			}
+		}
+	}
+
+	private static Writer<StatusChange> statusWriter = null;
+
+	private static Writer<LogLine> logWriter = null;
+
+	private static synchronized void startWriters() {
+		if (statusWriter == null) {
+			statusWriter = new Writer<>("JobUpdateBatcher.status", statusQueue, JobUpdateBatcher::writeStatusBatch);
+			statusWriter.start();
+
+			logWriter = new Writer<>("JobUpdateBatcher.log", logQueue, (batch) -> {
+				writeLogBatch(batch);
+				return null;
+			});
+			logWriter.start();
+
+			if (monitor != null)
+				monitor.addMonitoring("queues", (names, values) -> {
+					names.add("status_queue_length");
+					values.add(Double.valueOf(statusQueue.size()));
+
+					names.add("log_queue_length");
+					values.add(Double.valueOf(logQueue.size()));
+				});
+		}
+	}
+
+	private JobUpdateBatcher() {
+		// static methods only
+	}
+
+	/**
+	 * Queue a status change and wait for it to be applied
+	 *
+	 * @param queueId
+	 * @param newStatus
+	 * @param oldStatusConstraint
+	 *            change the status only if the job is still in this state, can be <code>null</code>
+	 * @return the outcome of the change, or <code>null</code> if the batch failed and the caller has to apply the change by itself
+	 */
+	static StatusChange setStatus(final long queueId, final JobStatus newStatus, final JobStatus oldStatusConstraint) {
+		startWriters();
+
+		final StatusChange change = new StatusChange(queueId, newStatus, oldStatusConstraint);
+
+		statusQueue.add(change);
+
+		if (!change.await() || change.failed)
+			return null;
+
+		return change;
+	}
+
+	/**
+	 * Queue trace log lines of a job and wait for them to be written
+	 *
+	 * @param timestamp
+	 *            epoch time in seconds
+	 * @param queueId
+	 * @param message
+	 * @param tag
+	 * @param extraLines
+	 *            other tag to message lines to write at the same time, can be <code>null</code>
+	 * @return <code>true</code> if the lines were written, <code>false</code> if the batch failed and the caller should insert them by itself
+	 */
+	static boolean putJobLog(final Long timestamp, final Long queueId, final String message, final String tag, final Map<String, String> extraLines) {
+		startWriters();
+
+		final List<LogLine> lines = new ArrayList<>(1 + (extraLines != null ? extraLines.size() : 0));
+
+		lines.add(new LogLine(timestamp, queueId, message, tag));
+
+		if (extraLines != null)
+			for (final Map.Entry<String, String> entry : extraLines.entrySet())
+				lines.add(new LogLine(timestamp, queueId, entry.getValue(), entry.getKey()));
+
+		logQueue.addAll(lines);
+
+		boolean ok = true;
+
+		for (final LogLine line : lines)
+			ok = line.await() && !line.failed && ok;
+
+		return ok;
+	}
+
+	/**
+	 * Queue the trace log lines of any number of jobs and wait for them to be written
+	 *
+	 * @param lines
+	 * @return the lines that could not be written, that the caller should insert by itself (an empty list if all went fine)
+	 */
+	static List<JobLogLine> putJobLogs(final List<JobLogLine> lines) {
+		startWriters();
+
+		final List<LogLine> pending = new ArrayList<>(lines.size());
+
+		for (final JobLogLine line : lines)
+			pending.add(new LogLine(Long.valueOf(line.timestamp / 1000), Long.valueOf(line.queueId), line.message, line.tag));
+
+		logQueue.addAll(pending);
+
+		final List<JobLogLine> failed = new ArrayList<>();
+
+		for (int i = 0; i < pending.size(); i++) {
+			final LogLine line = pending.get(i);
+
+			if (!line.await() || line.failed)
+				failed.add(lines.get(i));
+		}
+
+		return failed;
+	}
+
+	private static String idList(final Iterable<Long> ids) {
+		final StringBuilder sb = new StringBuilder();
+
+		for (final Long id : ids) {
+			if (sb.length() > 0)
+				sb.append(',');
+
+			sb.append(id);
+		}
+
+		return sb.toString();
+	}
+
+	private static String statusUpdateExtra(final JobStatus newStatus) {
+		String extra = "";
+
+		if (newStatus == JobStatus.RUNNING)
+			extra = ",started=UNIX_TIMESTAMP()";
+
+		if (newStatus == JobStatus.ERROR_EW || newStatus == JobStatus.WAITING)
+			extra += ",resubmission=resubmission+1";
+
+		return extra;
+	}
+
+	/**
+	 * Two changes of the same job cannot be applied in the same transaction since the second one depends on the outcome of the first one. Keep only the first change of each job in the batch.
+	 *
+	 * @param batch
+	 *            the changes in the order they were queued, the repeated ones are removed from it
+	 * @return the changes that were removed, in their original order, to be the first ones of the next batch
+	 */
+	static List<StatusChange> deferRepeatedJobs(final List<StatusChange> batch) {
+		final Set<Long> jobs = new HashSet<>(batch.size());
+
+		List<StatusChange> deferred = null;
+
+		for (final Iterator<StatusChange> it = batch.iterator(); it.hasNext();) {
+			final StatusChange change = it.next();
+
+			if (!jobs.add(Long.valueOf(change.queueId))) {
+				if (deferred == null)
+					deferred = new ArrayList<>();
+
+				deferred.add(change);
+				it.remove();
+			}
+		}
+
+		return deferred;
+	}
+
+	private static List<StatusChange> writeStatusBatch(final List<StatusChange> batch) {
+		final List<StatusChange> deferred = deferRepeatedJobs(batch);
+
+		final Map<Long, StatusChange> changes = new LinkedHashMap<>();
+
+		for (final StatusChange change : batch)
+			changes.put(Long.valueOf(change.queueId), change);
+
+		final boolean logsInDB = !ConfigUtils.getConfig().getb("alien.taskQueue.TaskQueueUtils.sendUDPTraces", false);
+
+		boolean ok = false;
+
+		try (Timing t = new Timing(monitor, "status_batch_ms")) {
+			// same concurrency limit as for the individual updates
+			boolean acquired = false;
+
+			try {
+				TaskQueueUtils.limiter.acquire();
+				acquired = true;
+			}
+			catch (@SuppressWarnings("unused") final InterruptedException e) {
+				// the callers apply their changes by themselves
+			}
+
+			if (acquired)
+				try (DBFunctions db = TaskQueueUtils.getQueueDB()) {
+					final DBConnection dbc = db != null ? db.getConnection() : null;
+
+					if (dbc == null) {
+						logger.log(Level.WARNING, "Cannot get a database connection to apply " + changes.size() + " status changes");
+					}
+					else {
+						ok = applyStatusChanges(dbc, changes, logsInDB);
+
+						if (ok)
+							dbc.free();
+						else
+							dbc.close();
+					}
+				}
+				finally {
+					TaskQueueUtils.limiter.release();
+				}
+
+			if (monitor != null) {
+				monitor.addMeasurement("status_batch_size", changes.size());
+				monitor.incrementCounter(ok ? "status_batches" : "status_batches_failed");
+			}
+		}
+
+		if (ok && !logsInDB)
+			for (final StatusChange change : batch)
+				if (change.found && !change.rejected)
+					TaskQueueUtils.putJobLog(change.queueId, STATE_LOG_TAG, stateTransitionMessage(change), null);
+
+		for (final StatusChange change : batch)
+			change.complete(!ok);
+
+		return deferred;
+	}
+
+	/**
+	 * @param change
+	 * @return the trace message of a status transition
+	 */
+	static String stateTransitionMessage(final StatusChange change) {
+		return "Job state transition from " + change.oldStatus.name() + " to " + change.newStatus.name();
+	}
+
+	@SuppressWarnings("resource")
+	private static boolean applyStatusChanges(final DBConnection dbc, final Map<Long, StatusChange> changes, final boolean logsInDB) {
+		dbc.setReadOnly(false);
+
+		final Connection conn = dbc.getConnection();
+
+		try {
+			conn.setAutoCommit(false);
+
+			try (Statement stat = conn.createStatement()) {
+				stat.setQueryTimeout(120);
+
+				try (ResultSet rs = stat.executeQuery("SELECT queueId,statusId,split,userId,cpucores FROM QUEUE WHERE queueId IN (" + idList(changes.keySet()) + ") FOR UPDATE;")) {
+					while (rs.next()) {
+						final StatusChange change = changes.get(Long.valueOf(rs.getLong(1)));
+
+						if (change == null)
+							continue;
+
+						change.oldStatus = JobStatus.getStatusByAlien(Integer.valueOf(rs.getInt(2)));
+
+						if (change.oldStatus == null) {
+							logger.log(Level.WARNING, "Cannot get the status of " + change.queueId + " from " + rs.getInt(2));
+							continue;
+						}
+
+						change.found = true;
+						change.parentPID = rs.getLong(3);
+						change.userId = rs.getInt(4);
+						change.cpucores = rs.getInt(5);
+
+						if (change.oldStatusConstraint != null && change.oldStatus != change.oldStatusConstraint) {
+							change.rejected = true;
+
+							if (logger.isLoggable(Level.FINE))
+								logger.log(Level.FINE, "Refusing to do the update of " + change.queueId + " to state " + change.newStatus.name() + " because old status is not "
+										+ change.oldStatusConstraint.name() + " but " + change.oldStatus.name());
+						}
+					}
+				}
+			}
+
+			final Map<JobStatus, List<StatusChange>> byNewStatus = new EnumMap<>(JobStatus.class);
+			final List<StatusChange> applied = new ArrayList<>(changes.size());
+
+			for (final StatusChange change : changes.values())
+				if (change.found && !change.rejected) {
+					byNewStatus.computeIfAbsent(change.newStatus, (k) -> new ArrayList<>()).add(change);
+					applied.add(change);
+				}
+
+			for (final Map.Entry<JobStatus, List<StatusChange>> entry : byNewStatus.entrySet()) {
+				final String extra = statusUpdateExtra(entry.getKey());
+
+				final List<Long> ids = new ArrayList<>(entry.getValue().size());
+
+				// the rows are locked since the SELECT above, so whether each of them changes is already known, whether the driver counts the found or the changed rows
+				for (final StatusChange change : entry.getValue()) {
+					ids.add(Long.valueOf(change.queueId));
+					change.updated = change.oldStatus != change.newStatus || !extra.isEmpty();
+				}
+
+				try (PreparedStatement stat = conn.prepareStatement("UPDATE QUEUE SET statusId=?" + extra + " WHERE queueId IN (" + idList(ids) + ");")) {
+					stat.setQueryTimeout(120);
+					stat.setInt(1, entry.getKey().getAliEnLevel());
+					stat.executeUpdate();
+				}
+			}
+
+			if (logsInDB && applied.size() > 0) {
+				final Long now = Long.valueOf(System.currentTimeMillis() / 1000);
+
+				final List<LogLine> lines = new ArrayList<>(applied.size());
+
+				for (final StatusChange change : applied)
+					lines.add(new LogLine(now, Long.valueOf(change.queueId), stateTransitionMessage(change), STATE_LOG_TAG));
+
+				insertLogLines(conn, lines);
+			}
+
+			conn.commit();
+			conn.setAutoCommit(true);
+
+			return true;
+		}
+		catch (final SQLException e) {
+			logger.log(Level.WARNING, "Failed to apply a batch of " + changes.size() + " status changes, rolling back", e);
+
+			try {
+				conn.rollback();
+			}
+			catch (@SuppressWarnings("unused") final SQLException e1) {
+				// the connection is discarded anyway
+			}
+
+			for (final StatusChange change : changes.values()) {
+				change.found = change.rejected = change.updated = false;
+				change.oldStatus = null;
+			}
+
+			return false;
+		}
+	}
+
+	private static void insertLogLines(final Connection conn, final List<LogLine> lines) throws SQLException {
+		final StringBuilder q = new StringBuilder(64 + lines.size() * 14);
+
+		q.append("INSERT INTO JOBMESSAGES (timestamp, jobId, procinfo, tag) VALUES ");
+
+		for (int i = 0; i < lines.size(); i++)
+			q.append(i > 0 ? ",(?,?,?,?)" : "(?,?,?,?)");
+
+		try (PreparedStatement stat = conn.prepareStatement(q.toString())) {
+			stat.setQueryTimeout(60);
+
+			int idx = 1;
+
+			for (final LogLine line : lines) {
+				stat.setObject(idx++, line.timestamp);
+				stat.setObject(idx++, line.queueId);
+				stat.setString(idx++, line.message);
+				stat.setString(idx++, line.tag);
+			}
+
+			stat.executeUpdate();
+		}
+	}
+
+	private static void writeLogBatch(final List<LogLine> batch) {
+		boolean ok = false;
+
+		try (DBFunctions db = TaskQueueUtils.getQueueDB(); Timing t = new Timing(monitor, "log_batch_ms")) {
+			final DBConnection dbc = db != null ? db.getConnection() : null;
+
+			if (dbc == null) {
+				logger.log(Level.WARNING, "Cannot get a database connection to insert " + batch.size() + " trace lines");
+			}
+			else {
+				dbc.setReadOnly(false);
+
+				try {
+					insertLogLines(dbc.getConnection(), batch);
+					ok = true;
+					dbc.free();
+				}
+				catch (final SQLException e) {
+					logger.log(Level.WARNING, "Failed to insert a batch of " + batch.size() + " trace lines", e);
+					dbc.close();
+				}
+			}
+
+			if (monitor != null) {
+				monitor.addMeasurement("log_batch_size", batch.size());
+				monitor.incrementCounter(ok ? "log_batches" : "log_batches_failed");
+			}
+		}
+
+		for (final LogLine line : batch)
+			line.complete(!ok);
+	}
+}
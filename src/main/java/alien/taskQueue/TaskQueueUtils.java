@@ -702,7 +702,10 @@ public class TaskQueueUtils {
 
 	private static ApMon centralMLService = null;
 
-	private static final Semaphore limiter = new Semaphore(ConfigUtils.getConfig().geti("alien.taskQueue.TaskQueueUtils.setJobStatus_semaphores", 10), true);
+	/**
+	 * Concurrency limit of the status updates, shared with {@link JobUpdateBatcher}
+	 */
+	static final Semaphore limiter = new Semaphore(ConfigUtils.getConfig().geti("alien.taskQueue.TaskQueueUtils.setJobStatus_semaphores", 10), true);
 
 	/**
 	 * @param job
@@ -720,6 +723,27 @@ public class TaskQueueUtils {
 		if (newStatus == null)
 			throw new IllegalArgumentException("The new status code cannot be null");
 
+		if (dbStructure2_20 && JobUpdateBatcher.enabled) {
+			final JobUpdateBatcher.StatusChange change = JobUpdateBatcher.setStatus(job, newStatus, oldStatusConstraint);
+
+			// null means the batch failed, fall back to applying this change alone
+			if (change != null) {
+				if (!change.found) {
+					logger.log(Level.WARNING, "Could not find queueId " + job + " in the queue");
+					return false;
+				}
+
+				if (change.rejected)
+					return false;
+
+				updatePriorityRegistry(Integer.valueOf(change.userId), change.cpucores, extrafields, change.oldStatus, newStatus);
+
+				afterStatusChange(job, newStatus, change.parentPID, extrafields);
+
+				return change.updated;
+			}
+		}
+
 		long parentPID = 0;
 
 		try (DBFunctions db = getQueueDB()) {
@@ -856,56 +880,58 @@ public class TaskQueueUtils {
 
 			String userIdQuery = "select userId, cpucores from QUEUE where queueId=?";
 
-			if (db.query(userIdQuery, false, Long.valueOf(job))) {
-				updatePriorityRegistry(db, extrafields, oldStatus, newStatus);
-			}
-
-			if (JobStatus.finalStates().contains(newStatus) || newStatus == JobStatus.SAVED_WARN || newStatus == JobStatus.SAVED) {
-				deleteJobToken(job);
+			if (db.query(userIdQuery, false, Long.valueOf(job)) && db.moveNext()) {
+				updatePriorityRegistry(Integer.valueOf(db.geti("userId")), db.geti("cpucores"), extrafields, oldStatus, newStatus);
 			}
 
-			if (newStatus == JobStatus.EXPIRED || newStatus == JobStatus.ZOMBIE) {
-				final int expectedResubmissionCount = TaskQueueUtils.getResubmission(Long.valueOf(job));
-				setFinalStatusOOM(job, newStatus, expectedResubmissionCount);
-			}
-
-			final String execHost = setJobExtraFields(job, extrafields);
-
-			sendJobStatusToML(job, newStatus, execHost);
-
-			if (parentPID > 0 && parentPID != job && JobStatus.finalStates().contains(newStatus))
-				checkMasterjobStatus(parentPID);
+			afterStatusChange(job, newStatus, parentPID, extrafields);
 
 			return updated;
 		}
 	}
 
-	private static void updatePriorityRegistry(DBFunctions db, HashMap<String, Object> extrafields, JobStatus oldStatus, JobStatus newStatus) {
-		if (db.moveNext()) {
-			final Integer userId = Integer.valueOf(db.geti("userId"));
-			final int activeCores = db.geti("cpucores");
+	/**
+	 * Actions that follow a status change, whether it was applied alone or as part of a batch
+	 */
+	private static void afterStatusChange(final long job, final JobStatus newStatus, final long parentPID, final HashMap<String, Object> extrafields) {
+		if (JobStatus.finalStates().contains(newStatus) || newStatus == JobStatus.SAVED_WARN || newStatus == JobStatus.SAVED) {
+			deleteJobToken(job);
+		}
 
-			final JobCounter counter = PriorityRegister.JobCounter.getCounterForUser(userId);
+		if (newStatus == JobStatus.EXPIRED || newStatus == JobStatus.ZOMBIE) {
+			final int expectedResubmissionCount = TaskQueueUtils.getResubmission(Long.valueOf(job));
+			setFinalStatusOOM(job, newStatus, expectedResubmissionCount);
+		}
 
-			if (oldStatus == JobStatus.WAITING) {
-				counter.decWaiting();
-			}
+		final String execHost = setJobExtraFields(job, extrafields);
 
-			if (JobStatus.runningStates().contains(oldStatus)) {
-				counter.decRunning(activeCores);
-			}
+		sendJobStatusToML(job, newStatus, execHost);
 
-			if (newStatus == JobStatus.WAITING) {
-				counter.incWaiting();
-			}
+		if (parentPID > 0 && parentPID != job && JobStatus.finalStates().contains(newStatus))
+			checkMasterjobStatus(parentPID);
+	}
 
-			if (JobStatus.runningStates().contains(newStatus)) {
-				counter.incRunning(activeCores);
-			}
+	private static void updatePriorityRegistry(final Integer userId, final int activeCores, final HashMap<String, Object> extrafields, final JobStatus oldStatus, final JobStatus newStatus) {
+		final JobCounter counter = PriorityRegister.JobCounter.getCounterForUser(userId);
+
+		if (oldStatus == JobStatus.WAITING) {
+			counter.decWaiting();
+		}
+
+		if (JobStatus.runningStates().contains(oldStatus)) {
+			counter.decRunning(activeCores);
+		}
 
-			if (extrafields != null)
-				extrafields.put("userId", userId);
+		if (newStatus == JobStatus.WAITING) {
+			counter.incWaiting();
 		}
+
+		if (JobStatus.runningStates().contains(newStatus)) {
+			counter.incRunning(activeCores);
+		}
+
+		if (extrafields != null)
+			extrafields.put("userId", userId);
 	}
 
 	/**
@@ -921,12 +947,15 @@ public class TaskQueueUtils {
 				logger.log(Level.FINE, "extrafields: " + extrafields.toString());
 
 			try (DBFunctions db = getQueueDB()) {
+				// all the fields that go to the same table are set with a single query
+				final Map<String, HashMap<String, Object>> tableUpdates = new HashMap<>();
+
 				for (final Map.Entry<String, Object> entry : extrafields.entrySet()) {
 					final String key = entry.getKey();
 					final Object value = entry.getValue();
 
 					if (fieldMap.containsKey(key + "_table")) {
-						final HashMap<String, Object> map = new HashMap<>();
+						final HashMap<String, Object> map = tableUpdates.computeIfAbsent(fieldMap.get(key + "_table"), (k) -> new HashMap<>());
 
 						if (value instanceof Map) {
 							final int id = getOrInsertType(key, (Map<?, ?>) value);
@@ -943,11 +972,13 @@ public class TaskQueueUtils {
 						}
 
 						map.put("queueId", Long.valueOf(job));
-
-						final String query = DBFunctions.composeUpdate(fieldMap.get(key + "_table"), map, QUEUEID);
-						db.query(query);
 					}
 				}
+
+				for (final Map.Entry<String, HashMap<String, Object>> entry : tableUpdates.entrySet()) {
+					if (entry.getValue().size() > 1)
+						db.query(DBFunctions.composeUpdate(entry.getKey(), entry.getValue(), QUEUEID));
+				}
 			}
 
 			execSite = extrafields.getOrDefault("exechost", execSite).toString();
@@ -2812,6 +2843,9 @@ public class TaskQueueUtils {
 
 			final Long qid = Long.valueOf(queueId);
 
+			if (JobUpdateBatcher.enabled && JobUpdateBatcher.putJobLog(now, qid, message, action, joblogtags))
+				return true;
+
 			if (!db.query(JOBMESSAGES_INSERT, false, now, qid, message, action))
 				return false;
 
@@ -2825,6 +2859,141 @@ public class TaskQueueUtils {
 		return true;
 	}
 
+	/**
+	 * Maximum number of rows in one multi-row insert of trace lines
+	 */
+	private static final int JOBMESSAGES_MAX_ROWS = 500;
+
+	/**
+	 * Append the trace lines of any number of jobs, with multi-row inserts
+	 *
+	 * @param lines
+	 * @return <code>true</code> if all the lines were successfully added
+	 */
+	public static boolean putJobLogs(final List<JobLogLine> lines) {
+		if (lines == null || lines.isEmpty())
+			return true;
+
+		if (ConfigUtils.getConfig().getb("alien.taskQueue.TaskQueueUtils.sendUDPTraces", false)) {
+			for (final JobLogLine line : lines)
+				new TraceMessage((line.timestamp / 1000) * 1000, line.queueId, line.tag, line.message).send();
+
+			return true;
+		}
+
+		List<JobLogLine> toInsert = lines;
+
+		if (JobUpdateBatcher.enabled) {
+			toInsert = JobUpdateBatcher.putJobLogs(lines);
+
+			if (toInsert.isEmpty())
+				return true;
+		}
+
+		try (DBFunctions db = getQueueDB()) {
+			if (db == null)
+				return false;
+
+			db.setQueryTimeout(60);
+
+			for (int from = 0; from < toInsert.size(); from += JOBMESSAGES_MAX_ROWS) {
+				final List<JobLogLine> chunk = toInsert.subList(from, Math.min(from + JOBMESSAGES_MAX_ROWS, toInsert.size()));
+
+				final StringBuilder q = new StringBuilder(64 + chunk.size() * 14);
+				q.append("INSERT INTO JOBMESSAGES (timestamp, jobId, procinfo, tag) VALUES ");
+
+				final Object[] values = new Object[chunk.size() * 4];
+
+				int idx = 0;
+
+				for (final JobLogLine line : chunk) {
+					q.append(idx > 0 ? ",(?,?,?,?)" : "(?,?,?,?)");
+
+					values[idx++] = Long.valueOf(line.timestamp / 1000);
+					values[idx++] = Long.valueOf(line.queueId);
+					values[idx++] = line.message;
+					values[idx++] = line.tag;
+				}
+
+				if (monitor != null) {
+					monitor.incrementCounter("TQ_db_lookup");
+					monitor.incrementCounter("TQ_JOBMESSAGES_insert", chunk.size());
+				}
+
+				if (!db.query(q.toString(), false, values))
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Maximum number of jobs touched by one update of the heartbeat timestamps
+	 */
+	private static final int QUEUEPROC_MAX_IDS = 1000;
+
+	/**
+	 * Record the periodic resource snapshots of many running jobs. They are written as trace lines, like {@link #putJobLogs(List)} does. When the traces go over UDP the trace collector updates
+	 * the heartbeat timestamps from the "proc" lines, otherwise this is done here, with a few multi-row statements instead of one update per job.
+	 *
+	 * @param snapshots
+	 *            "proc" lines of the jobs
+	 * @return <code>true</code> if everything was recorded
+	 */
+	public static boolean putJobHeartbeats(final List<JobLogLine> snapshots) {
+		if (snapshots == null || snapshots.isEmpty())
+			return true;
+
+		if (monitor != null) {
+			monitor.incrementCounter("TQ_heartbeats", snapshots.size());
+			monitor.incrementCounter("TQ_heartbeat_batches");
+			monitor.addMeasurement("TQ_heartbeat_batch_size", snapshots.size());
+		}
+
+		boolean ok = putJobLogs(snapshots);
+
+		if (ConfigUtils.getConfig().getb("alien.taskQueue.TaskQueueUtils.sendUDPTraces", false))
+			return ok;
+
+		final Set<Long> uniqueIds = new LinkedHashSet<>();
+
+		for (final JobLogLine line : snapshots)
+			uniqueIds.add(Long.valueOf(line.queueId));
+
+		final List<Long> queueIds = new ArrayList<>(uniqueIds);
+
+		try (DBFunctions db = getQueueDB(); Timing t = new Timing(monitor, "TQ_heartbeats_update_ms")) {
+			if (db == null)
+				return false;
+
+			db.setQueryTimeout(60);
+
+			final Long now = Long.valueOf(System.currentTimeMillis() / 1000);
+
+			for (int from = 0; from < queueIds.size(); from += QUEUEPROC_MAX_IDS) {
+				final List<Long> chunk = queueIds.subList(from, Math.min(from + QUEUEPROC_MAX_IDS, queueIds.size()));
+
+				final StringBuilder q = new StringBuilder(64 + chunk.size() * 12);
+				q.append("UPDATE QUEUEPROC SET procinfotime=? WHERE queueId IN (");
+
+				for (int i = 0; i < chunk.size(); i++) {
+					if (i > 0)
+						q.append(',');
+
+					q.append(chunk.get(i).longValue());
+				}
+
+				q.append(')');
+
+				if (!db.query(q.toString(), false, now))
+					ok = false;
+			}
+		}
+
+		return ok;
+	}
+
 	private static long lastEmptyAgentsCleanup = 0;
 
 	private static void deleteEmptyAgents() {
@@ -2857,6 +3026,9 @@ public class TaskQueueUtils {
 
 			final int updated = db.getUpdateCount();
 
+			if (updated > 0)
+				JobMatchIndex.decrement(jobagentId);
+
 			deleteEmptyAgents();
 
 			return updated > 0;
@@ -3589,7 +3761,8 @@ public class TaskQueueUtils {
 
 			bindValues.add(Long.valueOf(agentId));
 
-			db.query("update JOBAGENT set counter=counter-1 " + oldestQueueIdQ + " where entryId=?", false, bindValues.toArray(new Object[0]));
+			if (db.query("update JOBAGENT set counter=counter-1 " + oldestQueueIdQ + " where entryId=?", false, bindValues.toArray(new Object[0])) && db.getUpdateCount() > 0)
+				JobMatchIndex.decrement(agentId);
 
 			deleteEmptyAgents();
 		}
@@ -3711,6 +3884,51 @@ public class TaskQueueUtils {
 		}
 	}
 
+	/**
+	 * Resubmission counters of many jobs, with one query
+	 *
+	 * @param queueIds
+	 * @return job ID to resubmission counter, missing jobs map to <code>-1</code>, or <code>null</code> if the database query didn't work
+	 */
+	public static Map<Long, Integer> getResubmissions(final Collection<Long> queueIds) {
+		final Map<Long, Integer> ret = new HashMap<>(queueIds.size());
+
+		if (queueIds.isEmpty())
+			return ret;
+
+		try (DBFunctions db = getQueueDB()) {
+			if (db == null)
+				return null;
+
+			db.setReadOnly(true);
+			db.setQueryTimeout(60);
+
+			final StringBuilder q = new StringBuilder("select queueId, resubmission from QUEUE where queueId in (");
+
+			boolean first = true;
+
+			for (final Long queueId : queueIds) {
+				if (!first)
+					q.append(',');
+
+				q.append(queueId.longValue());
+				first = false;
+
+				ret.put(queueId, Integer.valueOf(-1));
+			}
+
+			q.append(')');
+
+			if (!db.query(q.toString()))
+				return null;
+
+			while (db.moveNext())
+				ret.put(Long.valueOf(db.getl(1)), Integer.valueOf(db.geti(2)));
+		}
+
+		return ret;
+	}
+
 	/**
 	 * Resubmit a job
 	 *
@@ -3942,6 +4160,9 @@ public class TaskQueueUtils {
 			if (!db.query("update JOBAGENT join QUEUE on (agentid=entryid) set counter=counter+1 where queueid=?", false, Long.valueOf(j.queueId)))
 				return 0;
 
+			// the group is only known by the job ID here, let the index reload it
+			JobMatchIndex.invalidate();
+
 			// the jobagent doesn't exist anymore, reinsert
 			if (db.getUpdateCount() == 0) {
 				if (logger.isLoggable(Level.FINE))
@@ -4035,6 +4256,8 @@ public class TaskQueueUtils {
 				if (logger.isLoggable(Level.FINE))
 					logger.log(Level.FINE, "insertJobAgent: insertion done: " + db.getLastGeneratedKey().intValue());
 
+				JobMatchIndex.invalidate();
+
 				return db.getLastGeneratedKey().intValue();
 			}
 
@@ -4045,6 +4268,8 @@ public class TaskQueueUtils {
 			if (!db.query("update JOBAGENT set counter=counter+1 where entryId=?", false, Integer.valueOf(entryId)))
 				return 0;
 
+			JobMatchIndex.increment(entryId);
+
 			return entryId;
 		}
 	}
@@ -31,10 +31,6 @@ public class DBCassandra {
 		if (dbc == null) {
 			dbc = new DBCassandra();
 
-			// Create the connection pool
-			final PoolingOptions poolingOptions = new PoolingOptions();
-			poolingOptions.setConnectionsPerHost(HostDistance.LOCAL, 56, 56).setConnectionsPerHost(HostDistance.REMOTE, 56, 56);
-
 			// SocketOptions socketOptions = new SocketOptions();
 			// socketOptions.setReadTimeoutMillis(12000);
 			ExtProperties config = ConfigUtils.getConfiguration("cassandra");
@@ -43,6 +39,17 @@ public class DBCassandra {
 				return;
 			}
 
+			// Create the connection pool
+			final int connectionsPerHost = Math.max(config.geti("cassandraConnectionsPerHost", 56), 1);
+
+			final PoolingOptions poolingOptions = new PoolingOptions();
+			poolingOptions.setConnectionsPerHost(HostDistance.LOCAL, connectionsPerHost, connectionsPerHost).setConnectionsPerHost(HostDistance.REMOTE, connectionsPerHost, connectionsPerHost);
+
+			// bound the number of requests in flight towards each node, the rest wait in the driver queue
+			final int maxRequestsPerConnection = Math.max(config.geti("cassandraMaxRequestsPerHost", 2048) / connectionsPerHost, 1);
+			poolingOptions.setMaxRequestsPerConnection(HostDistance.LOCAL, maxRequestsPerConnection).setMaxRequestsPerConnection(HostDistance.REMOTE, maxRequestsPerConnection);
+			poolingOptions.setMaxQueueSize(config.geti("cassandraMaxQueueSize", 4096));
+
 			String nodes = config.gets("cassandraNodes");
 			String user = config.gets("cassandraUsername");
 			String pass = config.gets("cassandraPassword");
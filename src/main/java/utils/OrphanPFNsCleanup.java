@@ -9,11 +9,13 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +37,7 @@ import alien.io.protocols.Factory;
 import alien.io.xrootd.envelopes.XrootDEnvelopeSigner;
 import alien.monitoring.Monitor;
 import alien.monitoring.MonitorFactory;
+import alien.monitoring.MonitoringObject;
 import alien.se.SE;
 import alien.se.SEUtils;
 import lazyj.DBFunctions;
@@ -75,6 +78,299 @@ public class OrphanPFNsCleanup {
 	 */
 	volatile static boolean dirtyStats = true;
 
+	/**
+	 * Per SE deletion statistics and concurrency
+	 */
+	static final Map<Integer, SEController> CONTROLLERS = new ConcurrentHashMap<>();
+
+	static {
+		if (monitor != null)
+			monitor.addMonitoring("reclaim_rates", new RateReporter());
+	}
+
+	/**
+	 * Adapts the number of parallel deletions on one SE to how it copes with them. The concurrency grows by one thread every <code>concurrency</code> successful tasks, up to
+	 * <code>utils.OrphanPFNsCleanup.threadsPerSE[.seNumber]</code>, and is cut by a quarter when the recent error rate goes above <code>utils.OrphanPFNsCleanup.maxErrorRate</code> or the
+	 * deletion calls take longer than <code>utils.OrphanPFNsCleanup.targetLatency</code> seconds.
+	 */
+	static final class SEController {
+		final int seNumber;
+
+		private int concurrency;
+
+		private int sinceIncrease = 0;
+
+		private long lastDecrease = 0;
+
+		private double errorRate = 0;
+
+		private double latency = 0;
+
+		/**
+		 * Files removed from this SE
+		 */
+		final AtomicLong files = new AtomicLong();
+
+		/**
+		 * Bytes reclaimed on this SE
+		 */
+		final AtomicLong bytes = new AtomicLong();
+
+		SEController(final int seNumber) {
+			this.seNumber = seNumber;
+			this.concurrency = Math.min(ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.initialThreadsPerSE", 4), SEThread.getPoolSize(seNumber));
+		}
+
+		/**
+		 * @return how many deletion tasks can run in parallel on this SE
+		 */
+		synchronized int getConcurrency() {
+			return Math.max(Math.min(concurrency, SEThread.getPoolSize(seNumber)), 1);
+		}
+
+		synchronized double getErrorRate() {
+			return errorRate;
+		}
+
+		/**
+		 * Account for one multi-file deletion call
+		 *
+		 * @param count
+		 *            number of files in the call
+		 * @param errors
+		 *            how many of them could not be deleted
+		 * @param millis
+		 *            how long the call took
+		 */
+		synchronized void taskDone(final int count, final int errors, final long millis) {
+			if (count <= 0)
+				return;
+
+			errorRate = 0.8 * errorRate + 0.2 * errors / count;
+			latency = 0.8 * latency + 0.2 * millis;
+
+			final int max = SEThread.getPoolSize(seNumber);
+
+			final boolean congested = errorRate > ConfigUtils.getConfig().getd("utils.OrphanPFNsCleanup.maxErrorRate", 0.5)
+					|| latency > ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.targetLatency", 60) * 1000d;
+
+			if (congested) {
+				// at most once per interval, to see the effect of the previous decrease first
+				if (System.currentTimeMillis() - lastDecrease > 30 * 1000 && concurrency > 1) {
+					concurrency = Math.max(concurrency * 3 / 4, 1);
+					lastDecrease = System.currentTimeMillis();
+					sinceIncrease = 0;
+				}
+			}
+			else if (concurrency < max && ++sinceIncrease >= concurrency) {
+				concurrency++;
+				sinceIncrease = 0;
+			}
+
+			if (concurrency > max)
+				concurrency = max;
+		}
+	}
+
+	/**
+	 * @param seNumber
+	 * @return the controller of this SE
+	 */
+	static SEController getController(final int seNumber) {
+		return CONTROLLERS.computeIfAbsent(Integer.valueOf(seNumber), SEController::new);
+	}
+
+	/**
+	 * Exports the reclaimed files and bytes per second, in total and per SE
+	 */
+	static final class RateReporter implements MonitoringObject {
+		private long lastTime = System.currentTimeMillis();
+
+		private long lastFiles = 0;
+
+		private long lastBytes = 0;
+
+		private final Map<Integer, long[]> lastPerSE = new HashMap<>();
+
+		@Override
+		public synchronized void fillValues(final Vector<String> paramNames, final Vector<Object> paramValues) {
+			final long now = System.currentTimeMillis();
+
+			final double seconds = Math.max(now - lastTime, 1) / 1000d;
+
+			final long files = removed.get();
+			final long bytes = reclaimedSpace.get();
+
+			paramNames.add("reclaimed_files_per_s");
+			paramValues.add(Double.valueOf((files - lastFiles) / seconds));
+
+			paramNames.add("reclaimed_bytes_per_s");
+			paramValues.add(Double.valueOf((bytes - lastBytes) / seconds));
+
+			lastFiles = files;
+			lastBytes = bytes;
+
+			for (final SEController c : CONTROLLERS.values()) {
+				final SE se = c.seNumber > 0 ? SEUtils.getSE(c.seNumber) : null;
+
+				if (se == null)
+					continue;
+
+				final long[] last = lastPerSE.computeIfAbsent(Integer.valueOf(c.seNumber), k -> new long[2]);
+
+				final long seFiles = c.files.get();
+				final long seBytes = c.bytes.get();
+
+				paramNames.add(se.getName() + "_reclaimed_files_per_s");
+				paramValues.add(Double.valueOf((seFiles - last[0]) / seconds));
+
+				paramNames.add(se.getName() + "_reclaimed_bytes_per_s");
+				paramValues.add(Double.valueOf((seBytes - last[1]) / seconds));
+
+				paramNames.add(se.getName() + "_concurrency");
+				paramValues.add(Double.valueOf(c.getConcurrency()));
+
+				paramNames.add(se.getName() + "_error_rate");
+				paramValues.add(Double.valueOf(c.getErrorRate()));
+
+				last[0] = seFiles;
+				last[1] = seBytes;
+			}
+
+			lastTime = now;
+		}
+	}
+
+	/**
+	 * Collects the outcome of the deletions and writes it back to one <code>orphan_pfns_N</code> table with multi-row statements
+	 */
+	static final class ResultBatch {
+		private final Host h;
+
+		private final int seNumber;
+
+		/**
+		 * GUIDs that were queued and not yet written back, so that the next page doesn't queue them again
+		 */
+		private final Set<String> inFlight;
+
+		private List<String> succeeded = new ArrayList<>();
+
+		private List<String> failedGUIDs = new ArrayList<>();
+
+		ResultBatch(final Host h, final int seNumber, final Set<String> inFlight) {
+			this.h = h;
+			this.seNumber = seNumber;
+			this.inFlight = inFlight;
+		}
+
+		void success(final String sGUID) {
+			final List<String> toWrite;
+
+			synchronized (this) {
+				succeeded.add(sGUID);
+
+				if (succeeded.size() < commitBatchSize)
+					return;
+
+				toWrite = succeeded;
+				succeeded = new ArrayList<>();
+			}
+
+			write("DELETE FROM orphan_pfns_" + seNumber + " WHERE guid IN ", toWrite);
+		}
+
+		void failure(final String sGUID) {
+			final List<String> toWrite;
+
+			synchronized (this) {
+				failedGUIDs.add(sGUID);
+
+				if (failedGUIDs.size() < commitBatchSize)
+					return;
+
+				toWrite = failedGUIDs;
+				failedGUIDs = new ArrayList<>();
+			}
+
+			write("UPDATE orphan_pfns_" + seNumber + " SET fail_count=fail_count+1 WHERE guid IN ", toWrite);
+		}
+
+		/**
+		 * Nothing to write back for this GUID, it can be queued again
+		 *
+		 * @param sGUID
+		 */
+		void release(final String sGUID) {
+			inFlight.remove(sGUID);
+		}
+
+		void flush() {
+			final List<String> toDelete;
+			final List<String> toUpdate;
+
+			synchronized (this) {
+				toDelete = succeeded;
+				succeeded = new ArrayList<>();
+
+				toUpdate = failedGUIDs;
+				failedGUIDs = new ArrayList<>();
+			}
+
+			write("DELETE FROM orphan_pfns_" + seNumber + " WHERE guid IN ", toDelete);
+			write("UPDATE orphan_pfns_" + seNumber + " SET fail_count=fail_count+1 WHERE guid IN ", toUpdate);
+		}
+
+		private void write(final String prefix, final List<String> guids) {
+			if (guids.isEmpty())
+				return;
+
+			concurrentQueryies.acquireUninterruptibly();
+
+			try (DBFunctions db = h.getDB()) {
+				writeInChunks(db, prefix, guids);
+			}
+			finally {
+				concurrentQueryies.release();
+			}
+
+			inFlight.removeAll(guids);
+		}
+	}
+
+	/**
+	 * How many rows are changed by one statement
+	 */
+	static final int commitBatchSize = ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.commitBatchSize", 1000);
+
+	/**
+	 * Execute <code>prefix (string2binary(?),...)</code> for all the given GUIDs, <code>commitBatchSize</code> at a time
+	 *
+	 * @param db
+	 * @param prefix
+	 * @param guids
+	 */
+	static void writeInChunks(final DBFunctions db, final String prefix, final List<String> guids) {
+		for (int from = 0; from < guids.size(); from += commitBatchSize) {
+			final List<String> chunk = guids.subList(from, Math.min(from + commitBatchSize, guids.size()));
+
+			final StringBuilder q = new StringBuilder(prefix.length() + chunk.size() * 20);
+			q.append(prefix).append('(');
+
+			for (int i = 0; i < chunk.size(); i++) {
+				if (i > 0)
+					q.append(',');
+
+				q.append("string2binary(?)");
+			}
+
+			q.append(')');
+
+			if (!db.query(q.toString(), false, chunk.toArray()))
+				logger.log(Level.WARNING, "Could not execute " + prefix + " for " + chunk.size() + " GUIDs");
+		}
+	}
+
 	/**
 	 * @author costing
 	 */
@@ -302,7 +598,67 @@ public class OrphanPFNsCleanup {
 			seNumber = se != null ? se.seNumber : 0;
 		}
 
-		private static int getPoolSize(final int seNumber) {
+		/**
+		 * GUIDs queued for deletion and not yet written back
+		 */
+		private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+		private final Map<Host, ResultBatch> batches = new HashMap<>();
+
+		private ResultBatch getBatch(final Host h) {
+			return batches.computeIfAbsent(h, k -> new ResultBatch(k, seNumber, inFlight));
+		}
+
+		private void flushBatches() {
+			for (final ResultBatch batch : batches.values())
+				batch.flush();
+		}
+
+		private static int getPageSize(final int seNumber) {
+			int ret = ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.pageSize", 100000);
+			ret = ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.pageSize." + seNumber, ret);
+
+			return ret;
+		}
+
+		/**
+		 * Apply the concurrency decided by the controller of this SE
+		 */
+		private static void resize(final CachedThreadPool executor, final int threads) {
+			if (threads > executor.getCorePoolSize()) {
+				executor.setMaximumPoolSize(threads);
+				executor.setCorePoolSize(threads);
+			}
+			else if (threads < executor.getCorePoolSize()) {
+				executor.setCorePoolSize(threads);
+				executor.setMaximumPoolSize(threads);
+			}
+		}
+
+		/**
+		 * Wait until no more than <code>lowWatermark</code> tasks are queued or running, following the concurrency changes in the mean time
+		 */
+		private void waitForQueue(final CachedThreadPool executor, final SEController controller, final int lowWatermark, final int tasks) {
+			int queued;
+
+			do {
+				try {
+					Thread.sleep(5000);
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException ie) {
+					// ignore
+				}
+
+				resize(executor, controller.getConcurrency());
+
+				queued = executor.getQueue().size() + executor.getActiveCount();
+
+				setName("SEThread (" + (se != null ? (se.getName() + " - " + se.seNumber) : "AliEn GUIDs") + ") - " + tasks + " total tasks, " + queued + " queued, " + executor.getMaximumPoolSize()
+						+ " threads");
+			} while (queued > lowWatermark);
+		}
+
+		static int getPoolSize(final int seNumber) {
 			int ret = ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.threadsPerSE", 16);
 			ret = ConfigUtils.getConfig().geti("utils.OrphanPFNsCleanup.threadsPerSE." + seNumber, ret);
 
@@ -326,6 +682,8 @@ public class OrphanPFNsCleanup {
 
 			CachedThreadPool executor = EXECUTORS.get(Integer.valueOf(seNumber));
 
+			final SEController controller = getController(seNumber);
+
 			try {
 				int tasks = 0;
 
@@ -346,7 +704,7 @@ public class OrphanPFNsCleanup {
 
 								if (seNumber > 0)
 									ok = db.query("SELECT binary2string(guid),size,md5sum,pfn, flags FROM orphan_pfns_" + seNumber
-											+ " WHERE fail_count<10 ORDER BY size/((fail_count * 5) + 1) DESC LIMIT 100000;", true);
+											+ " WHERE fail_count<10 ORDER BY size/((fail_count * 5) + 1) DESC LIMIT " + getPageSize(seNumber) + ";", true);
 								else
 									ok = db.query("SELECT binary2string(guid) FROM orphan_pfns_0 ORDER BY size DESC LIMIT 10000000;");
 							}
@@ -359,9 +717,9 @@ public class OrphanPFNsCleanup {
 
 								if (executor == null) {
 									// lazy init of the thread pool
-									logger.log(Level.INFO, "Creating a new cached thread pool of " + getPoolSize(seNumber) + " threads for " + (se != null ? se.getName() : "GUIDs"));
+									logger.log(Level.INFO, "Creating a new cached thread pool of " + controller.getConcurrency() + " threads for " + (se != null ? se.getName() : "GUIDs"));
 
-									executor = new CachedThreadPool(getPoolSize(seNumber), 1, TimeUnit.MINUTES, r -> {
+									executor = new CachedThreadPool(controller.getConcurrency(), 1, TimeUnit.MINUTES, r -> {
 										final Thread t = new Thread(r);
 										t.setName("Cleanup of " + (se != null ? se.getName() : "GUIDs") + " - " + seNumber);
 
@@ -370,18 +728,10 @@ public class OrphanPFNsCleanup {
 
 									EXECUTORS.put(Integer.valueOf(seNumber), executor);
 								}
-								else {
-									final int threads = getPoolSize(seNumber);
+								else
+									resize(executor, controller.getConcurrency());
 
-									if (threads > executor.getCorePoolSize()) {
-										executor.setMaximumPoolSize(threads);
-										executor.setCorePoolSize(threads);
-									}
-									else {
-										executor.setCorePoolSize(threads);
-										executor.setMaximumPoolSize(threads);
-									}
-								}
+								final ResultBatch batch = getBatch(h);
 
 								List<UUID> nullUUIDs = new ArrayList<>();
 
@@ -390,11 +740,15 @@ public class OrphanPFNsCleanup {
 								List<ToDeleteEntry> vectorDelete = new ArrayList<>(vectorSize);
 
 								do {
+									// still being processed from the previous page
+									if (!inFlight.add(db.gets(1)))
+										continue;
+
 									if (seNumber > 0) {
-										vectorDelete.add(new ToDeleteEntry(h, db.gets(1), se, db.getl(2), db.gets(3), db.gets(4), db.geti(5)));
+										vectorDelete.add(new ToDeleteEntry(batch, db.gets(1), se, db.getl(2), db.gets(3), db.gets(4), db.geti(5)));
 
 										if (vectorDelete.size() >= vectorSize) {
-											executor.submit(new CleanupTask(vectorDelete));
+											executor.submit(new CleanupTask(controller, vectorDelete));
 											vectorDelete = new ArrayList<>(vectorSize);
 										}
 									}
@@ -403,12 +757,13 @@ public class OrphanPFNsCleanup {
 											nullUUIDs.add(UUID.fromString(db.gets(1)));
 
 											if (nullUUIDs.size() > 10000) {
-												executor.submit(new NullSETask(h, nullUUIDs));
+												executor.submit(new NullSETask(h, nullUUIDs, inFlight));
 												nullUUIDs = new ArrayList<>();
 											}
 										}
 										catch (final Throwable t) {
 											logger.log(Level.SEVERE, "Cannot queue the GUID: " + db.gets(1), t);
+											inFlight.remove(db.gets(1));
 										}
 									}
 
@@ -416,10 +771,10 @@ public class OrphanPFNsCleanup {
 								} while (db.moveNext());
 
 								if (nullUUIDs.size() > 0)
-									executor.submit(new NullSETask(h, new ArrayList<>(nullUUIDs)));
+									executor.submit(new NullSETask(h, new ArrayList<>(nullUUIDs), inFlight));
 
 								if (vectorDelete.size() > 0)
-									executor.submit(new CleanupTask(vectorDelete));
+									executor.submit(new CleanupTask(controller, vectorDelete));
 							}
 						}
 
@@ -427,6 +782,11 @@ public class OrphanPFNsCleanup {
 						// there are no tasks for this SE now, check again
 						// sometime later
 
+						if (executor != null)
+							waitForQueue(executor, controller, 0, tasks);
+
+						flushBatches();
+
 						if (logger.isLoggable(Level.INFO))
 							logger.log(Level.INFO, "No more PFNs to clean up for " + (se != null ? se.getName() : "AliEn GUIDs") + " - " + seNumber
 									+ ", freeing the respective thread and executor for now after executing " + tasks + " tasks");
@@ -436,24 +796,17 @@ public class OrphanPFNsCleanup {
 
 					setName("SEThread (" + (se != null ? (se.getName() + " - " + se.seNumber) : "AliEn GUIDs") + ") - " + tasks + " tasks");
 
-					int queued;
-
-					do {
-						try {
-							Thread.sleep(5000);
-						}
-						catch (@SuppressWarnings("unused") final InterruptedException ie) {
-							// ignore
-						}
-
-						queued = executor.getQueue().size() + executor.getActiveCount();
+					// fetch the next page while the last tasks of this one are still running
+					waitForQueue(executor, controller, 2 * controller.getConcurrency(), tasks);
 
-						setName("SEThread (" + (se != null ? (se.getName() + " - " + se.seNumber) : "AliEn GUIDs") + ") - " + tasks + " total tasks, " + queued + " queued");
-					} while (queued > 0);
+					// the rows that were processed must not be returned by the next query
+					flushBatches();
 				}
 			}
 			catch (final Throwable t) {
 				logger.log(Level.SEVERE, "Caught exception in the SE thread (" + seNumber + ")", t);
+
+				flushBatches();
 			}
 			finally {
 				try {
@@ -526,6 +879,15 @@ public class OrphanPFNsCleanup {
 			reclaimedSize.addAndGet(size);
 		}
 
+		final SEController controller = CONTROLLERS.get(Integer.valueOf(se.seNumber));
+
+		if (controller != null) {
+			controller.files.incrementAndGet();
+
+			if (size > 0)
+				controller.bytes.addAndGet(size);
+		}
+
 		monitor.incrementCounter(se.getName() + "_success_count");
 		monitor.addMeasurement(se.getName() + "_success_size", size);
 
@@ -543,14 +905,21 @@ public class OrphanPFNsCleanup {
 	private static class NullSETask implements Runnable {
 		final Host h;
 		final List<UUID> uuids;
+		final Set<String> inFlight;
 
-		public NullSETask(final Host h, final List<UUID> uuids) {
+		public NullSETask(final Host h, final List<UUID> uuids, final Set<String> inFlight) {
 			this.h = h;
 			this.uuids = uuids;
+			this.inFlight = inFlight;
 		}
 
 		@Override
 		public void run() {
+			final List<String> sGUIDs = new ArrayList<>(uuids.size());
+
+			for (final UUID u : uuids)
+				sGUIDs.add(u.toString());
+
 			concurrentQueryies.acquireUninterruptibly();
 
 			try (DBFunctions db = h.getDB()) {
@@ -559,17 +928,18 @@ public class OrphanPFNsCleanup {
 				for (final GUID g : guids)
 					g.delete(true);
 
-				for (final UUID u : uuids)
-					db.query("DELETE FROM orphan_pfns_0 WHERE guid=string2binary(?);", false, u.toString());
+				writeInChunks(db, "DELETE FROM orphan_pfns_0 WHERE guid IN ", sGUIDs);
 			}
 			finally {
 				concurrentQueryies.release();
+
+				inFlight.removeAll(sGUIDs);
 			}
 		}
 	}
 
 	private static class ToDeleteEntry {
-		final Host h;
+		final ResultBatch batch;
 		final String sGUID;
 		final SE se;
 		final long size;
@@ -581,8 +951,8 @@ public class OrphanPFNsCleanup {
 
 		private PFN pfn = null;
 
-		public ToDeleteEntry(final Host h, final String sGUID, final SE se, final long size, final String md5, final String knownPFN, final int flags) {
-			this.h = h;
+		public ToDeleteEntry(final ResultBatch batch, final String sGUID, final SE se, final long size, final String md5, final String knownPFN, final int flags) {
+			this.batch = batch;
 			this.sGUID = sGUID;
 			this.se = se;
 			this.size = size;
@@ -599,7 +969,7 @@ public class OrphanPFNsCleanup {
 
 			if ((flags & 1) == 1)
 				guid = new GUID(uuid);
-			else {
+			else if (guid == null) {
 				concurrentQueryies.acquireUninterruptibly();
 
 				try {
@@ -654,84 +1024,140 @@ public class OrphanPFNsCleanup {
 			return pfn;
 		}
 
+		/**
+		 * Use the GUID that was looked up together with the other entries of the same task
+		 *
+		 * @param g
+		 */
+		void setGUID(final GUID g) {
+			if (pfn == null)
+				guid = g;
+		}
+
 		public void commit(final boolean successfulDelete) {
-			try (DBFunctions db2 = h.getDB()) {
-				if (!successfulDelete) {
-					syslog("Could not delete " + guid.guid + " (" + Format.size(guid.size) + ") from " + se.getName());
+			if (!successfulDelete) {
+				syslog("Could not delete " + guid.guid + " (" + Format.size(guid.size) + ") from " + se.getName());
 
-					concurrentQueryies.acquireUninterruptibly();
-					try {
-						db2.query("UPDATE orphan_pfns_" + se.seNumber + " SET fail_count=fail_count+1 WHERE guid=string2binary(?);", false, sGUID);
+				batch.failure(sGUID);
 
-						failOne(se);
-					}
-					finally {
-						concurrentQueryies.release();
-					}
-				}
-				else {
-					concurrentQueryies.acquireUninterruptibly();
+				failOne(se);
+			}
+			else {
+				concurrentQueryies.acquireUninterruptibly();
 
-					try {
-						syslog("Successfully deleted the replica of " + guid.guid + " (" + Format.size(guid.size) + ") from " + se.getName());
-
-						if (guid.exists()) {
-							successOne(se, guid.size);
-
-							// we have just physically this entry, do _not_ queue this pfn again
-							if (guid.removePFN(se, false) != null) {
-								if (guid.getPFNs().size() == 0) {
-									// already purged all entries
-									if (guid.delete(false))
-										syslog("  Deleted the GUID " + guid.guid + " since this was the last replica");
-									else
-										syslog("  Failed to delete the GUID even if this was the last replica:\n" + guid);
-								}
+				try {
+					syslog("Successfully deleted the replica of " + guid.guid + " (" + Format.size(guid.size) + ") from " + se.getName());
+
+					if (guid.exists()) {
+						successOne(se, guid.size);
+
+						// we have just physically this entry, do _not_ queue this pfn again
+						if (guid.removePFN(se, false) != null) {
+							if (guid.getPFNs().size() == 0) {
+								// already purged all entries
+								if (guid.delete(false))
+									syslog("  Deleted the GUID " + guid.guid + " since this was the last replica");
 								else
-									syslog("  Kept the GUID " + guid.guid + " since it still has " + guid.getPFNs().size() + " replicas");
+									syslog("  Failed to delete the GUID even if this was the last replica:\n" + guid);
 							}
 							else
-								syslog("  Failed to remove the replica on " + se.getName() + " from " + guid.guid);
-						}
-						else {
-							successOne(se, size);
-
-							if ((flags & 1) == 0)
-								syslog("  GUID " + guid.guid + " doesn't exist in the catalogue any more");
+								syslog("  Kept the GUID " + guid.guid + " since it still has " + guid.getPFNs().size() + " replicas");
 						}
-
-						db2.query("DELETE FROM orphan_pfns_" + se.seNumber + " WHERE guid=string2binary(?);", false, sGUID);
+						else
+							syslog("  Failed to remove the replica on " + se.getName() + " from " + guid.guid);
 					}
-					finally {
-						concurrentQueryies.release();
+					else {
+						successOne(se, size);
+
+						if ((flags & 1) == 0)
+							syslog("  GUID " + guid.guid + " doesn't exist in the catalogue any more");
 					}
 				}
+				finally {
+					concurrentQueryies.release();
+				}
+
+				batch.success(sGUID);
 			}
 		}
 	}
 
 	private static class CleanupTask implements Runnable {
 
+		final SEController controller;
+
 		List<ToDeleteEntry> toDelete;
 
-		public CleanupTask(final List<ToDeleteEntry> toDelete) {
+		public CleanupTask(final SEController controller, final List<ToDeleteEntry> toDelete) {
+			this.controller = controller;
 			this.toDelete = toDelete;
 		}
 
+		/**
+		 * Look up the catalogue entries of all the files of this task in one go
+		 */
+		private void prefetchGUIDs() {
+			final Map<UUID, ToDeleteEntry> lookup = new HashMap<>();
+
+			for (final ToDeleteEntry entry : toDelete)
+				if ((entry.flags & 1) == 0)
+					try {
+						lookup.put(UUID.fromString(entry.sGUID), entry);
+					}
+					catch (@SuppressWarnings("unused") final IllegalArgumentException iae) {
+						// left to getPFN() to complain about
+					}
+
+			if (lookup.size() <= 1)
+				return;
+
+			final Set<GUID> guids;
+
+			concurrentQueryies.acquireUninterruptibly();
+
+			try {
+				guids = GUIDUtils.getGUIDs(lookup.keySet().toArray(new UUID[0]));
+			}
+			finally {
+				concurrentQueryies.release();
+			}
+
+			for (final GUID g : guids) {
+				final ToDeleteEntry entry = lookup.remove(g.guid);
+
+				if (entry != null)
+					entry.setGUID(g);
+			}
+
+			// the ones that were not found don't exist in the catalogue any more
+			for (final Map.Entry<UUID, ToDeleteEntry> missing : lookup.entrySet())
+				missing.getValue().setGUID(new GUID(missing.getKey()));
+		}
+
 		@Override
 		public void run() {
+			prefetchGUIDs();
+
 			final List<PFN> pfns = new ArrayList<>(toDelete.size());
 
+			final List<ToDeleteEntry> entries = new ArrayList<>(toDelete.size());
+
 			for (final ToDeleteEntry entry : toDelete) {
 				final PFN pfn = entry.getPFN();
 
-				if (pfn != null)
+				if (pfn != null) {
 					pfns.add(pfn);
+					entries.add(entry);
+				}
+				else
+					entry.batch.release(entry.sGUID);
 			}
 
 			if (pfns.size() == 0)
 				return;
 
+			final long start = System.currentTimeMillis();
+
 			Map<PFN, ExitStatus> deleteResult;
 			try {
 				deleteResult = Factory.xrootd.delete(pfns, true);
@@ -739,17 +1165,28 @@ public class OrphanPFNsCleanup {
 			catch (final IOException e) {
 				syslog(e.getMessage());
 
-				for (final ToDeleteEntry entry : toDelete)
+				controller.taskDone(entries.size(), entries.size(), System.currentTimeMillis() - start);
+
+				for (final ToDeleteEntry entry : entries)
 					entry.commit(false);
 
 				return;
 			}
 
-			for (final ToDeleteEntry entry : toDelete) {
+			int errors = 0;
+
+			for (final ToDeleteEntry entry : entries) {
 				final ExitStatus result = deleteResult.get(entry.getPFN());
 
-				entry.commit(result.getExtProcExitStatus() == 0);
+				final boolean ok = result != null && result.getExtProcExitStatus() == 0;
+
+				if (!ok)
+					errors++;
+
+				entry.commit(ok);
 			}
+
+			controller.taskDone(entries.size(), errors, System.currentTimeMillis() - start);
 		}
 	}
 
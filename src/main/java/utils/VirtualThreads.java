@@ -0,0 +1,157 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import alien.config.ConfigUtils;
+
+/**
+ * Access to virtual threads (Java 21+) while the code is still built for Java 11. Everything is looked up by reflection, on older runtimes {@link #isSupported()} returns <code>false</code> and the
+ * callers keep using their platform thread pools.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public final class VirtualThreads {
+	private static final Logger logger = ConfigUtils.getLogger(VirtualThreads.class.getCanonicalName());
+
+	private static final Method ofVirtual;
+	private static final Method builderName;
+	private static final Method builderFactory;
+	private static final Method newThreadPerTaskExecutor;
+
+	static {
+		Method m1 = null;
+		Method m2 = null;
+		Method m3 = null;
+		Method m4 = null;
+
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+			m1 = Thread.class.getMethod("ofVirtual");
+			m2 = builderClass.getMethod("name", String.class, long.class);
+			m3 = builderClass.getMethod("factory");
+			m4 = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		}
+		catch (@SuppressWarnings("unused") final ReflectiveOperationException e) {
+			m1 = m2 = m3 = m4 = null;
+		}
+
+		ofVirtual = m1;
+		builderName = m2;
+		builderFactory = m3;
+		newThreadPerTaskExecutor = m4;
+	}
+
+	private static final AtomicInteger active = new AtomicInteger();
+
+	private static final AtomicLong started = new AtomicLong();
+
+	private VirtualThreads() {
+		// utility class
+	}
+
+	/**
+	 * @return <code>true</code> if the running JVM can create virtual threads
+	 */
+	public static boolean isSupported() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * @param configKey
+	 *            boolean configuration key that turns the virtual threads on
+	 * @return <code>true</code> if the configuration asks for virtual threads and the JVM supports them
+	 */
+	public static boolean isEnabled(final String configKey) {
+		if (!ConfigUtils.getConfig().getb(configKey, false))
+			return false;
+
+		if (!isSupported()) {
+			logger.log(Level.WARNING, configKey + " is set but this JVM (" + System.getProperty("java.version") + ") doesn't have virtual threads, staying on platform threads");
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param namePrefix
+	 *            threads will be called <code>namePrefix</code> followed by a sequence number
+	 * @return a factory of virtual threads, counting the running ones for monitoring purposes
+	 */
+	public static ThreadFactory factory(final String namePrefix) {
+		final ThreadFactory virtualFactory;
+
+		try {
+			final Object builder = builderName.invoke(ofVirtual.invoke(null), namePrefix, Long.valueOf(0));
+			virtualFactory = (ThreadFactory) builderFactory.invoke(builder);
+		}
+		catch (final ReflectiveOperationException | NullPointerException e) {
+			throw new UnsupportedOperationException("Virtual threads are not available", e);
+		}
+
+		return (r) -> virtualFactory.newThread(() -> {
+			active.incrementAndGet();
+			started.incrementAndGet();
+
+			try {
+				r.run();
+			}
+			finally {
+				active.decrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * @param namePrefix
+	 * @return an executor that starts one new virtual thread for each submitted task
+	 */
+	public static ExecutorService newPerTaskExecutor(final String namePrefix) {
+		try {
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory(namePrefix));
+		}
+		catch (final ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads are not available", e);
+		}
+	}
+
+	/**
+	 * @return how many tasks are currently running on virtual threads created by this class
+	 */
+	public static int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return how many virtual threads were started by this class since the JVM started
+	 */
+	public static long getStartedCount() {
+		return started.get();
+	}
+
+	/**
+	 * @return number of platform (carrier) threads the virtual threads are scheduled on
+	 */
+	public static int getCarrierParallelism() {
+		final String parallelism = System.getProperty("jdk.virtualThreadScheduler.parallelism");
+
+		if (parallelism != null)
+			try {
+				return Integer.parseInt(parallelism.trim());
+			}
+			catch (@SuppressWarnings("unused") final NumberFormatException nfe) {
+				// fall back to the JDK default below
+			}
+
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
@@ -0,0 +1,123 @@
+package utils.benchmark;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import alien.io.xrootd.envelopes.EncryptedAuthzToken;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ * Throughput of the envelope signing primitives, with freshly generated keys so that no key files are needed: the SHA384withRSA signatures of the signed envelopes, looking up the algorithm
+ * for each envelope (as it was done before) or reusing a per-thread instance, and the full encrypted envelopes of {@link EncryptedAuthzToken}, on one thread and on a pool of threads.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class EnvelopeSigningBenchmark {
+
+	private static final String ENVELOPE = "turl=root://eosalice.cern.ch:1094//05/12345/0b1f7c2e-1234-11ee-8f2b-0242ac120002&access=read&lfn=/alice/data/2023/LHC23zzh/544013/apass1/AO2D.root"
+			+ "&guid=0b1f7c2e-1234-11ee-8f2b-0242ac120002&size=1073741824&md5=0123456789abcdef0123456789abcdef&se=ALICE::CERN::EOS&hashord=turl-access-lfn-guid-size-md5-se-hashord";
+
+	private interface Operation {
+		void run() throws GeneralSecurityException;
+	}
+
+	private static final ThreadLocal<Signature> signers = new ThreadLocal<>();
+
+	private static void measure(final String name, final int iterations, final int threads, final Operation op) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			// warm up
+			for (int i = 0; i < iterations / 10; i++)
+				op.run();
+
+			final long start = System.nanoTime();
+
+			final List<Future<?>> futures = new ArrayList<>(threads);
+
+			for (int t = 0; t < threads; t++)
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < iterations / threads; i++)
+						op.run();
+
+					return null;
+				}));
+
+			for (final Future<?> f : futures)
+				f.get();
+
+			final long duration = System.nanoTime() - start;
+
+			System.out.printf("%-45s %3d threads: %10.1f envelopes/s%n", name, Integer.valueOf(threads), Double.valueOf((iterations / threads) * threads * 1e9 / duration));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(final String[] args) throws Exception {
+		final OptionParser parser = new OptionParser();
+
+		parser.accepts("i", "envelopes to sign in each test").withRequiredArg().ofType(Integer.class);
+		parser.accepts("t", "threads of the parallel tests").withRequiredArg().ofType(Integer.class);
+		parser.accepts("k", "RSA key size").withRequiredArg().ofType(Integer.class);
+
+		final OptionSet options = parser.parse(args);
+
+		final int iterations = options.has("i") ? ((Integer) options.valueOf("i")).intValue() : 2000;
+		final int threads = options.has("t") ? ((Integer) options.valueOf("t")).intValue() : Runtime.getRuntime().availableProcessors();
+		final int keySize = options.has("k") ? ((Integer) options.valueOf("k")).intValue() : 4096;
+
+		final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(keySize);
+
+		final KeyPair authen = generator.generateKeyPair();
+		final KeyPair se = generator.generateKeyPair();
+
+		final byte[] message = ENVELOPE.getBytes();
+
+		final Operation legacySignature = () -> {
+			final Signature signer = Signature.getInstance("SHA384withRSA");
+			signer.initSign(authen.getPrivate());
+			signer.update(message);
+			signer.sign();
+		};
+
+		final Operation reusedSignature = () -> {
+			Signature signer = signers.get();
+
+			if (signer == null) {
+				signer = Signature.getInstance("SHA384withRSA");
+				signers.set(signer);
+			}
+
+			// as the envelopes are signed, only the algorithm lookup is saved, the key is set again each time
+			signer.initSign(authen.getPrivate());
+			signer.update(message);
+			signer.sign();
+		};
+
+		final Operation encryption = () -> new EncryptedAuthzToken((RSAPrivateKey) authen.getPrivate(), (RSAPublicKey) se.getPublic(), false).encrypt(ENVELOPE);
+
+		measure("SHA384withRSA, new instance per envelope", iterations, 1, legacySignature);
+		measure("SHA384withRSA, per-thread instance", iterations, 1, reusedSignature);
+		measure("SHA384withRSA, per-thread instance", iterations, threads, reusedSignature);
+		measure("Encrypted envelope", iterations, 1, encryption);
+		measure("Encrypted envelope", iterations, threads, encryption);
+	}
+}
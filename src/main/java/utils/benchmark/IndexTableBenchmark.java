@@ -0,0 +1,241 @@
+package utils.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import alien.catalogue.IndexTableEntry;
+import alien.catalogue.IndexTableTrie;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ * Compare the INDEXTABLE lookups of {@link IndexTableTrie} with the previous implementation (walking the path backwards with hash lookups, linear scans for the rest) on a synthetic catalogue
+ * layout. No database access is needed.
+ *
+ * @author costing
+ * @since 2024-03-18
+ */
+public class IndexTableBenchmark {
+
+	private static final class Legacy {
+		final List<IndexTableEntry> indextable;
+		final Map<String, IndexTableEntry> tableentries = new HashMap<>();
+
+		Legacy(final List<IndexTableEntry> indextable) {
+			this.indextable = indextable;
+
+			for (final IndexTableEntry entry : indextable)
+				tableentries.put(entry.lfn, entry);
+		}
+
+		IndexTableEntry getClosestMatch(final String pattern) {
+			String searchFor = pattern;
+
+			while (searchFor.length() > 0) {
+				final IndexTableEntry entry = tableentries.get(searchFor);
+
+				if (entry != null)
+					return entry;
+
+				final int idx = searchFor.lastIndexOf('/', searchFor.length() - 2);
+
+				if (idx >= 0)
+					searchFor = searchFor.substring(0, idx + 1);
+				else
+					break;
+			}
+
+			return null;
+		}
+
+		Set<IndexTableEntry> getAllMatchingTables(final String pattern) {
+			final IndexTableEntry best = getClosestMatch(pattern);
+
+			if (best == null)
+				return Collections.emptySet();
+
+			final Set<IndexTableEntry> ret = new LinkedHashSet<>();
+
+			ret.add(best);
+
+			for (final IndexTableEntry ite : indextable)
+				if (ite.lfn.startsWith(pattern))
+					ret.add(ite);
+
+			return ret;
+		}
+
+		IndexTableEntry getIndexTable(final int hostId, final int tableName) {
+			for (final IndexTableEntry ite : indextable)
+				if (ite.tableName == tableName && ite.hostIndex == hostId)
+					return ite;
+
+			return null;
+		}
+	}
+
+	private static List<IndexTableEntry> generate(final int tables, final Random r) {
+		final List<IndexTableEntry> ret = new ArrayList<>(tables);
+
+		ret.add(new IndexTableEntry(1, 8, 0, "/"));
+
+		for (int i = 1; i < tables; i++) {
+			final String lfn;
+
+			switch (i % 3) {
+				case 0:
+					lfn = "/alice/data/20" + (10 + r.nextInt(14)) + "/LHC" + (10 + r.nextInt(14)) + (char) ('a' + r.nextInt(26)) + "/000" + (100000 + i) + "/";
+					break;
+				case 1:
+					lfn = "/alice/sim/20" + (10 + r.nextInt(14)) + "/LHC" + (10 + r.nextInt(14)) + (char) ('a' + r.nextInt(26)) + r.nextInt(10) + "/" + (200000 + i) + "/";
+					break;
+				default:
+					lfn = "/alice/cern.ch/user/" + (char) ('a' + r.nextInt(26)) + "/user" + i + "/";
+			}
+
+			ret.add(new IndexTableEntry(i + 1, 8 + (i % 4), i, lfn));
+		}
+
+		// same order as the INDEXTABLE query in CatalogueUtils
+		ret.sort((e1, e2) -> {
+			final int diff = e2.lfn.length() - e1.lfn.length();
+
+			return diff != 0 ? diff : e1.lfn.compareTo(e2.lfn);
+		});
+
+		return ret;
+	}
+
+	private static String[] lookupPaths(final List<IndexTableEntry> entries, final int count, final Random r) {
+		final String[] ret = new String[count];
+
+		for (int i = 0; i < count; i++) {
+			final String base = entries.get(r.nextInt(entries.size())).lfn;
+
+			ret[i] = base + "AOD/" + String.format("%03d", Integer.valueOf(r.nextInt(1000))) + "/AliAOD.root";
+		}
+
+		return ret;
+	}
+
+	private static String[] subtreePaths(final List<IndexTableEntry> entries, final int count, final Random r) {
+		final String[] ret = new String[count];
+
+		for (int i = 0; i < count; i++) {
+			final String lfn = entries.get(r.nextInt(entries.size())).lfn;
+
+			// most searches start from a run or a period directory, a few from higher up
+			int cut = lfn.length() - 1;
+
+			for (int levels = r.nextInt(10) == 0 ? 3 : 1 + r.nextInt(2); levels > 0 && cut > 0; levels--)
+				cut = lfn.lastIndexOf('/', cut - 1);
+
+			ret[i] = cut > 0 ? lfn.substring(0, cut + 1) : lfn;
+
+			// and some end in the middle of a directory name
+			if (i % 8 == 0 && ret[i].length() > 3)
+				ret[i] = ret[i].substring(0, ret[i].length() - 3);
+		}
+
+		return ret;
+	}
+
+	private interface Operation {
+		long run(int i);
+	}
+
+	private static void measure(final String name, final int iterations, final Operation op) {
+		long sink = 0;
+
+		// warm up
+		for (int i = 0; i < iterations; i++)
+			sink += op.run(i);
+
+		final long start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++)
+			sink += op.run(i);
+
+		final long duration = System.nanoTime() - start;
+
+		System.out.printf("%-40s %10.1f ns/op (%d)%n", name, Double.valueOf((double) duration / iterations), Long.valueOf(sink));
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(final String[] args) {
+		final OptionParser parser = new OptionParser();
+
+		parser.accepts("t", "number of L%L tables").withRequiredArg().ofType(Integer.class);
+		parser.accepts("i", "iterations of each operation").withRequiredArg().ofType(Integer.class);
+
+		final OptionSet options = parser.parse(args);
+
+		final int tables = options.has("t") ? ((Integer) options.valueOf("t")).intValue() : 5000;
+		final int iterations = options.has("i") ? ((Integer) options.valueOf("i")).intValue() : 200000;
+
+		final Random r = new Random(42);
+
+		final List<IndexTableEntry> entries = generate(tables, r);
+
+		final Legacy legacy = new Legacy(entries);
+
+		long start = System.nanoTime();
+		final IndexTableTrie trie = new IndexTableTrie(entries);
+		System.out.printf("Trie built in %.2f ms for %d tables%n", Double.valueOf((System.nanoTime() - start) / 1000000d), Integer.valueOf(trie.size()));
+
+		final String[] paths = lookupPaths(entries, 4096, r);
+		final String[] prefixes = subtreePaths(entries, 1024, r);
+
+		for (final String path : paths)
+			if (legacy.getClosestMatch(path) != trie.getClosestMatch(path))
+				throw new IllegalStateException("Different closest match for " + path);
+
+		for (final String prefix : prefixes)
+			if (!new ArrayList<>(legacy.getAllMatchingTables(prefix)).equals(new ArrayList<>(trieMatching(trie, prefix))))
+				throw new IllegalStateException("Different matching tables for " + prefix);
+
+		measure("getClosestMatch legacy", iterations, (i) -> legacy.getClosestMatch(paths[i & 4095]).tableName);
+		measure("getClosestMatch trie", iterations, (i) -> trie.getClosestMatch(paths[i & 4095]).tableName);
+
+		final int subtreeIterations = Math.max(1, iterations / 100);
+
+		measure("getAllMatchingTables legacy", subtreeIterations, (i) -> legacy.getAllMatchingTables(prefixes[i & 1023]).size());
+		measure("getAllMatchingTables trie", subtreeIterations, (i) -> trieMatching(trie, prefixes[i & 1023]).size());
+
+		measure("getIndexTable legacy", subtreeIterations, (i) -> {
+			final IndexTableEntry e = entries.get(i % entries.size());
+			return legacy.getIndexTable(e.hostIndex, e.tableName).indexId;
+		});
+		measure("getIndexTable trie", iterations, (i) -> {
+			final IndexTableEntry e = entries.get(i % entries.size());
+			return trie.get(e.hostIndex, e.tableName).indexId;
+		});
+
+		start = System.nanoTime();
+		for (int i = 0; i < 10; i++)
+			new IndexTableTrie(entries);
+		System.out.printf("Trie rebuild: %.2f ms%n", Double.valueOf((System.nanoTime() - start) / 10000000d));
+	}
+
+	private static Set<IndexTableEntry> trieMatching(final IndexTableTrie trie, final String pattern) {
+		final IndexTableEntry best = trie.getClosestMatch(pattern);
+
+		if (best == null)
+			return Collections.emptySet();
+
+		final Set<IndexTableEntry> ret = new LinkedHashSet<>();
+
+		ret.add(best);
+		ret.addAll(trie.getSubtree(pattern));
+
+		return ret;
+	}
+}
@@ -0,0 +1,145 @@
+package alien.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round trips of the {@link WireCodec#BINARY} field encodings and the limits applied to what is read off the wire
+ */
+class BinaryCodecTests {
+
+	@FunctionalInterface
+	private interface Writer {
+		void write(BinaryOutput out, ObjectOutputStream oos) throws IOException;
+	}
+
+	private static byte[] encode(final Writer w) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			w.write(new BinaryOutput(oos), oos);
+		}
+
+		return baos.toByteArray();
+	}
+
+	private static BinaryInput decoder(final byte[] content, final long maxFrameBytes, final int maxElements) throws IOException {
+		return new BinaryInput(new ObjectInputStream(new ByteArrayInputStream(content)), maxFrameBytes, maxElements);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+
+		final HashMap<Object, Object> map = new HashMap<>();
+		map.put("string", "value");
+		map.put("int", Integer.valueOf(42));
+		map.put("long", Long.valueOf(Long.MAX_VALUE));
+		map.put("double", Double.valueOf(0.5));
+		map.put("date", new Date(1234567890000L));
+		map.put("list", new ArrayList<>(Arrays.asList("a", Integer.valueOf(1), null)));
+		map.put("set", new HashSet<>(Arrays.asList("x", "y")));
+		map.put(Integer.valueOf(7), uuid);
+
+		final byte[] content = encode((out, oos) -> {
+			out.writeBoolean(true);
+			out.writeInt(-5);
+			out.writeLong(1L << 40);
+			out.writeDouble(3.25);
+			out.writeString(null);
+			out.writeString("\u0103\u00e2\u00ee\u0219\u021b");
+			out.writeUUID(uuid);
+			out.writeUUID(null);
+			out.writeEnum(WireCodec.BINARY);
+			out.writeStrings(Arrays.asList("one", null, "three"));
+			out.writeStrings(null);
+			out.writeMap(map);
+			out.writeMap(null);
+		});
+
+		final BinaryInput in = decoder(content, 1024 * 1024, 1000);
+
+		Assertions.assertTrue(in.readBoolean());
+		Assertions.assertEquals(-5, in.readInt());
+		Assertions.assertEquals(1L << 40, in.readLong());
+		Assertions.assertEquals(3.25, in.readDouble());
+		Assertions.assertNull(in.readString());
+		Assertions.assertEquals("\u0103\u00e2\u00ee\u0219\u021b", in.readString());
+		Assertions.assertEquals(uuid, in.readUUID());
+		Assertions.assertNull(in.readUUID());
+		Assertions.assertEquals(WireCodec.BINARY, in.readEnum(WireCodec.class));
+		Assertions.assertEquals(Arrays.asList("one", null, "three"), in.readStrings());
+		Assertions.assertNull(in.readStrings());
+		Assertions.assertEquals(map, in.readMap());
+		Assertions.assertNull(in.readMap());
+	}
+
+	@Test
+	void testHugeStringLength() throws IOException {
+		final byte[] content = encode((out, oos) -> out.writeInt(Integer.MAX_VALUE));
+
+		final BinaryInput in = decoder(content, 1024 * 1024, 1000);
+
+		Assertions.assertThrows(StreamCorruptedException.class, () -> in.readString());
+	}
+
+	@Test
+	void testHugeCounts() throws IOException {
+		final byte[] strings = encode((out, oos) -> out.writeInt(Integer.MAX_VALUE));
+
+		Assertions.assertThrows(StreamCorruptedException.class, () -> decoder(strings, Long.MAX_VALUE, 1000).readStrings());
+
+		// below the element limit, but more than the rest of the frame could possibly hold
+		final byte[] map = encode((out, oos) -> out.writeInt(900));
+
+		Assertions.assertThrows(StreamCorruptedException.class, () -> decoder(map, 1000, 1000).readMap());
+
+		final byte[] list = encode((out, oos) -> {
+			oos.writeByte(BinaryOutput.TAG_LIST);
+			oos.writeInt(Integer.MAX_VALUE);
+		});
+
+		Assertions.assertThrows(StreamCorruptedException.class, () -> decoder(list, 1024 * 1024, 1000).readValue());
+	}
+
+	@Test
+	void testFrameBudget() throws IOException {
+		final List<String> values = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++)
+			values.add("0123456789");
+
+		final byte[] content = encode((out, oos) -> {
+			out.writeStrings(values);
+			out.writeStrings(values);
+		});
+
+		// one list takes 4 + 100 * 14 bytes, the two of them don't fit in the same frame
+		final BinaryInput in = decoder(content, 2000, 1000);
+
+		Assertions.assertEquals(values, in.readStrings());
+		Assertions.assertThrows(StreamCorruptedException.class, () -> in.readStrings());
+
+		// but they do when each one is a frame of its own
+		final BinaryInput framed = decoder(content, 2000, 1000);
+
+		framed.startFrame();
+		Assertions.assertEquals(values, framed.readStrings());
+		framed.startFrame();
+		Assertions.assertEquals(values, framed.readStrings());
+	}
+}
@@ -0,0 +1,121 @@
+package alien.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import alien.api.taskQueue.PutJobHeartbeats;
+import alien.api.taskQueue.PutJobLogBulk;
+
+/**
+ * {@link WireCodec#BINARY} encoding of the bulk trace requests. The requests are decoded from hand-written frames, creating them on the client side would need a grid identity.
+ */
+class BulkRequestCodecTests {
+
+	@FunctionalInterface
+	private interface Body {
+		void write(BinaryOutput out) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface Decoder {
+		BinaryEncodable decode(BinaryInput in) throws IOException;
+	}
+
+	private static byte[] frame(final Body body) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			final BinaryOutput out = new BinaryOutput(oos);
+
+			// request header: VM, request ID, the three identities and the exception
+			out.writeUUID(UUID.randomUUID());
+			out.writeLong(42);
+			out.writePrincipal(null);
+			out.writePrincipal(null);
+			out.writePrincipal(null);
+			out.writeObject(null);
+
+			body.write(out);
+		}
+
+		return baos.toByteArray();
+	}
+
+	private static BinaryInput decoder(final byte[] content) throws IOException {
+		return new BinaryInput(new ObjectInputStream(new ByteArrayInputStream(content)), 1024 * 1024, 1000);
+	}
+
+	private static byte[] encode(final BinaryEncodable r) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			r.writeBinary(new BinaryOutput(oos));
+		}
+
+		return baos.toByteArray();
+	}
+
+	private static void line(final BinaryOutput out, final long queueId, final String tag, final String message) throws IOException {
+		out.writeLong(queueId);
+		out.writeInt(1);
+		out.writeLong(1234567890000L);
+		out.writeString(tag);
+		out.writeString(message);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		for (final Decoder d : new Decoder[] { PutJobLogBulk::new, PutJobHeartbeats::new }) {
+			// a request on its way to the server: lines and no answer yet
+			final byte[] request = frame((out) -> {
+				out.writeInt(3);
+				line(out, 1, "trace", "first");
+				line(out, 2, null, "\u0103\u00e2\u00ee");
+				line(out, 1, "proc", null);
+				out.writeInt(-1);
+			});
+
+			final BinaryEncodable decoded = d.decode(decoder(request));
+
+			Assertions.assertNull(((PutJobLogBulk) decoded).getKilledJobs());
+			Assertions.assertArrayEquals(request, encode(decoded));
+
+			// and the answer: the lines are not sent back, only the killed jobs
+			final byte[] reply = frame((out) -> {
+				out.writeInt(-1);
+				out.writeInt(2);
+				out.writeLong(5);
+				out.writeLong(7);
+			});
+
+			final PutJobLogBulk answer = (PutJobLogBulk) d.decode(decoder(reply));
+
+			Assertions.assertEquals(new HashSet<>(Arrays.asList(Long.valueOf(5), Long.valueOf(7))), answer.getKilledJobs());
+			Assertions.assertTrue(answer.toString().contains("killed jobs"));
+		}
+	}
+
+	@Test
+	void testHugeCounts() throws IOException {
+		final byte[] lines = frame((out) -> out.writeInt(Integer.MAX_VALUE));
+
+		Assertions.assertThrows(StreamCorruptedException.class, () -> new PutJobLogBulk(decoder(lines)));
+
+		final byte[] killed = frame((out) -> {
+			out.writeInt(-1);
+			out.writeInt(Integer.MAX_VALUE);
+		});
+
+		Assertions.assertThrows(StreamCorruptedException.class, () -> new PutJobHeartbeats(decoder(killed)));
+	}
+}
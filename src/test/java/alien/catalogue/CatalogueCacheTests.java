@@ -0,0 +1,79 @@
+package alien.catalogue;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Invalidation of the cached catalogue entries: a value read before a change of the same key is not put back, while the lookups of other keys are not affected
+ */
+class CatalogueCacheTests {
+
+	private static final long LIFETIME = 60 * 1000;
+
+	@Test
+	void testPutAndInvalidate() {
+		final CatalogueCache.Entries<String> entries = new CatalogueCache.Entries<>(100);
+
+		Assertions.assertTrue(entries.put("a", "value", LIFETIME, entries.version("a")));
+		Assertions.assertEquals("value", entries.get("a"));
+
+		entries.invalidate("a");
+
+		Assertions.assertNull(entries.get("a"));
+	}
+
+	@Test
+	void testStaleReadIsNotCached() {
+		final CatalogueCache.Entries<UUID> entries = new CatalogueCache.Entries<>(100);
+
+		final UUID uuid = UUID.randomUUID();
+
+		// a lookup reads the old value from the database while another thread changes it
+		final long readVersion = entries.version(uuid);
+
+		entries.invalidate(uuid);
+
+		Assertions.assertTrue(entries.changed(uuid, readVersion));
+		Assertions.assertFalse(entries.put(uuid, "old value", LIFETIME, readVersion));
+		Assertions.assertNull(entries.get(uuid));
+
+		// the next lookup reads the new value and keeps it
+		Assertions.assertTrue(entries.put(uuid, "new value", LIFETIME, entries.version(uuid)));
+		Assertions.assertEquals("new value", entries.get(uuid));
+	}
+
+	@Test
+	void testOtherKeysAreNotAffected() {
+		final CatalogueCache.Entries<Integer> entries = new CatalogueCache.Entries<>(100);
+
+		final Integer key = Integer.valueOf(1);
+
+		final long readVersion = entries.version(key);
+
+		// small integers are their own hash code, each of them has a version slot of its own
+		for (int i = 2; i < 100; i++)
+			entries.invalidate(Integer.valueOf(i));
+
+		Assertions.assertTrue(entries.put(key, "value", LIFETIME, readVersion));
+		Assertions.assertEquals("value", entries.get(key));
+	}
+
+	@Test
+	void testClear() {
+		final CatalogueCache.Entries<String> entries = new CatalogueCache.Entries<>(100);
+
+		final long readVersion = entries.version("a");
+
+		entries.put("b", "value", LIFETIME, entries.version("b"));
+
+		entries.clear();
+
+		Assertions.assertNull(entries.get("b"));
+
+		// a lookup that was in flight during the flush is not cached either
+		Assertions.assertFalse(entries.put("a", "value", LIFETIME, readVersion));
+		Assertions.assertNull(entries.get("a"));
+	}
+}
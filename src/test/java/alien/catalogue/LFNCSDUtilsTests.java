@@ -0,0 +1,97 @@
+package alien.catalogue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Resuming of the recursive operations from their checkpoints, and sizing of the shared thread pool from the timings of all the operations
+ */
+class LFNCSDUtilsTests {
+
+	private static File checkpoint(final long age) throws IOException {
+		final File f = Files.createTempFile("LFNCSDUtilsTests", ".checkpoint").toFile();
+
+		try (FileWriter fw = new FileWriter(f)) {
+			fw.write("/alice/a/\n/alice/b/\n");
+		}
+
+		f.setLastModified(System.currentTimeMillis() - age);
+
+		return f;
+	}
+
+	@Test
+	void testResume() throws IOException {
+		final File f = checkpoint(1000 * 60);
+
+		final LFNCSDUtils.Traversal t = new LFNCSDUtils.Traversal(f);
+
+		Assertions.assertTrue(t.isCompleted("/alice/a/"));
+		Assertions.assertTrue(t.isCompleted("/alice/b/"));
+		Assertions.assertFalse(t.isCompleted("/alice/c/"));
+
+		t.completed("/alice/c/");
+		t.close(false);
+
+		Assertions.assertEquals(3, Files.readAllLines(f.toPath()).size());
+
+		new LFNCSDUtils.Traversal(f).close(true);
+
+		Assertions.assertFalse(f.exists());
+	}
+
+	@Test
+	void testOldCheckpointIsIgnored() throws IOException {
+		final File f = checkpoint(LFNCSDUtils.checkpointMaxAge + 1000 * 60);
+
+		final LFNCSDUtils.Traversal t = new LFNCSDUtils.Traversal(f);
+
+		Assertions.assertFalse(t.isCompleted("/alice/a/"));
+
+		t.completed("/alice/c/");
+		t.close(false);
+
+		// and it is started over
+		Assertions.assertEquals(1, Files.readAllLines(f.toPath()).size());
+
+		f.delete();
+	}
+
+	@Test
+	void testTuning() {
+		final int cpus = Runtime.getRuntime().availableProcessors();
+
+		Assertions.assertEquals(cpus, LFNCSDUtils.poolSize(0));
+		Assertions.assertEquals(2 * cpus, LFNCSDUtils.poolSize(1));
+		Assertions.assertTrue(LFNCSDUtils.poolSize(1e9) >= cpus);
+
+		final int before = LFNCSDUtils.tPool.getMaximumPoolSize();
+
+		final long now = System.currentTimeMillis() + 1000L * 60 * 60;
+
+		// one operation whose few callbacks wait a lot doesn't resize the pool of everybody
+		for (int i = 0; i < 10; i++)
+			LFNCSDUtils.tune(100_000_000, 1_000_000, now);
+
+		Assertions.assertEquals(before, LFNCSDUtils.tPool.getMaximumPoolSize());
+
+		// many of them do, once enough time has passed since the last resizing
+		for (int i = 0; i < 100; i++)
+			LFNCSDUtils.tune(100_000_000, 1_000_000, now);
+
+		Assertions.assertTrue(LFNCSDUtils.tPool.getMaximumPoolSize() > before || before >= LFNCSDUtils.poolSize(1e9));
+
+		final int after = LFNCSDUtils.tPool.getMaximumPoolSize();
+
+		// and not again right away
+		for (int i = 0; i < 100; i++)
+			LFNCSDUtils.tune(1_000_000, 1_000_000, now + 1000);
+
+		Assertions.assertEquals(after, LFNCSDUtils.tPool.getMaximumPoolSize());
+	}
+}
@@ -0,0 +1,72 @@
+package alien.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lazy lookup of the replicas, without any storage behind them
+ */
+class DownloadEngineTests {
+
+	@Test
+	void testResolvedInTransferThreads() {
+		final DownloadEngine engine = new DownloadEngine(2, 1);
+
+		final Thread caller = Thread.currentThread();
+
+		final List<String> resolved = Collections.synchronizedList(new ArrayList<>());
+
+		final AtomicInteger finished = new AtomicInteger();
+
+		final List<DownloadEngine.Download> downloads = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++) {
+			final int idx = i;
+
+			downloads.add(engine.add("file" + i, null, (download) -> {
+				Assertions.assertNotSame(caller, Thread.currentThread());
+
+				resolved.add(download.getName());
+
+				if (idx == 3)
+					return Collections.emptyList();
+
+				if (idx == 5)
+					throw new IllegalStateException("lookup failed");
+
+				return null;
+			}));
+		}
+
+		// nothing is looked up before the transfers start
+		Assertions.assertTrue(resolved.isEmpty());
+
+		engine.run(new DownloadEngine.Listener() {
+			@Override
+			public void finished(final DownloadEngine.Download download) {
+				finished.incrementAndGet();
+			}
+		});
+
+		Assertions.assertEquals(10, resolved.size());
+		Assertions.assertEquals(10, finished.get());
+
+		for (int i = 0; i < 10; i++) {
+			final DownloadEngine.Download d = downloads.get(i);
+
+			Assertions.assertNull(d.getResult());
+
+			if (i == 3)
+				Assertions.assertEquals("No replicas for file3", d.getError());
+			else if (i == 5)
+				Assertions.assertEquals("lookup failed", d.getError());
+			else
+				Assertions.assertNull(d.getError(), "file" + i);
+		}
+	}
+}
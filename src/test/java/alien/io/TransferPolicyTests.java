@@ -0,0 +1,170 @@
+package alien.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Ordering of the queued transfers by the FIFO and the fair share policies, and the history the fair share one keeps
+ */
+class TransferPolicyTests {
+
+	private static final long GB = 1024L * 1024 * 1024;
+
+	private static final long HOUR = 1000L * 60 * 60;
+
+	private static TransferScheduler.SEQueue queue(final String destination, final int maxTransfers, final int active) {
+		final TransferScheduler.SEQueue q = new TransferScheduler.SEQueue(destination);
+		q.maxTransfers = maxTransfers;
+		q.active.set(active);
+
+		return q;
+	}
+
+	private static TransferScheduler.Candidate candidate(final TransferScheduler.SEQueue q, final long transferId, final String user, final long size, final long received) {
+		return new TransferScheduler.Candidate(transferId, "/alice/file" + transferId, q.destination, null, size, user, 0, received, q);
+	}
+
+	private static List<Long> sorted(final Comparator<TransferScheduler.Candidate> order, final TransferScheduler.Candidate... candidates) {
+		final List<TransferScheduler.Candidate> list = new ArrayList<>(Arrays.asList(candidates));
+
+		list.sort(order);
+
+		final List<Long> ret = new ArrayList<>();
+
+		for (final TransferScheduler.Candidate c : list)
+			ret.add(Long.valueOf(c.transferId));
+
+		return ret;
+	}
+
+	@Test
+	void testFIFOOrder() {
+		final TransferScheduler.SEQueue idle = queue("ALICE::Test::Idle", 10, 1);
+		final TransferScheduler.SEQueue busy = queue("ALICE::Test::Busy", 10, 9);
+
+		final TransferScheduler.Candidate old = candidate(busy, 1, "a", GB, 0);
+		final TransferScheduler.Candidate newer = candidate(idle, 3, "a", GB, 0);
+		final TransferScheduler.Candidate newest = candidate(idle, 5, "a", GB, 0);
+
+		// the least loaded SE first, then the oldest transfer
+		Assertions.assertEquals(Arrays.asList(Long.valueOf(3), Long.valueOf(5), Long.valueOf(1)), sorted(new FIFOTransferPolicy().ordering(0), newest, old, newer));
+	}
+
+	@Test
+	void testFairShareOrder() {
+		final FairShareTransferPolicy policy = new FairShareTransferPolicy();
+
+		final TransferScheduler.SEQueue q = queue("ALICE::Test::SE", 10, 0);
+
+		final long now = 100 * HOUR;
+
+		final TransferScheduler.Candidate heavy = candidate(q, 1, "heavy", GB, now);
+		final TransferScheduler.Candidate light = candidate(q, 2, "light", GB, now);
+
+		// nobody has used anything yet, the historical order decides
+		Assertions.assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), sorted(policy.ordering(now), light, heavy));
+
+		for (int i = 0; i < 10; i++)
+			policy.started(candidate(q, 100 + i, "heavy", 10 * GB, now), now);
+
+		Assertions.assertEquals(Arrays.asList(Long.valueOf(2), Long.valueOf(1)), sorted(policy.ordering(now), light, heavy));
+	}
+
+	@Test
+	void testShareAging() {
+		final FairShareTransferPolicy policy = new FairShareTransferPolicy();
+
+		final TransferScheduler.SEQueue q = queue("ALICE::Test::SE", 10, 0);
+
+		final long start = 100 * HOUR;
+
+		policy.started(candidate(q, 100, "heavy", 100 * GB, start), start);
+
+		final TransferScheduler.Candidate heavy = candidate(q, 1, "heavy", GB, start);
+		final TransferScheduler.Candidate light = candidate(q, 2, "light", GB, start);
+
+		Assertions.assertEquals(Long.valueOf(2), sorted(policy.ordering(start), heavy, light).get(0));
+
+		// the usage halves every hour, a day later there is nothing left of it
+		final long later = start + 24 * HOUR;
+
+		Assertions.assertEquals(Long.valueOf(1), sorted(policy.ordering(later), heavy, light).get(0));
+
+		// and the user is forgotten
+		Assertions.assertFalse(policy.usage.containsKey("heavy"));
+	}
+
+	@Test
+	void testResponseRatio() {
+		final FairShareTransferPolicy policy = new FairShareTransferPolicy();
+
+		final TransferScheduler.SEQueue q = queue("ALICE::Test::SE", 10, 0);
+
+		final long now = 100 * HOUR;
+
+		// the large file is older, the small one still goes first when they arrived at about the same time
+		final TransferScheduler.Candidate large = candidate(q, 1, "a", 100 * GB, now - 61000);
+		final TransferScheduler.Candidate small = candidate(q, 2, "a", 1024 * 1024, now - 60000);
+
+		Assertions.assertEquals(Long.valueOf(2), sorted(policy.ordering(now), large, small).get(0));
+
+		// but not forever
+		Assertions.assertEquals(Long.valueOf(1), sorted(policy.ordering(now + 1000L * HOUR), large, candidate(q, 3, "a", 1024 * 1024, now + 1000L * HOUR)).get(0));
+	}
+
+	@Test
+	void testHistory() {
+		final FairShareTransferPolicy policy = new FairShareTransferPolicy();
+
+		final double defaultRate = policy.throughput.estimate("ALICE::Test::Fast");
+
+		// transfers completed before a restart
+		for (int i = 0; i < 20; i++)
+			policy.history("ALICE::Test::Fast", GB, 1000);
+
+		Assertions.assertTrue(policy.throughput.estimate("alice::test::fast") > defaultRate * 10);
+		Assertions.assertEquals(defaultRate, policy.throughput.estimate("ALICE::Test::Other"));
+
+		final long now = 100 * HOUR;
+
+		// the same waiting time and size, the transfer to the fast SE waited more relative to how long it will take
+		final TransferScheduler.Candidate slow = candidate(queue("ALICE::Test::Other", 10, 0), 1, "a", GB, now - HOUR);
+		final TransferScheduler.Candidate fast = candidate(queue("ALICE::Test::Fast", 10, 0), 2, "a", GB, now - HOUR);
+
+		Assertions.assertEquals(Long.valueOf(2), sorted(policy.ordering(now), slow, fast).get(0));
+	}
+
+	@Test
+	void testFailedClaimsAreNotCharged() {
+		final TransferScheduler scheduler = new TransferScheduler(() -> {
+			// no housekeeping
+		});
+
+		final TransferScheduler.SEQueue q = queue("ALICE::Test::SE", 2, 0);
+
+		for (int i = 0; i < 2; i++) {
+			q.queuedIds.add(Long.valueOf(i));
+			q.add(candidate(q, i, "user", 10 * GB, System.currentTimeMillis()));
+		}
+
+		scheduler.queues.put("alice::test::se", q);
+
+		final FairShareTransferPolicy policy = (FairShareTransferPolicy) scheduler.policy;
+
+		// the claim lost the race in the database
+		final TransferScheduler.Candidate lost = scheduler.claim();
+		scheduler.release(lost);
+
+		Assertions.assertTrue(policy.usage.isEmpty());
+
+		final TransferScheduler.Candidate won = scheduler.claim();
+		scheduler.running(won);
+
+		Assertions.assertTrue(policy.usage.containsKey("user"));
+	}
+}
@@ -0,0 +1,162 @@
+package alien.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Claiming of the queued transfers against the per-SE limits, without any database behind the queues
+ */
+class TransferSchedulerTests {
+
+	private static TransferScheduler.SEQueue queue(final TransferScheduler scheduler, final String destination, final int maxTransfers, final int waiting) {
+		final TransferScheduler.SEQueue q = new TransferScheduler.SEQueue(destination);
+		q.maxTransfers = maxTransfers;
+
+		for (int i = 0; i < waiting; i++) {
+			final long transferId = destination.hashCode() * 1000L + i;
+
+			q.queuedIds.add(Long.valueOf(transferId));
+			q.add(new TransferScheduler.Candidate(transferId, "/alice/file" + i, destination, null, 1024, "user" + (i % 3), 3, System.currentTimeMillis(), q));
+		}
+
+		scheduler.queues.put(destination.toLowerCase(), q);
+
+		return q;
+	}
+
+	@Test
+	void testSlotLimit() {
+		final TransferScheduler scheduler = new TransferScheduler(() -> {
+			// no housekeeping
+		});
+
+		final TransferScheduler.SEQueue q = queue(scheduler, "ALICE::Test::SE", 2, 5);
+
+		final TransferScheduler.Candidate first = scheduler.claim();
+		final TransferScheduler.Candidate second = scheduler.claim();
+
+		Assertions.assertNotNull(first);
+		Assertions.assertNotNull(second);
+		Assertions.assertNotEquals(first.transferId, second.transferId);
+
+		// both slots are taken
+		Assertions.assertNull(scheduler.claim());
+		Assertions.assertEquals(2, q.active.get());
+		Assertions.assertEquals(3, q.waiting.size());
+
+		// a transfer that could not be started gives its slot to the next one
+		scheduler.release(first);
+
+		Assertions.assertNotNull(scheduler.claim());
+		Assertions.assertEquals(2, q.active.get());
+	}
+
+	@Test
+	void testOverLimitInDatabase() {
+		final TransferScheduler scheduler = new TransferScheduler(() -> {
+			// no housekeeping
+		});
+
+		final TransferScheduler.SEQueue q = queue(scheduler, "ALICE::Test::Busy", 3, 5);
+
+		final TransferScheduler.Candidate c = scheduler.claim();
+
+		Assertions.assertNotNull(c);
+
+		// the other JVMs have filled the SE since the last refill: 3 of theirs plus this one
+		scheduler.overLimit(c, 4);
+		scheduler.release(c);
+
+		Assertions.assertNull(scheduler.claim());
+		Assertions.assertEquals(3, q.active.get());
+	}
+
+	@Test
+	void testAbandoned() {
+		final TransferScheduler scheduler = new TransferScheduler(() -> {
+			// no housekeeping
+		});
+
+		final TransferScheduler.SEQueue q = queue(scheduler, "ALICE::Test::Single", 1, 2);
+
+		final TransferScheduler.Candidate c = scheduler.claim();
+
+		Assertions.assertNotNull(c);
+
+		scheduler.running(c);
+
+		Assertions.assertNull(scheduler.claim());
+
+		// the agent could not register the transfer as its own after all
+		scheduler.abandoned(c.transferId);
+
+		Assertions.assertEquals(0, q.active.get());
+
+		// and doing it twice doesn't free a slot that isn't there
+		scheduler.abandoned(c.transferId);
+
+		Assertions.assertEquals(0, q.active.get());
+
+		Assertions.assertNotNull(scheduler.claim());
+	}
+
+	@Test
+	void testConcurrentClaims() throws InterruptedException {
+		final TransferScheduler scheduler = new TransferScheduler(() -> {
+			// no housekeeping
+		});
+
+		final List<TransferScheduler.SEQueue> queues = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++)
+			queues.add(queue(scheduler, "ALICE::Test::SE" + i, i + 1, 50));
+
+		final Set<Long> claimed = ConcurrentHashMap.newKeySet();
+
+		final AtomicInteger duplicates = new AtomicInteger();
+
+		final CountDownLatch startSignal = new CountDownLatch(1);
+
+		final List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < 16; i++) {
+			final Thread t = new Thread(() -> {
+				try {
+					startSignal.await();
+				}
+				catch (@SuppressWarnings("unused") final InterruptedException e) {
+					return;
+				}
+
+				TransferScheduler.Candidate c;
+
+				while ((c = scheduler.claim()) != null)
+					if (!claimed.add(Long.valueOf(c.transferId)))
+						duplicates.incrementAndGet();
+			});
+
+			t.start();
+			threads.add(t);
+		}
+
+		startSignal.countDown();
+
+		for (final Thread t : threads)
+			t.join();
+
+		Assertions.assertEquals(0, duplicates.get());
+
+		// exactly as many transfers as there are slots, none of the SEs over its limit
+		Assertions.assertEquals(1 + 2 + 3 + 4, claimed.size());
+
+		for (final TransferScheduler.SEQueue q : queues)
+			Assertions.assertEquals(q.maxTransfers, q.active.get());
+	}
+}
@@ -0,0 +1,388 @@
+package alien.io.xrootd.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exercise the native client against a minimal in-process stand-in for an xrootd redirector and data server
+ */
+class XrootdClientTests {
+
+	/**
+	 * Speaks just enough of the protocol for the client: handshake, login, open, read, write, close, stat and rm. Redirectors send every path request to the data server.
+	 */
+	private static final class StandInServer extends Thread {
+		final ServerSocket socket;
+
+		final StandInServer redirectTo;
+
+		final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+		final List<String> opened = new ArrayList<>();
+
+		final AtomicInteger connections = new AtomicInteger();
+
+		/**
+		 * How long to think before answering each read, in milliseconds
+		 */
+		volatile long readDelay = 0;
+
+		StandInServer(final StandInServer redirectTo) throws IOException {
+			this.socket = new ServerSocket(0);
+			this.redirectTo = redirectTo;
+			setDaemon(true);
+			start();
+		}
+
+		int getPort() {
+			return socket.getLocalPort();
+		}
+
+		@Override
+		public void run() {
+			while (!socket.isClosed())
+				try {
+					final Socket s = socket.accept();
+
+					connections.incrementAndGet();
+
+					final Thread t = new Thread(() -> serve(s));
+					t.setDaemon(true);
+					t.start();
+				}
+				catch (@SuppressWarnings("unused") final IOException e) {
+					return;
+				}
+		}
+
+		private static void respond(final DataOutputStream out, final int streamId, final int status, final byte[] data) throws IOException {
+			out.writeShort(streamId);
+			out.writeShort(status);
+			out.writeInt(data.length);
+			out.write(data);
+			out.flush();
+		}
+
+		private static void error(final DataOutputStream out, final int streamId, final int code, final String message) throws IOException {
+			final byte[] msg = (message + "\0").getBytes(StandardCharsets.US_ASCII);
+			final byte[] body = new byte[4 + msg.length];
+			body[0] = (byte) (code >>> 24);
+			body[1] = (byte) (code >>> 16);
+			body[2] = (byte) (code >>> 8);
+			body[3] = (byte) code;
+			System.arraycopy(msg, 0, body, 4, msg.length);
+			respond(out, streamId, XrootdProtocol.kXR_error, body);
+		}
+
+		private void serve(final Socket s) {
+			final Map<Integer, String> handles = new ConcurrentHashMap<>();
+			final Map<Integer, ByteArrayOutputStream> writes = new ConcurrentHashMap<>();
+
+			int lastHandle = 0;
+
+			try (DataInputStream in = new DataInputStream(s.getInputStream()); DataOutputStream out = new DataOutputStream(s.getOutputStream())) {
+				final byte[] handshake = new byte[XrootdProtocol.HANDSHAKE_LENGTH];
+				in.readFully(handshake);
+
+				out.writeShort(0);
+				out.writeShort(0);
+				out.writeInt(8);
+				out.writeInt(XrootdProtocol.PROTOCOL_VERSION);
+				out.writeInt(redirectTo != null ? 0 : 1);
+				out.flush();
+
+				while (true) {
+					final int streamId = in.readUnsignedShort();
+					final int requestId = in.readUnsignedShort();
+					final byte[] params = new byte[XrootdProtocol.REQUEST_PARAMS_LENGTH];
+					in.readFully(params);
+					final byte[] data = new byte[in.readInt()];
+					in.readFully(data);
+
+					final ByteBuffer p = ByteBuffer.wrap(params);
+
+					String path = new String(data, StandardCharsets.UTF_8);
+					String opaque = "";
+
+					if (path.indexOf('?') >= 0) {
+						opaque = path.substring(path.indexOf('?') + 1);
+						path = path.substring(0, path.indexOf('?'));
+					}
+
+					if (redirectTo != null && (requestId == XrootdProtocol.kXR_open || requestId == XrootdProtocol.kXR_stat || requestId == XrootdProtocol.kXR_rm)) {
+						final byte[] host = "127.0.0.1?from=redirector".getBytes(StandardCharsets.US_ASCII);
+						final byte[] body = new byte[4 + host.length];
+						final int port = redirectTo.getPort();
+						body[2] = (byte) (port >>> 8);
+						body[3] = (byte) port;
+						System.arraycopy(host, 0, body, 4, host.length);
+						respond(out, streamId, XrootdProtocol.kXR_redirect, body);
+						continue;
+					}
+
+					switch (requestId) {
+						case XrootdProtocol.kXR_login:
+							respond(out, streamId, XrootdProtocol.kXR_ok, new byte[16]);
+							break;
+						case XrootdProtocol.kXR_open: {
+							p.getShort();
+							final int options = p.getShort();
+
+							synchronized (opened) {
+								opened.add(path + "?" + opaque);
+							}
+
+							if ((options & XrootdProtocol.kXR_open_read) != 0 && !files.containsKey(path)) {
+								error(out, streamId, XrootdProtocol.kXR_NotFound, "No such file " + path);
+								break;
+							}
+
+							final int handle = ++lastHandle;
+							handles.put(Integer.valueOf(handle), path);
+
+							if ((options & XrootdProtocol.kXR_open_updt) != 0)
+								writes.put(Integer.valueOf(handle), new ByteArrayOutputStream());
+
+							final ByteArrayOutputStream response = new ByteArrayOutputStream();
+							new DataOutputStream(response).writeInt(handle);
+
+							if ((options & XrootdProtocol.kXR_retstat) != 0) {
+								response.write(new byte[8]);
+								response.write(("42 " + files.get(path).length + " 16 1710756000\0").getBytes(StandardCharsets.US_ASCII));
+							}
+
+							respond(out, streamId, XrootdProtocol.kXR_ok, response.toByteArray());
+							break;
+						}
+						case XrootdProtocol.kXR_read: {
+							final String file = handles.get(Integer.valueOf(p.getInt()));
+							final long offset = p.getLong();
+							final int length = p.getInt();
+
+							final byte[] content = files.get(file);
+
+							if (readDelay > 0)
+								try {
+									Thread.sleep(readDelay);
+								}
+								catch (@SuppressWarnings("unused") final InterruptedException ie) {
+									return;
+								}
+
+							final int from = (int) Math.min(offset, content.length);
+							final int to = (int) Math.min(offset + length, content.length);
+
+							// answer in two parts to exercise kXR_oksofar
+							final int middle = from + (to - from) / 2;
+
+							respond(out, streamId, XrootdProtocol.kXR_oksofar, Arrays.copyOfRange(content, from, middle));
+							respond(out, streamId, XrootdProtocol.kXR_ok, Arrays.copyOfRange(content, middle, to));
+							break;
+						}
+						case XrootdProtocol.kXR_write: {
+							final ByteArrayOutputStream target = writes.get(Integer.valueOf(p.getInt()));
+							final long offset = p.getLong();
+
+							if (offset != target.size()) {
+								error(out, streamId, 3009, "Non sequential write");
+								break;
+							}
+
+							target.write(data);
+							respond(out, streamId, XrootdProtocol.kXR_ok, new byte[0]);
+							break;
+						}
+						case XrootdProtocol.kXR_close: {
+							final Integer handle = Integer.valueOf(p.getInt());
+							final ByteArrayOutputStream written = writes.remove(handle);
+
+							if (written != null)
+								files.put(handles.get(handle), written.toByteArray());
+
+							handles.remove(handle);
+							respond(out, streamId, XrootdProtocol.kXR_ok, new byte[0]);
+							break;
+						}
+						case XrootdProtocol.kXR_stat:
+							if (!files.containsKey(path))
+								error(out, streamId, XrootdProtocol.kXR_NotFound, "No such file " + path);
+							else
+								respond(out, streamId, XrootdProtocol.kXR_ok, ("42 " + files.get(path).length + " 16 1710756000\0").getBytes(StandardCharsets.US_ASCII));
+							break;
+						case XrootdProtocol.kXR_rm:
+							if (files.remove(path) == null)
+								error(out, streamId, XrootdProtocol.kXR_NotFound, "No such file " + path);
+							else
+								respond(out, streamId, XrootdProtocol.kXR_ok, new byte[0]);
+							break;
+						default:
+							error(out, streamId, 3013, "Unsupported request " + requestId);
+					}
+				}
+			}
+			catch (@SuppressWarnings("unused") final IOException e) {
+				// client went away
+			}
+		}
+	}
+
+	private static StandInServer dataServer;
+
+	private static StandInServer redirector;
+
+	@BeforeAll
+	static void startServers() throws IOException {
+		dataServer = new StandInServer(null);
+		redirector = new StandInServer(dataServer);
+	}
+
+	@AfterAll
+	static void stopServers() throws IOException {
+		XrootdClient.closeIdleConnections();
+
+		redirector.socket.close();
+		dataServer.socket.close();
+	}
+
+	@Test
+	void testParseURL() throws IOException {
+		XrootdClient.Location l = XrootdClient.Location.parse("root://eosalice.cern.ch:1094//05/12345/abc?authz=xyz");
+
+		Assertions.assertEquals("eosalice.cern.ch", l.host);
+		Assertions.assertEquals(1094, l.port);
+		Assertions.assertEquals("/05/12345/abc", l.path);
+		Assertions.assertEquals("authz=xyz", l.opaque);
+
+		l = XrootdClient.Location.parse("root://[2001:db8::1]/tmp/file");
+
+		Assertions.assertEquals("2001:db8::1", l.host);
+		Assertions.assertEquals(XrootdProtocol.DEFAULT_PORT, l.port);
+		Assertions.assertEquals("/tmp/file", l.path);
+		Assertions.assertNull(l.opaque);
+
+		Assertions.assertThrows(IOException.class, () -> XrootdClient.Location.parse("http://host/file"));
+	}
+
+	@Test
+	void testRoundTripThroughRedirector() throws Exception {
+		final byte[] content = new byte[10 * 1024 * 1024 + 123];
+		new Random(1).nextBytes(content);
+
+		final File source = File.createTempFile("xrootd-native-src", null);
+		final File target = File.createTempFile("xrootd-native-dst", null);
+
+		try {
+			Files.write(source.toPath(), content);
+			Assertions.assertTrue(target.delete());
+
+			final String url = "root://127.0.0.1:" + redirector.getPort() + "//05/12345/file?authz=-----BEGIN SEALED CIPHER-----";
+
+			final XrootdClient client = new XrootdClient(10);
+
+			final MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+			Assertions.assertEquals(content.length, client.upload(source, url, md5));
+			Assertions.assertArrayEquals(MessageDigest.getInstance("MD5").digest(content), md5.digest());
+			Assertions.assertArrayEquals(content, dataServer.files.get("/05/12345/file"));
+
+			synchronized (dataServer.opened) {
+				Assertions.assertEquals("/05/12345/file?authz=-----BEGIN SEALED CIPHER-----&from=redirector", dataServer.opened.get(dataServer.opened.size() - 1));
+			}
+
+			Assertions.assertEquals(content.length, client.stat(url).size);
+
+			Assertions.assertEquals(content.length, client.download(url, target));
+			Assertions.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+
+			client.delete(url);
+
+			final XrootdException e = Assertions.assertThrows(XrootdException.class, () -> client.stat(url));
+			Assertions.assertEquals(XrootdProtocol.kXR_NotFound, e.getErrorCode());
+
+			// all the requests went through the pooled connections
+			Assertions.assertEquals(1, redirector.connections.get());
+			Assertions.assertEquals(1, dataServer.connections.get());
+		}
+		finally {
+			source.delete();
+			target.delete();
+		}
+	}
+
+	@Test
+	void testMissingFile() throws IOException {
+		final File target = File.createTempFile("xrootd-native-missing", null);
+
+		try {
+			Assertions.assertTrue(target.delete());
+
+			final XrootdException e = Assertions.assertThrows(XrootdException.class,
+					() -> new XrootdClient(10).download("root://127.0.0.1:" + dataServer.getPort() + "//no/such/file", target));
+
+			Assertions.assertEquals(XrootdProtocol.kXR_NotFound, e.getErrorCode());
+		}
+		finally {
+			target.delete();
+		}
+	}
+
+	@Test
+	void testTimeLimit() throws IOException {
+		final StandInServer slowServer = new StandInServer(null);
+
+		final File target = File.createTempFile("xrootd-native-slow", null);
+
+		try {
+			Assertions.assertTrue(target.delete());
+
+			// 3 read requests, each of them well within the inactivity timeout but together longer than the total time limit
+			slowServer.files.put("/slow/file", new byte[9 * 1024 * 1024]);
+			slowServer.readDelay = 700;
+
+			Assertions.assertThrows(XrootdTimeLimitException.class, () -> new XrootdClient(10, 1).download("root://127.0.0.1:" + slowServer.getPort() + "//slow/file", target));
+
+			// without a limit it completes
+			Assertions.assertTrue(target.delete());
+			Assertions.assertEquals(9 * 1024 * 1024, new XrootdClient(10).download("root://127.0.0.1:" + slowServer.getPort() + "//slow/file", target));
+		}
+		finally {
+			target.delete();
+			slowServer.socket.close();
+		}
+	}
+
+	@Test
+	void testConnectionRefused() throws IOException {
+		final int port;
+
+		try (ServerSocket ss = new ServerSocket(0)) {
+			port = ss.getLocalPort();
+		}
+
+		final IOException e = Assertions.assertThrows(IOException.class, () -> new XrootdClient(2).stat("root://127.0.0.1:" + port + "//file"));
+
+		// not a server answer, the caller should fall back to xrdcp
+		Assertions.assertFalse(e instanceof XrootdException);
+	}
+}
@@ -0,0 +1,150 @@
+package alien.servlets;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Eviction of the off-heap cache segments: the direct memory they hold stays within the byte limit and an insert evicts no more than it needs to
+ */
+class TextCacheTests {
+
+	private static final int SLAB = 64 * 1024;
+
+	private static final TextCache.Namespace namespace = new TextCache.Namespace("TextCacheTests");
+
+	private static byte[] value(final int length) {
+		return new byte[length];
+	}
+
+	@Test
+	void testFullSizeClassEvictsOneEntry() {
+		final TextCache.Segment segment = new TextCache.Segment(100000, 4 * SLAB);
+
+		// 1KB values, 64 of them per slab
+		for (int i = 0; i < 4 * 64; i++)
+			segment.put(namespace, "k" + i, value(1024), Long.MAX_VALUE, true);
+
+		Assertions.assertEquals(4 * 64, segment.cache.size());
+		Assertions.assertEquals(4 * SLAB, segment.slabs.getReserved());
+
+		// the budget is met by giving up only the least recently used entry of the same size class
+		segment.put(namespace, "another", value(1000), Long.MAX_VALUE, true);
+
+		Assertions.assertEquals(4 * 64, segment.cache.size());
+		Assertions.assertTrue(segment.cache.containsKey("another"));
+		Assertions.assertFalse(segment.cache.containsKey("k0"));
+		Assertions.assertTrue(segment.cache.containsKey("k1"));
+		Assertions.assertEquals(4 * SLAB, segment.slabs.getReserved());
+	}
+
+	@Test
+	void testOlderEntriesOfOtherClassesAreKept() {
+		final TextCache.Segment segment = new TextCache.Segment(100000, 2 * SLAB);
+
+		// the least recently used entries are in one slab of small values, that evicting a few of them wouldn't free
+		for (int i = 0; i < 100; i++)
+			segment.put(namespace, "small" + i, value(100), Long.MAX_VALUE, true);
+
+		for (int i = 0; i < 64; i++)
+			segment.put(namespace, "large" + i, value(1024), Long.MAX_VALUE, true);
+
+		segment.put(namespace, "another", value(1024), Long.MAX_VALUE, true);
+
+		Assertions.assertEquals(100 + 64, segment.cache.size());
+		Assertions.assertTrue(segment.cache.containsKey("small0"));
+		Assertions.assertFalse(segment.cache.containsKey("large0"));
+		Assertions.assertEquals(2 * SLAB, segment.slabs.getReserved());
+	}
+
+	@Test
+	void testOtherSizeClassFreesWholeSlab() {
+		final TextCache.Segment segment = new TextCache.Segment(100000, 2 * SLAB);
+
+		for (int i = 0; i < 128; i++)
+			segment.put(namespace, "k" + i, value(1024), Long.MAX_VALUE, true);
+
+		Assertions.assertEquals(128, segment.cache.size());
+
+		// a value of another size class needs a slab of its own, the oldest slab is emptied for it
+		segment.put(namespace, "small", value(100), Long.MAX_VALUE, true);
+
+		Assertions.assertTrue(segment.cache.containsKey("small"));
+		Assertions.assertEquals(64 + 1, segment.cache.size());
+		Assertions.assertTrue(segment.slabs.getReserved() <= 2 * SLAB);
+	}
+
+	@Test
+	void testRefusedWhenBudgetCannotBeMet() {
+		final TextCache.Segment segment = new TextCache.Segment(100000, SLAB);
+
+		segment.put(namespace, "a", value(SLAB + 1), Long.MAX_VALUE, true);
+
+		Assertions.assertFalse(segment.cache.containsKey("a"));
+		Assertions.assertEquals(0, segment.slabs.getReserved());
+	}
+
+	@Test
+	void testReservedStaysWithinLimit() {
+		final long limit = 16 * SLAB;
+
+		final TextCache.Segment segment = new TextCache.Segment(100000, limit);
+
+		final Random r = new Random(42);
+
+		for (int i = 0; i < 20000; i++) {
+			final int length = r.nextInt(10) == 0 ? SLAB + r.nextInt(3 * SLAB) : 1 + r.nextInt(8 * 1024);
+
+			segment.put(namespace, "k" + r.nextInt(5000), value(length), Long.MAX_VALUE, true);
+
+			Assertions.assertTrue(segment.slabs.getReserved() <= limit, "Reserved " + segment.slabs.getReserved() + " > " + limit + " after " + i + " inserts");
+			Assertions.assertTrue(segment.slabs.getUsed() <= segment.slabs.getReserved());
+		}
+
+		Assertions.assertTrue(segment.cache.size() > 0);
+	}
+
+	@Test
+	void testSharedBudget() {
+		final SlabAllocator.Budget budget = new SlabAllocator.Budget(3 * SLAB);
+
+		// each of them could hold twice as much on its own
+		final TextCache.Segment first = new TextCache.Segment(100000, 4 * SLAB, budget);
+		final TextCache.Segment second = new TextCache.Segment(100000, 4 * SLAB, budget);
+
+		for (int i = 0; i < 2 * 64; i++)
+			first.put(namespace, "k" + i, value(1024), Long.MAX_VALUE, true);
+
+		Assertions.assertEquals(2 * SLAB, budget.getReserved());
+
+		second.put(namespace, "a", value(1024), Long.MAX_VALUE, true);
+		Assertions.assertTrue(second.cache.containsKey("a"));
+
+		// the process has no direct memory left for another slab, the value is not cached
+		second.put(namespace, "b", value(SLAB + 1), Long.MAX_VALUE, true);
+		Assertions.assertFalse(second.cache.containsKey("b"));
+
+		// the slab emptied by overwriting a value is enough for one of another size class
+		second.put(namespace, "a", value(100), Long.MAX_VALUE, true);
+		Assertions.assertTrue(second.cache.containsKey("a"));
+		Assertions.assertEquals(3 * SLAB, budget.getReserved());
+
+		// but it is not taken from the other segment
+		second.put(namespace, "c", value(4000), Long.MAX_VALUE, true);
+		Assertions.assertFalse(second.cache.containsKey("c"));
+		Assertions.assertEquals(2 * 64, first.cache.size());
+
+		Assertions.assertEquals(first.slabs.getReserved() + second.slabs.getReserved(), budget.getReserved());
+		Assertions.assertTrue(budget.getReserved() <= budget.getLimit());
+
+		// and whatever is released is available to the others
+		synchronized (first) {
+			first.clear();
+		}
+
+		second.put(namespace, "b", value(SLAB + 1), Long.MAX_VALUE, true);
+		Assertions.assertTrue(second.cache.containsKey("b"));
+		Assertions.assertEquals(second.slabs.getReserved(), budget.getReserved());
+	}
+}
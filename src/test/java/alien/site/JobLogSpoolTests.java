@@ -0,0 +1,124 @@
+package alien.site;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import alien.taskQueue.JobLogLine;
+
+/**
+ * Spooling of the undelivered trace lines: the files of a running process are left alone, those of a process that is gone are taken over, and delivered lines are removed from disk
+ */
+class JobLogSpoolTests {
+
+	private File dir;
+
+	@BeforeEach
+	void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("JobLogSpoolTests").toFile();
+	}
+
+	@AfterEach
+	void removeDirectory() {
+		final File[] files = dir.listFiles();
+
+		if (files != null)
+			for (final File f : files)
+				f.delete();
+
+		dir.delete();
+	}
+
+	private int spoolFiles() {
+		final File[] files = dir.listFiles((d, name) -> name.endsWith(".spool"));
+
+		return files != null ? files.length : 0;
+	}
+
+	private static JobLogLine line(final int i) {
+		return new JobLogLine(1000 + i % 2, i % 3, 1234567890000L + i, i == 0 ? null : "tag" + i, "line " + i + "\twith a tab\nand a new line \\n");
+	}
+
+	private static void assertSameLines(final List<JobLogLine> expected, final List<JobLogLine> actual) {
+		Assertions.assertEquals(expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++)
+			Assertions.assertEquals(expected.get(i).toString(), actual.get(i).toString());
+	}
+
+	@Test
+	void testEscape() {
+		for (final String s : new String[] { null, "", "plain", "\\0", "a\tb\nc\rd\\e\\", "\\\\n" })
+			Assertions.assertEquals(s, JobLogSpool.unescape(JobLogSpool.escape(s)));
+
+		Assertions.assertFalse(JobLogSpool.escape("a\tb\nc").contains("\t"));
+		Assertions.assertFalse(JobLogSpool.escape("a\tb\nc").contains("\n"));
+	}
+
+	@Test
+	void testRecoverOnlyWhenOwnerIsGone() {
+		final JobLogSpool owner = new JobLogSpool(dir, 2);
+
+		final List<JobLogLine> written = new ArrayList<>();
+
+		for (int i = 0; i < 5; i++) {
+			written.add(line(i));
+			owner.append(i, line(i));
+		}
+
+		Assertions.assertEquals(3, spoolFiles());
+
+		final JobLogSpool other = new JobLogSpool(dir, 10);
+
+		final List<JobLogLine> recovered = new ArrayList<>();
+
+		// the files are locked by their owner, that is still running
+		Assertions.assertEquals(0, other.recover(recovered::add));
+		Assertions.assertEquals(3, spoolFiles());
+
+		// nor does the owner take over its own files
+		Assertions.assertEquals(0, owner.recover(recovered::add));
+
+		// it goes away without delivering anything
+		owner.close();
+
+		Assertions.assertEquals(5, other.recover(recovered::add));
+		assertSameLines(written, recovered);
+		Assertions.assertEquals(0, spoolFiles());
+
+		// nothing is left for anybody else
+		Assertions.assertEquals(0, new JobLogSpool(dir, 10).recover(recovered::add));
+	}
+
+	@Test
+	void testAcknowledge() {
+		final JobLogSpool spool = new JobLogSpool(dir, 2);
+
+		for (int i = 0; i < 5; i++)
+			spool.append(i, line(i));
+
+		// the second file still holds an undelivered line
+		spool.acknowledge(2, false);
+		Assertions.assertEquals(2, spoolFiles());
+
+		// the last file is kept while it is written to
+		spool.acknowledge(4, false);
+		Assertions.assertEquals(1, spoolFiles());
+
+		spool.acknowledge(4, true);
+		Assertions.assertEquals(0, spoolFiles());
+
+		// and a new one is started for the next line
+		spool.append(5, line(5));
+		Assertions.assertEquals(1, spoolFiles());
+
+		spool.close();
+	}
+}
@@ -0,0 +1,105 @@
+package alien.site;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Archives of job outputs: the members and their checksums, and the checksums of the archive that the upload reuses
+ */
+class OutputEntryTests {
+
+	private File dir;
+
+	@BeforeEach
+	void createDir() throws IOException {
+		dir = Files.createTempDirectory("OutputEntryTests").toFile();
+	}
+
+	@AfterEach
+	void removeDir() throws IOException {
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private byte[] write(final String name, final int size) throws IOException {
+		final byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+
+		Files.write(new File(dir, name).toPath(), content);
+
+		return content;
+	}
+
+	private static String md5(final byte[] content) throws NoSuchAlgorithmException {
+		return String.format("%032x", new BigInteger(1, MessageDigest.getInstance("MD5").digest(content)));
+	}
+
+	private void checkArchive(final String archiveName, final String... members) throws Exception {
+		final OutputEntry entry = new OutputEntry(archiveName, new ArrayList<>(Arrays.asList(members)), "", Long.valueOf(1), true);
+
+		final byte[] a = write(members[0], 100000);
+		final byte[] b = write(members[1], 12345);
+
+		final ArrayList<String> included = entry.createZip(dir.getAbsolutePath());
+
+		// the last member doesn't exist
+		Assertions.assertEquals(Arrays.asList(members[0], members[1]), included);
+
+		Assertions.assertEquals(md5(a), entry.getMD5sIncluded().get(members[0]));
+		Assertions.assertEquals(md5(b), entry.getMD5sIncluded().get(members[1]));
+		Assertions.assertEquals(Long.valueOf(b.length), entry.getSizesIncluded().get(members[1]));
+
+		final File archive = new File(dir, archiveName);
+
+		try (ZipFile zip = new ZipFile(archive)) {
+			Assertions.assertEquals(2, zip.size());
+
+			final ZipEntry ze = zip.getEntry(members[0]);
+
+			Assertions.assertArrayEquals(a, zip.getInputStream(ze).readAllBytes());
+		}
+
+		Assertions.assertNotNull(entry.getChecksums(archive));
+		Assertions.assertEquals(md5(Files.readAllBytes(archive.toPath())), entry.getChecksums(archive).getMD5());
+
+		// once the file changes the checksums are not given out any more
+		Assertions.assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+		Assertions.assertNull(entry.getChecksums(archive));
+	}
+
+	@Test
+	void testDeflatedArchive() throws Exception {
+		checkArchive("archive.zip", "stdout", "stderr", "missing");
+	}
+
+	@Test
+	void testStoredArchive() throws Exception {
+		checkArchive("root_archive.zip", "AO2D.root", "log.txt", "missing.root");
+	}
+
+	@Test
+	void testEmptyArchive() {
+		final OutputEntry entry = new OutputEntry("empty.zip", new ArrayList<>(Arrays.asList("missing")), "", Long.valueOf(1), true);
+
+		Assertions.assertTrue(entry.createZip(dir.getAbsolutePath()).isEmpty());
+		Assertions.assertFalse(new File(dir, "empty.zip").exists());
+	}
+}
@@ -0,0 +1,82 @@
+package alien.taskQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Ordering guarantees of the status batches, without any database behind them
+ */
+class JobUpdateBatcherTests {
+
+	private static JobUpdateBatcher.StatusChange change(final long queueId, final JobStatus newStatus) {
+		return new JobUpdateBatcher.StatusChange(queueId, newStatus, null);
+	}
+
+	@Test
+	void testDeferRepeatedJobs() {
+		final JobUpdateBatcher.StatusChange a1 = change(1, JobStatus.STARTED);
+		final JobUpdateBatcher.StatusChange b1 = change(2, JobStatus.STARTED);
+		final JobUpdateBatcher.StatusChange a2 = change(1, JobStatus.RUNNING);
+		final JobUpdateBatcher.StatusChange a3 = change(1, JobStatus.SAVING);
+		final JobUpdateBatcher.StatusChange b2 = change(2, JobStatus.RUNNING);
+
+		final List<JobUpdateBatcher.StatusChange> batch = new ArrayList<>(Arrays.asList(a1, b1, a2, a3, b2));
+
+		final List<JobUpdateBatcher.StatusChange> deferred = JobUpdateBatcher.deferRepeatedJobs(batch);
+
+		Assertions.assertEquals(Arrays.asList(a1, b1), batch);
+		Assertions.assertEquals(Arrays.asList(a2, a3, b2), deferred);
+
+		Assertions.assertNull(JobUpdateBatcher.deferRepeatedJobs(new ArrayList<>(Arrays.asList(a1, b1))));
+	}
+
+	@Test
+	void testTransitionsStayInOrder() throws InterruptedException {
+		final BlockingQueue<JobUpdateBatcher.StatusChange> queue = new LinkedBlockingQueue<>();
+
+		final List<JobStatus> appliedToJob1 = new ArrayList<>();
+
+		final BlockingQueue<Integer> batchSizes = new LinkedBlockingQueue<>();
+
+		final JobUpdateBatcher.StatusChange late = change(1, JobStatus.DONE);
+
+		final JobUpdateBatcher.Writer<JobUpdateBatcher.StatusChange> writer = new JobUpdateBatcher.Writer<>("JobUpdateBatcherTests", queue, (batch) -> {
+			final List<JobUpdateBatcher.StatusChange> deferred = JobUpdateBatcher.deferRepeatedJobs(batch);
+
+			for (final JobUpdateBatcher.StatusChange c : batch)
+				if (c.queueId == 1)
+					appliedToJob1.add(c.newStatus);
+
+			// another caller queues the next transition of the same job while the first batch is written
+			if (appliedToJob1.size() == 1)
+				queue.add(late);
+
+			batchSizes.add(Integer.valueOf(batch.size()));
+
+			return deferred;
+		});
+
+		queue.addAll(Arrays.asList(change(1, JobStatus.STARTED), change(2, JobStatus.STARTED), change(1, JobStatus.RUNNING), change(1, JobStatus.SAVING), change(3, JobStatus.STARTED)));
+
+		writer.start();
+
+		int total = 0;
+
+		while (total < 6) {
+			final Integer size = batchSizes.poll(10, TimeUnit.SECONDS);
+
+			Assertions.assertNotNull(size, "The writer didn't apply all the changes");
+
+			total += size.intValue();
+		}
+
+		Assertions.assertEquals(Arrays.asList(JobStatus.STARTED, JobStatus.RUNNING, JobStatus.SAVING, JobStatus.DONE), appliedToJob1);
+	}
+}